@@ -0,0 +1,76 @@
+package benchmarks;
+
+import data.ActionType;
+import data.HealthCardID;
+import data.ProductID;
+import data.Suggestion;
+import medicalconsultation.FqUnit;
+import medicalconsultation.MedicalPrescription;
+import medicalconsultation.dayMoment;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepting the AI suggestions for a prescription of many lines: the suggestions applied at once by
+ * applySuggestions, against turning every suggestion into the String[] of addLine and the calls of
+ * modifyDoseInLine and removeLine the terminal had before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ApplySuggestionsBenchmark {
+
+    @Param({"10", "200"})
+    int lines;
+
+    HealthCardID cip;
+    List<Suggestion> suggestions;
+
+    @Setup
+    public void setUp() throws Exception {
+        cip = new HealthCardID("1234567890123456");
+        suggestions = new ArrayList<>();
+        // Every product is added, half of them get a new dose and a quarter are removed
+        for (int i = 0; i < lines; i++)
+            suggestions.add(new Suggestion(ActionType.ADD, product(i), dayMoment.BEFORELUNCH, 15.0, 1.0, 8.0,
+                    FqUnit.HOUR, "Tomar con abundante agua"));
+        for (int i = 0; i < lines; i += 2)
+            suggestions.add(new Suggestion(ActionType.MODIFY, product(i), null, null, 2.0, null, null, null));
+        for (int i = 1; i < lines; i += 4)
+            suggestions.add(new Suggestion(ActionType.DELETE, product(i), null, null, null, null, null, null));
+    }
+
+    private static ProductID product(int i) throws Exception {
+        return ProductID.of(243516578917L + 7919L * i);
+    }
+
+    @Benchmark
+    public MedicalPrescription applySuggestions() throws Exception {
+        MedicalPrescription prescription = new MedicalPrescription(cip, 777, "illness");
+        prescription.applySuggestions(suggestions);
+        return prescription;
+    }
+
+    @Benchmark
+    public MedicalPrescription oneByOne() throws Exception {
+        MedicalPrescription prescription = new MedicalPrescription(cip, 777, "illness");
+        for (Suggestion suggestion : suggestions) {
+            switch (suggestion.getActionType()) {
+                case ADD -> prescription.addLine(suggestion.getProductID(), new String[]{
+                        suggestion.getDayMoment().name(), suggestion.getDuration().toString(),
+                        suggestion.getDose().toString(), suggestion.getFrequency().toString(),
+                        suggestion.getFqUnit().name(), suggestion.getInstructions()});
+                case MODIFY -> prescription.modifyDoseInLine(suggestion.getProductID(),
+                        suggestion.getDose().floatValue());
+                case DELETE -> prescription.removeLine(suggestion.getProductID());
+            }
+        }
+        return prescription;
+    }
+}
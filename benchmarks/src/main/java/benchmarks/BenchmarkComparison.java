@@ -0,0 +1,113 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files written with "-rf json", usually of the commit before and after a change.
+ * The results are matched by benchmark, mode and params. A result is a regression when it is worse than
+ * the baseline by more than the threshold and by more than the error of both scores, taking into account
+ * that a higher score is better in throughput mode and a lower one in the others.
+ * <p>
+ * Usage: java -cp target/benchmarks.jar benchmarks.BenchmarkComparison baseline.json current.json [threshold %]
+ * <p>
+ * Exits with 1 if there is any regression, so it can stop a build.
+ */
+public final class BenchmarkComparison {
+
+    private static final double DEFAULT_THRESHOLD = 5.0;
+
+    private BenchmarkComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BenchmarkComparison baseline.json current.json [threshold %]");
+            System.exit(2);
+        }
+        double threshold = (args.length == 3) ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        Map<String, Result> baseline = read(new File(args[0]));
+        Map<String, Result> current = read(new File(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-70s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %14s %14.3f %9s  %s%n", entry.getKey(), "-", now.score, "", now.unit);
+                continue;
+            }
+            // Positive when the current result is better
+            double change = (now.score - before.score) / before.score * 100;
+            if (!now.higherIsBetter) change = -change;
+            boolean beyondError = Math.abs(now.score - before.score) > now.error + before.error;
+            String verdict = "";
+            if (beyondError && change < -threshold) {
+                verdict = "REGRESSION";
+                regressions++;
+            } else if (beyondError && change > threshold) {
+                verdict = "improved";
+            }
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%%  %s %s%n", entry.getKey(), before.score, now.score,
+                    change, now.unit, verdict);
+        }
+        for (String missing : baseline.keySet())
+            if (!current.containsKey(missing)) System.out.printf("%-70s missing in the current results%n", missing);
+
+        System.out.printf("%d regressions beyond %.1f%%%n", regressions, threshold);
+        if (regressions > 0) System.exit(1);
+    }
+
+    private static Map<String, Result> read(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            JsonNode metric = run.get("primaryMetric");
+            String mode = run.get("mode").asText();
+            double error = metric.get("scoreError").asDouble();
+            results.put(key(run), new Result(metric.get("score").asDouble(), Double.isNaN(error) ? 0 : error,
+                    metric.get("scoreUnit").asText(), mode.equals("thrpt")));
+        }
+        return results;
+    }
+
+    // The name of the benchmark, its mode and its params in a stable order
+    private static String key(JsonNode run) {
+        String benchmark = run.get("benchmark").asText();
+        StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+        key.append(' ').append(run.get("mode").asText());
+        JsonNode params = run.get("params");
+        if (params != null) {
+            Map<String, String> sorted = new TreeMap<>();
+            for (Iterator<Map.Entry<String, JsonNode>> it = params.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> param = it.next();
+                sorted.put(param.getKey(), param.getValue().asText());
+            }
+            sorted.forEach((name, value) -> key.append(' ').append(name).append('=').append(value));
+        }
+        int threads = run.path("threads").asInt(1);
+        if (threads != 1) key.append(" threads=").append(threads);
+        return key.toString();
+    }
+
+    private static final class Result {
+        final double score;
+        final double error;
+        final String unit;
+        final boolean higherIsBetter;
+
+        Result(double score, double error, String unit, boolean higherIsBetter) {
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+    }
+}
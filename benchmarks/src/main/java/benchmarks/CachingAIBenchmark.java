@@ -0,0 +1,52 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import services.CachingDecisionMakingAI;
+import services.DecisionMakingAIMock;
+import services.interfaces.DecisionMakingAI;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Doctors asking the AI for suggestions, through the caching decorator and straight to the AI.
+ * The AI stand-in takes a fixed time to answer, and the prompts are a few dozen treatments written
+ * with different spacing and case, as doctors repeat them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class CachingAIBenchmark {
+
+    @Param({"1"})
+    long latencyMillis;
+
+    DecisionMakingAI direct;
+    CachingDecisionMakingAI cached;
+    String[] prompts;
+
+    @Setup
+    public void setUp() {
+        direct = new LatencyDecisionMakingAI(new DecisionMakingAIMock(), latencyMillis, TimeUnit.MILLISECONDS);
+        cached = new CachingDecisionMakingAI(direct, 1 << 20, 10, TimeUnit.MINUTES);
+        prompts = new String[200];
+        for (int i = 0; i < prompts.length; i++) {
+            String prompt = "Tratamiento cronico " + (i % 40) + " revisar dosis";
+            prompts[i] = (i % 3 == 0) ? prompt.toUpperCase() : (i % 3 == 1) ? "  " + prompt.replace(" ", "   ") : prompt;
+        }
+    }
+
+    @Benchmark
+    public String cachedSuggestions() throws Exception {
+        return cached.getSuggestions(prompts[ThreadLocalRandom.current().nextInt(prompts.length)]);
+    }
+
+    @Benchmark
+    public String directSuggestions() throws Exception {
+        return direct.getSuggestions(prompts[ThreadLocalRandom.current().nextInt(prompts.length)]);
+    }
+}
@@ -0,0 +1,101 @@
+package benchmarks;
+
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import medicalconsultation.ConsultationEngine;
+import medicalconsultation.ConsultationSession;
+import medicalconsultation.MedicalPrescription;
+import org.openjdk.jmh.annotations.*;
+import services.DecisionMakingAIMock;
+import services.NoOpTerminalView;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load benchmark of the multi-session engine: every benchmark thread is one doctor running
+ * whole consultations on its own session. Compare the total throughput of the
+ * 1, 2, 4 and max threads variants to see how it scales with the cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsultationEngineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Engine {
+        ConsultationEngine engine;
+        DigitalSignature signature;
+
+        @Setup
+        public void setUp() throws Exception {
+            engine = new ConsultationEngine(new LocalHealthNationalService(), new DecisionMakingAIMock());
+            engine.setTerminalView(NoOpTerminalView.INSTANCE); // Keep the screens out of the results
+            signature = new DigitalSignature(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 'A', 'B', 'C', 'D', 'E', 'G', 'H', 'J'});
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Doctor {
+        ConsultationSession session;
+        HealthCardID cip;
+        ProductID productID;
+        String[] instructions;
+        Date endDate;
+
+        @Setup
+        public void setUp(Engine engine) throws Exception {
+            session = engine.engine.openSession(engine.signature);
+            cip = new HealthCardID("1234567890123456");
+            productID = new ProductID("123456789012");
+            instructions = new String[]{"DURINGBREAKFAST", "3", "10", "2", "DAY", "instruction"};
+            endDate = new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(30));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public MedicalPrescription workflow1Thread(Doctor doctor) throws Exception {
+        return runWorkflow(doctor);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public MedicalPrescription workflow2Threads(Doctor doctor) throws Exception {
+        return runWorkflow(doctor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public MedicalPrescription workflow4Threads(Doctor doctor) throws Exception {
+        return runWorkflow(doctor);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public MedicalPrescription workflowMaxThreads(Doctor doctor) throws Exception {
+        return runWorkflow(doctor);
+    }
+
+    static MedicalPrescription runWorkflow(Doctor doctor) throws Exception {
+        ConsultationSession session = doctor.session;
+        session.initRevision(doctor.cip, "illness");
+        session.enterMedicalAssessmentInHistory("assessment");
+        session.initMedicalPrescriptionEdition();
+        session.callDecisionMakingAI();
+        session.askAIForSuggest("prompt");
+        session.extractGuidelinesFromSugg();
+        session.enterMedicineWithGuidelines(doctor.productID, doctor.instructions);
+        session.modifyDoseInLine(doctor.productID, 2);
+        session.removeLine(doctor.productID);
+        session.enterTreatmentEndingDate(doctor.endDate);
+        session.finishMedicalPrescriptionEdition();
+        session.stampeeSignature();
+        session.sendHistoryAndPrescription();
+        session.printMedicalPrescrip();
+        return session.getMedicalPrescription();
+    }
+}
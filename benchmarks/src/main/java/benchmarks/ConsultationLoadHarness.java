@@ -0,0 +1,115 @@
+package benchmarks;
+
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import medicalconsultation.ConsultationEngine;
+import medicalconsultation.ConsultationSession;
+import medicalconsultation.MedicalPrescription;
+import services.ConsultationThreads;
+import services.DecisionMakingAIMock;
+import services.NoOpTerminalView;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load harness of the thread-per-consultation mode of {@link ConsultationEngine#submit}: starts many whole
+ * consultations against HNS and AI stand-ins that take a fixed time to answer. The consultations wait at a gate
+ * until all of them are running, so they are all in flight at the same time, and the harness reports the heap
+ * used at that moment and how long they took from the gate on.
+ * Not a JMH benchmark, the point is the concurrency reached, run it with a small heap:
+ * <p>
+ * java -Xmx128m -cp target/benchmarks.jar benchmarks.ConsultationLoadHarness [consultations] [latency ms]
+ */
+public final class ConsultationLoadHarness {
+
+    private ConsultationLoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int consultations = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        long latencyMillis = (args.length > 1) ? Long.parseLong(args[1]) : 50;
+
+        ConsultationEngine engine = new ConsultationEngine(
+                new LatencyHealthNationalService(new LocalHealthNationalService(), latencyMillis, TimeUnit.MILLISECONDS),
+                new LatencyDecisionMakingAI(new DecisionMakingAIMock(), latencyMillis, TimeUnit.MILLISECONDS));
+        engine.setTerminalView(NoOpTerminalView.INSTANCE);
+        DigitalSignature signature = new DigitalSignature(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 'A', 'B', 'C', 'D', 'E', 'G', 'H', 'J'});
+        HealthCardID cip = new HealthCardID("1234567890123456");
+        ProductID productID = new ProductID("123456789012");
+        String[] instructions = {"DURINGBREAKFAST", "3", "10", "2", "DAY", "instruction"};
+        Date endDate = new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(30));
+
+        CountDownLatch started = new CountDownLatch(consultations);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<CompletableFuture<MedicalPrescription>> results = new ArrayList<>(consultations);
+        long submitStart = System.nanoTime();
+        for (int i = 0; i < consultations; i++) {
+            results.add(engine.submit(signature, session -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    started.countDown();
+                    gate.await();
+                    return runWorkflow(session, cip, productID, instructions, endDate);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }));
+        }
+        started.await();
+        long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitStart);
+        System.gc();
+        long heapAtPeak = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        int openSessions = engine.getOpenSessions();
+
+        long start = System.nanoTime();
+        gate.countDown();
+        int failed = 0;
+        for (CompletableFuture<MedicalPrescription> result : results) {
+            try {
+                result.join();
+            } catch (RuntimeException e) {
+                failed++;
+            }
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        long heapMax = Runtime.getRuntime().maxMemory();
+        System.out.printf("Threads:            %s%n", ConsultationThreads.isVirtual() ? "virtual" : "platform (no virtual threads in this JVM)");
+        System.out.printf("Consultations:      %d (%d failed)%n", consultations, failed);
+        System.out.printf("Peak concurrent:    %d (%d open sessions), all started in %d ms%n", peak.get(), openSessions,
+                startupMillis);
+        System.out.printf("Heap at the peak:   %d MB of %d MB, after GC%n", heapAtPeak >> 20, heapMax >> 20);
+        System.out.printf("Latency per call:   %d ms, 5 calls per consultation%n", latencyMillis);
+        System.out.printf("Elapsed:            %d ms (%.0f consultations/s)%n", elapsedMillis,
+                consultations * 1000.0 / Math.max(1, elapsedMillis));
+    }
+
+    private static MedicalPrescription runWorkflow(ConsultationSession session, HealthCardID cip, ProductID productID,
+                                                   String[] instructions, Date endDate) throws Exception {
+        session.initRevision(cip, "illness");
+        session.enterMedicalAssessmentInHistory("assessment");
+        session.initMedicalPrescriptionEdition();
+        session.callDecisionMakingAI();
+        session.askAIForSuggest("prompt");
+        session.extractGuidelinesFromSugg();
+        session.enterMedicineWithGuidelines(productID, instructions);
+        session.modifyDoseInLine(productID, 2);
+        session.removeLine(productID);
+        session.enterTreatmentEndingDate(endDate);
+        session.finishMedicalPrescriptionEdition();
+        session.stampeeSignature();
+        session.sendHistoryAndPrescription();
+        session.printMedicalPrescrip();
+        return session.getMedicalPrescription();
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import medicalconsultation.ConsultationTerminal;
+import medicalconsultation.MedicalPrescription;
+import org.openjdk.jmh.annotations.*;
+import services.DecisionMakingAIMock;
+import services.NoOpTerminalView;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One whole consultation on a bare ConsultationTerminal, from initRevision to printMedicalPrescrip,
+ * with the in-process HNS and the AI mock. It is the cost of the workflow itself, without the
+ * sessions of the engine nor any round trip, so a regression of any step shows here.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConsultationTerminalBenchmark {
+
+    ConsultationTerminal terminal;
+    HealthCardID cip;
+    ProductID productID;
+    String[] instructions;
+    Date endDate;
+
+    @Setup
+    public void setUp() throws Exception {
+        terminal = new ConsultationTerminal();
+        terminal.setHealthNationalService(new LocalHealthNationalService());
+        terminal.setAi(new DecisionMakingAIMock());
+        terminal.setTerminalView(NoOpTerminalView.INSTANCE);
+        terminal.setDoctorSignature(new DigitalSignature(
+                new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 'A', 'B', 'C', 'D', 'E', 'G', 'H', 'J'}));
+        cip = new HealthCardID("1234567890123456");
+        productID = new ProductID("123456789012");
+        instructions = new String[]{"DURINGBREAKFAST", "3", "10", "2", "DAY", "instruction"};
+        endDate = new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(30));
+    }
+
+    @Benchmark
+    public MedicalPrescription workflow() throws Exception {
+        terminal.initRevision(cip, "illness");
+        terminal.enterMedicalAssessmentInHistory("assessment");
+        terminal.initMedicalPrescriptionEdition();
+        terminal.callDecisionMakingAI();
+        terminal.askAIForSuggest("prompt");
+        terminal.extractGuidelinesFromSugg();
+        terminal.enterMedicineWithGuidelines(productID, instructions);
+        terminal.modifyDoseInLine(productID, 2);
+        terminal.removeLine(productID);
+        terminal.enterTreatmentEndingDate(endDate);
+        terminal.finishMedicalPrescriptionEdition();
+        terminal.stampeeSignature();
+        terminal.sendHistoryAndPrescription();
+        terminal.printMedicalPrescrip();
+        return terminal.getMedicalPrescription();
+    }
+}
@@ -0,0 +1,73 @@
+package benchmarks;
+
+import data.HealthCardID;
+import org.openjdk.jmh.annotations.*;
+import services.HealthCardIDFilter;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A query to the {@link HealthCardIDFilter} of tens of millions of registered cards, for a registered card and for
+ * an unknown one, the check the filtering HNS does before every getMedicalHistory. The set of all the cards is the
+ * exact answer, at many times the memory; the HNS round trip it saves is milliseconds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class HealthCardIDFilterBenchmark {
+    private static final int QUERIES = 1 << 16;
+
+    @Param({"10000000"})
+    int cards;
+
+    @Param({"0.01"})
+    double falsePositiveRate;
+
+    HealthCardIDFilter filter;
+    Set<HealthCardID> set;
+    HealthCardID[] registered;
+    HealthCardID[] unknown;
+    int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        filter = new HealthCardIDFilter(cards, falsePositiveRate);
+        set = ConcurrentHashMap.newKeySet(cards);
+        for (int i = 0; i < cards; i++) {
+            HealthCardID cip = HealthCardID.parse(String.format("BBB%013d", 7919L * i));
+            filter.add(cip);
+            set.add(cip);
+        }
+        registered = new HealthCardID[QUERIES];
+        unknown = new HealthCardID[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            registered[i] = HealthCardID.parse(String.format("BBB%013d", 7919L * (i * 104729L % cards)));
+            unknown[i] = HealthCardID.parse(String.format("CCC%013d", 7L * i + 3));
+        }
+        System.out.println("Filter: " + filter.getByteSize() + " B, " + filter.getHashCount() + " hashes");
+    }
+
+    private int nextQuery() {
+        return next = (next + 1) & (QUERIES - 1);
+    }
+
+    @Benchmark
+    public boolean filterRegistered() {
+        return filter.mightContain(registered[nextQuery()]);
+    }
+
+    @Benchmark
+    public boolean filterUnknown() {
+        return filter.mightContain(unknown[nextQuery()]);
+    }
+
+    @Benchmark
+    public boolean setUnknown() {
+        return set.contains(unknown[nextQuery()]);
+    }
+}
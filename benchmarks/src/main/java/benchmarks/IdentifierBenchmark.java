@@ -0,0 +1,203 @@
+package benchmarks;
+
+import data.HealthCardID;
+import data.ProductID;
+import data.ePrescripCode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The packed ProductID and HealthCardID against copies of the String based classes they replaced,
+ * parsing codes and using them as keys of a HashMap as MedicalPrescription and the HNS stand-ins do.
+ * The lookups use new instances, so equals and hashCode run every time as with ids arriving from the outside.
+ * The ePrescripCode is measured the same way, it has no packed version yet.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdentifierBenchmark {
+
+    @Param({"1000"})
+    int ids;
+
+    String[] productCodes;
+    String[] cardCodes;
+    String[] prescripCodes;
+    ProductID[] products;
+    LegacyProductID[] legacyProducts;
+    HealthCardID[] cards;
+    LegacyHealthCardID[] legacyCards;
+    ePrescripCode[] prescrips;
+    Map<ProductID, Integer> productMap;
+    Map<LegacyProductID, Integer> legacyProductMap;
+    Map<HealthCardID, Integer> cardMap;
+    Map<LegacyHealthCardID, Integer> legacyCardMap;
+    Map<ePrescripCode, Integer> prescripMap;
+
+    @Setup
+    public void setUp() throws Exception {
+        productCodes = new String[ids];
+        cardCodes = new String[ids];
+        prescripCodes = new String[ids];
+        products = new ProductID[ids];
+        legacyProducts = new LegacyProductID[ids];
+        cards = new HealthCardID[ids];
+        legacyCards = new LegacyHealthCardID[ids];
+        prescrips = new ePrescripCode[ids];
+        productMap = new HashMap<>();
+        legacyProductMap = new HashMap<>();
+        cardMap = new HashMap<>();
+        legacyCardMap = new HashMap<>();
+        prescripMap = new HashMap<>();
+        for (int i = 0; i < ids; i++) {
+            productCodes[i] = String.format("%012d", 243516578917L + 7919L * i);
+            cardCodes[i] = String.format("BBBB%012d", 1000003L * i);
+            prescripCodes[i] = String.format("RX%014X", 0x9E3779B9L * i);
+            productMap.put(new ProductID(productCodes[i]), i);
+            legacyProductMap.put(new LegacyProductID(productCodes[i]), i);
+            cardMap.put(new HealthCardID(cardCodes[i]), i);
+            legacyCardMap.put(new LegacyHealthCardID(cardCodes[i]), i);
+            prescripMap.put(new ePrescripCode(prescripCodes[i]), i);
+            // Copies of the Strings, as ids read from a request don't share the instance
+            products[i] = ProductID.parse(new String(productCodes[i].toCharArray()));
+            legacyProducts[i] = new LegacyProductID(new String(productCodes[i].toCharArray()));
+            cards[i] = HealthCardID.parse(new String(cardCodes[i].toCharArray()));
+            legacyCards[i] = new LegacyHealthCardID(new String(cardCodes[i].toCharArray()));
+            prescrips[i] = new ePrescripCode(new String(prescripCodes[i].toCharArray()));
+        }
+    }
+
+    @Benchmark
+    public long parseProducts() throws Exception {
+        long sum = 0;
+        for (String code : productCodes) sum += ProductID.parse(code).toLong();
+        return sum;
+    }
+
+    @Benchmark
+    public int parseProductsLegacy() throws Exception {
+        int sum = 0;
+        for (String code : productCodes) sum += new LegacyProductID(code).hashCode();
+        return sum;
+    }
+
+    @Benchmark
+    public int internProducts() throws Exception {
+        int sum = 0;
+        for (String code : productCodes) sum += ProductID.intern(code).hashCode();
+        return sum;
+    }
+
+    @Benchmark
+    public int lookupProducts() {
+        int sum = 0;
+        for (ProductID id : products) sum += productMap.get(id);
+        return sum;
+    }
+
+    @Benchmark
+    public int lookupProductsLegacy() {
+        int sum = 0;
+        for (LegacyProductID id : legacyProducts) sum += legacyProductMap.get(id);
+        return sum;
+    }
+
+    @Benchmark
+    public int parseAndLookupCards() throws Exception {
+        int sum = 0;
+        for (String code : cardCodes) sum += cardMap.get(HealthCardID.parse(code));
+        return sum;
+    }
+
+    @Benchmark
+    public int parseAndLookupCardsLegacy() throws Exception {
+        int sum = 0;
+        for (String code : cardCodes) sum += legacyCardMap.get(new LegacyHealthCardID(code));
+        return sum;
+    }
+
+    @Benchmark
+    public int lookupCards() {
+        int sum = 0;
+        for (HealthCardID id : cards) sum += cardMap.get(id);
+        return sum;
+    }
+
+    @Benchmark
+    public int lookupCardsLegacy() {
+        int sum = 0;
+        for (LegacyHealthCardID id : legacyCards) sum += legacyCardMap.get(id);
+        return sum;
+    }
+
+    @Benchmark
+    public int parseEPrescripCodes() throws Exception {
+        int sum = 0;
+        for (String code : prescripCodes) sum += new ePrescripCode(code).hashCode();
+        return sum;
+    }
+
+    @Benchmark
+    public int lookupEPrescripCodes() {
+        int sum = 0;
+        for (ePrescripCode code : prescrips) sum += prescripMap.get(code);
+        return sum;
+    }
+
+    // Copies of the classes before the ids were packed
+
+    static final class LegacyProductID {
+        private final String productID;
+
+        LegacyProductID(String code) {
+            if (code == null) throw new IllegalArgumentException("ProductID code can't be null");
+            if (code.length() != 12) throw new IllegalArgumentException("ProductID must be 12 characters long");
+            for (char c : code.toCharArray())
+                if (!Character.isDigit(c)) throw new IllegalArgumentException("ProductID contains invalid characters");
+            this.productID = code;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return productID.equals(((LegacyProductID) o).productID);
+        }
+
+        @Override
+        public int hashCode() {
+            return productID.hashCode();
+        }
+    }
+
+    static final class LegacyHealthCardID {
+        private final String personalID;
+
+        LegacyHealthCardID(String code) {
+            if (code == null) throw new IllegalArgumentException("HealthCardID code can't be null");
+            if (code.length() != 16) throw new IllegalArgumentException("HealthCardID must be 16 characters long");
+            for (char c : code.toCharArray())
+                if (!Character.isLetter(c) && !Character.isDigit(c))
+                    throw new IllegalArgumentException("HealthCardID contains invalid characters");
+            this.personalID = code;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return personalID.equals(((LegacyHealthCardID) o).personalID);
+        }
+
+        @Override
+        public int hashCode() {
+            return personalID.hashCode();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import data.HealthCardID;
+import data.ProductID;
+import exceptions.VersionConflictException;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import org.openjdk.jmh.annotations.*;
+import services.InMemoryHealthNationalService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@link InMemoryHealthNationalService} with many patients, to run with more threads
+ * every time (-t 1, -t 2, -t 4...) and see it grow with the cores. A revision gets both records of a random patient,
+ * appends an annotation, changes a dose and sends the changes, retrying when another thread moved the records.
+ * One stripe is the same as a single lock around the whole service.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class InMemoryHNSBenchmark {
+    private static final String[] INSTRUCTIONS = {"BEFORELUNCH", "15", "1", "1", "DAY", "Tomar con abundante agua"};
+    private static final String ANNOTATION = "Revisión: tensión arterial estable, se ajusta la dosis";
+
+    @Param({"1000000"})
+    int patients;
+
+    @Param({"1", "4096"})
+    int stripes;
+
+    InMemoryHealthNationalService hns;
+    HealthCardID[] cips;
+    ProductID product;
+
+    @Setup
+    public void setUp() throws Exception {
+        hns = new InMemoryHealthNationalService(patients, stripes);
+        cips = new HealthCardID[patients];
+        product = ProductID.of(243516578917L);
+        for (int i = 0; i < patients; i++) {
+            cips[i] = HealthCardID.parse(String.format("BBB%013d", 1000003L * i));
+            hns.registerPatient(cips[i], 777);
+            MedicalPrescription prescription = new MedicalPrescription(cips[i], 777, "Hipertensión arterial");
+            prescription.addLine(product, INSTRUCTIONS);
+            prescription.addLine(ProductID.of(243516578917L + 7919L), INSTRUCTIONS);
+            hns.registerPrescription(prescription);
+        }
+    }
+
+    private HealthCardID randomPatient() {
+        return cips[ThreadLocalRandom.current().nextInt(cips.length)];
+    }
+
+    @Benchmark
+    public MedicalPrescription getPrescription() throws Exception {
+        return hns.getMedicalPrescription(randomPatient(), "Hipertensión arterial");
+    }
+
+    @Benchmark
+    public MedicalPrescription revision() throws Exception {
+        HealthCardID cip = randomPatient();
+        while (true) {
+            MedicalHistory history = hns.getMedicalHistory(cip);
+            MedicalPrescription prescription = hns.getMedicalPrescription(cip, "Hipertensión arterial");
+            history.addMedicalHistoryAnnotations(ANNOTATION);
+            prescription.modifyDoseInLine(product, 2);
+            try {
+                return hns.sendHistoryAndPrescriptionChanges(cip, history, "Hipertensión arterial", prescription);
+            } catch (VersionConflictException e) {
+                // Another thread revised the same patient, get the records again
+            }
+        }
+    }
+}
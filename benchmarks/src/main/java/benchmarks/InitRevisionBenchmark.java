@@ -0,0 +1,69 @@
+package benchmarks;
+
+import data.HealthCardID;
+import medicalconsultation.ConsultationTerminal;
+import org.openjdk.jmh.annotations.*;
+import services.AsyncHealthNationalServiceAdapter;
+import services.DecisionMakingAIMock;
+import services.NoOpTerminalView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of starting a revision against an HNS stand-in with injected round trip latency,
+ * with the two sequential blocking calls and with both fetched at the same time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class InitRevisionBenchmark {
+
+    @Param({"5"})
+    long latencyMillis;
+
+    ConsultationTerminal sequential;
+    ConsultationTerminal parallel;
+    ExecutorService executor;
+    HealthCardID cip;
+
+    @Setup
+    public void setUp() throws Exception {
+        LatencyHealthNationalService hns = new LatencyHealthNationalService(
+                new LocalHealthNationalService(), latencyMillis, TimeUnit.MILLISECONDS);
+        executor = Executors.newCachedThreadPool();
+        cip = new HealthCardID("1234567890123456");
+
+        sequential = new ConsultationTerminal();
+        sequential.setHealthNationalService(hns);
+        sequential.setAi(new DecisionMakingAIMock());
+        sequential.setTerminalView(NoOpTerminalView.INSTANCE);
+
+        parallel = new ConsultationTerminal();
+        parallel.setHealthNationalService(hns);
+        parallel.setAsyncHealthNationalService(new AsyncHealthNationalServiceAdapter(hns, executor));
+        parallel.setAi(new DecisionMakingAIMock());
+        parallel.setTerminalView(NoOpTerminalView.INSTANCE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Object sequentialFetch() throws Exception {
+        sequential.initRevision(cip, "illness");
+        return sequential.getMedicalPrescription();
+    }
+
+    @Benchmark
+    public Object parallelFetch() throws Exception {
+        parallel.initRevision(cip, "illness");
+        return parallel.getMedicalPrescription();
+    }
+}
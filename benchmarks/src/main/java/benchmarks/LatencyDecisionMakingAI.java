@@ -0,0 +1,58 @@
+package benchmarks;
+
+import data.Suggestion;
+import exceptions.AIException;
+import exceptions.BadPromptException;
+import services.interfaces.DecisionMakingAI;
+import services.interfaces.SuggestionListener;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds a fixed round trip latency to the calls of another AI that go out of the process,
+ * parsing an answer is local and has none.
+ */
+public class LatencyDecisionMakingAI implements DecisionMakingAI {
+
+    private final DecisionMakingAI ai;
+    private final long latencyNanos;
+
+    public LatencyDecisionMakingAI(DecisionMakingAI ai, long latency, TimeUnit unit) {
+        this.ai = ai;
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    @Override
+    public void initDecisionMakingAI() throws AIException {
+        if (!roundTrip()) throw new AIException("Interrupted");
+        ai.initDecisionMakingAI();
+    }
+
+    @Override
+    public String getSuggestions(String prompt) throws BadPromptException {
+        if (!roundTrip()) throw new BadPromptException("Interrupted");
+        return ai.getSuggestions(prompt);
+    }
+
+    @Override
+    public List<Suggestion> parseSuggest(String aiAnswer) {
+        return ai.parseSuggest(aiAnswer);
+    }
+
+    @Override
+    public void streamSuggestions(String prompt, SuggestionListener listener) throws BadPromptException {
+        if (!roundTrip()) throw new BadPromptException("Interrupted");
+        ai.streamSuggestions(prompt, listener);
+    }
+
+    private boolean roundTrip() {
+        try {
+            TimeUnit.NANOSECONDS.sleep(latencyNanos);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import data.HealthCardID;
+import exceptions.*;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import services.interfaces.HealthNationalService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds a fixed round trip latency to every call of another HNS.
+ */
+public class LatencyHealthNationalService implements HealthNationalService {
+
+    private final HealthNationalService healthNationalService;
+    private final long latencyNanos;
+
+    public LatencyHealthNationalService(HealthNationalService healthNationalService, long latency, TimeUnit unit) {
+        this.healthNationalService = healthNationalService;
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        roundTrip();
+        return healthNationalService.getMedicalHistory(cip);
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException, MedicalPrescriptionException {
+        roundTrip();
+        return healthNationalService.getMedicalPrescription(cip, illness);
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce, String illness,
+                                                          MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+        roundTrip();
+        return healthNationalService.sendHistoryAndPrescription(cip, hce, illness, mPresc);
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ConnectException, ePrescripCodeException, MedicalPrescriptionException {
+        roundTrip();
+        return healthNationalService.generateTreatmCodeAndRegister(ePresc);
+    }
+
+    private void roundTrip() throws ConnectException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(latencyNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectException("Interrupted");
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package benchmarks;
+
+import data.HealthCardID;
+import data.ePrescripCode;
+import exceptions.*;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import services.interfaces.HealthNationalService;
+
+/**
+ * HNS stand-in for the benchmarks: every revision gets its own history and prescription,
+ * so concurrent sessions never share mutable records.
+ */
+public class LocalHealthNationalService implements HealthNationalService {
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip) throws IncorrectParametersException {
+        return new MedicalHistory(cip, 777);
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness) throws MedicalPrescriptionException {
+        return new MedicalPrescription(cip, 777, illness);
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce, String illness,
+                                                          MedicalPrescription mPresc)
+            throws ePrescripCodeException, MedicalPrescriptionException {
+        return generateTreatmCodeAndRegister(mPresc);
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ePrescripCodeException, MedicalPrescriptionException {
+        ePresc.setPrescCode(new ePrescripCode("123456789ABCDEFG"));
+        return ePresc;
+    }
+}
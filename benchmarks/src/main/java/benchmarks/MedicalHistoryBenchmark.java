@@ -0,0 +1,91 @@
+package benchmarks;
+
+import data.HealthCardID;
+import medicalconsultation.MedicalHistory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the history of a long-lived chronic patient, one annotation at a time, and reading it.
+ * The concatenation is how MedicalHistory stored the annotations before, it copies the
+ * whole history on every append (expect it to take seconds with 100k annotations).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class MedicalHistoryBenchmark {
+
+    @Param({"10000", "100000"})
+    int annotations;
+
+    HealthCardID cip;
+
+    @Setup
+    public void setUp() throws Exception {
+        cip = new HealthCardID("1234567890123456");
+    }
+
+    @Benchmark
+    public String appendAndGetHistory() throws Exception {
+        MedicalHistory history = new MedicalHistory(cip, 777);
+        for (int i = 0; i < annotations; i++)
+            history.addMedicalHistoryAnnotations("Revision " + i + ": patient stable, treatment continues");
+        return history.getHistory();
+    }
+
+    @Benchmark
+    public long appendAndStreamHistory() throws Exception {
+        MedicalHistory history = new MedicalHistory(cip, 777);
+        for (int i = 0; i < annotations; i++)
+            history.addMedicalHistoryAnnotations("Revision " + i + ": patient stable, treatment continues");
+        CountingWriter out = new CountingWriter();
+        history.writeHistoryTo(out);
+        return out.count;
+    }
+
+    @Benchmark
+    public String concatenation() {
+        String history = "";
+        for (int i = 0; i < annotations; i++) {
+            String annot = "Revision " + i + ": patient stable, treatment continues";
+            history = history.isEmpty() ? annot : history + "\n" + annot;
+        }
+        return history;
+    }
+
+    // Stands for a socket or a file, only counts the characters
+    private static final class CountingWriter extends Writer {
+        long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public Writer append(CharSequence csq) {
+            count += csq.length();
+            return this;
+        }
+
+        @Override
+        public Writer append(char c) {
+            count++;
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import medicalconsultation.ConsultationEngine;
+import medicalconsultation.ConsultationSession;
+import medicalconsultation.ConsultationTerminal;
+import medicalconsultation.MedicalPrescription;
+import metrics.ConsultationMetrics;
+import org.openjdk.jmh.annotations.*;
+import services.DecisionMakingAIMock;
+import services.InstrumentedDecisionMakingAI;
+import services.InstrumentedHealthNationalService;
+import services.NoOpTerminalView;
+import services.interfaces.DecisionMakingAI;
+import services.interfaces.HealthNationalService;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the metrics on the whole consultation: "on" times the 14 steps and the 7 service calls of every
+ * consultation, compare it with "off" for the same latency and threads to see the overhead.
+ * With a round trip to the HNS the overhead is the share of a real consultation, with the in-process
+ * HNS (latency 0) the timing is as large a share of the work as it can be, that case shows its absolute cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Engine {
+        @Param({"off", "on"})
+        String metrics;
+
+        @Param({"0", "200"})
+        long hnsLatencyMicros;
+
+        ConsultationEngine engine;
+        DigitalSignature signature;
+
+        @Setup
+        public void setUp() throws Exception {
+            HealthNationalService hns = new LocalHealthNationalService();
+            if (hnsLatencyMicros > 0)
+                hns = new LatencyHealthNationalService(hns, hnsLatencyMicros, TimeUnit.MICROSECONDS);
+            DecisionMakingAI ai = new DecisionMakingAIMock();
+            ConsultationMetrics consultationMetrics = null;
+            if (metrics.equals("on")) {
+                consultationMetrics = ConsultationTerminal.newMetrics();
+                hns = new InstrumentedHealthNationalService(hns, consultationMetrics);
+                ai = new InstrumentedDecisionMakingAI(ai, consultationMetrics);
+            }
+            engine = new ConsultationEngine(hns, ai);
+            engine.setTerminalView(NoOpTerminalView.INSTANCE);
+            engine.setMetrics(consultationMetrics);
+            signature = new DigitalSignature(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 'A', 'B', 'C', 'D', 'E', 'G', 'H', 'J'});
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Doctor {
+        ConsultationSession session;
+        HealthCardID cip;
+        ProductID productID;
+        String[] instructions;
+        Date endDate;
+
+        @Setup
+        public void setUp(Engine engine) throws Exception {
+            session = engine.engine.openSession(engine.signature);
+            cip = new HealthCardID("1234567890123456");
+            productID = new ProductID("123456789012");
+            instructions = new String[]{"DURINGBREAKFAST", "3", "10", "2", "DAY", "instruction"};
+            endDate = new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(30));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public MedicalPrescription workflow1Thread(Doctor doctor) throws Exception {
+        return runWorkflow(doctor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public MedicalPrescription workflow4Threads(Doctor doctor) throws Exception {
+        return runWorkflow(doctor);
+    }
+
+    private static MedicalPrescription runWorkflow(Doctor doctor) throws Exception {
+        ConsultationSession session = doctor.session;
+        session.initRevision(doctor.cip, "illness");
+        session.enterMedicalAssessmentInHistory("assessment");
+        session.initMedicalPrescriptionEdition();
+        session.callDecisionMakingAI();
+        session.askAIForSuggest("prompt");
+        session.extractGuidelinesFromSugg();
+        session.enterMedicineWithGuidelines(doctor.productID, doctor.instructions);
+        session.modifyDoseInLine(doctor.productID, 2);
+        session.removeLine(doctor.productID);
+        session.enterTreatmentEndingDate(doctor.endDate);
+        session.finishMedicalPrescriptionEdition();
+        session.stampeeSignature();
+        session.sendHistoryAndPrescription();
+        session.printMedicalPrescrip();
+        return session.getMedicalPrescription();
+    }
+}
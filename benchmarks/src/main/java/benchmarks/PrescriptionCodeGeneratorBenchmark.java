@@ -0,0 +1,47 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import services.PrescriptionCodeGenerator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Codes per second of the {@link PrescriptionCodeGenerator}, to run with more threads every time (-t 1, -t 4...).
+ * The single AtomicLong, formatted the same way, is what a generator without stripes would cost:
+ * all the threads fight for the same cache line.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrescriptionCodeGeneratorBenchmark {
+    private static final char[] DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    PrescriptionCodeGenerator generator;
+    AtomicLong counter;
+
+    @Setup
+    public void setUp() {
+        generator = new PrescriptionCodeGenerator(1);
+        counter = new AtomicLong();
+    }
+
+    @Benchmark
+    public String generate() {
+        return generator.nextCode();
+    }
+
+    @Benchmark
+    public String singleCounter() {
+        long value = counter.getAndIncrement();
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = DIGITS[(int) (value % 36)];
+            value /= 36;
+        }
+        return new String(chars);
+    }
+}
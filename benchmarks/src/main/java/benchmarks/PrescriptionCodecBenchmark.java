@@ -0,0 +1,112 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import data.ePrescripCode;
+import medicalconsultation.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The binary {@link PrescriptionCodec} against JSON written and read by Jackson, on prescriptions of
+ * 1 and 20 lines. The sizes of both encodings are printed when the trial starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrescriptionCodecBenchmark {
+
+    @Param({"1", "20"})
+    int lines;
+
+    final ObjectMapper mapper = new ObjectMapper();
+    MedicalPrescription prescription;
+    ByteBuffer buffer;
+    byte[] binary;
+    byte[] json;
+
+    @Setup
+    public void setUp() throws Exception {
+        prescription = new MedicalPrescription(new HealthCardID("1234567890123456"), 777, "Hipertensión arterial");
+        for (int i = 0; i < lines; i++)
+            prescription.addLine(new ProductID(String.format("%012d", 243516578917L + i)),
+                    new String[]{"BEFORELUNCH", "15", "1", "1", "DAY", "Tomar con abundante agua"});
+        prescription.setPrescCode(new ePrescripCode("123456789ABCDEFG"));
+        prescription.setEndDate(new Date());
+        prescription.setEsig(new DigitalSignature(new byte[16]));
+
+        buffer = ByteBuffer.allocate(PrescriptionCodec.encodedSize(prescription));
+        binary = PrescriptionCodec.encode(prescription);
+        json = mapper.writeValueAsBytes(PrescriptionJson.of(prescription));
+        System.out.println("\nEncoded size with " + lines + " lines: binary " + binary.length + " B, json " + json.length + " B");
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBinary() throws Exception {
+        buffer.clear();
+        PrescriptionCodec.encode(prescription, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public MedicalPrescription decodeBinary() throws Exception {
+        return PrescriptionCodec.decode(binary);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws Exception {
+        return mapper.writeValueAsBytes(PrescriptionJson.of(prescription));
+    }
+
+    @Benchmark
+    public MedicalPrescription decodeJson() throws Exception {
+        return mapper.readValue(json, PrescriptionJson.class).toPrescription();
+    }
+
+    // The JSON documents, the domain classes have no constructors Jackson can use
+
+    public record PrescriptionJson(String cip, int membShipNumb, String illness, String prescCode, long prescDate,
+                                   Long endDate, byte[] eSign, List<LineJson> lines) {
+
+        static PrescriptionJson of(MedicalPrescription p) {
+            List<LineJson> lines = new ArrayList<>();
+            for (MedicalPrescriptionLine line : p.getLines()) {
+                TakingGuideline guideline = line.getTakingGuideline();
+                Posology posology = guideline.getPosology();
+                lines.add(new LineJson(line.getProductID().getProductID(), line.getQuantity(), guideline.getDMoment(),
+                        guideline.getDuration(), posology.getDose(), posology.getFreq(), posology.getFreqUnit(),
+                        guideline.getInstructions()));
+            }
+            return new PrescriptionJson(p.getCip().getPersonalID(), p.getMembShipNumb(), p.getIllness(),
+                    p.getPrescCode() == null ? null : p.getPrescCode().getPrescripCode(), p.getPrescDate().getTime(),
+                    p.getEndDate() == null ? null : p.getEndDate().getTime(),
+                    p.geteSign() == null ? null : p.geteSign().getDigitalSignature(), lines);
+        }
+
+        MedicalPrescription toPrescription() throws Exception {
+            MedicalPrescription p = new MedicalPrescription(new HealthCardID(cip), membShipNumb, illness);
+            if (prescCode != null) p.setPrescCode(new ePrescripCode(prescCode));
+            if (endDate != null) p.setEndDate(new Date(endDate));
+            if (eSign != null) p.setEsig(new DigitalSignature(eSign));
+            for (LineJson line : lines)
+                p.addLine(new ProductID(line.productID()), new String[]{line.moment().name(),
+                        Float.toString(line.duration()), Float.toString(line.dose()), Float.toString(line.frequency()),
+                        line.unit().name(), line.instructions()});
+            return p;
+        }
+    }
+
+    public record LineJson(String productID, int quantity, dayMoment moment, float duration, float dose,
+                           float frequency, FqUnit unit, String instructions) {
+    }
+}
@@ -0,0 +1,90 @@
+package benchmarks;
+
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import medicalconsultation.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A usual revision, one annotation and two changed lines, sent to the HNS whole against sending only the changes.
+ * Both sides are measured: the terminal encodes, the HNS decodes and replaces its records with the whole ones
+ * or applies the changes to them. The sizes of both payloads are printed when the trial starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrescriptionDeltaBenchmark {
+    private static final String[] INSTRUCTIONS = {"BEFORELUNCH", "15", "1", "1", "DAY", "Tomar con abundante agua"};
+
+    @Param({"10", "200"})
+    int lines;
+
+    @Param({"50"})
+    int annotations;
+
+    HealthCardID cip;
+    MedicalHistory history;
+    MedicalPrescription prescription;
+    MedicalHistory registeredHistory;
+    MedicalPrescription registeredPrescription;
+
+    @Setup
+    public void setUp() throws Exception {
+        cip = new HealthCardID("1234567890123456");
+        history = new MedicalHistory(cip, 777);
+        for (int i = 0; i < annotations; i++)
+            history.addMedicalHistoryAnnotations("Revisión " + i + ": tensión arterial estable, sin cambios en el tratamiento");
+        prescription = new MedicalPrescription(cip, 777, "Hipertensión arterial");
+        for (int i = 0; i < lines; i++) prescription.addLine(ProductID.of(243516578917L + 7919L * i), INSTRUCTIONS);
+        prescription.setEndDate(new Date());
+        prescription.setEsig(new DigitalSignature(new byte[16]));
+        registeredPrescription = PrescriptionCodec.decode(PrescriptionCodec.encode(prescription));
+        prescription.markSynchronized(1);
+        registeredPrescription.markSynchronized(1);
+        history.markSynchronized(1);
+
+        // The revision
+        history.addMedicalHistoryAnnotations("Revisión: se ajusta la dosis y se añade un diurético");
+        prescription.modifyDoseInLine(ProductID.of(243516578917L), 2);
+        prescription.addLine(ProductID.of(999999999999L), INSTRUCTIONS);
+
+        int full = PrescriptionCodec.encodedSize(prescription) + history.getHistory().getBytes(StandardCharsets.UTF_8).length;
+        int delta = PrescriptionCodec.encodedSize(PrescriptionDelta.of(history, prescription));
+        System.out.println("\nPayload with " + lines + " lines and " + annotations + " annotations: whole " + full
+                + " B, changes " + delta + " B");
+    }
+
+    // The changes are applied once per call, the registered history is rebuilt so it doesn't grow without end
+    @Setup(Level.Iteration)
+    public void setUpRegisteredHistory() throws Exception {
+        registeredHistory = new MedicalHistory(cip, 777);
+        for (int i = 0; i < annotations; i++) registeredHistory.addMedicalHistoryAnnotations(history.getAnnotations().get(i));
+        registeredHistory.markSynchronized(1);
+    }
+
+    @Benchmark
+    public MedicalPrescription sendWhole() throws Exception {
+        byte[] prescriptionBytes = PrescriptionCodec.encode(prescription);
+        byte[] historyBytes = history.getHistory().getBytes(StandardCharsets.UTF_8);
+        // At the HNS
+        MedicalHistory received = new MedicalHistory(cip, 777);
+        received.addMedicalHistoryAnnotations(new String(historyBytes, StandardCharsets.UTF_8));
+        return PrescriptionCodec.decode(prescriptionBytes);
+    }
+
+    @Benchmark
+    public MedicalPrescription sendChanges() throws Exception {
+        byte[] bytes = PrescriptionCodec.encode(PrescriptionDelta.of(history, prescription));
+        // At the HNS, the versions are not moved so the same changes apply again on the next call
+        PrescriptionCodec.decodeDelta(bytes).applyTo(registeredHistory, registeredPrescription);
+        return registeredPrescription;
+    }
+}
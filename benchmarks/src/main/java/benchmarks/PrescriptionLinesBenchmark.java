@@ -0,0 +1,149 @@
+package benchmarks;
+
+import data.HealthCardID;
+import data.ProductID;
+import medicalconsultation.MedicalPrescription;
+import medicalconsultation.MedicalPrescriptionLine;
+import medicalconsultation.TakingGuideline;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The line table of MedicalPrescription against the HashMap plus copying getLines() it replaced,
+ * on small prescriptions and on hospital-formulary ones with hundreds of lines.
+ * The edition builds a prescription, changes doses, removes a third of the lines and reads them back
+ * after every change, as the terminal does when it shows the prescription.
+ * addLines, modifyDoses and removeAndAddLines measure each operation of MedicalPrescription on its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrescriptionLinesBenchmark {
+    private static final String[] INSTRUCTIONS = {"BEFORELUNCH", "15", "1", "1", "DAY", "Tomar con abundante agua"};
+
+    @Param({"10", "500"})
+    int lines;
+
+    HealthCardID cip;
+    ProductID[] products;
+    MedicalPrescription prescription;
+    LegacyLines legacy;
+
+    @Setup
+    public void setUp() throws Exception {
+        cip = new HealthCardID("1234567890123456");
+        products = new ProductID[lines];
+        for (int i = 0; i < lines; i++) products[i] = ProductID.of(243516578917L + 7919L * i);
+        prescription = new MedicalPrescription(cip, 777, "illness");
+        legacy = new LegacyLines();
+        for (ProductID product : products) {
+            prescription.addLine(product, INSTRUCTIONS);
+            legacy.addLine(product, INSTRUCTIONS);
+        }
+    }
+
+    @Benchmark
+    public void edit(Blackhole bh) throws Exception {
+        MedicalPrescription p = new MedicalPrescription(cip, 777, "illness");
+        for (ProductID product : products) p.addLine(product, INSTRUCTIONS);
+        for (ProductID product : products) {
+            p.modifyDoseInLine(product, 2);
+            bh.consume(p.getLines().size());
+        }
+        for (int i = 0; i < products.length; i += 3) {
+            p.removeLine(products[i]);
+            bh.consume(p.getLines().size());
+        }
+        for (MedicalPrescriptionLine line : p.getLines()) bh.consume(line);
+    }
+
+    @Benchmark
+    public void editLegacy(Blackhole bh) throws Exception {
+        LegacyLines p = new LegacyLines();
+        for (ProductID product : products) p.addLine(product, INSTRUCTIONS);
+        for (ProductID product : products) {
+            p.modifyDoseInLine(product, 2);
+            bh.consume(p.getLines().size());
+        }
+        for (int i = 0; i < products.length; i += 3) {
+            p.removeLine(products[i]);
+            bh.consume(p.getLines().size());
+        }
+        for (MedicalPrescriptionLine line : p.getLines()) bh.consume(line);
+    }
+
+    @Benchmark
+    public MedicalPrescription addLines() throws Exception {
+        MedicalPrescription p = new MedicalPrescription(cip, 777, "illness");
+        for (ProductID product : products) p.addLine(product, INSTRUCTIONS);
+        return p;
+    }
+
+    @Benchmark
+    public MedicalPrescription modifyDoses() throws Exception {
+        for (ProductID product : products) prescription.modifyDoseInLine(product, 2);
+        return prescription;
+    }
+
+    // Every line is removed and added back, so the prescription is the same for the next call
+    @Benchmark
+    public MedicalPrescription removeAndAddLines() throws Exception {
+        for (ProductID product : products) {
+            prescription.removeLine(product);
+            prescription.addLine(product, INSTRUCTIONS);
+        }
+        return prescription;
+    }
+
+    @Benchmark
+    public float iterate() {
+        float total = 0;
+        for (MedicalPrescriptionLine line : prescription.getLines())
+            total += line.getTakingGuideline().getPosology().getDose();
+        return total;
+    }
+
+    @Benchmark
+    public float iterateLegacy() {
+        float total = 0;
+        for (MedicalPrescriptionLine line : legacy.getLines())
+            total += line.getTakingGuideline().getPosology().getDose();
+        return total;
+    }
+
+    // The storage of the lines before the line table, with the parsing of MedicalPrescription
+    static final class LegacyLines {
+        private final Map<ProductID, MedicalPrescriptionLine> lines = new HashMap<>();
+
+        void addLine(ProductID prodID, String[] instruc) throws Exception {
+            if (lines.containsKey(prodID)) throw new IllegalStateException("Product already on the prescription lines");
+            TakingGuideline guideline = new TakingGuideline(medicalconsultation.dayMoment.valueOf(instruc[0]),
+                    Float.parseFloat(instruc[1]), Float.parseFloat(instruc[2]), Float.parseFloat(instruc[3]),
+                    medicalconsultation.FqUnit.valueOf(instruc[4]), instruc[5]);
+            lines.put(prodID, new MedicalPrescriptionLine(prodID, guideline));
+        }
+
+        void modifyDoseInLine(ProductID prodID, float newDose) throws Exception {
+            MedicalPrescriptionLine line = lines.get(prodID);
+            if (line == null) throw new IllegalStateException("Product not in taking guide line");
+            line.getTakingGuideline().getPosology().setDose(newDose);
+        }
+
+        void removeLine(ProductID prodID) {
+            if (lines.remove(prodID) == null) throw new IllegalStateException("Product not in taking guide line");
+        }
+
+        List<MedicalPrescriptionLine> getLines() {
+            return new ArrayList<>(lines.values());
+        }
+    }
+}
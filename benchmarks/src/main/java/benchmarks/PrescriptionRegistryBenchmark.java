@@ -0,0 +1,91 @@
+package benchmarks;
+
+import data.HealthCardID;
+import data.ProductID;
+import data.ePrescripCode;
+import medicalconsultation.MedicalPrescription;
+import medicalconsultation.MedicalPrescriptionLine;
+import org.openjdk.jmh.annotations.*;
+import services.PrescriptionCodeGenerator;
+import services.PrescriptionRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The pharmacies against the {@link PrescriptionRegistry}: 95% lookups by code and 5% dispensations, to run with
+ * more threads every time (-t 1, -t 4, -t 16...). The map under a read-write lock is what a registry guarded by a
+ * single lock would cost: every lookup writes the lock word, so the readers fight for its cache line.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrescriptionRegistryBenchmark {
+    private static final String[] INSTRUCTIONS = {"BEFORELUNCH", "15", "1", "1", "DAY", "Tomar con abundante agua"};
+    private static final int DISPENSE_PERCENT = 5;
+
+    @Param({"100000"})
+    int prescriptions;
+
+    PrescriptionRegistry registry;
+    Map<ePrescripCode, MedicalPrescription> lockedMap;
+    ReentrantReadWriteLock lock;
+    ePrescripCode[] codes;
+    ProductID product;
+
+    @Setup
+    public void setUp() throws Exception {
+        registry = new PrescriptionRegistry(prescriptions);
+        lockedMap = new HashMap<>(prescriptions * 2);
+        lock = new ReentrantReadWriteLock();
+        codes = new ePrescripCode[prescriptions];
+        product = ProductID.of(243516578917L);
+        PrescriptionCodeGenerator generator = PrescriptionCodeGenerator.shared();
+        for (int i = 0; i < prescriptions; i++) {
+            MedicalPrescription prescription = new MedicalPrescription(
+                    HealthCardID.parse(String.format("BBB%013d", 1000003L * i)), 777, "Hipertensión arterial");
+            prescription.addLine(product, INSTRUCTIONS);
+            prescription.addLine(ProductID.of(243516578917L + 7919L), INSTRUCTIONS);
+            prescription.getLine(product).setQuantity(Integer.MAX_VALUE); // never runs out
+            prescription.setPrescCode(generator.next());
+            codes[i] = prescription.getPrescCode();
+            registry.register(prescription);
+            lockedMap.put(codes[i], registry.lookup(codes[i]));
+        }
+    }
+
+    @Benchmark
+    public int registry() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ePrescripCode code = codes[random.nextInt(codes.length)];
+        if (random.nextInt(100) < DISPENSE_PERCENT) return registry.dispense(code, product, 1);
+        return registry.getRemaining(code, product);
+    }
+
+    @Benchmark
+    public int readWriteLock() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ePrescripCode code = codes[random.nextInt(codes.length)];
+        if (random.nextInt(100) < DISPENSE_PERCENT) {
+            lock.writeLock().lock();
+            try {
+                MedicalPrescriptionLine line = lockedMap.get(code).getLine(product);
+                return line.dispense(1);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        lock.readLock().lock();
+        try {
+            return lockedMap.get(code).getLine(product).getRemaining();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import data.HealthCardID;
+import medicalconsultation.ConsultationTerminal;
+import org.openjdk.jmh.annotations.*;
+import services.DecisionMakingAIMock;
+import services.NoOpTerminalView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The start of a consultation up to the AI answer, with an AI that takes some time to answer and a doctor
+ * that takes some time to write the assessment. With speculation the AI is warmed up and asked while the
+ * doctor writes, without it both calls are waited for after the assessment.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SpeculativeAIBenchmark {
+
+    @Param({"20"})
+    long aiLatencyMillis;
+
+    @Param({"50"})
+    long assessmentMillis;
+
+    @Param({"off", "on"})
+    String speculation;
+
+    ConsultationTerminal terminal;
+    ExecutorService executor;
+    HealthCardID cip;
+
+    @Setup
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        terminal = new ConsultationTerminal();
+        terminal.setHealthNationalService(new LocalHealthNationalService());
+        terminal.setAi(new LatencyDecisionMakingAI(new DecisionMakingAIMock(), aiLatencyMillis, TimeUnit.MILLISECONDS));
+        terminal.setTerminalView(NoOpTerminalView.INSTANCE);
+        if (speculation.equals("on")) terminal.setSpeculativeExecutor(executor);
+        cip = new HealthCardID("1234567890123456");
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public String untilAIAnswer() throws Exception {
+        terminal.initRevision(cip, "illness");
+        Thread.sleep(assessmentMillis); // The doctor writes the assessment
+        terminal.enterMedicalAssessmentInHistory("assessment");
+        terminal.initMedicalPrescriptionEdition();
+        terminal.callDecisionMakingAI();
+        // The doctor takes the prompt offered
+        terminal.askAIForSuggest("illness: illness; lines:");
+        return terminal.getSpeculativePrompt();
+    }
+}
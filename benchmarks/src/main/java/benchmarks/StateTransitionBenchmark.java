@@ -0,0 +1,58 @@
+package benchmarks;
+
+import exceptions.ProceduralException;
+import medicalconsultation.States;
+import medicalconsultation.WorkflowStep;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Legal and illegal transitions through the {@link WorkflowStep} table, against the
+ * hand-written checks the terminal used before, which build a new exception on every rejection.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateTransitionBenchmark {
+    States medicineEntered = States.MEDICINE_ENTERED;
+    States revisionStarted = States.REVISION_STARTED;
+
+    @Benchmark
+    public States tableLegal() throws ProceduralException {
+        return WorkflowStep.MODIFY_DOSE.check(medicineEntered);
+    }
+
+    @Benchmark
+    public Object tableIllegal() {
+        try {
+            return WorkflowStep.MODIFY_DOSE.check(revisionStarted);
+        } catch (ProceduralException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public States ifChainLegal() throws ProceduralException {
+        return ifChainModifyDose(medicineEntered);
+    }
+
+    @Benchmark
+    public Object ifChainIllegal() {
+        try {
+            return ifChainModifyDose(revisionStarted);
+        } catch (ProceduralException e) {
+            return e;
+        }
+    }
+
+    // The check as it was written in ConsultationTerminal
+    private static States ifChainModifyDose(States currentState) throws ProceduralException {
+        if (currentState != States.MEDICINE_ENTERED)
+            throw new ProceduralException("There was not entered the Medicine with Guidelines");
+        return States.DOSE_MODIFIED;
+    }
+}
@@ -0,0 +1,110 @@
+package benchmarks;
+
+import data.ActionType;
+import data.ProductID;
+import data.Suggestion;
+import data.SuggestionParser;
+import medicalconsultation.FqUnit;
+import medicalconsultation.dayMoment;
+import org.openjdk.jmh.annotations.*;
+import services.DecisionMakingAIMock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single pass {@link SuggestionParser} against the replace/split/trim parser that
+ * DecisionMakingAIMock used before, on AI answers with many suggestions.
+ * The old parser only reads one suggestion per call, so it is given the suggestions already split.
+ * mockParseSuggest is the parseSuggest the terminal calls, on top of the single pass parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SuggestionParserBenchmark {
+    private static final String[] RECORDS = {
+            "<I, 243516578917, BEFORELUNCH, 15, 1, 1, DAY, Tomar con abundante agua>",
+            "<R, 640557143200>",
+            "<M, 243516578917, , , 3, , , >"
+    };
+
+    @Param({"1", "100"})
+    int suggestions;
+
+    String answer;
+    String[] splitAnswer;
+    DecisionMakingAIMock ai = new DecisionMakingAIMock();
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder();
+        splitAnswer = new String[suggestions];
+        for (int i = 0; i < suggestions; i++) {
+            splitAnswer[i] = RECORDS[i % RECORDS.length];
+            sb.append(splitAnswer[i]).append('\n');
+        }
+        answer = sb.toString();
+    }
+
+    @Benchmark
+    public List<Suggestion> singlePass() throws Exception {
+        return SuggestionParser.parseAll(answer);
+    }
+
+    @Benchmark
+    public List<Suggestion> mockParseSuggest() {
+        return ai.parseSuggest(answer);
+    }
+
+    @Benchmark
+    public List<Suggestion> replaceSplitTrim() {
+        List<Suggestion> list = new ArrayList<>();
+        for (String record : splitAnswer)
+            list.addAll(legacyParseSuggest(record));
+        return list;
+    }
+
+    // DecisionMakingAIMock.parseSuggest as it was written
+    static List<Suggestion> legacyParseSuggest(String aiAnswer) {
+        List<Suggestion> list = new ArrayList<>();
+        if (aiAnswer == null || aiAnswer.isEmpty()) return list;
+
+        String clean = aiAnswer.replace("<", "").replace(">", "");
+        String[] data = clean.split(",");
+        for (int i = 0; i < data.length; i++) {
+            data[i] = data[i].trim();
+        }
+
+        ActionType action = switch (data[0]) {
+            case "I" -> ActionType.ADD;
+            case "R" -> ActionType.DELETE;
+            case "M" -> ActionType.MODIFY;
+            default -> null;
+        };
+
+        try {
+            ProductID id = new ProductID(data[1]);
+            dayMoment mom = null;
+            Double dur = null, dose = null, freq = null;
+            FqUnit unit = null;
+            String instr = null;
+
+            if (action != ActionType.DELETE) {
+                if (!data[2].isEmpty()) mom = dayMoment.valueOf(data[2]);
+                if (!data[3].isEmpty()) dur = Double.valueOf(data[3]);
+                if (!data[4].isEmpty()) dose = Double.valueOf(data[4]);
+                if (!data[5].isEmpty()) freq = Double.valueOf(data[5]);
+                if (!data[6].isEmpty()) unit = FqUnit.valueOf(data[6]);
+                if (data.length > 7) instr = data[7];
+            }
+            list.add(new Suggestion(action, id, mom, dur, dose, freq, unit, instr));
+        } catch (Exception e) {
+            return new ArrayList<>();
+        }
+        return list;
+    }
+}
@@ -0,0 +1,101 @@
+package benchmarks;
+
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import medicalconsultation.ConsultationEngine;
+import medicalconsultation.ConsultationSession;
+import medicalconsultation.MedicalPrescription;
+import org.openjdk.jmh.annotations.*;
+import services.AsyncTerminalView;
+import services.ConsoleTerminalView;
+import services.DecisionMakingAIMock;
+import services.NoOpTerminalView;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of whole consultations on 4 sessions at once with the screens written to a console,
+ * handed to the async renderer (in front of the same console) or discarded.
+ * The console is a PrintStream that throws the bytes away, so what is measured is building the screens
+ * and the lock of the stream, not the speed of a real terminal.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TerminalViewBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Engine {
+        @Param({"console", "async", "noop"})
+        String view;
+
+        ConsultationEngine engine;
+        DigitalSignature signature;
+        AsyncTerminalView asyncView;
+
+        @Setup
+        public void setUp() throws Exception {
+            engine = new ConsultationEngine(new LocalHealthNationalService(), new DecisionMakingAIMock());
+            ConsoleTerminalView console = new ConsoleTerminalView(new PrintStream(OutputStream.nullOutputStream()));
+            switch (view) {
+                case "console" -> engine.setTerminalView(console);
+                case "async" -> engine.setTerminalView(asyncView = new AsyncTerminalView(console, 1 << 16));
+                default -> engine.setTerminalView(NoOpTerminalView.INSTANCE);
+            }
+            signature = new DigitalSignature(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 'A', 'B', 'C', 'D', 'E', 'G', 'H', 'J'});
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            if (asyncView != null) {
+                asyncView.close();
+                System.out.println("\nDropped screens: " + asyncView.getDroppedScreens());
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Doctor {
+        ConsultationSession session;
+        HealthCardID cip;
+        ProductID productID;
+        String[] instructions;
+        Date endDate;
+
+        @Setup
+        public void setUp(Engine engine) throws Exception {
+            session = engine.engine.openSession(engine.signature);
+            cip = new HealthCardID("1234567890123456");
+            productID = new ProductID("123456789012");
+            instructions = new String[]{"DURINGBREAKFAST", "3", "10", "2", "DAY", "instruction"};
+            endDate = new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(30));
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public MedicalPrescription workflow(Doctor doctor) throws Exception {
+        ConsultationSession session = doctor.session;
+        session.initRevision(doctor.cip, "illness");
+        session.enterMedicalAssessmentInHistory("assessment");
+        session.initMedicalPrescriptionEdition();
+        session.callDecisionMakingAI();
+        session.askAIForSuggest("prompt");
+        session.extractGuidelinesFromSugg();
+        session.enterMedicineWithGuidelines(doctor.productID, doctor.instructions);
+        session.modifyDoseInLine(doctor.productID, 2);
+        session.removeLine(doctor.productID);
+        session.enterTreatmentEndingDate(doctor.endDate);
+        session.finishMedicalPrescriptionEdition();
+        session.stampeeSignature();
+        session.sendHistoryAndPrescription();
+        session.printMedicalPrescrip();
+        return session.getMedicalPrescription();
+    }
+}
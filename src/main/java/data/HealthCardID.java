@@ -2,12 +2,38 @@ package data;
 
 import exceptions.HealthCardIDException;
 
+import java.util.Arrays;
+
 /**
  * The personal identifying code in the National Health Service.
+ * Its 16 letters and digits are kept packed in two longs, 6 bits each.
  */
 final public class HealthCardID {
 
-    private final String personalID;
+    public static final int LENGTH = 16;
+    private static final int CHARS_PER_LONG = 8;
+    private static final int BITS_PER_CHAR = 6;
+
+    // '0'-'9' are 0-9, 'A'-'Z' 10-35 and 'a'-'z' 36-61, any other char is invalid
+    private static final byte[] VALUES = new byte[128];
+    private static final char[] CHARS = new char[62];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        int value = 0;
+        for (char c = '0'; c <= '9'; c++) CHARS[value++] = c;
+        for (char c = 'A'; c <= 'Z'; c++) CHARS[value++] = c;
+        for (char c = 'a'; c <= 'z'; c++) CHARS[value++] = c;
+        for (int i = 0; i < CHARS.length; i++) VALUES[CHARS[i]] = (byte) i;
+    }
+
+    // Interning pool, a lossy table of recently parsed codes. Its races are harmless: a HealthCardID is immutable
+    private static final int POOL_SIZE = 4096;
+    private static final HealthCardID[] POOL = new HealthCardID[POOL_SIZE];
+
+    private final long high; // the first 8 chars
+    private final long low; // the last 8 chars
+    private String personalID; // the code, built when asked
 
     /**
      * Constructor of the class
@@ -16,21 +42,119 @@ final public class HealthCardID {
      * @throws HealthCardIDException if the code is null or the code has invalid format
      */
     public HealthCardID(String code) throws HealthCardIDException {
+        validate(code);
+        this.high = pack(code, 0);
+        this.low = pack(code, CHARS_PER_LONG);
+        this.personalID = code;
+    }
+
+    private HealthCardID(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Validates the code without building any String
+     *
+     * @param code the Identification Code
+     * @return the health card id
+     * @throws HealthCardIDException if the code is null or the code has invalid format
+     */
+    public static HealthCardID parse(CharSequence code) throws HealthCardIDException {
+        validate(code);
+        return new HealthCardID(pack(code, 0), pack(code, CHARS_PER_LONG));
+    }
+
+    /**
+     * Like {@link #parse}, but gives the same instance for a code parsed recently, without allocating it again
+     *
+     * @param code the Identification Code
+     * @return the health card id
+     * @throws HealthCardIDException if the code is null or the code has invalid format
+     */
+    public static HealthCardID intern(CharSequence code) throws HealthCardIDException {
+        validate(code);
+        long high = pack(code, 0);
+        long low = pack(code, CHARS_PER_LONG);
+        int slot = hash(high, low) & (POOL_SIZE - 1);
+        HealthCardID pooled = POOL[slot];
+        if (pooled != null && pooled.high == high && pooled.low == low) return pooled;
+        HealthCardID created = new HealthCardID(high, low);
+        POOL[slot] = created;
+        return created;
+    }
+
+    private static void validate(CharSequence code) throws HealthCardIDException {
         if (code == null)
             throw new HealthCardIDException("HealthCardID code can't be null");
 
-        if (code.length() != 16)
+        if (code.length() != LENGTH)
             throw new HealthCardIDException("HealthCardID must be 16 characters long");
 
-        for (char c : code.toCharArray())
-            if (!Character.isLetter(c) && !Character.isDigit(c))
+        for (int i = 0; i < LENGTH; i++) {
+            char c = code.charAt(i);
+            if (c >= VALUES.length || VALUES[c] < 0)
                 throw new HealthCardIDException("HealthCardID contains invalid characters");
+        }
+    }
 
-        this.personalID = code;
+    private static long pack(CharSequence code, int from) {
+        long packed = 0;
+        for (int i = from; i < from + CHARS_PER_LONG; i++)
+            packed = packed << BITS_PER_CHAR | VALUES[code.charAt(i)];
+        return packed;
+    }
+
+    private static int hash(long high, long low) {
+        long h = (high * 0x9E3779B97F4A7C15L) ^ low;
+        h *= 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return a 64-bit hash of the code, for the structures that need more bits than hashCode, like a Bloom filter
+     */
+    public long longHash() {
+        long h = high * 0x9E3779B97F4A7C15L + low;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * @return the packed code as 32 hexadecimal digits, which unlike the code itself doesn't depend on the case,
+     * to name files on case-insensitive file systems
+     */
+    public String toHexString() {
+        char[] chars = new char[4 * CHARS_PER_LONG];
+        hex(high, chars, 0);
+        hex(low, chars, 2 * CHARS_PER_LONG);
+        return new String(chars);
+    }
+
+    private static void hex(long packed, char[] chars, int from) {
+        for (int i = from + 2 * CHARS_PER_LONG - 1; i >= from; i--) {
+            chars[i] = Character.forDigit((int) (packed & 0xF), 16);
+            packed >>>= 4;
+        }
     }
 
     public String getPersonalID() {
-        return personalID;
+        String code = personalID;
+        if (code == null) {
+            char[] chars = new char[LENGTH];
+            unpack(high, chars, 0);
+            unpack(low, chars, CHARS_PER_LONG);
+            personalID = code = new String(chars);
+        }
+        return code;
+    }
+
+    private static void unpack(long packed, char[] chars, int from) {
+        for (int i = from + CHARS_PER_LONG - 1; i >= from; i--) {
+            chars[i] = CHARS[(int) (packed & 0x3F)];
+            packed >>>= BITS_PER_CHAR;
+        }
     }
 
     @Override
@@ -38,16 +162,16 @@ final public class HealthCardID {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         HealthCardID hcardID = (HealthCardID) o;
-        return personalID.equals(hcardID.personalID);
+        return high == hcardID.high && low == hcardID.low;
     }
 
     @Override
     public int hashCode() {
-        return personalID.hashCode();
+        return hash(high, low);
     }
 
     @Override
     public String toString() {
-        return "HealthCardID{" + "personal code='" + personalID + '\'' + '}';
+        return "HealthCardID{" + "personal code='" + getPersonalID() + '\'' + '}';
     }
 }
@@ -2,9 +2,20 @@ package data;
 
 import exceptions.ProductIDException;
 
+/**
+ * The 12 digits code of a product, kept as a number.
+ */
 public class ProductID {
 
-    private final String productID;
+    public static final int LENGTH = 12;
+    private static final long LIMIT = 1_000_000_000_000L; // 10^12, the first number with 13 digits
+
+    // Interning pool, a lossy table of recently parsed codes. Its races are harmless: a ProductID is immutable
+    private static final int POOL_SIZE = 4096;
+    private static final ProductID[] POOL = new ProductID[POOL_SIZE];
+
+    private final long productID;
+    private String code; // the digits, built when asked
 
     /**
      * Constructor of the class
@@ -13,20 +24,92 @@ public class ProductID {
      * @throws ProductIDException if the code is null or the code has invalid format
      */
     public ProductID(String code) throws ProductIDException {
+        this.productID = pack(code);
+        this.code = code;
+    }
+
+    private ProductID(long productID) {
+        this.productID = productID;
+    }
+
+    /**
+     * Validates the code without building any String
+     *
+     * @param code the Identification Code
+     * @return the product
+     * @throws ProductIDException if the code is null or the code has invalid format
+     */
+    public static ProductID parse(CharSequence code) throws ProductIDException {
+        return new ProductID(pack(code));
+    }
+
+    /**
+     * @param code the Identification Code as a number
+     * @return the product
+     * @throws ProductIDException if the code has more than 12 digits or is negative
+     */
+    public static ProductID of(long code) throws ProductIDException {
+        if (code < 0 || code >= LIMIT) throw new ProductIDException("ProductID must be 12 characters long");
+        return new ProductID(code);
+    }
+
+    /**
+     * Like {@link #parse}, but gives the same instance for a code parsed recently, without allocating it again
+     *
+     * @param code the Identification Code
+     * @return the product
+     * @throws ProductIDException if the code is null or the code has invalid format
+     */
+    public static ProductID intern(CharSequence code) throws ProductIDException {
+        long packed = pack(code);
+        int slot = (int) mix(packed) & (POOL_SIZE - 1);
+        ProductID pooled = POOL[slot];
+        if (pooled != null && pooled.productID == packed) return pooled;
+        ProductID created = new ProductID(packed);
+        POOL[slot] = created;
+        return created;
+    }
+
+    private static long pack(CharSequence code) throws ProductIDException {
         if (code == null)
             throw new ProductIDException("ProductID code can't be null");
 
-        if (code.length() != 12)
+        if (code.length() != LENGTH)
             throw new ProductIDException("ProductID must be 12 characters long");
 
-        for (char c : code.toCharArray())
-            if (!Character.isDigit(c))
+        long packed = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9')
                 throw new ProductIDException("ProductID contains invalid characters");
+            packed = packed * 10 + (c - '0');
+        }
+        return packed;
+    }
 
-        this.productID = code;
+    private static long mix(long value) {
+        value *= 0x9E3779B97F4A7C15L;
+        return value ^ (value >>> 32);
     }
 
     public String getProductID() {
+        String digits = code;
+        if (digits == null) {
+            char[] chars = new char[LENGTH];
+            long value = productID;
+            for (int i = LENGTH - 1; i >= 0; i--) {
+                chars[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+            code = digits = new String(chars);
+        }
+        return digits;
+    }
+
+    /**
+     * @return the code as a number, below 10^12
+     */
+    public long toLong() {
         return productID;
     }
 
@@ -35,16 +118,16 @@ public class ProductID {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ProductID prdID = (ProductID) o;
-        return productID.equals(prdID.productID);
+        return productID == prdID.productID;
     }
 
     @Override
     public int hashCode() {
-        return productID.hashCode();
+        return (int) mix(productID);
     }
 
     @Override
     public String toString() {
-        return "ProductID{" + "product code='" + productID + '\'' + '}';
+        return "ProductID{" + "product code='" + getProductID() + '\'' + '}';
     }
 }
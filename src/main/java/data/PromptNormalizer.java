@@ -0,0 +1,41 @@
+package data;
+
+import java.util.Locale;
+
+/**
+ * The normal form of the prompts for the decision making AI, so two prompts that only differ in whitespace
+ * or case are taken as the same one: trimmed, with every run of whitespace as a single space and in lower case.
+ */
+public final class PromptNormalizer {
+
+    private PromptNormalizer() {
+    }
+
+    /**
+     * @param prompt the prompt
+     * @return the prompt trimmed, with single spaces between the words and in lower case
+     */
+    public static String normalize(String prompt) {
+        if (prompt == null) throw new IllegalArgumentException("Prompt can't be null");
+        StringBuilder sb = new StringBuilder(prompt.length());
+        boolean space = false;
+        for (int i = 0; i < prompt.length(); i++) {
+            char c = prompt.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+            } else {
+                if (space) sb.append(' ');
+                sb.append(c);
+                space = false;
+            }
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return whether the prompts have the same normal form
+     */
+    public static boolean same(String prompt, String other) {
+        return normalize(prompt).equals(normalize(other));
+    }
+}
@@ -0,0 +1,297 @@
+package data;
+
+import exceptions.ProductIDException;
+import exceptions.SuggestionException;
+import medicalconsultation.FqUnit;
+import medicalconsultation.dayMoment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Single pass, incremental parser of the answers of the decision making AI.
+ * An answer holds one or more suggestions with the format
+ * {@code <action, productID, dayMoment, duration, dose, frequency, fqUnit, instructions>},
+ * where the action is I (add), R (remove) or M (modify) and the empty fields are allowed.
+ * The answer can be fed in chunks as it arrives, every suggestion is handed over once its '>' is read.
+ * The fields are read in place, only a suggestion split between chunks is copied to a buffer.
+ */
+public final class SuggestionParser {
+
+    private static final EnumLookup<dayMoment> DAY_MOMENTS = new EnumLookup<>(dayMoment.values());
+    private static final EnumLookup<FqUnit> FQ_UNITS = new EnumLookup<>(FqUnit.values());
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private final Consumer<Suggestion> consumer;
+    private final StringBuilder pending = new StringBuilder(); // the part read of a split suggestion
+    private final StringBuilder unbracketed = new StringBuilder(); // the answer while no '<' is found
+    private boolean inSuggestion = false;
+    private boolean bracketFound = false;
+
+    /**
+     * Constructor of the class
+     *
+     * @param consumer the consumer of the suggestions
+     */
+    public SuggestionParser(Consumer<Suggestion> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * @param answer the AI answer
+     * @return the suggestions of the answer, in order
+     * @throws SuggestionException if a suggestion has an invalid format
+     */
+    public static List<Suggestion> parseAll(CharSequence answer) throws SuggestionException {
+        List<Suggestion> suggestions = new ArrayList<>();
+        parse(answer, suggestions::add);
+        return suggestions;
+    }
+
+    /**
+     * Parses a whole answer, handing every suggestion to the consumer as soon as it is read
+     *
+     * @param answer   the AI answer
+     * @param consumer the consumer of the suggestions
+     * @throws SuggestionException if a suggestion has an invalid format
+     */
+    public static void parse(CharSequence answer, Consumer<Suggestion> consumer) throws SuggestionException {
+        if (answer == null) return;
+        SuggestionParser parser = new SuggestionParser(consumer);
+        parser.feed(answer);
+        parser.finish();
+    }
+
+    /**
+     * Reads the next piece of the answer
+     *
+     * @param chunk the chunk
+     * @throws SuggestionException if a suggestion completed in this chunk has an invalid format
+     */
+    public void feed(CharSequence chunk) throws SuggestionException {
+        int i = 0;
+        int length = chunk.length();
+        while (i < length) {
+            if (!inSuggestion) {
+                int open = indexOf(chunk, '<', i, length);
+                if (open < 0) {
+                    if (!bracketFound) unbracketed.append(chunk, i, length);
+                    return;
+                }
+                bracketFound = true;
+                unbracketed.setLength(0);
+                inSuggestion = true;
+                i = open + 1;
+            } else {
+                int close = indexOf(chunk, '>', i, length);
+                if (close < 0) {
+                    pending.append(chunk, i, length);
+                    return;
+                }
+                inSuggestion = false;
+                if (pending.length() == 0) {
+                    consumer.accept(parseRecord(chunk, i, close));
+                } else {
+                    pending.append(chunk, i, close);
+                    Suggestion suggestion = parseRecord(pending, 0, pending.length());
+                    pending.setLength(0);
+                    consumer.accept(suggestion);
+                }
+                i = close + 1;
+            }
+        }
+    }
+
+    /**
+     * Ends the answer
+     *
+     * @throws SuggestionException if the last suggestion was not closed
+     */
+    public void finish() throws SuggestionException {
+        if (inSuggestion) throw new SuggestionException("Suggestion not closed");
+        // An answer without brackets is taken as a single suggestion
+        if (!bracketFound && !isBlank(unbracketed, 0, unbracketed.length())) {
+            Suggestion suggestion = parseRecord(unbracketed, 0, unbracketed.length());
+            unbracketed.setLength(0);
+            consumer.accept(suggestion);
+        }
+    }
+
+    /**
+     * Parses the fields of one suggestion, between its brackets
+     *
+     * @param s    the text holding the suggestion
+     * @param from the first character after the '<'
+     * @param to   the position of the '>'
+     * @return the suggestion
+     * @throws SuggestionException if the suggestion has an invalid format
+     */
+    private static Suggestion parseRecord(CharSequence s, int from, int to) throws SuggestionException {
+        // Action
+        int end = fieldEnd(s, from, to);
+        int a = trimStart(s, from, end);
+        ActionType action = parseAction(s, a, trimEnd(s, a, end));
+
+        // Product
+        if (end >= to) throw new SuggestionException("Suggestion without product");
+        int start = end + 1;
+        end = fieldEnd(s, start, to);
+        a = trimStart(s, start, end);
+        ProductID productID;
+        try {
+            productID = new ProductID(s.subSequence(a, trimEnd(s, a, end)).toString());
+        } catch (ProductIDException e) {
+            throw new SuggestionException("Invalid product: " + e.getMessage());
+        }
+
+        dayMoment moment = null;
+        Double duration = null, dose = null, frequency = null;
+        FqUnit unit = null;
+        String instructions = null;
+
+        if (action != ActionType.DELETE) {
+            for (int field = 2; field <= 6 && end < to; field++) {
+                start = end + 1;
+                end = fieldEnd(s, start, to);
+                a = trimStart(s, start, end);
+                int b = trimEnd(s, a, end);
+                if (a == b) continue;
+                switch (field) {
+                    case 2 -> moment = DAY_MOMENTS.find(s, a, b);
+                    case 3 -> duration = parseDouble(s, a, b);
+                    case 4 -> dose = parseDouble(s, a, b);
+                    case 5 -> frequency = parseDouble(s, a, b);
+                    default -> unit = FQ_UNITS.find(s, a, b);
+                }
+            }
+            // The instructions are the rest of the suggestion, they may contain commas
+            if (end < to) {
+                a = trimStart(s, end + 1, to);
+                instructions = s.subSequence(a, trimEnd(s, a, to)).toString();
+            }
+        }
+        return new Suggestion(action, productID, moment, duration, dose, frequency, unit, instructions);
+    }
+
+    private static ActionType parseAction(CharSequence s, int from, int to) throws SuggestionException {
+        if (to - from == 1) {
+            switch (s.charAt(from)) {
+                case 'I':
+                    return ActionType.ADD;
+                case 'R':
+                    return ActionType.DELETE;
+                case 'M':
+                    return ActionType.MODIFY;
+                default:
+                    break;
+            }
+        }
+        throw new SuggestionException("Unknown action: " + s.subSequence(from, to));
+    }
+
+    private static double parseDouble(CharSequence s, int from, int to) throws SuggestionException {
+        int i = from;
+        boolean negative = false;
+        char c = s.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < to; i++) {
+            c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (decimals >= 0) decimals++;
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < to || digits == 0 || digits > 15 || decimals >= POWERS_OF_TEN.length) {
+            // Exponents, very long numbers... are left to the JDK
+            try {
+                return Double.parseDouble(s.subSequence(from, to).toString());
+            } catch (NumberFormatException e) {
+                throw new SuggestionException("Invalid number: " + s.subSequence(from, to));
+            }
+        }
+        double value = (decimals > 0) ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    // Helpers over the characters of the answer
+
+    private static int indexOf(CharSequence s, char c, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (s.charAt(i) == c) return i;
+        return -1;
+    }
+
+    private static int fieldEnd(CharSequence s, int from, int to) {
+        int comma = indexOf(s, ',', from, to);
+        return (comma < 0) ? to : comma;
+    }
+
+    private static int trimStart(CharSequence s, int from, int to) {
+        while (from < to && s.charAt(from) <= ' ') from++;
+        return from;
+    }
+
+    private static int trimEnd(CharSequence s, int from, int to) {
+        while (to > from && s.charAt(to - 1) <= ' ') to--;
+        return to;
+    }
+
+    private static boolean isBlank(CharSequence s, int from, int to) {
+        return trimStart(s, from, to) == to;
+    }
+
+    /**
+     * Finds the constant of an enum by its name without building a String,
+     * the constants are grouped by the length of their name
+     */
+    private static final class EnumLookup<E extends Enum<E>> {
+        private final Object[][] byLength;
+
+        EnumLookup(E[] constants) {
+            int maxLength = 0;
+            for (E constant : constants)
+                maxLength = Math.max(maxLength, constant.name().length());
+            byLength = new Object[maxLength + 1][];
+            for (E constant : constants) {
+                int length = constant.name().length();
+                Object[] bucket = byLength[length];
+                Object[] grown = (bucket == null) ? new Object[1] : Arrays.copyOf(bucket, bucket.length + 1);
+                grown[grown.length - 1] = constant;
+                byLength[length] = grown;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        E find(CharSequence s, int from, int to) throws SuggestionException {
+            int length = to - from;
+            if (length < byLength.length && byLength[length] != null) {
+                for (Object candidate : byLength[length]) {
+                    String name = ((E) candidate).name();
+                    int i = 0;
+                    while (i < length && name.charAt(i) == s.charAt(from + i)) i++;
+                    if (i == length) return (E) candidate;
+                }
+            }
+            throw new SuggestionException("Unknown value: " + s.subSequence(from, to));
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package exceptions;
+
+public class ConsultationSessionException extends Exception {
+    public ConsultationSessionException(String message) {
+        super(message);
+    }
+}
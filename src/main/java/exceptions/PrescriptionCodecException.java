@@ -0,0 +1,7 @@
+package exceptions;
+
+public class PrescriptionCodecException extends Exception {
+    public PrescriptionCodecException(String message) {
+        super(message);
+    }
+}
@@ -4,4 +4,14 @@ public class ProceduralException extends Exception {
     public ProceduralException(String message) {
         super(message);
     }
+
+    /**
+     * Constructor for the shared, preallocated rejections, which don't fill the stack trace
+     *
+     * @param message            the message
+     * @param writableStackTrace whether the stack trace should be filled
+     */
+    public ProceduralException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
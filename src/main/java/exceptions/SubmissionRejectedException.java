@@ -0,0 +1,7 @@
+package exceptions;
+
+public class SubmissionRejectedException extends Exception {
+    public SubmissionRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package exceptions;
+
+/**
+ * The changes sent to the HNS were made over a version of the records that is not the current one
+ */
+public class VersionConflictException extends NotCompletedMedicalPrescription {
+    public VersionConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,188 @@
+package medicalconsultation;
+
+import data.DigitalSignature;
+import exceptions.ConsultationSessionException;
+import metrics.ConsultationMetrics;
+import services.ConsoleTerminalView;
+import services.ConsultationThreads;
+import services.interfaces.AsyncHealthNationalService;
+import services.interfaces.DecisionMakingAI;
+import services.interfaces.HealthNationalService;
+import services.interfaces.TerminalView;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Serves the consultation workflow for many doctors at once.
+ * Every doctor works on its own {@link ConsultationSession}, looked up by session ID.
+ * The services are shared by all the sessions, so they must be safe to call concurrently.
+ */
+public class ConsultationEngine {
+    // Services
+    private final HealthNationalService healthNationalService;
+    private final DecisionMakingAI ai;
+    private volatile AsyncHealthNationalService asyncHealthNationalService;
+    private volatile TerminalView view = new ConsoleTerminalView();
+    private volatile ConsultationMetrics metrics;
+    private volatile Executor consultationExecutor = ConsultationThreads.perConsultation();
+    private volatile Executor speculativeExecutor;
+
+    // Open sessions by ID
+    private final ConcurrentMap<String, ConsultationSession> sessions;
+
+    /**
+     * Constructor of the class
+     *
+     * @param healthNationalService the HNS shared by all the sessions
+     * @param ai                    the decision making AI shared by all the sessions
+     */
+    public ConsultationEngine(HealthNationalService healthNationalService, DecisionMakingAI ai) {
+        this.healthNationalService = healthNationalService;
+        this.ai = ai;
+        this.sessions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Opens a new session with a generated ID
+     *
+     * @param doctorSignature the signature of the doctor that will use the session
+     * @return the new session
+     */
+    public ConsultationSession openSession(DigitalSignature doctorSignature) {
+        String sessionId = UUID.randomUUID().toString();
+        ConsultationSession session = new ConsultationSession(sessionId, healthNationalService, asyncHealthNationalService, ai, view, metrics, speculativeExecutor, doctorSignature);
+        sessions.put(sessionId, session);
+        return session;
+    }
+
+    /**
+     * Opens a new session with the given ID
+     *
+     * @param sessionId       the session ID
+     * @param doctorSignature the signature of the doctor that will use the session
+     * @return the new session
+     * @throws ConsultationSessionException if the ID is null or there is already a session with that ID
+     */
+    public ConsultationSession openSession(String sessionId, DigitalSignature doctorSignature)
+            throws ConsultationSessionException {
+        if (sessionId == null) throw new ConsultationSessionException("Session ID can't be null");
+        ConsultationSession session = new ConsultationSession(sessionId, healthNationalService, asyncHealthNationalService, ai, view, metrics, speculativeExecutor, doctorSignature);
+        if (sessions.putIfAbsent(sessionId, session) != null)
+            throw new ConsultationSessionException("Session " + sessionId + " is already open");
+        return session;
+    }
+
+    /**
+     * Runs a whole consultation on a session of its own, opened for it and closed when it ends.
+     * By default every consultation gets its own thread, virtual if the JVM has them,
+     * so the calls blocked on the HNS or the AI don't hold back the other consultations
+     *
+     * @param doctorSignature the signature of the doctor that runs the consultation
+     * @param task            the consultation
+     * @param <T>             the result of the consultation
+     * @return the result of the task, or its exception
+     */
+    public <T> CompletableFuture<T> submit(DigitalSignature doctorSignature, ConsultationTask<T> task) {
+        if (task == null) throw new IllegalArgumentException("ConsultationTask can't be null");
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            consultationExecutor.execute(() -> {
+                ConsultationSession session = openSession(doctorSignature);
+                // The session is closed before the result is handed over
+                try {
+                    T value = task.run(session);
+                    sessions.remove(session.getSessionId());
+                    result.complete(value);
+                } catch (Throwable e) {
+                    sessions.remove(session.getSessionId());
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * @param sessionId the session ID
+     * @return the open session with that ID
+     * @throws ConsultationSessionException if there is no open session with that ID
+     */
+    public ConsultationSession getSession(String sessionId) throws ConsultationSessionException {
+        ConsultationSession session = (sessionId == null) ? null : sessions.get(sessionId);
+        if (session == null) throw new ConsultationSessionException("There is no open session " + sessionId);
+        return session;
+    }
+
+    /**
+     * Closes a session, the calls still running on it are not interrupted
+     *
+     * @param sessionId the session ID
+     * @throws ConsultationSessionException if there is no open session with that ID
+     */
+    public void closeSession(String sessionId) throws ConsultationSessionException {
+        if (sessionId == null || sessions.remove(sessionId) == null)
+            throw new ConsultationSessionException("There is no open session " + sessionId);
+    }
+
+    /**
+     * Lets the sessions opened from now on fetch the history and the prescription at the same time
+     *
+     * @param asyncHealthNationalService the async HNS, or null to go back to blocking calls
+     */
+    public void setAsyncHealthNationalService(AsyncHealthNationalService asyncHealthNationalService) {
+        this.asyncHealthNationalService = asyncHealthNationalService;
+    }
+
+    /**
+     * Sets where the sessions opened from now on show their screens, the console by default
+     *
+     * @param view the view shared by the sessions, it must be safe to call concurrently
+     */
+    public void setTerminalView(TerminalView view) {
+        if (view == null) throw new IllegalArgumentException("TerminalView can't be null");
+        this.view = view;
+    }
+
+    /**
+     * Times the steps of the sessions opened from now on.
+     * The calls to the services are timed by wrapping them before building the engine,
+     * in an {@link services.InstrumentedHealthNationalService} and an {@link services.InstrumentedDecisionMakingAI}
+     *
+     * @param metrics the metrics shared by the sessions, built by {@link ConsultationTerminal#newMetrics()},
+     *                or null to stop timing them
+     */
+    public void setMetrics(ConsultationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Turns on the speculative mode of the sessions opened from now on,
+     * see {@link ConsultationTerminal#setSpeculativeExecutor(Executor)}
+     *
+     * @param executor where the AI is called in advance, or null to turn the speculative mode off
+     */
+    public void setSpeculativeExecutor(Executor executor) {
+        this.speculativeExecutor = executor;
+    }
+
+    /**
+     * Sets where the consultations given to {@link #submit} are run
+     *
+     * @param executor the executor, it should not queue the consultations behind a few threads
+     */
+    public void setConsultationExecutor(Executor executor) {
+        if (executor == null) throw new IllegalArgumentException("Executor can't be null");
+        this.consultationExecutor = executor;
+    }
+
+    public int getOpenSessions() {
+        return sessions.size();
+    }
+}
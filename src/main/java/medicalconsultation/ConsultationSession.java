@@ -0,0 +1,244 @@
+package medicalconsultation;
+
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import data.Suggestion;
+import exceptions.*;
+import metrics.ConsultationMetrics;
+import services.interfaces.AsyncHealthNationalService;
+import services.interfaces.DecisionMakingAI;
+import services.interfaces.HealthNationalService;
+import services.interfaces.TerminalView;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One doctor's consultation inside a {@link ConsultationEngine}.
+ * Each session owns its own workflow state and its own lock, so calls on different
+ * sessions never contend, while calls on the same session are applied one at a time.
+ */
+public class ConsultationSession {
+    private final String sessionId;
+    private final ConsultationTerminal terminal;
+    private final ReentrantLock lock;
+
+    /**
+     * Constructor, only the engine creates sessions
+     *
+     * @param sessionId             the session identifier
+     * @param healthNationalService the shared HNS
+     * @param asyncHNS              the shared async HNS, or null to start the revisions with blocking calls
+     * @param ai                    the shared decision making AI
+     * @param view                  the shared view where the screens are shown
+     * @param metrics               the shared metrics where the steps are timed, or null
+     * @param speculativeExecutor   the shared executor where the AI is called in advance, or null
+     * @param doctorSignature       the signature of the doctor that owns the session
+     */
+    ConsultationSession(String sessionId, HealthNationalService healthNationalService, AsyncHealthNationalService asyncHNS,
+                        DecisionMakingAI ai, TerminalView view, ConsultationMetrics metrics,
+                        Executor speculativeExecutor, DigitalSignature doctorSignature) {
+        this.sessionId = sessionId;
+        this.terminal = new ConsultationTerminal();
+        this.terminal.setHealthNationalService(healthNationalService);
+        this.terminal.setAsyncHealthNationalService(asyncHNS);
+        this.terminal.setAi(ai);
+        this.terminal.setTerminalView(view);
+        this.terminal.setMetrics(metrics);
+        this.terminal.setSpeculativeExecutor(speculativeExecutor);
+        this.terminal.setDoctorSignature(doctorSignature);
+        this.lock = new ReentrantLock();
+    }
+
+    public void initRevision(HealthCardID cip, String illness)
+            throws HealthCardIDException, AnyCurrentPrescriptionException, ConnectException,
+            IncorrectParametersException, MedicalPrescriptionException {
+        lock.lock();
+        try {
+            terminal.initRevision(cip, illness);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void enterMedicalAssessmentInHistory(String assess) throws ProceduralException {
+        lock.lock();
+        try {
+            terminal.enterMedicalAssessmentInHistory(assess);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void initMedicalPrescriptionEdition() throws ProceduralException {
+        lock.lock();
+        try {
+            terminal.initMedicalPrescriptionEdition();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void callDecisionMakingAI() throws AIException, ProceduralException {
+        lock.lock();
+        try {
+            terminal.callDecisionMakingAI();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void askAIForSuggest(String prompt) throws ProceduralException, BadPromptException {
+        lock.lock();
+        try {
+            terminal.askAIForSuggest(prompt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void extractGuidelinesFromSugg() throws ProceduralException, BadPromptException {
+        lock.lock();
+        try {
+            terminal.extractGuidelinesFromSugg();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void acceptSuggestions(List<Suggestion> accepted)
+            throws ProductAlreadyInPrescriptionException, ProductNotInPrescriptionException,
+            IncorrectTakingGuidelinesException, ProceduralException, MedicalPrescriptionException, PosologyException {
+        lock.lock();
+        try {
+            terminal.acceptSuggestions(accepted);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void enterMedicineWithGuidelines(ProductID prodID, String[] instruc)
+            throws ProductAlreadyInPrescriptionException, IncorrectTakingGuidelinesException, ProceduralException,
+            MedicalPrescriptionException, PosologyException, MedicalPrescriptionLineException {
+        lock.lock();
+        try {
+            terminal.enterMedicineWithGuidelines(prodID, instruc);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void modifyDoseInLine(ProductID prodID, float newDose)
+            throws ProductNotInPrescriptionException, MedicalPrescriptionException, PosologyException, ProceduralException {
+        lock.lock();
+        try {
+            terminal.modifyDoseInLine(prodID, newDose);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void removeLine(ProductID prodID)
+            throws ProductNotInPrescriptionException, MedicalPrescriptionException, ProceduralException {
+        lock.lock();
+        try {
+            terminal.removeLine(prodID);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void enterTreatmentEndingDate(Date date)
+            throws IncorrectEndingDateException, ProceduralException, MedicalPrescriptionException {
+        lock.lock();
+        try {
+            terminal.enterTreatmentEndingDate(date);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void finishMedicalPrescriptionEdition() throws ProceduralException {
+        lock.lock();
+        try {
+            terminal.finishMedicalPrescriptionEdition();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void stampeeSignature() throws eSignatureException, ProceduralException {
+        lock.lock();
+        try {
+            terminal.stampeeSignature();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void sendHistoryAndPrescription()
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, ProceduralException, MedicalPrescriptionException, ePrescripCodeException {
+        lock.lock();
+        try {
+            terminal.sendHistoryAndPrescription();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void printMedicalPrescrip() throws ProceduralException {
+        lock.lock();
+        try {
+            terminal.printMedicalPrescrip();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    // Getters
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public MedicalPrescription getMedicalPrescription() {
+        lock.lock();
+        try {
+            return terminal.getMedicalPrescription();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public MedicalHistory getMedicalHistory() {
+        lock.lock();
+        try {
+            return terminal.getMedicalHistory();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getSpeculativePrompt() {
+        lock.lock();
+        try {
+            return terminal.getSpeculativePrompt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<Suggestion> getSuggestions() {
+        lock.lock();
+        try {
+            return terminal.getSuggestions();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package medicalconsultation;
+
+/**
+ * A whole consultation run on its own session, see {@link ConsultationEngine#submit}
+ *
+ * @param <T> the result of the consultation
+ */
+@FunctionalInterface
+public interface ConsultationTask<T> {
+
+    /**
+     * @param session the session opened for the consultation, closed when the task ends
+     * @return the result of the consultation
+     * @throws Exception any error of the workflow, it fails the consultation
+     */
+    T run(ConsultationSession session) throws Exception;
+}
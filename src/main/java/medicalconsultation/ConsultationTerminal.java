@@ -2,17 +2,35 @@ package medicalconsultation;
 
 import data.*;
 import exceptions.*;
+import metrics.ConsultationMetrics;
+import services.ConsoleTerminalView;
+import services.interfaces.AsyncHealthNationalService;
 import services.interfaces.DecisionMakingAI;
 import services.interfaces.HealthNationalService;
+import services.interfaces.SuggestionListener;
+import services.interfaces.TerminalView;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ConsultationTerminal {
     // Services
     private HealthNationalService healthNationalService;
+    private AsyncHealthNationalService asyncHealthNationalService; // Optional, used to start the revision
     private DecisionMakingAI ai;
+    private TerminalView view = new ConsoleTerminalView(); // Where the screens are shown
+    private ConsultationMetrics metrics; // Optional, the steps are not timed without it
+    private Executor speculativeExecutor; // Optional, warms up and asks the AI in advance after initRevision
 
     // Class members
     private HealthCardID cip;
@@ -20,7 +38,13 @@ public class ConsultationTerminal {
     private MedicalPrescription medicalPrescription;
     private MedicalHistory medicalHistory;
     private List<Suggestion> suggestions;
-    private String lastAIAnswer;
+    private List<Suggestion> answeredSuggestions; // the ones of the last answer of the AI, as it was shown
+    private SuggestionException answerError; // the last answer had an unreadable suggestion
+
+    // Speculation started by the last initRevision
+    private CompletableFuture<Void> aiWarmUp;
+    private String speculativePrompt;
+    private Speculation speculation;
 
     // States
     private States currentState = States.REVISION_NO_STARTED;
@@ -36,7 +60,9 @@ public class ConsultationTerminal {
 
     /**
      * Starts a new visit for attending a chronic patient.
-     * With HNS connection it downloads the medical history and the medical prescription
+     * With HNS connection it downloads the medical history and the medical prescription,
+     * both at the same time if there is an async HNS.
+     * With a speculative executor it then warms up the AI and asks it the speculative prompt in the background
      *
      * @param cip     the HealthcardID cip
      * @param illness the illness
@@ -48,12 +74,37 @@ public class ConsultationTerminal {
     public void initRevision(HealthCardID cip, String illness)
             throws HealthCardIDException, AnyCurrentPrescriptionException, ConnectException,
             IncorrectParametersException, MedicalPrescriptionException {
-        this.cip = cip;
-        this.medicalHistory = healthNationalService.getMedicalHistory(cip);
-        this.medicalPrescription = healthNationalService.getMedicalPrescription(cip, illness);
-        currentState = States.REVISION_STARTED;
-        showHCE();
-        showPrescription();
+        try (StepTimer timer = new StepTimer(WorkflowStep.INIT_REVISION)) {
+            MedicalHistory history;
+            MedicalPrescription prescription;
+            if (asyncHealthNationalService != null) {
+                CompletableFuture<MedicalHistory> pendingHistory = asyncHealthNationalService.getMedicalHistory(cip);
+                CompletableFuture<MedicalPrescription> pendingPrescription =
+                        asyncHealthNationalService.getMedicalPrescription(cip, illness);
+                boolean fetched = false;
+                try {
+                    // The history is awaited first, so the errors are reported in the same order as the synchronous calls
+                    history = awaitHNS(pendingHistory);
+                    prescription = awaitHNS(pendingPrescription);
+                    fetched = true;
+                } finally {
+                    // Nobody waits for the other call once one fails
+                    if (!fetched) pendingPrescription.cancel(true);
+                }
+            } else {
+                history = healthNationalService.getMedicalHistory(cip);
+                prescription = healthNationalService.getMedicalPrescription(cip, illness);
+            }
+            // Only once both arrived, a failed revision keeps the records of the previous one
+            this.cip = cip;
+            this.medicalHistory = history;
+            this.medicalPrescription = prescription;
+            currentState = WorkflowStep.INIT_REVISION.getNext();
+            speculate();
+            showHCE();
+            showPrescription();
+            timer.done();
+        }
     }
 
     /**
@@ -63,10 +114,13 @@ public class ConsultationTerminal {
      * @throws ProceduralException if the prescription has not been loaded
      */
     public void enterMedicalAssessmentInHistory(String assess) throws ProceduralException {
-        if (medicalPrescription == null && currentState != States.REVISION_STARTED) throw new ProceduralException("Medical prescription not initialized");
-        medicalHistory.addMedicalHistoryAnnotations(assess);
-        currentState = States.ASSESSMENT_ENTERED;
-        showHCE();
+        try (StepTimer timer = new StepTimer(WorkflowStep.ENTER_ASSESSMENT)) {
+            States next = WorkflowStep.ENTER_ASSESSMENT.check(currentState);
+            medicalHistory.addMedicalHistoryAnnotations(assess);
+            currentState = next;
+            showHCE();
+            timer.done();
+        }
     }
 
     /**
@@ -75,11 +129,11 @@ public class ConsultationTerminal {
      * @throws ProceduralException if there was not entered the medical assessment in history
      */
     public void initMedicalPrescriptionEdition() throws ProceduralException {
-        if (currentState != States.ASSESSMENT_ENTERED) {
-            throw new ProceduralException("Medical prescription not initialized");
+        try (StepTimer timer = new StepTimer(WorkflowStep.INIT_PRESCRIPTION_EDITION)) {
+            currentState = WorkflowStep.INIT_PRESCRIPTION_EDITION.check(currentState);
+            showPrescriptionEdition();
+            timer.done();
         }
-        currentState = States.PRESCRIPTION_EDITING;
-        showPrescriptionEdition();
     }
 
     /**
@@ -89,24 +143,52 @@ public class ConsultationTerminal {
      * @throws ProceduralException if there was not initiated the medical prescription edition
      */
     public void callDecisionMakingAI() throws AIException, ProceduralException {
-        if (currentState != States.PRESCRIPTION_EDITING)
-            throw new ProceduralException("Not initiated the medical prescription edition");
-        ai.initDecisionMakingAI();
-        currentState = States.AI_CALLED;
-        showIAHello();
+        try (StepTimer timer = new StepTimer(WorkflowStep.CALL_AI)) {
+            States next = WorkflowStep.CALL_AI.check(currentState);
+            if (!awaitWarmUp()) ai.initDecisionMakingAI();
+            currentState = next;
+            showIAHello();
+            timer.done();
+        }
     }
 
     /**
+     * Asks the AI, showing every suggestion as soon as the AI completes it.
+     * If the prompt is the speculative one, apart from whitespace and case, the answer asked in advance is used
+     *
      * @param prompt the prompt
      * @throws ProceduralException if there was not initialized the call decision with ia
      * @throws BadPromptException  if the prompt is not enough clear
      */
     public void askAIForSuggest(String prompt) throws ProceduralException, BadPromptException {
-        if (currentState != States.AI_CALLED)
-            throw new ProceduralException("Not called the decision making ai");
-        lastAIAnswer = ai.getSuggestions(prompt);
-        showIASuggestionsTab();
-        currentState = States.AI_ANSWERED;
+        try (StepTimer timer = new StepTimer(WorkflowStep.ASK_AI)) {
+            States next = WorkflowStep.ASK_AI.check(currentState);
+            List<Suggestion> answered = new ArrayList<>();
+            SuggestionException[] error = new SuggestionException[1];
+            String speculated = takeSpeculativeAnswer(prompt);
+            if (speculated != null) {
+                List<Suggestion> parsed = ai.parseSuggest(speculated);
+                if (parsed != null) answered.addAll(parsed);
+                for (Suggestion suggestion : answered) showIASuggestionsTab(suggestion);
+            } else {
+                ai.streamSuggestions(prompt, new SuggestionListener() {
+                    @Override
+                    public void onSuggestion(Suggestion suggestion) {
+                        answered.add(suggestion);
+                        showIASuggestionsTab(suggestion);
+                    }
+
+                    @Override
+                    public void onInvalidSuggestion(SuggestionException e) {
+                        error[0] = e;
+                    }
+                });
+            }
+            answeredSuggestions = answered;
+            answerError = error[0];
+            currentState = next;
+            timer.done();
+        }
     }
 
     /**
@@ -116,13 +198,37 @@ public class ConsultationTerminal {
      * @throws BadPromptException  if the prompt is not enough clear
      */
     public void extractGuidelinesFromSugg() throws ProceduralException, BadPromptException {
-        if (currentState != States.AI_ANSWERED)
-            throw new ProceduralException("Not asked for the ai suggest");
-        suggestions = ai.parseSuggest(lastAIAnswer);
-        if (suggestions == null || suggestions.isEmpty())
-            throw new BadPromptException("The prompt provided is not clear for the AI, so there where no suggestions found");
-        showIASuggestions();
-        currentState = States.GUIDELINES_EXTRACTED;
+        try (StepTimer timer = new StepTimer(WorkflowStep.EXTRACT_GUIDELINES)) {
+            States next = WorkflowStep.EXTRACT_GUIDELINES.check(currentState);
+            // The suggestions were read while the answer arrived, it isn't parsed again
+            if (answerError != null || answeredSuggestions.isEmpty())
+                throw new BadPromptException("The prompt provided is not clear for the AI, so there where no suggestions found");
+            suggestions = answeredSuggestions;
+            showIASuggestions();
+            currentState = next;
+            timer.done();
+        }
+    }
+
+    /**
+     * Applies the suggestions of the AI accepted by the doctor to the prescription, all of them or none
+     *
+     * @param accepted the accepted suggestions, usually some of the extracted ones
+     * @throws ProductAlreadyInPrescriptionException if a product to add was already in the prescription
+     * @throws ProductNotInPrescriptionException     if a product to modify or delete is not in the prescription
+     * @throws IncorrectTakingGuidelinesException    if a taking guideline is incomplete or incorrect
+     * @throws ProceduralException                   if the guidelines were not extracted from the suggestions
+     */
+    public void acceptSuggestions(List<Suggestion> accepted)
+            throws ProductAlreadyInPrescriptionException, ProductNotInPrescriptionException,
+            IncorrectTakingGuidelinesException, ProceduralException, MedicalPrescriptionException, PosologyException {
+        try (StepTimer timer = new StepTimer(WorkflowStep.ACCEPT_SUGGESTIONS)) {
+            States next = WorkflowStep.ACCEPT_SUGGESTIONS.check(currentState);
+            medicalPrescription.applySuggestions(accepted);
+            currentState = next;
+            showSuggestionsAccepted(accepted.size());
+            timer.done();
+        }
     }
 
     /**
@@ -137,12 +243,14 @@ public class ConsultationTerminal {
     public void enterMedicineWithGuidelines(ProductID prodID, String[] instruc)
             throws ProductAlreadyInPrescriptionException, IncorrectTakingGuidelinesException, ProceduralException,
             MedicalPrescriptionException, PosologyException, MedicalPrescriptionLineException {
-        // Let introduce > 1 medicine (Although on DSS its just one)
-        if (currentState != States.GUIDELINES_EXTRACTED && currentState != States.MEDICINE_ENTERED)
-            throw new ProceduralException("Not extracted the guidelines form suggestion");
-        medicalPrescription.addLine(prodID, instruc);
-        currentState = States.MEDICINE_ENTERED;
-        showPrescriptionCompleted();
+        try (StepTimer timer = new StepTimer(WorkflowStep.ENTER_MEDICINE)) {
+            // Let introduce > 1 medicine (Although on DSS its just one)
+            States next = WorkflowStep.ENTER_MEDICINE.check(currentState);
+            medicalPrescription.addLine(prodID, instruc);
+            currentState = next;
+            showPrescriptionCompleted();
+            timer.done();
+        }
     }
 
     /**
@@ -155,11 +263,13 @@ public class ConsultationTerminal {
      */
     public void modifyDoseInLine(ProductID prodID, float newDose)
             throws ProductNotInPrescriptionException, MedicalPrescriptionException, PosologyException, ProceduralException {
-        if (currentState != States.MEDICINE_ENTERED)
-            throw new ProceduralException("There was not entered the Medicine with Guidelines");
-        medicalPrescription.modifyDoseInLine(prodID, newDose);
-        currentState = States.DOSE_MODIFIED;
-        showPrescriptionLineModified();
+        try (StepTimer timer = new StepTimer(WorkflowStep.MODIFY_DOSE)) {
+            States next = WorkflowStep.MODIFY_DOSE.check(currentState);
+            medicalPrescription.modifyDoseInLine(prodID, newDose);
+            currentState = next;
+            showPrescriptionLineModified();
+            timer.done();
+        }
     }
 
     /**
@@ -171,11 +281,13 @@ public class ConsultationTerminal {
      */
     public void removeLine(ProductID prodID) throws
             ProductNotInPrescriptionException, MedicalPrescriptionException, ProceduralException {
-        if (currentState != States.DOSE_MODIFIED)
-            throw new ProceduralException("There was not modified the dose in line");
-        medicalPrescription.removeLine(prodID);
-        currentState = States.LINE_REMOVED;
-        showRemovedLine();
+        try (StepTimer timer = new StepTimer(WorkflowStep.REMOVE_LINE)) {
+            States next = WorkflowStep.REMOVE_LINE.check(currentState);
+            medicalPrescription.removeLine(prodID);
+            currentState = next;
+            showRemovedLine();
+            timer.done();
+        }
     }
 
     /**
@@ -187,27 +299,29 @@ public class ConsultationTerminal {
      */
     public void enterTreatmentEndingDate(Date date) throws
             IncorrectEndingDateException, ProceduralException, MedicalPrescriptionException {
-        if (currentState != States.LINE_REMOVED)
-            throw new ProceduralException("There was not a remove line");
+        try (StepTimer timer = new StepTimer(WorkflowStep.ENTER_ENDING_DATE)) {
+            States next = WorkflowStep.ENTER_ENDING_DATE.check(currentState);
 
-        if (incorrectDate(date))
-            throw new IncorrectEndingDateException("The date is incorrect ");
+            if (incorrectDate(date))
+                throw new IncorrectEndingDateException("The date is incorrect ");
 
-        medicalPrescription.setEndDate(date);
+            medicalPrescription.setEndDate(date);
 
-        currentState = States.TREATMENT_ENTERED;
-        showMedicalPrescriptionReadyToSign();
+            currentState = next;
+            showMedicalPrescriptionReadyToSign();
+            timer.done();
+        }
     }
 
     /**
      * @throws ProceduralException if there is no treatment ending date
      */
     public void finishMedicalPrescriptionEdition() throws ProceduralException {
-        if (currentState != States.TREATMENT_ENTERED)
-            throw new ProceduralException("There is not treatment ending date");
-
-        currentState = States.MEDICAL_PRESCRIPTION_FINISHED;
-        showHCEAndEReceiptRead();
+        try (StepTimer timer = new StepTimer(WorkflowStep.FINISH_PRESCRIPTION_EDITION)) {
+            currentState = WorkflowStep.FINISH_PRESCRIPTION_EDITION.check(currentState);
+            showHCEAndEReceiptRead();
+            timer.done();
+        }
     }
 
     /**
@@ -217,16 +331,18 @@ public class ConsultationTerminal {
      * @throws ProceduralException if the prescription edition has not ended
      */
     public void stampeeSignature() throws eSignatureException, ProceduralException {
-        if (currentState != States.MEDICAL_PRESCRIPTION_FINISHED)
-            throw new ProceduralException("There was not enter a treatment ending date");
-        if (this.doctorSignature == null)
-            throw new eSignatureException("There is an error with the eSignature");
+        try (StepTimer timer = new StepTimer(WorkflowStep.STAMP_SIGNATURE)) {
+            States next = WorkflowStep.STAMP_SIGNATURE.check(currentState);
+            if (this.doctorSignature == null)
+                throw new eSignatureException("There is an error with the eSignature");
 
-        doctorSignature.getDigitalSignature();
+            doctorSignature.getDigitalSignature();
 
-        currentState = States.SIGNATURE_STAMPED;
+            currentState = next;
 
-        showMedicalPrescriptionPendingValidation();
+            showMedicalPrescriptionPendingValidation();
+            timer.done();
+        }
     }
 
 
@@ -237,23 +353,26 @@ public class ConsultationTerminal {
      * @throws ConnectException                if the connection with the HNS fails
      * @throws HealthCardIDException           if the HealthCardID is not registered on the HNS
      * @throws AnyCurrentPrescriptionException if the patient doesn't have prescription associated to the illness
-     * @throws NotCompletedMedicalPrescription if the HNS can't validate the prescription
+     * @throws NotCompletedMedicalPrescription if the HNS can't validate the prescription, or the records changed
+     *                                         at the HNS since they were got
      * @throws ProceduralException             if there wasn't a signature stamped
      */
     public void sendHistoryAndPrescription()
             throws ConnectException, HealthCardIDException,
             AnyCurrentPrescriptionException,
             NotCompletedMedicalPrescription, ProceduralException, MedicalPrescriptionException, ePrescripCodeException {
-        if (currentState != States.SIGNATURE_STAMPED)
-            throw new ProceduralException("There wasn't a signature stamped");
+        try (StepTimer timer = new StepTimer(WorkflowStep.SEND_HISTORY_AND_PRESCRIPTION)) {
+            States next = WorkflowStep.SEND_HISTORY_AND_PRESCRIPTION.check(currentState);
 
-        // Send the medical prescription to the HNS and replace it
-        this.medicalPrescription = healthNationalService.sendHistoryAndPrescription(
-                cip, medicalHistory, medicalPrescription.getIllness(), medicalPrescription);
+            // Send what changed in the history and the medical prescription to the HNS and replace it
+            this.medicalPrescription = healthNationalService.sendHistoryAndPrescriptionChanges(
+                    cip, medicalHistory, medicalPrescription.getIllness(), medicalPrescription);
 
-        currentState = States.HISTORY_AND_PRESCRIPTION_SENT;
+            currentState = next;
 
-        showPrescriptionValidAndComplete();
+            showPrescriptionValidAndComplete();
+            timer.done();
+        }
     }
 
     /**
@@ -262,15 +381,135 @@ public class ConsultationTerminal {
      * @throws ProceduralException if history wasn't send
      */
     public void printMedicalPrescrip() throws ProceduralException {
-        if (currentState != States.HISTORY_AND_PRESCRIPTION_SENT)
-            throw new ProceduralException("History wasn't send");
-        currentState = States.MEDICAL_PRESCRIPTION_PRINTED;
-        sendToPrintMedicalPrescription();
+        try (StepTimer timer = new StepTimer(WorkflowStep.PRINT_PRESCRIPTION)) {
+            currentState = WorkflowStep.PRINT_PRESCRIPTION.check(currentState);
+            sendToPrintMedicalPrescription();
+            timer.done();
+        }
     }
 
 
     //Additional functions
 
+    private static <T> T awaitHNS(CompletableFuture<T> future)
+            throws HealthCardIDException, AnyCurrentPrescriptionException, ConnectException,
+            IncorrectParametersException, MedicalPrescriptionException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectException("Interrupted while waiting for the HNS");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HealthCardIDException) throw (HealthCardIDException) cause;
+            if (cause instanceof AnyCurrentPrescriptionException) throw (AnyCurrentPrescriptionException) cause;
+            if (cause instanceof ConnectException) throw (ConnectException) cause;
+            if (cause instanceof IncorrectParametersException) throw (IncorrectParametersException) cause;
+            if (cause instanceof MedicalPrescriptionException) throw (MedicalPrescriptionException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ConnectException("Unexpected HNS error: " + cause);
+        }
+    }
+
+    // Warms up the AI and asks it the speculative prompt, if there is a speculative executor
+    private void speculate() {
+        discardSpeculation();
+        if (speculativeExecutor == null || ai == null || medicalPrescription == null) return;
+        Speculation started = new Speculation(ai, speculativePrompt(medicalPrescription));
+        try {
+            speculativeExecutor.execute(started);
+            speculation = started;
+            aiWarmUp = started.warmUp;
+            speculativePrompt = started.prompt;
+        } catch (RejectedExecutionException e) {
+            // The executor is busy, the AI will be called as usual
+        }
+    }
+
+    // Interrupts the AI call in advance and waits for it to end, so the AI is never used by two threads at once
+    private void discardSpeculation() {
+        Speculation discarded = speculation;
+        aiWarmUp = null;
+        speculativePrompt = null;
+        speculation = null;
+        if (discarded != null) discarded.cancel();
+    }
+
+    /**
+     * The prompt asked in advance: the illness and the products already prescribed
+     *
+     * @param prescription the prescription of the revision
+     * @return the prompt
+     */
+    static String speculativePrompt(MedicalPrescription prescription) {
+        StringBuilder prompt = new StringBuilder("illness: ").append(prescription.getIllness()).append("; lines:");
+        for (MedicalPrescriptionLine line : prescription.getLines())
+            prompt.append(' ').append(line.getProductID().getProductID());
+        return prompt.toString();
+    }
+
+    // True if the AI was warmed up in advance, a failed warm-up is repeated by the caller to report its error
+    private boolean awaitWarmUp() {
+        CompletableFuture<Void> warmUp = aiWarmUp;
+        aiWarmUp = null;
+        if (warmUp == null) return false;
+        try {
+            warmUp.get();
+            return true;
+        } catch (ExecutionException | CancellationException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // The answer asked in advance if the prompt is the speculative one, otherwise it is discarded and null returned
+    private String takeSpeculativeAnswer(String prompt) {
+        Speculation taken = speculation;
+        String speculated = speculativePrompt;
+        if (taken == null || prompt == null || !PromptNormalizer.same(prompt, speculated)) {
+            discardSpeculation();
+            return null;
+        }
+        aiWarmUp = null;
+        speculativePrompt = null;
+        speculation = null;
+        try {
+            return taken.answer.get();
+        } catch (ExecutionException | CancellationException e) {
+            return null; // The doctor's call reports the error, if it happens again
+        } catch (InterruptedException e) {
+            taken.cancel();
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // Times a step from its creation until it is closed, with the transition it made if it got to done()
+    private final class StepTimer implements AutoCloseable {
+        private final ConsultationMetrics recorder = metrics;
+        private final WorkflowStep step;
+        private final States from = currentState;
+        private final long start = (recorder == null) ? 0 : recorder.start();
+        private boolean done = false;
+
+        StepTimer(WorkflowStep step) {
+            this.step = step;
+        }
+
+        void done() {
+            done = true;
+        }
+
+        @Override
+        public void close() {
+            if (recorder != null)
+                recorder.recordStep(step.ordinal(), from.ordinal(), currentState.ordinal(), start, done);
+        }
+    }
+
     private boolean incorrectDate(Date date) {
         if (date == null) return true;
 
@@ -281,65 +520,75 @@ public class ConsultationTerminal {
 
 
     // Helpers, those will be modified as needed on the real implementation
+    // The screens are built by the view only if it shows them, from values captured when they are asked for
 
     private void showHCE() {
-        System.out.println("HCE: " + medicalHistory.toString());
+        MedicalHistory history = medicalHistory;
+        view.show(() -> "HCE: " + history);
     }
 
     private void showPrescription() {
-        System.out.println("PRESCRIPTION: " + medicalPrescription.toString());
+        MedicalPrescription prescription = medicalPrescription;
+        view.show(() -> "PRESCRIPTION: " + prescription);
     }
 
     private void showPrescriptionEdition() {
-        System.out.println("Prescription edition ...");
+        view.show("Prescription edition ...");
     }
 
     private void showIAHello() {
-        System.out.println("IA says HI...");
+        view.show("IA says HI...");
     }
 
-    private void showIASuggestionsTab() {
-        System.out.println("AI suggestion: " + lastAIAnswer);
+    private void showIASuggestionsTab(Suggestion suggestion) {
+        view.show(() -> "AI suggestion: " + suggestion);
     }
 
     private void showIASuggestions() {
-        System.out.println("----------IA SUGGESTIONS----------");
-        for (Suggestion suggestion : suggestions)
-            System.out.println(suggestion.toString());
-        System.out.println("----------------------------------");
+        List<Suggestion> extracted = suggestions;
+        view.show(() -> {
+            StringBuilder screen = new StringBuilder("----------IA SUGGESTIONS----------\n");
+            for (Suggestion suggestion : extracted)
+                screen.append(suggestion).append('\n');
+            return screen.append("----------------------------------").toString();
+        });
+    }
+
+    private void showSuggestionsAccepted(int count) {
+        view.show(() -> count + " AI suggestions applied to the prescription");
     }
 
     private void showPrescriptionCompleted() {
-        System.out.println("Prescription line modification completed");
+        view.show("Prescription line modification completed");
     }
 
     private void showPrescriptionLineModified() {
-        System.out.println("Prescription line modified");
+        view.show("Prescription line modified");
     }
 
     private void showRemovedLine() {
-        System.out.println("Prescription line removed");
+        view.show("Prescription line removed");
     }
 
     private void showMedicalPrescriptionReadyToSign() {
-        System.out.println("Prescription ready to firm");
+        view.show("Prescription ready to firm");
     }
 
     private void showHCEAndEReceiptRead() {
-        System.out.println("Screen of just reading of HCE and e-receipt");
+        view.show("Screen of just reading of HCE and e-receipt");
     }
 
     private void showMedicalPrescriptionPendingValidation() {
-        System.out.println("Medical prescription is waiting fot validation");
+        view.show("Medical prescription is waiting fot validation");
     }
 
     public void showPrescriptionValidAndComplete() {
-        System.out.println("Medical prescription valid and complete:");
+        view.show("Medical prescription valid and complete:");
         showPrescription();
     }
 
     public void sendToPrintMedicalPrescription() {
-        System.out.println("printing medical prescription...");
+        view.show("printing medical prescription...");
     }
 
 
@@ -353,6 +602,43 @@ public class ConsultationTerminal {
         this.healthNationalService = healthNationalService;
     }
 
+    public void setAsyncHealthNationalService(AsyncHealthNationalService asyncHealthNationalService) {
+        this.asyncHealthNationalService = asyncHealthNationalService;
+    }
+
+    public void setTerminalView(TerminalView view) {
+        if (view == null) throw new IllegalArgumentException("TerminalView can't be null");
+        this.view = view;
+    }
+
+    /**
+     * Turns on the speculative mode: after every initRevision the AI is warmed up and asked the speculative prompt
+     * on the executor, so callDecisionMakingAI and askAIForSuggest with that prompt don't wait for the AI again.
+     * The answer is discarded if the doctor asks anything else: the call in advance is interrupted and the terminal
+     * waits for it to return before using the AI, so the AI is never called by two threads at once
+     *
+     * @param executor where the AI is called in advance, or null to turn the speculative mode off
+     */
+    public void setSpeculativeExecutor(Executor executor) {
+        this.speculativeExecutor = executor;
+        if (executor == null) discardSpeculation();
+    }
+
+    /**
+     * @param metrics where the steps are timed, built by {@link #newMetrics()}, or null to stop timing them
+     */
+    public void setMetrics(ConsultationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return new metrics for the terminals, with every {@link WorkflowStep} and {@link States} by name
+     */
+    public static ConsultationMetrics newMetrics() {
+        return new ConsultationMetrics(Arrays.stream(WorkflowStep.values()).map(Enum::name).toList(),
+                Arrays.stream(States.values()).map(Enum::name).toList());
+    }
+
 
     // Getters
 
@@ -368,10 +654,97 @@ public class ConsultationTerminal {
         return medicalHistory;
     }
 
+    /**
+     * @return the prompt being asked in advance, to offer it to the doctor, or null if there is none
+     */
+    public String getSpeculativePrompt() {
+        return speculativePrompt;
+    }
+
+    /**
+     * @return the suggestions extracted from the last answer of the AI
+     */
+    public List<Suggestion> getSuggestions() {
+        return Collections.unmodifiableList(suggestions);
+    }
+
 
     // Setters
 
     public void setDoctorSignature(DigitalSignature digitalSignature) {
         this.doctorSignature = digitalSignature;
     }
+
+    // The warm-up and the speculative prompt, run one after the other on a thread of the speculative executor.
+    // Cancelling it interrupts the AI, and waits for it to return if it was already running
+    private static final class Speculation implements Runnable {
+        final DecisionMakingAI ai;
+        final String prompt;
+        final CompletableFuture<Void> warmUp = new CompletableFuture<>();
+        final CompletableFuture<String> answer = new CompletableFuture<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition finished = lock.newCondition();
+        private Thread runner; // while the AI is being called
+        private boolean cancelled = false;
+        private boolean interrupted = false; // the runner, by cancel
+
+        Speculation(DecisionMakingAI ai, String prompt) {
+            this.ai = ai;
+            this.prompt = prompt;
+        }
+
+        @Override
+        public void run() {
+            lock.lock();
+            try {
+                if (cancelled) return;
+                runner = Thread.currentThread();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                ai.initDecisionMakingAI();
+                warmUp.complete(null);
+                answer.complete(ai.getSuggestions(prompt));
+            } catch (AIException | RuntimeException e) {
+                warmUp.completeExceptionally(e);
+                answer.completeExceptionally(e);
+            } catch (BadPromptException e) {
+                answer.completeExceptionally(e);
+            } finally {
+                lock.lock();
+                try {
+                    runner = null;
+                    if (interrupted) Thread.interrupted(); // It was meant for the AI, not for the next task
+                    finished.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        void cancel() {
+            warmUp.cancel(false);
+            answer.cancel(false);
+            boolean waitInterrupted = false;
+            lock.lock();
+            try {
+                cancelled = true;
+                if (runner != null && !interrupted) {
+                    interrupted = true;
+                    runner.interrupt();
+                }
+                while (runner != null) {
+                    try {
+                        finished.await();
+                    } catch (InterruptedException e) {
+                        waitInterrupted = true;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (waitInterrupted) Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -0,0 +1,67 @@
+package medicalconsultation;
+
+import data.ProductID;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * A take of a medicament: when, which one and how much, as the schedule of its line says
+ */
+public final class DoseEvent {
+
+    private final ProductID productID;
+    private final LocalDateTime time;
+    private final float dose;
+    private final dayMoment dMoment;
+
+    /**
+     * Constructor of the class
+     *
+     * @param productID the ProductID of the medicament
+     * @param time      when it is taken
+     * @param dose      how much is taken
+     * @param dMoment   the moment of the day of the guideline
+     */
+    public DoseEvent(ProductID productID, LocalDateTime time, float dose, dayMoment dMoment) {
+        this.productID = productID;
+        this.time = time;
+        this.dose = dose;
+        this.dMoment = dMoment;
+    }
+
+    public ProductID getProductID() {
+        return productID;
+    }
+
+    public LocalDateTime getTime() {
+        return time;
+    }
+
+    public float getDose() {
+        return dose;
+    }
+
+    public dayMoment getDMoment() {
+        return dMoment;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DoseEvent event = (DoseEvent) o;
+        return Float.compare(event.dose, dose) == 0 && productID.equals(event.productID) && time.equals(event.time)
+                && dMoment == event.dMoment;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(productID, time, dose, dMoment);
+    }
+
+    @Override
+    public String toString() {
+        return "DoseEvent{" + "product=" + productID + ", time=" + time + ", dose=" + dose + '}';
+    }
+}
@@ -0,0 +1,297 @@
+package medicalconsultation;
+
+import data.ProductID;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+
+/**
+ * Turns the guidelines of the prescriptions into the times their doses are taken, lazily: a line is an iterator that
+ * computes every take from the previous one, and a prescription merges the iterators of its lines by time with a
+ * heap holding the next take of each. Nothing is materialised, so a treatment of years costs the same as one of days.
+ * <p>
+ * The treatment of a line starts at its first take after the time it was prescribed and lasts its duration in days
+ * from it. Its takes are spread evenly, the frequency being the takes every frequency unit (a month is 30 days),
+ * starting at the moment of the day of the guideline: 3 every DAY before breakfast are at 7:30, 15:30 and 23:30, the
+ * same minutes every day. Up to 3 takes a day at the meals are taken at breakfast, lunch and dinner instead.
+ */
+public final class DoseSchedule {
+
+    private static final int SECONDS_PER_MINUTE = 60;
+    private static final int MINUTES_PER_HOUR = 60;
+    private static final int MINUTES_PER_DAY = 24 * MINUTES_PER_HOUR;
+    private static final int BREAKFAST = 8 * MINUTES_PER_HOUR;
+    private static final int LUNCH = 14 * MINUTES_PER_HOUR;
+    private static final int DINNER = 21 * MINUTES_PER_HOUR;
+    private static final int HALF_HOUR = 30;
+    private static final int FORK_THRESHOLD = 64; // prescriptions expanded by a task without splitting it
+
+    private DoseSchedule() {
+    }
+
+    /**
+     * The takes of a line in a range of time, in order
+     *
+     * @param line  the line of the prescription, it must not change while it is expanded
+     * @param start when the treatment starts
+     * @param from  the first time of the range
+     * @param to    the end of the range, exclusive
+     * @return the takes of the line, computed one by one as they are asked for
+     */
+    public static Iterator<DoseEvent> expand(MedicalPrescriptionLine line, LocalDateTime start,
+                                             LocalDateTime from, LocalDateTime to) {
+        if (line == null) throw new IllegalArgumentException("MedicalPrescriptionLine can't be null");
+        checkRange(from, to);
+        if (start == null) throw new IllegalArgumentException("Start can't be null");
+        return new LineDoses(line, start, from, to, 0);
+    }
+
+    /**
+     * The takes of all the lines of a prescription in a range of time, in order, until its end date if it has one
+     *
+     * @param mPresc the prescription, it must not change while it is expanded
+     * @param zone   the zone the dates of the prescription are read in
+     * @param from   the first time of the range
+     * @param to     the end of the range, exclusive
+     * @return the takes of the prescription, merged from its lines as they are asked for
+     */
+    public static Iterator<DoseEvent> expand(MedicalPrescription mPresc, ZoneId zone,
+                                             LocalDateTime from, LocalDateTime to) {
+        if (mPresc == null) throw new IllegalArgumentException("MedicalPrescription can't be null");
+        if (zone == null) throw new IllegalArgumentException("Zone can't be null");
+        checkRange(from, to);
+        LocalDateTime start = LocalDateTime.ofInstant(mPresc.getPrescDate().toInstant(), zone);
+        if (mPresc.getEndDate() != null) {
+            LocalDateTime end = LocalDateTime.ofInstant(mPresc.getEndDate().toInstant(), zone);
+            if (end.isBefore(to)) to = end;
+        }
+        return new MergedDoses(mPresc.getLines(), start, from, to);
+    }
+
+    /**
+     * Expands the prescriptions of a population in parallel, splitting them among the threads of the pool
+     *
+     * @param population the prescriptions, they must not change while they are expanded
+     * @param zone       the zone the dates of the prescriptions are read in
+     * @param from       the first time of the range
+     * @param to         the end of the range, exclusive
+     * @param calendar   gets every prescription with its takes, called from many threads at once
+     * @param pool       the pool the expansion runs in
+     */
+    public static void expandAll(List<MedicalPrescription> population, ZoneId zone, LocalDateTime from,
+                                 LocalDateTime to, BiConsumer<MedicalPrescription, Iterator<DoseEvent>> calendar,
+                                 ForkJoinPool pool) {
+        if (population == null) throw new IllegalArgumentException("Population can't be null");
+        if (zone == null) throw new IllegalArgumentException("Zone can't be null");
+        if (calendar == null) throw new IllegalArgumentException("Calendar can't be null");
+        if (pool == null) throw new IllegalArgumentException("ForkJoinPool can't be null");
+        checkRange(from, to);
+        pool.invoke(new CalendarTask(population, 0, population.size(), zone, from, to, calendar));
+    }
+
+    /**
+     * Like {@link #expandAll(List, ZoneId, LocalDateTime, LocalDateTime, BiConsumer, ForkJoinPool)},
+     * in the common pool and the zone of the system
+     */
+    public static void expandAll(List<MedicalPrescription> population, LocalDateTime from, LocalDateTime to,
+                                 BiConsumer<MedicalPrescription, Iterator<DoseEvent>> calendar) {
+        expandAll(population, ZoneId.systemDefault(), from, to, calendar, ForkJoinPool.commonPool());
+    }
+
+    private static void checkRange(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null) throw new IllegalArgumentException("The range can't be null");
+    }
+
+    // The minutes since base, in epoch seconds, of the first minute at or after time
+    private static long minutesUntil(long base, LocalDateTime time) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC) - base;
+        long minutes = Math.floorDiv(seconds, SECONDS_PER_MINUTE);
+        return (Math.floorMod(seconds, SECONDS_PER_MINUTE) != 0 || time.getNano() != 0) ? minutes + 1 : minutes;
+    }
+
+    // Every constant is listed, so a new one doesn't compile until it is given its interval
+    private static int minutesOf(FqUnit unit) {
+        return switch (unit) {
+            case HOUR -> MINUTES_PER_HOUR;
+            case DAY -> MINUTES_PER_DAY;
+            case WEEK -> 7 * MINUTES_PER_DAY;
+            case MONTH -> 30 * MINUTES_PER_DAY;
+        };
+    }
+
+    // The minute of the day of the first take
+    private static int anchorOf(dayMoment moment) {
+        return switch (moment) {
+            case BEFOREBREAKFAST, BEFOEMEALS -> BREAKFAST - HALF_HOUR;
+            case DURINGBREAKFAST, DURINGMEALS -> BREAKFAST;
+            case AFTERBREAKFAST, AFTERMEALS -> BREAKFAST + HALF_HOUR;
+            case BEFORELUNCH -> LUNCH - HALF_HOUR;
+            case DURINGLUNCH -> LUNCH;
+            case AFTERLUNCH -> LUNCH + HALF_HOUR;
+            case BEFOREDINNER -> DINNER - HALF_HOUR;
+            case DURINGDINNER -> DINNER;
+            case AFTERDINNER -> DINNER + HALF_HOUR;
+        };
+    }
+
+    private static boolean atMeals(dayMoment moment) {
+        return moment == dayMoment.BEFOEMEALS || moment == dayMoment.DURINGMEALS || moment == dayMoment.AFTERMEALS;
+    }
+
+    // The takes of a line: take i is the take i % perCycle of the cycle i / perCycle, so the takes of every cycle
+    // are at the same minutes of it. A frequency that isn't a whole number of takes has no such cycle: its take i is
+    // at i cycles / freq from the anchor
+    private static final class LineDoses implements Iterator<DoseEvent> {
+        private final ProductID productID;
+        private final float dose;
+        private final dayMoment moment;
+        private final LocalDateTime base; // the midnight the treatment starts
+        private final long cycle; // minutes
+        private final int anchor; // the minute of the first take of the first cycle
+        private final int[] offsets; // at the meals: minutes since the start of the cycle, in order; else null
+        private final long perCycle; // takes in a cycle, 0 if the frequency isn't a whole number
+        private final float freq;
+        private final long end; // minutes since base, exclusive
+        private final int order; // of the line in the prescription, for the takes at the same time
+        private long index;
+        private long next; // the minute of the take at index
+
+        LineDoses(MedicalPrescriptionLine line, LocalDateTime start, LocalDateTime from, LocalDateTime to, int order) {
+            TakingGuideline guideline = line.getTakingGuideline();
+            Posology posology = guideline.getPosology();
+            this.productID = line.getProductID();
+            this.dose = posology.getDose();
+            this.moment = guideline.getDMoment();
+            this.base = start.truncatedTo(ChronoUnit.DAYS);
+            this.order = order;
+            this.freq = posology.getFreq();
+            this.anchor = anchorOf(moment);
+            if (atMeals(moment) && posology.getFreqUnit() == FqUnit.DAY && (freq == 1 || freq == 2 || freq == 3)) {
+                int shift = anchor - BREAKFAST;
+                this.cycle = MINUTES_PER_DAY;
+                this.offsets = (freq == 1) ? new int[]{anchor}
+                        : (freq == 2) ? new int[]{anchor, DINNER + shift}
+                        : new int[]{anchor, LUNCH + shift, DINNER + shift};
+                this.perCycle = offsets.length;
+            } else {
+                this.cycle = minutesOf(posology.getFreqUnit());
+                this.offsets = null;
+                this.perCycle = (freq >= 1 && freq == Math.rint(freq)) ? (long) freq : 0;
+            }
+            long baseSecond = base.toEpochSecond(ZoneOffset.UTC);
+            // The duration counts from the first take, so a treatment prescribed after the moment of the day
+            // still has all its takes
+            long first = firstAtOrAfter(minutesUntil(baseSecond, start));
+            long duration = Math.round(guideline.getDuration() * (double) MINUTES_PER_DAY);
+            this.end = Math.min(minuteOf(first) + duration, minutesUntil(baseSecond, to));
+            this.index = Math.max(first, firstAtOrAfter(minutesUntil(baseSecond, from)));
+            this.next = minuteOf(index);
+        }
+
+        private long minuteOf(long i) {
+            if (perCycle == 0) return anchor + (long) Math.floor(i * (double) cycle / freq);
+            long take = i % perCycle;
+            long offset = (offsets != null) ? offsets[(int) take] : anchor + take * cycle / perCycle;
+            return (i / perCycle) * cycle + offset;
+        }
+
+        // The index of the first take at or after a minute: from an index whose take can't be after it, walks on
+        private long firstAtOrAfter(long minute) {
+            double takesPerMinute = ((perCycle == 0) ? freq : perCycle) / (double) cycle;
+            long i = Math.max(0, (long) Math.floor((minute - anchor - cycle) * takesPerMinute));
+            while (minuteOf(i) < minute) i++;
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public DoseEvent next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            DoseEvent event = new DoseEvent(productID, base.plusMinutes(next), dose, moment);
+            next = minuteOf(++index);
+            return event;
+        }
+    }
+
+    // The takes of all the lines, by time: the heap holds the lines that have more, by the minute of their next take.
+    // Their bases are the same midnight, so the minutes compare
+    private static final class MergedDoses implements Iterator<DoseEvent> {
+        private static final Comparator<LineDoses> ORDER = Comparator
+                .comparingLong((LineDoses doses) -> doses.next)
+                .thenComparingInt(doses -> doses.order);
+
+        private final PriorityQueue<LineDoses> heads;
+
+        MergedDoses(List<MedicalPrescriptionLine> lines, LocalDateTime start, LocalDateTime from, LocalDateTime to) {
+            this.heads = new PriorityQueue<>(Math.max(1, lines.size()), ORDER);
+            for (int i = 0; i < lines.size(); i++) {
+                LineDoses doses = new LineDoses(lines.get(i), start, from, to, i);
+                if (doses.hasNext()) heads.add(doses);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public DoseEvent next() {
+            LineDoses head = heads.poll();
+            if (head == null) throw new NoSuchElementException();
+            DoseEvent event = head.next();
+            if (head.hasNext()) heads.add(head);
+            return event;
+        }
+    }
+
+    // Splits the population in halves until they are small enough to expand in a thread
+    private static final class CalendarTask extends RecursiveAction {
+        private final List<MedicalPrescription> population;
+        private final int low;
+        private final int high;
+        private final ZoneId zone;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final BiConsumer<MedicalPrescription, Iterator<DoseEvent>> calendar;
+
+        CalendarTask(List<MedicalPrescription> population, int low, int high, ZoneId zone, LocalDateTime from,
+                     LocalDateTime to, BiConsumer<MedicalPrescription, Iterator<DoseEvent>> calendar) {
+            this.population = population;
+            this.low = low;
+            this.high = high;
+            this.zone = zone;
+            this.from = from;
+            this.to = to;
+            this.calendar = calendar;
+        }
+
+        @Override
+        protected void compute() {
+            if (high - low <= FORK_THRESHOLD) {
+                for (int i = low; i < high; i++) {
+                    MedicalPrescription mPresc = population.get(i);
+                    calendar.accept(mPresc, expand(mPresc, zone, from, to));
+                }
+                return;
+            }
+            int middle = (low + high) >>> 1;
+            invokeAll(new CalendarTask(population, low, middle, zone, from, to, calendar),
+                    new CalendarTask(population, middle, high, zone, from, to, calendar));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package medicalconsultation;
+
+import java.io.IOException;
+
+/**
+ * Where the annotations of a medical history are kept.
+ * The annotations are only appended, never changed, so an implementation can be an append-only log.
+ */
+public interface HistoryStorage {
+
+    /**
+     * Appends an annotation at the end of the history
+     * @param annot the annotation, not empty
+     */
+    void append(String annot);
+
+    /**
+     * @param index the number of the annotation, starting at 0
+     * @return the annotation
+     * @throws IndexOutOfBoundsException if there's no annotation with that number
+     */
+    String get(int index);
+
+    /**
+     * @return the number of annotations
+     */
+    int size();
+
+    /**
+     * @return the length of the whole history, with a separator between annotations
+     */
+    int historyLength();
+
+    /**
+     * Writes the annotations, separated by new lines
+     * @param out where the history is written
+     * @throws IOException if the writing fails
+     */
+    default void writeTo(Appendable out) throws IOException {
+        for (int i = 0; i < size(); i++) {
+            if (i > 0) out.append('\n');
+            out.append(get(i));
+        }
+    }
+
+    /**
+     * @return the membership number of the family doctor kept with the annotations, 0 if none
+     */
+    default int getMembShipNumb() {
+        return 0;
+    }
+
+    /**
+     * Called when the patient changes the family doctor
+     * @param membShipNumb the membership number of the new doctor
+     */
+    default void setMembShipNumb(int membShipNumb) {
+    }
+}
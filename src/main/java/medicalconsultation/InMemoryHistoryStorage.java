@@ -0,0 +1,34 @@
+package medicalconsultation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The annotations kept in the heap, the default storage of a medical history
+ */
+final class InMemoryHistoryStorage implements HistoryStorage {
+    private final List<String> annotations = new ArrayList<>();
+    private int historyLength = 0;
+
+    @Override
+    public void append(String annot) {
+        if (!annotations.isEmpty()) historyLength++; // Separates annotations
+        annotations.add(annot);
+        historyLength += annot.length();
+    }
+
+    @Override
+    public String get(int index) {
+        return annotations.get(index);
+    }
+
+    @Override
+    public int size() {
+        return annotations.size();
+    }
+
+    @Override
+    public int historyLength() {
+        return historyLength;
+    }
+}
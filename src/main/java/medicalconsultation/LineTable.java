@@ -0,0 +1,133 @@
+package medicalconsultation;
+
+import java.util.*;
+
+/**
+ * The lines of a prescription, keyed by the number of their ProductID.
+ * The lines are kept in insertion order in a dense array, found through an open-addressing index with
+ * linear probing. A removal closes its gap in the array, so a line is read by position at once, and leaves
+ * a tombstone in the index, cleaned when they are too many or the array has to grow.
+ * Reading the table, by key or by position, never changes it.
+ */
+final class LineTable {
+
+    private static final int EMPTY = 0; // the index holds the position in the array + 1
+    private static final int DELETED = -1;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long[] keys = new long[INITIAL_CAPACITY]; // in insertion order, parallel to lines
+    private MedicalPrescriptionLine[] lines = new MedicalPrescriptionLine[INITIAL_CAPACITY];
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+    private int size = 0;
+    private int tombstones = 0; // deleted slots in the index
+    private final List<MedicalPrescriptionLine> view = new View();
+
+    int size() {
+        return size;
+    }
+
+    MedicalPrescriptionLine get(long key) {
+        int slot = find(key);
+        return (slot < 0) ? null : lines[index[slot] - 1];
+    }
+
+    /**
+     * Adds a line, the key must not be in the table
+     */
+    void add(long key, MedicalPrescriptionLine line) {
+        if (size == lines.length) resize(lines.length * 2);
+        else if ((size + tombstones + 1) * 2 > index.length) rebuildIndex(); // Too many tombstones make the probes long
+        keys[size] = key;
+        lines[size] = line;
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (index[slot] > EMPTY) slot = (slot + 1) & mask;
+        if (index[slot] == DELETED) tombstones--;
+        index[slot] = ++size;
+    }
+
+    /**
+     * @return the removed line, null if the key was not in the table
+     */
+    MedicalPrescriptionLine remove(long key) {
+        int slot = find(key);
+        if (slot < 0) return null;
+        int position = index[slot] - 1;
+        MedicalPrescriptionLine line = lines[position];
+        size--;
+        if (size == 0) {
+            clear();
+            return line;
+        }
+        // Moves the lines after it over its position, keeping their order, and points the index at their new one
+        System.arraycopy(keys, position + 1, keys, position, size - position);
+        System.arraycopy(lines, position + 1, lines, position, size - position);
+        lines[size] = null;
+        index[slot] = DELETED;
+        tombstones++;
+        for (int i = 0; i < index.length; i++)
+            if (index[i] > position + 1) index[i]--;
+        return line;
+    }
+
+    /**
+     * @return a read-only view of the lines in insertion order, it follows the changes of the table
+     */
+    List<MedicalPrescriptionLine> view() {
+        return view;
+    }
+
+    private int find(long key) {
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        int entry;
+        while ((entry = index[slot]) != EMPTY) {
+            if (entry > 0 && keys[entry - 1] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private void clear() {
+        Arrays.fill(lines, null);
+        Arrays.fill(index, EMPTY);
+        tombstones = 0;
+    }
+
+    private void resize(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        index = new int[capacity * 2];
+        rebuildIndex();
+    }
+
+    private void rebuildIndex() {
+        Arrays.fill(index, EMPTY);
+        int mask = index.length - 1;
+        for (int position = 0; position < size; position++) {
+            int slot = hash(keys[position]) & mask;
+            while (index[slot] != EMPTY) slot = (slot + 1) & mask;
+            index[slot] = position + 1;
+        }
+        tombstones = 0;
+    }
+
+    private final class View extends AbstractList<MedicalPrescriptionLine> implements RandomAccess {
+        // Never changes the table, so many threads can read a prescription nobody changes
+        @Override
+        public MedicalPrescriptionLine get(int i) {
+            Objects.checkIndex(i, size);
+            return lines[i];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -3,10 +3,18 @@ package medicalconsultation;
 import data.HealthCardID;
 import exceptions.IncorrectParametersException;
 
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+
 public class MedicalHistory {// A class that represents a medical history
     private HealthCardID cip; // the CIP of the patient
     private int membShipNumb; // the membership number of the family doctor
-    private String history; // the diverse annotations in the patient’s HCE
+    private final HistoryStorage annotations; // the diverse annotations in the patient’s HCE, in order
+    private final List<String> annotationsView;
+    private String history; // the whole history, built when asked and dropped on every append
+    private long version; // the version of the history at the HNS it was got at, 0 if it wasn't got from there
+    private int synchronizedAnnotations = -1; // the annotations it had when got from the HNS, -1 while not tracked
 
     /**
      * Constructor
@@ -15,34 +23,102 @@ public class MedicalHistory {// A class that represents a medical history
      * @throws IncorrectParametersException if the cip is null or memberShipNumber <= 0
      */
     public MedicalHistory (HealthCardID cip, int memberShipNum) throws IncorrectParametersException {
+        this(cip, memberShipNum, new InMemoryHistoryStorage());
+    }
+
+    /**
+     * Constructor of a history kept in the given storage, which may already hold annotations
+     * @param cip the CIP of the patient
+     * @param memberShipNum the membership number of the family doctor, used if the storage doesn't keep one
+     * @param storage where the annotations are kept
+     * @throws IncorrectParametersException if the cip or the storage are null or memberShipNumber <= 0
+     */
+    public MedicalHistory (HealthCardID cip, int memberShipNum, HistoryStorage storage) throws IncorrectParametersException {
         if (cip ==null) {
             throw new IncorrectParametersException("HealthCardID cannot be null");
         }
         if (memberShipNum <= 0) {
             throw new IncorrectParametersException("Membership number must be greater than 0");
         }
+        if (storage == null) {
+            throw new IncorrectParametersException("HistoryStorage cannot be null");
+        }
         // Makes its inicialization
         this.cip =cip;
-        this.membShipNumb = memberShipNum;
-        this.history =  "";
+        this.annotations = storage;
+        if (storage.getMembShipNumb() > 0) {
+            this.membShipNumb = storage.getMembShipNumb();
+        } else {
+            this.membShipNumb = memberShipNum;
+            storage.setMembShipNumb(memberShipNum);
+        }
+        this.annotationsView = new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return annotations.get(index);
+            }
+
+            @Override
+            public int size() {
+                return annotations.size();
+            }
+        };
+        this.history = (storage.size() == 0) ? "" : null;
     }
 
     /**
-     * Adds new annotations to the patient history
+     * Adds new annotations to the patient history, without copying the previous ones
      * @param annot the annotation to add
      */
     public void addMedicalHistoryAnnotations (String annot) {
         if (annot != null && !annot.isEmpty()) {
-            if (this.history.isEmpty()) {
-                this.history = annot;
-            } else {
-                this.history = this.history + "\n" + annot; // Separates annotations
-            }
+            annotations.append(annot);
+            this.history = null;
         }
     }
 
+    /**
+     * Writes the whole history, with the annotations separated by new lines, without building it in memory
+     * @param out where the history is written
+     * @throws IOException if the writing fails
+     */
+    public void writeHistoryTo (Appendable out) throws IOException {
+        annotations.writeTo(out);
+    }
+
+    /**
+     * Records that the history is as the HNS keeps it at the given version,
+     * the annotations added from here on are tracked
+     * @param version the version of the history at the HNS, > 0
+     */
+    public void markSynchronized (long version) {
+        if (version <= 0) throw new IllegalArgumentException("Version must be > 0");
+        this.version = version;
+        this.synchronizedAnnotations = annotations.size();
+    }
+
+    /**
+     * @return true if the history was got from the HNS, so the annotations added since then are known
+     */
+    public boolean isTracked() {
+        return synchronizedAnnotations >= 0;
+    }
+
+    /**
+     * @return a read-only view of the annotations added since the history was got from the HNS, all of them if it
+     * wasn't got from there
+     */
+    public List<String> getAppendedAnnotations() {
+        return annotationsView.subList(Math.max(synchronizedAnnotations, 0), annotations.size());
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
     public void setNewDoctor (int mshN) {
         this.membShipNumb = mshN;
+        annotations.setMembShipNumb(mshN);
     }
     // Getters
     public HealthCardID getCip() {
@@ -54,7 +130,31 @@ public class MedicalHistory {// A class that represents a medical history
     }
 
     public String getHistory() {
+        if (history == null) {
+            StringBuilder sb = new StringBuilder(annotations.historyLength());
+            try {
+                writeHistoryTo(sb);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // StringBuilder doesn't throw
+            }
+            history = sb.toString();
+        }
         return history;
     }
+
+    /**
+     * @return a read-only view of the annotations, in the order they were added
+     */
+    public List<String> getAnnotations() {
+        return annotationsView;
+    }
+
+    public int getAnnotationCount() {
+        return annotations.size();
+    }
+
+    public int getHistoryLength() {
+        return annotations.historyLength();
+    }
 }
 
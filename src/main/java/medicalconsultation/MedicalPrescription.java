@@ -1,8 +1,10 @@
 package medicalconsultation;
 
+import data.ActionType;
 import data.DigitalSignature;
 import data.HealthCardID;
 import data.ProductID;
+import data.Suggestion;
 import data.ePrescripCode;
 import exceptions.*;
 
@@ -17,7 +19,10 @@ public class MedicalPrescription {
     private Date prescDate; // the current date
     private Date endDate; // the date when the new treatment ends
     private DigitalSignature eSign; // the eSignature of the doctor
-    private Map<ProductID, MedicalPrescriptionLine> lines;
+    private final LineTable lines; // keyed by the number of the ProductID, in insertion order
+    private long version; // the version of the prescription at the HNS it was got at, 0 if it wasn't got from there
+    // The lines added, modified or removed since the prescription was got from the HNS, null while not tracked
+    private Map<ProductID, ActionType> changedLines;
 
 
     /**
@@ -35,7 +40,7 @@ public class MedicalPrescription {
         this.cip = cip;
         this.membShipNumb = membShipNumb;
         this.illness = illness;
-        this.lines = new HashMap<>();
+        this.lines = new LineTable();
         this.prescDate = new Date();
     }
 
@@ -57,7 +62,7 @@ public class MedicalPrescription {
             MedicalPrescriptionLineException {
         if (prodID == null) throw new MedicalPrescriptionException("Product can't be null");
         if (instruc == null) throw new MedicalPrescriptionException("Instructions can't be null");
-        if (lines.containsKey(prodID))
+        if (lines.get(prodID.toLong()) != null)
             throw new ProductAlreadyInPrescriptionException("Product already on the prescription lines");
 
         // Check if instruct has the exact number of instructions
@@ -69,7 +74,8 @@ public class MedicalPrescription {
 
         // Add the line
         MedicalPrescriptionLine newLine = new MedicalPrescriptionLine(prodID, takingGuideline);
-        lines.put(prodID, newLine);
+        lines.add(prodID.toLong(), newLine);
+        track(prodID, ActionType.ADD);
     }
 
     private TakingGuideline parseIntructions(String[] instructions) throws IncorrectTakingGuidelinesException, PosologyException {
@@ -101,11 +107,12 @@ public class MedicalPrescription {
         if (prodID == null) throw new MedicalPrescriptionException("Product can't be null");
 
         // Search for the product
-        MedicalPrescriptionLine line = lines.get(prodID);
+        MedicalPrescriptionLine line = lines.get(prodID.toLong());
         if (line == null) throw new ProductNotInPrescriptionException("Product not in taking guide line");
 
         // Modify the line
         line.getTakingGuideline().getPosology().setDose(newDose);
+        track(prodID, ActionType.MODIFY);
     }
 
 
@@ -119,19 +126,207 @@ public class MedicalPrescription {
     public void removeLine(ProductID prodID) throws ProductNotInPrescriptionException, MedicalPrescriptionException {
         if (prodID == null) throw new MedicalPrescriptionException("Product can't be null");
 
-        // Search for the product
-        MedicalPrescriptionLine line = lines.get(prodID);
+        // Search and delete the product
+        MedicalPrescriptionLine line = lines.remove(prodID.toLong());
         if (line == null) throw new ProductNotInPrescriptionException("Product not in taking guide line");
+        track(prodID, ActionType.DELETE);
+    }
+
+
+    /**
+     * Applies the suggestions accepted from the AI, in order, as a single change of the prescription.
+     * All of them are validated before the first one is applied, so if one of them fails the prescription is left
+     * as it was. An ADD needs the whole taking guideline (the instructions may be missing), a MODIFY replaces
+     * the fields it has and keeps the others, a DELETE only needs the product.
+     *
+     * @param suggestions the suggestions, they can refer to the lines added or changed by the previous ones
+     * @throws MedicalPrescriptionException          when the list or one of the suggestions are null
+     * @throws ProductAlreadyInPrescriptionException when a product to add is already on the prescription
+     * @throws ProductNotInPrescriptionException     when a product to modify or delete is not on the prescription
+     * @throws IncorrectTakingGuidelinesException    when a taking guideline is incomplete or incorrect
+     * @throws PosologyException                     when a posology is incorrect
+     */
+    public void applySuggestions(List<Suggestion> suggestions) throws MedicalPrescriptionException,
+            ProductAlreadyInPrescriptionException, ProductNotInPrescriptionException,
+            IncorrectTakingGuidelinesException, PosologyException {
+        if (suggestions == null) throw new MedicalPrescriptionException("Suggestions can't be null");
+
+        // Validation: the changes are planned over the lines as the previous suggestions leave them
+        List<LineChange> changes = new ArrayList<>(suggestions.size());
+        Map<Long, MedicalPrescriptionLine> planned = new HashMap<>(); // a null line is a planned removal
+        Map<MedicalPrescriptionLine, TakingGuideline> plannedGuidelines = new IdentityHashMap<>();
+        for (Suggestion suggestion : suggestions) {
+            if (suggestion == null) throw new MedicalPrescriptionException("Suggestion can't be null");
+            long key = suggestion.getProductID().toLong();
+            MedicalPrescriptionLine line = planned.containsKey(key) ? planned.get(key) : lines.get(key);
+            switch (suggestion.getActionType()) {
+                case ADD -> {
+                    if (line != null)
+                        throw new ProductAlreadyInPrescriptionException("Product already on the prescription lines");
+                    MedicalPrescriptionLine newLine = newLine(suggestion.getProductID(), guidelineOf(suggestion));
+                    planned.put(key, newLine);
+                    changes.add(new LineChange(ActionType.ADD, key, newLine, null));
+                }
+                case MODIFY -> {
+                    if (line == null) throw new ProductNotInPrescriptionException("Product not in taking guide line");
+                    TakingGuideline current = plannedGuidelines.getOrDefault(line, line.getTakingGuideline());
+                    TakingGuideline modified = modifiedGuideline(current, suggestion);
+                    plannedGuidelines.put(line, modified);
+                    changes.add(new LineChange(ActionType.MODIFY, key, line, modified));
+                }
+                case DELETE -> {
+                    if (line == null) throw new ProductNotInPrescriptionException("Product not in taking guide line");
+                    planned.put(key, null);
+                    changes.add(new LineChange(ActionType.DELETE, key, line, null));
+                }
+            }
+        }
+
+        // Application: nothing can fail from here on
+        for (LineChange change : changes) {
+            switch (change.action) {
+                case ADD -> lines.add(change.key, change.line);
+                case MODIFY -> change.line.replaceTakingGuideline(change.guideline);
+                case DELETE -> lines.remove(change.key);
+            }
+            track(change.line.getProductID(), change.action);
+        }
+    }
+
+    /**
+     * Records that the prescription is as the HNS keeps it at the given version,
+     * the changes of the lines are tracked from here on
+     *
+     * @param version the version of the prescription at the HNS, > 0
+     */
+    public void markSynchronized(long version) {
+        if (version <= 0) throw new IllegalArgumentException("Version must be > 0");
+        this.version = version;
+        if (changedLines == null) changedLines = new LinkedHashMap<>();
+        else changedLines.clear();
+    }
+
+    /**
+     * @return true if the prescription was got from the HNS, so the changes since then are known
+     */
+    public boolean isTracked() {
+        return changedLines != null;
+    }
+
+    /**
+     * @return true if a line was added, modified or removed since the prescription was got from the HNS
+     */
+    public boolean hasChanges() {
+        return changedLines != null && !changedLines.isEmpty();
+    }
+
+    // A line added and then removed is not a change, a line removed and added again is modified
+    private void track(ProductID prodID, ActionType action) {
+        if (changedLines == null) return;
+        ActionType previous = changedLines.get(prodID);
+        if (previous == null) {
+            changedLines.put(prodID, action);
+        } else if (action == ActionType.DELETE) {
+            if (previous == ActionType.ADD) changedLines.remove(prodID);
+            else changedLines.put(prodID, ActionType.DELETE);
+        } else if (previous == ActionType.DELETE) {
+            changedLines.put(prodID, ActionType.MODIFY);
+        }
+    }
+
+    // Used by the PrescriptionDelta, in the order the lines were first changed
+    Map<ProductID, ActionType> changedLines() {
+        return (changedLines == null) ? Map.of() : changedLines;
+    }
+
+    /**
+     * @param prodID the ProductID of the medicament
+     * @return its line, null if it's not in the prescription
+     */
+    public MedicalPrescriptionLine getLine(ProductID prodID) {
+        return lines.get(prodID.toLong());
+    }
+
+    /**
+     * Carries the units dispensed from the prescription this one replaces at a registry to the lines of the same
+     * medicaments, and leaves nothing to dispense in the replaced one, so no unit is dispensed twice
+     *
+     * @param replaced the prescription registered before, no longer used afterwards
+     */
+    public void takeDispensed(MedicalPrescription replaced) {
+        for (MedicalPrescriptionLine old : replaced.getLines()) {
+            int dispensed = old.getQuantity() - old.takeRemaining();
+            MedicalPrescriptionLine line = getLine(old.getProductID());
+            if (line != null) line.carry(dispensed);
+        }
+    }
 
-        // Delete the product
-        lines.remove(prodID);
+    void deleteLine(ProductID prodID) {
+        lines.remove(prodID.toLong());
+    }
+
+    private static TakingGuideline guidelineOf(Suggestion suggestion)
+            throws IncorrectTakingGuidelinesException, PosologyException {
+        if (suggestion.getDayMoment() == null || suggestion.getDuration() == null || suggestion.getDose() == null
+                || suggestion.getFrequency() == null || suggestion.getFqUnit() == null)
+            throw new IncorrectTakingGuidelinesException("Instructions incomplete");
+        String instructions = (suggestion.getInstructions() == null) ? "" : suggestion.getInstructions();
+        return new TakingGuideline(suggestion.getDayMoment(), suggestion.getDuration().floatValue(),
+                suggestion.getDose().floatValue(), suggestion.getFrequency().floatValue(), suggestion.getFqUnit(),
+                instructions);
+    }
+
+    private static TakingGuideline modifiedGuideline(TakingGuideline current, Suggestion suggestion)
+            throws IncorrectTakingGuidelinesException, PosologyException {
+        Posology posology = current.getPosology();
+        return new TakingGuideline(
+                (suggestion.getDayMoment() == null) ? current.getDMoment() : suggestion.getDayMoment(),
+                (suggestion.getDuration() == null) ? current.getDuration() : suggestion.getDuration().floatValue(),
+                (suggestion.getDose() == null) ? posology.getDose() : suggestion.getDose().floatValue(),
+                (suggestion.getFrequency() == null) ? posology.getFreq() : suggestion.getFrequency().floatValue(),
+                (suggestion.getFqUnit() == null) ? posology.getFreqUnit() : suggestion.getFqUnit(),
+                (suggestion.getInstructions() == null) ? current.getInstructions() : suggestion.getInstructions());
+    }
+
+    private static MedicalPrescriptionLine newLine(ProductID prodID, TakingGuideline guideline) {
+        try {
+            return new MedicalPrescriptionLine(prodID, guideline);
+        } catch (MedicalPrescriptionLineException e) {
+            throw new IllegalStateException(e); // Neither the product nor the guideline are null
+        }
+    }
+
+    // A validated change of applySuggestions
+    private static final class LineChange {
+        final ActionType action;
+        final long key;
+        final MedicalPrescriptionLine line;
+        final TakingGuideline guideline;
+
+        LineChange(ActionType action, long key, MedicalPrescriptionLine line, TakingGuideline guideline) {
+            this.action = action;
+            this.key = key;
+            this.line = line;
+            this.guideline = guideline;
+        }
     }
 
 
     // the getters and setters for some of the class members
 
+    /**
+     * @return a read-only view of the lines, in the order they were added. It follows the changes of the prescription
+     */
     public List<MedicalPrescriptionLine> getLines() {
-        return new ArrayList<>(lines.values());
+        return lines.view();
+    }
+
+    public int getLineCount() {
+        return lines.size();
+    }
+
+    public long getVersion() {
+        return version;
     }
 
     public int getMembShipNumb() {
@@ -176,4 +371,17 @@ public class MedicalPrescription {
         if (code == null) throw new MedicalPrescriptionException("ePrescripCode can't be null");
         this.prescCode = code;
     }
+
+    // Used by the PrescriptionCodec to rebuild a prescription as it was encoded
+
+    void setPrescDate(Date prescDate) {
+        this.prescDate = prescDate;
+    }
+
+    void putLine(MedicalPrescriptionLine line) throws ProductAlreadyInPrescriptionException {
+        long key = line.getProductID().toLong();
+        if (lines.get(key) != null)
+            throw new ProductAlreadyInPrescriptionException("Product already on the prescription lines");
+        lines.add(key, line);
+    }
 }
@@ -3,8 +3,22 @@ package medicalconsultation;
 import data.ProductID;
 import exceptions.MedicalPrescriptionLineException;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 public class MedicalPrescriptionLine {
-    private int quantity;
+    private static final VarHandle REMAINING;
+
+    static {
+        try {
+            REMAINING = MethodHandles.lookup().findVarHandle(MedicalPrescriptionLine.class, "remaining", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private int quantity; // the units prescribed, > 0
+    private volatile int remaining; // the units left to dispense once the prescription is registered
     private ProductID productID;
     private TakingGuideline takingGuideline;
 
@@ -24,10 +38,20 @@ public class MedicalPrescriptionLine {
 
     // Getters and setters
 
+    /**
+     * @return the units prescribed
+     */
     public int getQuantity() {
         return quantity;
     }
 
+    /**
+     * @return the units left to dispense, all the prescribed ones until a pharmacy dispenses
+     */
+    public int getRemaining() {
+        return remaining;
+    }
+
     public ProductID getProductID() {
         return productID;
     }
@@ -36,9 +60,14 @@ public class MedicalPrescriptionLine {
         return takingGuideline;
     }
 
+    /**
+     * @param quantity the units prescribed, all of them left to dispense
+     * @throws MedicalPrescriptionLineException if the quantity is < 1
+     */
     public void setQuantity(int quantity) throws MedicalPrescriptionLineException {
         if (quantity < 1) throw new MedicalPrescriptionLineException("Quantity must be > 0");
         this.quantity = quantity;
+        this.remaining = quantity;
     }
 
     public void setProductID(ProductID productID) throws MedicalPrescriptionLineException {
@@ -51,4 +80,53 @@ public class MedicalPrescriptionLine {
         this.takingGuideline = takingGuideline;
     }
 
+    /**
+     * Takes units of the medicament from the line, for a pharmacy. Many can dispense from the same line at once:
+     * the units left are decremented with a compare-and-set, so a unit is never dispensed twice.
+     *
+     * @param units the units to dispense, > 0
+     * @return the units left, or -1 if there weren't enough and nothing was taken
+     */
+    public int dispense(int units) {
+        if (units <= 0) throw new IllegalArgumentException("Units must be > 0");
+        int current = remaining;
+        while (current >= units) {
+            int witness = (int) REMAINING.compareAndExchange(this, current, current - units);
+            if (witness == current) return current - units;
+            current = witness;
+        }
+        return -1;
+    }
+
+    /**
+     * Discounts the units dispensed from another line of the same medicament, the one this line replaces,
+     * or the one this line is a copy of
+     *
+     * @param line the line, which is not changed
+     */
+    public void carryDispensed(MedicalPrescriptionLine line) {
+        carry(line.quantity - line.remaining);
+    }
+
+    // Used by the registry to replace a line: nothing can be dispensed from the old one afterwards
+    int takeRemaining() {
+        return (int) REMAINING.getAndSet(this, 0);
+    }
+
+    // The units dispensed before, which may be more than the line has now
+    void carry(int dispensed) {
+        this.remaining = Math.max(0, quantity - dispensed);
+    }
+
+    // Used by MedicalPrescription to apply an already validated guideline
+    void replaceTakingGuideline(TakingGuideline takingGuideline) {
+        this.takingGuideline = takingGuideline;
+    }
+
+    // Used by the PrescriptionDelta to apply a line received from the doctor over the registered one
+    void replaceWith(MedicalPrescriptionLine line) {
+        this.takingGuideline = line.takingGuideline;
+        this.quantity = line.quantity;
+        this.remaining = line.remaining;
+    }
 }
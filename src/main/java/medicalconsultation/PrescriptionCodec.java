@@ -0,0 +1,471 @@
+package medicalconsultation;
+
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import data.ePrescripCode;
+import exceptions.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compact binary format of a MedicalPrescription, to send it to the HNS and to store it.
+ * <pre>
+ * version        1 byte
+ * flags          1 byte   which of the optional fields follow: code, end date, signature
+ * cip            16 bytes ASCII
+ * membShipNumb   varint
+ * illness        string
+ * prescCode      16 bytes ASCII (optional)
+ * prescDate      8 bytes, millis
+ * endDate        8 bytes, millis (optional)
+ * eSign          16 bytes (optional)
+ * lines          varint count, and for every line:
+ *   productID    5 bytes, the 12 digits as a number
+ *   quantity     varint
+ *   moment, unit 1 byte, the ordinal of the dayMoment in the high nibble and the FqUnit in the low one
+ *   duration, dose, frequency  4 bytes each, floats
+ *   instructions string
+ * </pre>
+ * The strings are a varint with the number of bytes followed by the UTF-8 bytes.
+ * The changes of a {@link PrescriptionDelta} have their own format, starting with a different version byte:
+ * <pre>
+ * version        1 byte   the version with the high bit set
+ * flags          1 byte   which of the optional fields follow: end date, signature
+ * cip            16 bytes ASCII
+ * membShipNumb   varint
+ * illness        string
+ * base versions  8 bytes each, of the prescription and the history
+ * endDate        8 bytes, millis (optional)
+ * eSign          16 bytes (optional)
+ * annotations    varint count, and the strings
+ * removed lines  varint count, and the productIDs
+ * lines          varint count, and the lines added or modified as above
+ * </pre>
+ * The codec has no state, it can be used by many threads at once.
+ */
+public final class PrescriptionCodec {
+
+    public static final byte VERSION = 1;
+    public static final byte DELTA_VERSION = (byte) (0x80 | VERSION);
+
+    private static final int HAS_CODE = 1;
+    private static final int HAS_END_DATE = 1 << 1;
+    private static final int HAS_SIGNATURE = 1 << 2;
+
+    private static final int ID_LENGTH = 16;
+    private static final int PRODUCT_ID_BYTES = 5;
+
+    private static final dayMoment[] DAY_MOMENTS = dayMoment.values();
+    private static final FqUnit[] FQ_UNITS = FqUnit.values();
+
+    private PrescriptionCodec() {
+    }
+
+    /**
+     * @param mPresc the prescription
+     * @return the exact number of bytes of the encoded prescription
+     */
+    public static int encodedSize(MedicalPrescription mPresc) {
+        int size = 2 + ID_LENGTH + varintSize(mPresc.getMembShipNumb()) + stringSize(mPresc.getIllness()) + 8;
+        if (mPresc.getPrescCode() != null) size += ID_LENGTH;
+        if (mPresc.getEndDate() != null) size += 8;
+        if (mPresc.geteSign() != null) size += mPresc.geteSign().getDigitalSignature().length;
+        size += varintSize(mPresc.getLineCount());
+        for (MedicalPrescriptionLine line : mPresc.getLines()) size += lineSize(line);
+        return size;
+    }
+
+    /**
+     * @param mPresc the prescription
+     * @return the encoded prescription
+     * @throws PrescriptionCodecException if an identifier is not ASCII
+     */
+    public static byte[] encode(MedicalPrescription mPresc) throws PrescriptionCodecException {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(mPresc));
+        encode(mPresc, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Writes the prescription at the position of the buffer, which ends after it
+     *
+     * @param mPresc the prescription
+     * @param out    the buffer, with at least {@link #encodedSize} bytes remaining
+     * @throws PrescriptionCodecException if an identifier is not ASCII or the buffer is too small
+     */
+    public static void encode(MedicalPrescription mPresc, ByteBuffer out) throws PrescriptionCodecException {
+        try {
+            ePrescripCode code = mPresc.getPrescCode();
+            Date endDate = mPresc.getEndDate();
+            DigitalSignature eSign = mPresc.geteSign();
+            int flags = 0;
+            if (code != null) flags |= HAS_CODE;
+            if (endDate != null) flags |= HAS_END_DATE;
+            if (eSign != null) flags |= HAS_SIGNATURE;
+
+            out.put(VERSION);
+            out.put((byte) flags);
+            putAscii(out, mPresc.getCip().getPersonalID());
+            putVarint(out, mPresc.getMembShipNumb());
+            putString(out, mPresc.getIllness());
+            if (code != null) putAscii(out, code.getPrescripCode());
+            out.putLong(mPresc.getPrescDate().getTime());
+            if (endDate != null) out.putLong(endDate.getTime());
+            if (eSign != null) out.put(eSign.getDigitalSignature());
+
+            putVarint(out, mPresc.getLineCount());
+            for (MedicalPrescriptionLine line : mPresc.getLines()) putLine(out, line);
+        } catch (BufferOverflowException e) {
+            throw new PrescriptionCodecException("Buffer too small for the prescription");
+        }
+    }
+
+    /**
+     * @param in the encoded prescription
+     * @return the prescription
+     * @throws PrescriptionCodecException if the bytes are not a valid prescription of this version
+     */
+    public static MedicalPrescription decode(byte[] in) throws PrescriptionCodecException {
+        return decode(ByteBuffer.wrap(in));
+    }
+
+    /**
+     * Reads a prescription from the position of the buffer, which ends after it
+     *
+     * @param in the buffer
+     * @return the prescription
+     * @throws PrescriptionCodecException if the bytes are not a valid prescription of this version
+     */
+    public static MedicalPrescription decode(ByteBuffer in) throws PrescriptionCodecException {
+        try {
+            byte version = in.get();
+            if (version != VERSION) throw new PrescriptionCodecException("Unsupported version: " + version);
+            int flags = in.get();
+
+            HealthCardID cip = new HealthCardID(getAscii(in));
+            int membShipNumb = getVarint(in);
+            MedicalPrescription mPresc = new MedicalPrescription(cip, membShipNumb, getString(in));
+            if ((flags & HAS_CODE) != 0) mPresc.setPrescCode(new ePrescripCode(getAscii(in)));
+            mPresc.setPrescDate(new Date(in.getLong()));
+            if ((flags & HAS_END_DATE) != 0) mPresc.setEndDate(new Date(in.getLong()));
+            if ((flags & HAS_SIGNATURE) != 0) {
+                byte[] signature = new byte[ID_LENGTH];
+                in.get(signature);
+                mPresc.setEsig(new DigitalSignature(signature));
+            }
+
+            int lineCount = getVarint(in);
+            for (int i = 0; i < lineCount; i++) mPresc.putLine(getLine(in));
+            return mPresc;
+        } catch (BufferUnderflowException e) {
+            throw new PrescriptionCodecException("Truncated prescription");
+        } catch (HealthCardIDException | MedicalPrescriptionException | ePrescripCodeException
+                 | DigitalSignatureException | ProductIDException | IncorrectTakingGuidelinesException
+                 | PosologyException | MedicalPrescriptionLineException | ProductAlreadyInPrescriptionException e) {
+            throw new PrescriptionCodecException("Invalid prescription: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sets the code of an encoded prescription without encoding it again, so the HNS can give the code
+     * once the submission is accepted
+     *
+     * @param encoded the encoded prescription, with or without a code, not changed
+     * @param code    the code
+     * @return the prescription encoded with the code
+     * @throws PrescriptionCodecException if the bytes are not a valid prescription of this version
+     */
+    public static byte[] withCode(byte[] encoded, ePrescripCode code) throws PrescriptionCodecException {
+        if (code == null) throw new IllegalArgumentException("ePrescripCode can't be null");
+        try {
+            ByteBuffer in = ByteBuffer.wrap(encoded);
+            byte version = in.get();
+            if (version != VERSION) throw new PrescriptionCodecException("Unsupported version: " + version);
+            int flags = in.get();
+            in.position(in.position() + ID_LENGTH);
+            getVarint(in);
+            int illnessLength = getVarint(in);
+            int offset = in.position() + illnessLength;
+            if (illnessLength < 0 || offset > encoded.length) throw new PrescriptionCodecException("Truncated prescription");
+
+            boolean hasCode = (flags & HAS_CODE) != 0;
+            ByteBuffer out = ByteBuffer.allocate(hasCode ? encoded.length : encoded.length + ID_LENGTH);
+            out.put(encoded, 0, offset);
+            out.put(1, (byte) (flags | HAS_CODE));
+            putAscii(out, code.getPrescripCode());
+            int rest = hasCode ? offset + ID_LENGTH : offset;
+            if (rest > encoded.length) throw new PrescriptionCodecException("Truncated prescription");
+            out.put(encoded, rest, encoded.length - rest);
+            return out.array();
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new PrescriptionCodecException("Truncated prescription");
+        }
+    }
+
+    /**
+     * @param delta the changes of a prescription and its history
+     * @return the exact number of bytes of the encoded changes
+     */
+    public static int encodedSize(PrescriptionDelta delta) {
+        int size = 2 + ID_LENGTH + varintSize(delta.getMembShipNumb()) + stringSize(delta.getIllness()) + 2 * Long.BYTES;
+        if (delta.getEndDate() != null) size += 8;
+        if (delta.geteSign() != null) size += delta.geteSign().getDigitalSignature().length;
+        size += varintSize(delta.getAnnotations().size());
+        for (String annotation : delta.getAnnotations()) size += stringSize(annotation);
+        size += varintSize(delta.getRemovedLines().size()) + delta.getRemovedLines().size() * PRODUCT_ID_BYTES;
+        size += varintSize(delta.getLines().size());
+        for (MedicalPrescriptionLine line : delta.getLines()) size += lineSize(line);
+        return size;
+    }
+
+    /**
+     * @param delta the changes of a prescription and its history
+     * @return the encoded changes
+     * @throws PrescriptionCodecException if the cip is not ASCII
+     */
+    public static byte[] encode(PrescriptionDelta delta) throws PrescriptionCodecException {
+        ByteBuffer out = ByteBuffer.allocate(encodedSize(delta));
+        try {
+            Date endDate = delta.getEndDate();
+            DigitalSignature eSign = delta.geteSign();
+            int flags = 0;
+            if (endDate != null) flags |= HAS_END_DATE;
+            if (eSign != null) flags |= HAS_SIGNATURE;
+
+            out.put(DELTA_VERSION);
+            out.put((byte) flags);
+            putAscii(out, delta.getCip().getPersonalID());
+            putVarint(out, delta.getMembShipNumb());
+            putString(out, delta.getIllness());
+            out.putLong(delta.getPrescriptionVersion());
+            out.putLong(delta.getHistoryVersion());
+            if (endDate != null) out.putLong(endDate.getTime());
+            if (eSign != null) out.put(eSign.getDigitalSignature());
+
+            putVarint(out, delta.getAnnotations().size());
+            for (String annotation : delta.getAnnotations()) putString(out, annotation);
+            putVarint(out, delta.getRemovedLines().size());
+            for (ProductID productID : delta.getRemovedLines()) putProductID(out, productID.toLong());
+            putVarint(out, delta.getLines().size());
+            for (MedicalPrescriptionLine line : delta.getLines()) putLine(out, line);
+        } catch (BufferOverflowException e) {
+            throw new PrescriptionCodecException("Buffer too small for the changes");
+        }
+        return out.array();
+    }
+
+    /**
+     * @param in the encoded changes
+     * @return the changes, with lines of their own
+     * @throws PrescriptionCodecException if the bytes are not valid changes of this version
+     */
+    public static PrescriptionDelta decodeDelta(byte[] in) throws PrescriptionCodecException {
+        ByteBuffer buffer = ByteBuffer.wrap(in);
+        try {
+            byte version = buffer.get();
+            if (version != DELTA_VERSION) throw new PrescriptionCodecException("Unsupported version: " + version);
+            int flags = buffer.get();
+
+            HealthCardID cip = new HealthCardID(getAscii(buffer));
+            int membShipNumb = getVarint(buffer);
+            String illness = getString(buffer);
+            long prescriptionVersion = buffer.getLong();
+            long historyVersion = buffer.getLong();
+            Date endDate = ((flags & HAS_END_DATE) != 0) ? new Date(buffer.getLong()) : null;
+            DigitalSignature eSign = null;
+            if ((flags & HAS_SIGNATURE) != 0) {
+                byte[] signature = new byte[ID_LENGTH];
+                buffer.get(signature);
+                eSign = new DigitalSignature(signature);
+            }
+
+            int count = getCount(buffer);
+            List<String> annotations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) annotations.add(getString(buffer));
+            count = getCount(buffer);
+            List<ProductID> removedLines = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) removedLines.add(ProductID.of(getProductID(buffer)));
+            count = getCount(buffer);
+            List<MedicalPrescriptionLine> lines = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) lines.add(getLine(buffer));
+            return new PrescriptionDelta(cip, illness, membShipNumb, prescriptionVersion, historyVersion, endDate,
+                    eSign, annotations, removedLines, lines);
+        } catch (BufferUnderflowException e) {
+            throw new PrescriptionCodecException("Truncated changes");
+        } catch (HealthCardIDException | DigitalSignatureException | ProductIDException
+                 | IncorrectTakingGuidelinesException | PosologyException | MedicalPrescriptionLineException e) {
+            throw new PrescriptionCodecException("Invalid changes: " + e.getMessage());
+        }
+    }
+
+    // Lines
+
+    private static int lineSize(MedicalPrescriptionLine line) {
+        return PRODUCT_ID_BYTES + varintSize(line.getQuantity()) + 1 + 3 * Float.BYTES
+                + stringSize(line.getTakingGuideline().getInstructions());
+    }
+
+    private static void putLine(ByteBuffer out, MedicalPrescriptionLine line) {
+        TakingGuideline guideline = line.getTakingGuideline();
+        Posology posology = guideline.getPosology();
+        putProductID(out, line.getProductID().toLong());
+        putVarint(out, line.getQuantity());
+        out.put((byte) (guideline.getDMoment().ordinal() << 4 | posology.getFreqUnit().ordinal()));
+        out.putFloat(guideline.getDuration());
+        out.putFloat(posology.getDose());
+        out.putFloat(posology.getFreq());
+        putString(out, guideline.getInstructions());
+    }
+
+    private static MedicalPrescriptionLine getLine(ByteBuffer in) throws PrescriptionCodecException, ProductIDException,
+            IncorrectTakingGuidelinesException, PosologyException, MedicalPrescriptionLineException {
+        ProductID productID = ProductID.of(getProductID(in));
+        int quantity = getVarint(in);
+        int packed = in.get() & 0xFF;
+        if ((packed >>> 4) >= DAY_MOMENTS.length || (packed & 0xF) >= FQ_UNITS.length)
+            throw new PrescriptionCodecException("Invalid day moment or frequency unit: " + packed);
+        float duration = in.getFloat();
+        float dose = in.getFloat();
+        float frequency = in.getFloat();
+        TakingGuideline guideline = new TakingGuideline(DAY_MOMENTS[packed >>> 4], duration, dose, frequency,
+                FQ_UNITS[packed & 0xF], getString(in));
+        MedicalPrescriptionLine line = new MedicalPrescriptionLine(productID, guideline);
+        line.setQuantity(quantity);
+        return line;
+    }
+
+    // Identifiers
+
+    private static void putAscii(ByteBuffer out, String id) throws PrescriptionCodecException {
+        for (int i = 0; i < ID_LENGTH; i++) {
+            char c = id.charAt(i);
+            if (c >= 0x80) throw new PrescriptionCodecException("Identifier not ASCII: " + id);
+            out.put((byte) c);
+        }
+    }
+
+    private static String getAscii(ByteBuffer in) throws PrescriptionCodecException {
+        char[] chars = new char[ID_LENGTH];
+        for (int i = 0; i < ID_LENGTH; i++) {
+            byte b = in.get();
+            if (b < 0) throw new PrescriptionCodecException("Identifier not ASCII");
+            chars[i] = (char) b;
+        }
+        return new String(chars);
+    }
+
+    // The 12 digits fit in 40 bits
+    private static void putProductID(ByteBuffer out, long id) {
+        out.put((byte) (id >>> 32));
+        out.putInt((int) id);
+    }
+
+    private static long getProductID(ByteBuffer in) {
+        return (in.get() & 0xFFL) << 32 | (in.getInt() & 0xFFFFFFFFL); // A value over 12 digits is caught by ProductID
+    }
+
+    // A count can't be larger than the bytes left, every element takes at least one
+    private static int getCount(ByteBuffer in) throws PrescriptionCodecException {
+        int count = getVarint(in);
+        if (count < 0 || count > in.remaining()) throw new PrescriptionCodecException("Truncated changes");
+        return count;
+    }
+
+    // Varints, 7 bits per byte with the high bit set while more bytes follow
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) throws PrescriptionCodecException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new PrescriptionCodecException("Invalid varint");
+    }
+
+    // Strings, UTF-8 written char by char to avoid the intermediate byte array
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) length++;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) length++;
+            else length += 3;
+        }
+        return length;
+    }
+
+    private static int stringSize(String s) {
+        int length = utf8Length(s);
+        return varintSize(length) + length;
+    }
+
+    private static void putString(ByteBuffer out, String s) {
+        putVarint(out, utf8Length(s));
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6));
+                out.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xF0 | cp >> 18));
+                out.put((byte) (0x80 | cp >> 12 & 0x3F));
+                out.put((byte) (0x80 | cp >> 6 & 0x3F));
+                out.put((byte) (0x80 | cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?'); // A lone surrogate can't be encoded, as String.getBytes does
+            } else {
+                out.put((byte) (0xE0 | c >> 12));
+                out.put((byte) (0x80 | c >> 6 & 0x3F));
+                out.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer in) throws PrescriptionCodecException {
+        int length = getVarint(in);
+        if (length < 0 || length > in.remaining()) throw new PrescriptionCodecException("Truncated prescription");
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(in.position(), bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return s;
+    }
+}
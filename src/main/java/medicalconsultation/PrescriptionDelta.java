@@ -0,0 +1,173 @@
+package medicalconsultation;
+
+import data.ActionType;
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import exceptions.MedicalPrescriptionException;
+import exceptions.ProductAlreadyInPrescriptionException;
+import exceptions.VersionConflictException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What changed in a history and a prescription since they were got from the HNS, with the versions they were got at:
+ * the annotations appended, the lines removed and the lines added or modified, which are sent whole.
+ * The end date and the signature are always sent, they are a few bytes.
+ * The lines are the ones of the prescription, not copies, so the delta must be sent before the prescription changes
+ * again. A delta decoded by the {@link PrescriptionCodec} has lines of its own.
+ */
+public final class PrescriptionDelta {
+    private final HealthCardID cip;
+    private final String illness;
+    private final int membShipNumb; // of the history, it changes with the family doctor
+    private final long prescriptionVersion;
+    private final long historyVersion;
+    private final Date endDate;
+    private final DigitalSignature eSign;
+    private final List<String> annotations;
+    private final List<ProductID> removedLines;
+    private final List<MedicalPrescriptionLine> lines;
+
+    PrescriptionDelta(HealthCardID cip, String illness, int membShipNumb, long prescriptionVersion, long historyVersion,
+                      Date endDate, DigitalSignature eSign, List<String> annotations, List<ProductID> removedLines,
+                      List<MedicalPrescriptionLine> lines) {
+        this.cip = cip;
+        this.illness = illness;
+        this.membShipNumb = membShipNumb;
+        this.prescriptionVersion = prescriptionVersion;
+        this.historyVersion = historyVersion;
+        this.endDate = endDate;
+        this.eSign = eSign;
+        this.annotations = Collections.unmodifiableList(annotations);
+        this.removedLines = Collections.unmodifiableList(removedLines);
+        this.lines = Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * @param hce    the history
+     * @param mPresc the prescription
+     * @return true if both records were got from the HNS, so their changes are known
+     */
+    public static boolean isAvailable(MedicalHistory hce, MedicalPrescription mPresc) {
+        return hce != null && mPresc != null && hce.isTracked() && mPresc.isTracked();
+    }
+
+    /**
+     * @param hce    the history, got from the HNS
+     * @param mPresc the prescription, got from the HNS
+     * @return the changes of both records since they were got
+     * @throws IllegalStateException if one of the records wasn't got from the HNS
+     */
+    public static PrescriptionDelta of(MedicalHistory hce, MedicalPrescription mPresc) {
+        if (!isAvailable(hce, mPresc)) throw new IllegalStateException("The records weren't got from the HNS");
+        Map<ProductID, ActionType> changedLines = mPresc.changedLines();
+        List<ProductID> removedLines = new ArrayList<>();
+        List<MedicalPrescriptionLine> lines = new ArrayList<>(changedLines.size());
+        for (Map.Entry<ProductID, ActionType> change : changedLines.entrySet()) {
+            if (change.getValue() == ActionType.DELETE) removedLines.add(change.getKey());
+            else lines.add(mPresc.getLine(change.getKey()));
+        }
+        return new PrescriptionDelta(mPresc.getCip(), mPresc.getIllness(), hce.getMembShipNumb(),
+                mPresc.getVersion(), hce.getVersion(), mPresc.getEndDate(), mPresc.geteSign(),
+                List.copyOf(hce.getAppendedAnnotations()), removedLines, lines);
+    }
+
+    /**
+     * Applies the changes to the records kept by the HNS, all of them or none.
+     * The caller gives the records their new versions.
+     *
+     * @param hce    the history, at the base version of the delta
+     * @param mPresc the prescription, at the base version of the delta
+     * @throws VersionConflictException if a record is not at the base version, or doesn't have a removed line
+     */
+    public void applyTo(MedicalHistory hce, MedicalPrescription mPresc) throws VersionConflictException {
+        if (mPresc.getVersion() != prescriptionVersion)
+            throw new VersionConflictException("Prescription changed since version " + prescriptionVersion
+                    + ", now at " + mPresc.getVersion());
+        if (hce.getVersion() != historyVersion)
+            throw new VersionConflictException("History changed since version " + historyVersion
+                    + ", now at " + hce.getVersion());
+        for (ProductID removed : removedLines) {
+            if (mPresc.getLine(removed) == null)
+                throw new VersionConflictException("Removed product not in the registered prescription");
+        }
+
+        // Nothing can fail from here on
+        for (String annotation : annotations) hce.addMedicalHistoryAnnotations(annotation);
+        if (hce.getMembShipNumb() != membShipNumb) hce.setNewDoctor(membShipNumb);
+        for (ProductID removed : removedLines) mPresc.deleteLine(removed);
+        for (MedicalPrescriptionLine line : lines) {
+            MedicalPrescriptionLine registered = mPresc.getLine(line.getProductID());
+            if (registered != null) {
+                registered.replaceWith(line);
+            } else {
+                try {
+                    mPresc.putLine(line);
+                } catch (ProductAlreadyInPrescriptionException e) {
+                    throw new IllegalStateException(e); // It was just looked up
+                }
+            }
+        }
+        try {
+            if (endDate != null) mPresc.setEndDate(endDate);
+            if (eSign != null) mPresc.setEsig(eSign);
+        } catch (MedicalPrescriptionException e) {
+            throw new IllegalStateException(e); // Neither of them is null
+        }
+    }
+
+    /**
+     * @return true if nothing changed in the lines nor in the history
+     */
+    public boolean isEmpty() {
+        return annotations.isEmpty() && removedLines.isEmpty() && lines.isEmpty();
+    }
+
+    public HealthCardID getCip() {
+        return cip;
+    }
+
+    public String getIllness() {
+        return illness;
+    }
+
+    public int getMembShipNumb() {
+        return membShipNumb;
+    }
+
+    public long getPrescriptionVersion() {
+        return prescriptionVersion;
+    }
+
+    public long getHistoryVersion() {
+        return historyVersion;
+    }
+
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    public DigitalSignature geteSign() {
+        return eSign;
+    }
+
+    public List<String> getAnnotations() {
+        return annotations;
+    }
+
+    public List<ProductID> getRemovedLines() {
+        return removedLines;
+    }
+
+    /**
+     * @return the lines added or modified, in the order they were first changed
+     */
+    public List<MedicalPrescriptionLine> getLines() {
+        return lines;
+    }
+}
@@ -0,0 +1,85 @@
+package medicalconsultation;
+
+import exceptions.ProceduralException;
+
+import java.util.EnumSet;
+
+import static medicalconsultation.States.*;
+
+/**
+ * The steps of the consultation workflow, compiled into a transition table.
+ * Every step knows the states it can be run from (as a bitset over the {@link States} ordinals),
+ * the state it leads to and the exception used to reject it, which is built only once.
+ */
+public enum WorkflowStep {
+    INIT_REVISION(EnumSet.allOf(States.class), REVISION_STARTED,
+            "Revision can't be started"),
+    // Once the revision is started the assessment can be entered again at any point
+    ENTER_ASSESSMENT(EnumSet.complementOf(EnumSet.of(REVISION_NO_STARTED)), ASSESSMENT_ENTERED,
+            "Medical prescription not initialized"),
+    INIT_PRESCRIPTION_EDITION(EnumSet.of(ASSESSMENT_ENTERED), PRESCRIPTION_EDITING,
+            "Medical prescription not initialized"),
+    CALL_AI(EnumSet.of(PRESCRIPTION_EDITING), AI_CALLED,
+            "Not initiated the medical prescription edition"),
+    ASK_AI(EnumSet.of(AI_CALLED), AI_ANSWERED,
+            "Not called the decision making ai"),
+    EXTRACT_GUIDELINES(EnumSet.of(AI_ANSWERED), GUIDELINES_EXTRACTED,
+            "Not asked for the ai suggest"),
+    // The suggestions accepted at once, before or after entering medicines by hand
+    ACCEPT_SUGGESTIONS(EnumSet.of(GUIDELINES_EXTRACTED, MEDICINE_ENTERED), MEDICINE_ENTERED,
+            "Not extracted the guidelines form suggestion"),
+    // Lets introduce more than one medicine
+    ENTER_MEDICINE(EnumSet.of(GUIDELINES_EXTRACTED, MEDICINE_ENTERED), MEDICINE_ENTERED,
+            "Not extracted the guidelines form suggestion"),
+    MODIFY_DOSE(EnumSet.of(MEDICINE_ENTERED), DOSE_MODIFIED,
+            "There was not entered the Medicine with Guidelines"),
+    REMOVE_LINE(EnumSet.of(DOSE_MODIFIED), LINE_REMOVED,
+            "There was not modified the dose in line"),
+    ENTER_ENDING_DATE(EnumSet.of(LINE_REMOVED), TREATMENT_ENTERED,
+            "There was not a remove line"),
+    FINISH_PRESCRIPTION_EDITION(EnumSet.of(TREATMENT_ENTERED), MEDICAL_PRESCRIPTION_FINISHED,
+            "There is not treatment ending date"),
+    STAMP_SIGNATURE(EnumSet.of(MEDICAL_PRESCRIPTION_FINISHED), SIGNATURE_STAMPED,
+            "There was not enter a treatment ending date"),
+    SEND_HISTORY_AND_PRESCRIPTION(EnumSet.of(SIGNATURE_STAMPED), HISTORY_AND_PRESCRIPTION_SENT,
+            "There wasn't a signature stamped"),
+    PRINT_PRESCRIPTION(EnumSet.of(HISTORY_AND_PRESCRIPTION_SENT), MEDICAL_PRESCRIPTION_PRINTED,
+            "History wasn't send");
+
+    private final long allowedFrom; // bit i set if the step can be run from the state with ordinal i
+    private final States next;
+    private final ProceduralException rejection;
+
+    WorkflowStep(EnumSet<States> allowedFrom, States next, String rejectionMessage) {
+        long mask = 0L;
+        for (States state : allowedFrom)
+            mask |= 1L << state.ordinal();
+        this.allowedFrom = mask;
+        this.next = next;
+        this.rejection = new ProceduralException(rejectionMessage, false);
+    }
+
+    /**
+     * @param current the current state
+     * @return true if the step can be run from the current state
+     */
+    public boolean allows(States current) {
+        return (allowedFrom & (1L << current.ordinal())) != 0;
+    }
+
+    /**
+     * Checks that the step can be run, without allocating anything
+     *
+     * @param current the current state
+     * @return the state reached after running the step
+     * @throws ProceduralException the shared rejection of the step, if it can't be run from the current state
+     */
+    public States check(States current) throws ProceduralException {
+        if ((allowedFrom & (1L << current.ordinal())) == 0) throw rejection;
+        return next;
+    }
+
+    public States getNext() {
+        return next;
+    }
+}
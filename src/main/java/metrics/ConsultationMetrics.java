@@ -0,0 +1,149 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latencies and counters of the consultation workflow, cheap enough to stay on in production.
+ * The terminals time every workflow step and count the transitions between states it makes,
+ * the instrumented services time every call to the HNS and the AI.
+ * The steps and the states are given by name when the metrics are built and recorded by their position,
+ * so the metrics don't depend on the workflow that uses them.
+ * Every value is kept in striped counters, so the threads recording at once don't wait for each other,
+ * and they are only added up when read through {@link #snapshot()} or JMX.
+ * Timing a call costs two reads of System.nanoTime and two atomic adds, which is noise next to a
+ * round trip to the HNS or the AI but not next to the in-memory steps.
+ * One instance is shared by all the terminals and services being measured together.
+ */
+public class ConsultationMetrics implements ConsultationMetricsMXBean {
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final String[] stepNames;
+    private final String[] stateNames;
+    private final LatencyHistogram[] steps;
+    private final StripedCounters stepErrors;
+    private final LatencyHistogram[] operations = new LatencyHistogram[OPERATIONS.length];
+    private final StripedCounters operationErrors = new StripedCounters(OPERATIONS.length);
+    private final StripedCounters transitions; // by from * states + to
+
+    /**
+     * Constructor of the class
+     *
+     * @param steps  the names of the steps, a step is recorded by its position
+     * @param states the names of the states, a state is recorded by its position
+     */
+    public ConsultationMetrics(List<String> steps, List<String> states) {
+        if (steps == null || steps.isEmpty()) throw new IllegalArgumentException("Steps can't be empty");
+        if (states == null || states.isEmpty()) throw new IllegalArgumentException("States can't be empty");
+        this.stepNames = steps.toArray(new String[0]);
+        this.stateNames = states.toArray(new String[0]);
+        this.steps = new LatencyHistogram[stepNames.length];
+        this.stepErrors = new StripedCounters(stepNames.length);
+        this.transitions = new StripedCounters(stateNames.length * stateNames.length);
+        for (int i = 0; i < this.steps.length; i++) this.steps[i] = new LatencyHistogram();
+        for (int i = 0; i < operations.length; i++) operations[i] = new LatencyHistogram();
+    }
+
+    /**
+     * @return the start of a timing, to give back when it is recorded
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a step run on a terminal
+     *
+     * @param step  the position of the step
+     * @param from  the position of the state of the terminal before the step
+     * @param to    the position of the state of the terminal after the step
+     * @param start the value returned by {@link #start()} before the step
+     * @param done  false if the step threw an exception, then the transition is not counted
+     */
+    public void recordStep(int step, int from, int to, long start, boolean done) {
+        steps[step].record(System.nanoTime() - start);
+        if (done) transitions.increment(from * stateNames.length + to);
+        else stepErrors.increment(step);
+    }
+
+    /**
+     * Records a call to a service
+     *
+     * @param operation the call
+     * @param start     the value returned by {@link #start()} before the call
+     * @param done      false if the call threw an exception
+     */
+    public void recordOperation(Operation operation, long start, boolean done) {
+        int i = operation.ordinal();
+        operations[i].record(System.nanoTime() - start);
+        if (!done) operationErrors.increment(i);
+    }
+
+    /**
+     * Reads all the metrics. The ones recorded while reading may be partly left out
+     *
+     * @return the metrics at this moment
+     */
+    public MetricsSnapshot snapshot() {
+        LinkedHashMap<String, LatencySummary> stepSummaries = new LinkedHashMap<>();
+        for (int i = 0; i < stepNames.length; i++)
+            stepSummaries.put(stepNames[i], steps[i].summary(stepErrors.sum(i)));
+        EnumMap<Operation, LatencySummary> operationSummaries = new EnumMap<>(Operation.class);
+        for (Operation operation : OPERATIONS)
+            operationSummaries.put(operation,
+                    operations[operation.ordinal()].summary(operationErrors.sum(operation.ordinal())));
+        return new MetricsSnapshot(stepSummaries, operationSummaries, stateNames, transitions.sums());
+    }
+
+    @Override
+    public Map<String, LatencySummary> getSteps() {
+        return snapshot().getSteps();
+    }
+
+    @Override
+    public Map<String, LatencySummary> getOperations() {
+        Map<String, LatencySummary> byName = new LinkedHashMap<>();
+        snapshot().getOperations().forEach((operation, summary) -> byName.put(operation.name(), summary));
+        return byName;
+    }
+
+    @Override
+    public Map<String, Long> getTransitions() {
+        return snapshot().getTransitions();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram step : steps) step.reset();
+        for (LatencyHistogram operation : operations) operation.reset();
+        stepErrors.reset();
+        operationErrors.reset();
+        transitions.reset();
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server
+     *
+     * @param name the name that tells these metrics apart from others in the same JVM
+     * @return the name of the registered MBean, to unregister it
+     * @throws JMException if the name is not valid or already registered
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("medicalconsultation:type=ConsultationMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * @param objectName the name returned by {@link #register(String)}
+     * @throws JMException if it is not registered
+     */
+    public static void unregister(ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+}
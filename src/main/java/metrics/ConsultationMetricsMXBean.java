@@ -0,0 +1,30 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link ConsultationMetrics}, shown by JMX consoles under
+ * {@code medicalconsultation:type=ConsultationMetrics,name=<name>}
+ */
+public interface ConsultationMetricsMXBean {
+
+    /**
+     * @return the latencies of the workflow steps run on the terminals, by step name
+     */
+    Map<String, LatencySummary> getSteps();
+
+    /**
+     * @return the latencies of the calls to the HNS and the AI, by operation name
+     */
+    Map<String, LatencySummary> getOperations();
+
+    /**
+     * @return the number of times every state was left for another one, by "FROM->TO", only the ones that happened
+     */
+    Map<String, Long> getTransitions();
+
+    /**
+     * Starts counting again from zero
+     */
+    void reset();
+}
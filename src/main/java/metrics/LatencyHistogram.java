@@ -0,0 +1,97 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets, like an HDR histogram:
+ * every power of two is split in 32 buckets, so any value is kept with an error below 1/32 (about 3%).
+ * The buckets are {@link StripedCounters}, recording a value is one atomic add and never allocates nor locks.
+ * The mean and the percentiles are worked out from the buckets, so they share their precision.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40; // 2^41 ns are 36 minutes, longer values are kept as that
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final StripedCounters counts = new StripedCounters(BUCKETS);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param nanos the latency, negative values are taken as 0
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.increment(bucketOf(value));
+        max.accumulate(value);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - SUB_BITS)); // Between 32 and 63
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+    }
+
+    // The highest value that falls in the bucket
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        int shift = exponent - SUB_BITS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    private static long lowestValueOf(int bucket) {
+        return (bucket == 0) ? 0 : highestValueOf(bucket - 1) + 1;
+    }
+
+    /**
+     * Reads the histogram. The values recorded while reading may be partly left out
+     *
+     * @param errors the number of failed calls to put in the summary
+     * @return the summary of the latencies
+     */
+    public LatencySummary summary(long errors) {
+        long[] buckets = counts.sums();
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] == 0) continue;
+            total += buckets[i];
+            sum += buckets[i] * ((lowestValueOf(i) + highestValueOf(i)) / 2.0);
+        }
+        if (total == 0) return new LatencySummary(0, errors, 0, 0, 0, 0, 0);
+        return new LatencySummary(total, errors, Math.round(sum / total), percentile(buckets, total, 0.50),
+                percentile(buckets, total, 0.90), percentile(buckets, total, 0.99), max.get());
+    }
+
+    private static long percentile(long[] buckets, long total, double p) {
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) return highestValueOf(i);
+        }
+        return highestValueOf(buckets.length - 1);
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        long total = 0;
+        for (long count : counts.sums()) total += count;
+        return total;
+    }
+
+    /**
+     * Forgets the recorded values, the values recorded at the same time may be kept or not
+     */
+    public void reset() {
+        counts.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,68 @@
+package metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The latencies of a step or an operation at some moment, in nanoseconds
+ */
+public final class LatencySummary {
+    private final long count;
+    private final long errors;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    @ConstructorProperties({"count", "errors", "meanNanos", "p50Nanos", "p90Nanos", "p99Nanos", "maxNanos"})
+    public LatencySummary(long count, long errors, long meanNanos, long p50Nanos, long p90Nanos, long p99Nanos,
+                          long maxNanos) {
+        this.count = count;
+        this.errors = errors;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @return the number of timed calls, failed or not
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of calls that threw an exception
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySummary{count=" + count + ", errors=" + errors + ", mean=" + meanNanos + "ns, p50=" + p50Nanos
+                + "ns, p90=" + p90Nanos + "ns, p99=" + p99Nanos + "ns, max=" + maxNanos + "ns}";
+    }
+}
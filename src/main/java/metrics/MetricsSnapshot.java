@@ -0,0 +1,73 @@
+package metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The metrics of {@link ConsultationMetrics} read at some moment, it doesn't change afterwards
+ */
+public final class MetricsSnapshot {
+    private final Map<String, LatencySummary> steps;
+    private final Map<Operation, LatencySummary> operations;
+    private final String[] states;
+    private final long[] transitions; // by from * number of states + to
+
+    MetricsSnapshot(LinkedHashMap<String, LatencySummary> steps, EnumMap<Operation, LatencySummary> operations,
+                    String[] states, long[] transitions) {
+        this.steps = Collections.unmodifiableMap(steps);
+        this.operations = Collections.unmodifiableMap(operations);
+        this.states = states;
+        this.transitions = transitions;
+    }
+
+    /**
+     * @return the latencies of the steps, by name in the order they were given
+     */
+    public Map<String, LatencySummary> getSteps() {
+        return steps;
+    }
+
+    public Map<Operation, LatencySummary> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return the latencies of the step, null if there is no step with the name
+     */
+    public LatencySummary getStep(String step) {
+        return steps.get(step);
+    }
+
+    public LatencySummary getOperation(Operation operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * @return the number of steps that left the state from for the state to, 0 for unknown states
+     */
+    public long getTransitions(String from, String to) {
+        int i = indexOf(from);
+        int j = indexOf(to);
+        return (i < 0 || j < 0) ? 0 : transitions[i * states.length + j];
+    }
+
+    /**
+     * @return the transitions that happened at least once, by "FROM->TO" in the order of the states
+     */
+    public Map<String, Long> getTransitions() {
+        Map<String, Long> happened = new LinkedHashMap<>();
+        for (int i = 0; i < transitions.length; i++) {
+            if (transitions[i] != 0)
+                happened.put(states[i / states.length] + "->" + states[i % states.length], transitions[i]);
+        }
+        return happened;
+    }
+
+    private int indexOf(String state) {
+        for (int i = 0; i < states.length; i++)
+            if (states[i].equals(state)) return i;
+        return -1;
+    }
+}
@@ -0,0 +1,17 @@
+package metrics;
+
+/**
+ * The calls to the external services that are timed
+ */
+public enum Operation {
+    HNS_GET_MEDICAL_HISTORY,
+    HNS_GET_MEDICAL_PRESCRIPTION,
+    HNS_SEND_HISTORY_AND_PRESCRIPTION,
+    HNS_SEND_CHANGES,
+    HNS_SEND_BATCH,
+    HNS_GENERATE_CODE,
+    AI_INIT,
+    AI_GET_SUGGESTIONS,
+    AI_STREAM_SUGGESTIONS,
+    AI_PARSE_SUGGESTIONS
+}
@@ -0,0 +1,60 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A row of counters split in stripes, like a LongAdder for many counters at once.
+ * Every thread increments the copy of its stripe, picked by thread id, so the threads rarely write the same
+ * cache line, and the stripes are only added up when the counters are read.
+ * An increment is a single atomic add, cheaper than a LongAdder when there is no contention.
+ */
+final class StripedCounters {
+
+    static final int STRIPES;
+    private static final int PADDING = 8; // a cache line of longs between the stripes
+
+    static {
+        int processors = Runtime.getRuntime().availableProcessors();
+        STRIPES = Math.min(8, Integer.highestOneBit(Math.max(1, processors - 1) << 1));
+    }
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+    private final int size;
+
+    StripedCounters(int size) {
+        this.size = size;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new AtomicLongArray(size + PADDING);
+    }
+
+    void increment(int counter) {
+        stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)].getAndIncrement(counter);
+    }
+
+    long sum(int counter) {
+        long sum = 0;
+        for (AtomicLongArray stripe : stripes) sum += stripe.get(counter);
+        return sum;
+    }
+
+    /**
+     * @return all the counters, the increments made while reading may be partly left out
+     */
+    long[] sums() {
+        long[] sums = new long[size];
+        for (AtomicLongArray stripe : stripes)
+            for (int i = 0; i < size; i++) sums[i] += stripe.get(i);
+        return sums;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Sets every counter to 0, the increments made at the same time may be kept or not
+     */
+    void reset() {
+        for (AtomicLongArray stripe : stripes)
+            for (int i = 0; i < size; i++) stripe.set(i, 0);
+    }
+}
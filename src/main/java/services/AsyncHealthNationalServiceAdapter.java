@@ -0,0 +1,80 @@
+package services;
+
+import data.HealthCardID;
+import exceptions.ConnectException;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import services.interfaces.AsyncHealthNationalService;
+import services.interfaces.HealthNationalService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the calls of any synchronous {@link HealthNationalService} on an executor,
+ * so several of them can be waiting on the HNS at the same time.
+ */
+public class AsyncHealthNationalServiceAdapter implements AsyncHealthNationalService {
+
+    private final HealthNationalService healthNationalService;
+    private final Executor executor;
+
+    /**
+     * Constructor of the class
+     *
+     * @param healthNationalService the synchronous HNS
+     * @param executor              the executor where the blocking calls are run
+     */
+    public AsyncHealthNationalServiceAdapter(HealthNationalService healthNationalService, Executor executor) {
+        if (healthNationalService == null) throw new IllegalArgumentException("HealthNationalService can't be null");
+        if (executor == null) throw new IllegalArgumentException("Executor can't be null");
+        this.healthNationalService = healthNationalService;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<MedicalHistory> getMedicalHistory(HealthCardID cip) {
+        return call(() -> healthNationalService.getMedicalHistory(cip));
+    }
+
+    @Override
+    public CompletableFuture<MedicalPrescription> getMedicalPrescription(HealthCardID cip, String illness) {
+        return call(() -> healthNationalService.getMedicalPrescription(cip, illness));
+    }
+
+    @Override
+    public CompletableFuture<MedicalPrescription> sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce,
+                                                                             String illness, MedicalPrescription mPresc) {
+        return call(() -> healthNationalService.sendHistoryAndPrescription(cip, hce, illness, mPresc));
+    }
+
+    @Override
+    public CompletableFuture<MedicalPrescription> generateTreatmCodeAndRegister(MedicalPrescription ePresc) {
+        return call(() -> healthNationalService.generateTreatmCodeAndRegister(ePresc));
+    }
+
+    // An executor that is full or shut down can't reach the HNS either, the future fails with a ConnectException.
+    // A future cancelled before its call starts skips the call, a call already running is not interrupted
+    private <T> CompletableFuture<T> call(ServiceCall<T> serviceCall) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (future.isCancelled()) return; // Nobody waits for it any more
+                try {
+                    future.complete(serviceCall.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new ConnectException("HNS call rejected: " + e.getMessage()));
+        }
+        return future;
+    }
+
+    @FunctionalInterface
+    private interface ServiceCall<T> {
+        T call() throws Exception;
+    }
+}
@@ -0,0 +1,175 @@
+package services;
+
+import services.interfaces.TerminalView;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Hands the screens to another view on a renderer thread, so the terminals never wait for the console.
+ * The screens wait in a bounded lock-free ring buffer that many terminals can fill at once.
+ * When it is full the screen is dropped and counted instead of blocking the terminal.
+ * The screens are built on the renderer thread, so a screen must only read values that don't change afterwards.
+ * The renderer parks while there is nothing to show: it says it is going to sleep before looking at the buffer
+ * for the last time, and the terminals look at whether it sleeps after publishing their screen, so one of them
+ * always sees the other and the renderer is woken for every screen.
+ * The terminals count themselves as publishing before they look at whether the view is closed, and the renderer
+ * only stops once it is closed and nobody is publishing, so a screen is either shown or counted as dropped.
+ */
+public class AsyncTerminalView implements TerminalView, AutoCloseable {
+
+    private final TerminalView delegate;
+    private final int mask;
+    private final Object[] screens;
+    // The turn of every slot: equal to the position when it can be written, to the position + 1 when it can be read
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(); // next position to write, shared by the terminals
+    private final AtomicInteger publishing = new AtomicInteger(); // terminals between the closed check and the offer
+    private volatile long head = 0; // next position to read, only written by the renderer
+    private volatile long rendered = 0;
+    private volatile boolean sleeping = false;
+    private volatile boolean closed = false;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Thread renderer;
+
+    /**
+     * Constructor of the class, starts the renderer thread
+     *
+     * @param delegate the view that really shows the screens
+     * @param capacity the maximum number of screens waiting, rounded up to a power of two
+     */
+    public AsyncTerminalView(TerminalView delegate, int capacity) {
+        if (delegate == null) throw new IllegalArgumentException("TerminalView can't be null");
+        if (capacity <= 0 || capacity > 1 << 30) throw new IllegalArgumentException("Capacity must be > 0");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.delegate = delegate;
+        this.mask = size - 1;
+        this.screens = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+        this.renderer = new Thread(this::render, "terminal-renderer");
+        this.renderer.setDaemon(true);
+        this.renderer.start();
+    }
+
+    @Override
+    public void show(Supplier<String> screen) {
+        publishing.incrementAndGet();
+        boolean offered;
+        try {
+            offered = !closed && offer(screen);
+        } finally {
+            publishing.decrementAndGet();
+        }
+        if (!offered) {
+            dropped.increment();
+            return;
+        }
+        if (sleeping) LockSupport.unpark(renderer);
+    }
+
+    private boolean offer(Supplier<String> screen) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    screens[slot] = screen;
+                    sequences.set(slot, position + 1); // Publishes the screen
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // The slot still holds the screen of the previous turn, the buffer is full
+            } else {
+                position = tail.get(); // Another terminal took the position
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Supplier<String> poll() {
+        long position = head;
+        int slot = (int) position & mask;
+        if (sequences.get(slot) != position + 1) return null;
+        Supplier<String> screen = (Supplier<String>) screens[slot];
+        screens[slot] = null;
+        sequences.set(slot, position + mask + 1); // Frees the slot for the next turn
+        head = position + 1;
+        return screen;
+    }
+
+    private void render() {
+        while (true) {
+            Supplier<String> screen = poll();
+            if (screen != null) {
+                try {
+                    delegate.show(screen);
+                } catch (RuntimeException e) {
+                    failed.increment();
+                }
+                rendered++; // Only this thread writes it
+                continue;
+            }
+            if (closed) {
+                // A terminal that saw the view open may not have published its screen yet
+                if (publishing.get() == 0 && head == tail.get()) return;
+                Thread.onSpinWait();
+                continue;
+            }
+            sleeping = true;
+            if (!closed && head == tail.get()) LockSupport.park(this); // Woken by show or close
+            sleeping = false;
+        }
+    }
+
+    /**
+     * Waits until the screens given before the call are shown
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        long target = tail.get();
+        while (rendered < target && renderer.isAlive()) Thread.sleep(0, 100_000);
+    }
+
+    /**
+     * Stops accepting screens, shows the pending ones and stops the renderer thread.
+     * If interrupted while waiting, the renderer goes on showing the pending screens and the interrupt status is kept
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(renderer);
+        try {
+            renderer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the screens dropped because the buffer was full or the view was closed
+     */
+    public long getDroppedScreens() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the screens whose rendering threw an exception
+     */
+    public long getFailedScreens() {
+        return failed.sum();
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,182 @@
+package services;
+
+import data.HealthCardID;
+import exceptions.SubmissionRejectedException;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import services.interfaces.HealthNationalService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Submission stage that groups the signed prescriptions of many terminals into bulk calls to the HNS.
+ * A batch is sent when it reaches the maximum size or when its oldest submission has waited the maximum delay.
+ * The queue is bounded: when it is full, submit waits and trySubmit gives up after its timeout.
+ * The thread that sends the batches waits on the queue while there is nothing to send, close wakes it queueing
+ * a submission of its own after the last one.
+ */
+public class BatchingPrescriptionSubmitter implements AutoCloseable {
+
+    private static final PrescriptionSubmission CLOSED = new PrescriptionSubmission(null, null, null, null);
+
+    private final HealthNationalService healthNationalService;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PrescriptionSubmission> queue;
+    private final Thread worker;
+
+    // Submitters share the read lock, close takes the write lock so nothing is queued after it
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor of the class, starts the thread that sends the batches
+     *
+     * @param healthNationalService the HNS
+     * @param maxBatchSize          the maximum number of submissions per bulk call
+     * @param maxDelay              how long a submission can wait for its batch to fill
+     * @param unit                  the unit of the delay
+     * @param queueCapacity         the maximum number of pending submissions
+     */
+    public BatchingPrescriptionSubmitter(HealthNationalService healthNationalService, int maxBatchSize,
+                                         long maxDelay, TimeUnit unit, int queueCapacity) {
+        if (healthNationalService == null) throw new IllegalArgumentException("HealthNationalService can't be null");
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("Batch size must be > 0");
+        if (maxDelay < 0) throw new IllegalArgumentException("Delay can't be negative");
+        if (queueCapacity <= 0) throw new IllegalArgumentException("Queue capacity must be > 0");
+        this.healthNationalService = healthNationalService;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.worker = new Thread(this::sendBatches, "prescription-batcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues a history and prescription, waiting while the queue is full
+     *
+     * @return the future of the prescription registered by the HNS, with its ePrescripCode
+     * @throws InterruptedException         if interrupted while waiting for room in the queue
+     * @throws SubmissionRejectedException  if the submitter is closed
+     */
+    public CompletableFuture<MedicalPrescription> submit(HealthCardID cip, MedicalHistory hce, String illness,
+                                                         MedicalPrescription mPresc)
+            throws InterruptedException, SubmissionRejectedException {
+        PrescriptionSubmission submission = new PrescriptionSubmission(cip, hce, illness, mPresc);
+        closeLock.readLock().lock();
+        try {
+            if (closed) throw new SubmissionRejectedException("The submitter is closed");
+            queue.put(submission);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return submission.getResult();
+    }
+
+    /**
+     * Queues a history and prescription, waiting at most the timeout while the queue is full
+     *
+     * @return the future of the prescription registered by the HNS, with its ePrescripCode
+     * @throws InterruptedException        if interrupted while waiting for room in the queue
+     * @throws SubmissionRejectedException if the submitter is closed or the queue is still full after the timeout
+     */
+    public CompletableFuture<MedicalPrescription> trySubmit(HealthCardID cip, MedicalHistory hce, String illness,
+                                                            MedicalPrescription mPresc, long timeout, TimeUnit unit)
+            throws InterruptedException, SubmissionRejectedException {
+        PrescriptionSubmission submission = new PrescriptionSubmission(cip, hce, illness, mPresc);
+        closeLock.readLock().lock();
+        try {
+            if (closed) throw new SubmissionRejectedException("The submitter is closed");
+            if (!queue.offer(submission, timeout, unit))
+                throw new SubmissionRejectedException("The submission queue is full");
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return submission.getResult();
+    }
+
+    /**
+     * Stops accepting submissions, sends the pending ones and waits for the last batch.
+     * If interrupted while waiting, the submissions not sent yet are failed and the interrupt status is kept
+     */
+    @Override
+    public void close() {
+        boolean first;
+        closeLock.writeLock().lock();
+        try {
+            first = !closed;
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            if (first) queue.put(CLOSED); // Nothing is queued after it
+            worker.join();
+        } catch (InterruptedException e) {
+            worker.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPendingSubmissions() {
+        return queue.size();
+    }
+
+    private void sendBatches() {
+        List<PrescriptionSubmission> batch = new ArrayList<>(maxBatchSize);
+        try {
+            boolean open = true;
+            while (open) {
+                PrescriptionSubmission first = queue.take();
+                if (first == CLOSED) break;
+                batch.add(first);
+
+                // Fill the batch until it is full or the first submission has waited enough
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) == 0) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0 || closed) break;
+                        PrescriptionSubmission next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                    if (batch.get(batch.size() - 1) == CLOSED) { // Always the last one
+                        batch.remove(batch.size() - 1);
+                        open = false;
+                        break;
+                    }
+                }
+                send(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            for (PrescriptionSubmission submission : batch)
+                submission.getResult().completeExceptionally(e);
+            PrescriptionSubmission pending;
+            while ((pending = queue.poll()) != null)
+                pending.getResult().completeExceptionally(e);
+        }
+    }
+
+    private void send(List<PrescriptionSubmission> batch) {
+        try {
+            healthNationalService.sendHistoriesAndPrescriptions(new ArrayList<>(batch));
+        } catch (RuntimeException e) {
+            for (PrescriptionSubmission submission : batch)
+                submission.getResult().completeExceptionally(e);
+        }
+        // A bulk implementation must complete every submission, don't leave callers waiting forever
+        for (PrescriptionSubmission submission : batch)
+            if (!submission.getResult().isDone())
+                submission.getResult().completeExceptionally(
+                        new IllegalStateException("The HNS didn't answer this submission"));
+    }
+}
@@ -0,0 +1,247 @@
+package services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Size-bounded cache with LRU eviction and a time to live, safe to share between sessions.
+ * The keys are spread over independent segments, each one with its own lock and its own LRU order,
+ * so lookups of unrelated keys don't contend.
+ * The size is the number of entries, or the sum of their weights when the cache is built with a weigher.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class BoundedCache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final ToLongBiFunction<? super K, ? super V> weigher;
+
+    // Statistics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * Constructor of the class
+     *
+     * @param maxEntries the maximum number of entries
+     * @param ttl        how long an entry lives since it was stored
+     * @param unit       the unit of the ttl
+     */
+    public BoundedCache(int maxEntries, long ttl, TimeUnit unit) {
+        this(maxEntries, (key, value) -> 1, ttl, unit, System::nanoTime);
+    }
+
+    /**
+     * Constructor of a cache bounded by the weight of its entries, such as their size in bytes.
+     * Every segment holds an even share of the maximum weight, an entry heavier than a share is not kept
+     *
+     * @param maxWeight the maximum sum of the weights of the entries
+     * @param weigher   the weight of an entry, it must be >= 0 and not change while the entry is cached
+     * @param ttl       how long an entry lives since it was stored
+     * @param unit      the unit of the ttl
+     */
+    public BoundedCache(long maxWeight, ToLongBiFunction<? super K, ? super V> weigher, long ttl, TimeUnit unit) {
+        this(maxWeight, weigher, ttl, unit, System::nanoTime);
+    }
+
+    BoundedCache(int maxEntries, long ttl, TimeUnit unit, LongSupplier clock) {
+        this(maxEntries, (key, value) -> 1, ttl, unit, clock);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // A generic array is created raw
+    BoundedCache(long maxWeight, ToLongBiFunction<? super K, ? super V> weigher, long ttl, TimeUnit unit,
+                 LongSupplier clock) {
+        if (maxWeight <= 0) throw new IllegalArgumentException("Max entries or weight must be > 0");
+        if (weigher == null) throw new IllegalArgumentException("Weigher can't be null");
+        if (ttl <= 0) throw new IllegalArgumentException("TTL must be > 0");
+        int segmentCount = (int) Math.min(MAX_SEGMENTS, Long.highestOneBit(maxWeight));
+        long segmentCapacity = (maxWeight + segmentCount - 1) / segmentCount;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+            segments[i] = new Segment<>(segmentCapacity);
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @param key the key
+     * @return the cached value, or null if it is not cached or has expired
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = clock.getAsLong();
+        segment.lock.lock();
+        try {
+            Entry<V> entry = segment.map.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (now - entry.expiresAt >= 0) {
+                segment.remove(key);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Stores a value, evicting the least recently used entries of its segment if it is full.
+     * A value heavier than a segment is not stored, and the one cached for its key is removed
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        if (key == null || value == null) throw new IllegalArgumentException("Key and value can't be null");
+        long weight = weigher.applyAsLong(key, value);
+        if (weight < 0) throw new IllegalArgumentException("Weight can't be negative");
+        Segment<K, V> segment = segmentFor(key);
+        Entry<V> entry = new Entry<>(value, clock.getAsLong() + ttlNanos, weight);
+        segment.lock.lock();
+        try {
+            if (weight > segment.capacity) {
+                // It would evict the whole segment and then itself, the value it replaces is stale anyway
+                segment.remove(key);
+                return;
+            }
+            Entry<V> old = segment.map.put(key, entry);
+            if (old != null) segment.weight -= old.weight;
+            segment.weight += weight;
+            Iterator<Entry<V>> eldest = segment.map.values().iterator();
+            while (segment.weight > segment.capacity) {
+                segment.weight -= eldest.next().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            segment.remove(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.map.clear();
+                segment.weight = 0;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries stored, including the expired ones not removed yet
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the sum of the weights of the entries stored, the number of entries without a weigher
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                weight += segment.weight;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return weight;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+
+    // Statistics getters
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+
+    private static final class Segment<K, V> {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true); // access order
+        final long capacity; // maximum weight
+        long weight = 0;
+
+        Segment(long capacity) {
+            this.capacity = capacity;
+        }
+
+        // Called with the lock held
+        void remove(K key) {
+            Entry<V> entry = map.remove(key);
+            if (entry != null) weight -= entry.weight;
+        }
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+        final long weight;
+
+        Entry(V value, long expiresAt, long weight) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+    }
+}
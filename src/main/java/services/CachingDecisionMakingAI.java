@@ -0,0 +1,261 @@
+package services;
+
+import data.PromptNormalizer;
+import data.Suggestion;
+import exceptions.AIException;
+import exceptions.BadPromptException;
+import exceptions.SuggestionException;
+import services.interfaces.DecisionMakingAI;
+import services.interfaces.SuggestionListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through cache in front of another AI, for the prompts of chronic treatments that many doctors repeat.
+ * The prompts are looked up by their {@link PromptNormalizer normal form}. Every cached entry keeps the raw
+ * answer and its parsed suggestions, so a streamed answer is replayed and a cached answer parsed without
+ * parsing it again, and the cache is bounded by the approximate size in bytes of the entries.
+ * A miss always asks the AI by streaming, so an answer is parsed the same way whichever call asked it:
+ * the answers with an unreadable suggestion are never cached.
+ * When several sessions ask the same prompt at once only one of them calls the AI, the others wait for
+ * its answer. The failed answers are not cached, the sessions waiting for one get the same error.
+ */
+public class CachingDecisionMakingAI implements DecisionMakingAI {
+
+    // Approximate bytes of the objects around the Strings of an entry and of every suggestion
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int SUGGESTION_SIZE = 160;
+
+    private final DecisionMakingAI ai;
+    private final BoundedCache<String, Answer> answers;
+    private final BoundedCache<String, Answer> parses; // the same entries, by their raw answer
+    private final ConcurrentMap<String, CompletableFuture<Answer>> inFlight = new ConcurrentHashMap<>();
+
+    // Statistics
+    private final LongAdder upstreamCalls = new LongAdder();
+    private final LongAdder coalescedCalls = new LongAdder();
+
+    /**
+     * Constructor of the class
+     *
+     * @param ai       the AI to cache
+     * @param maxBytes the approximate maximum size of the cached answers
+     * @param ttl      how long an answer is served from the cache
+     * @param unit     the unit of the ttl
+     */
+    public CachingDecisionMakingAI(DecisionMakingAI ai, long maxBytes, long ttl, TimeUnit unit) {
+        this(ai, new BoundedCache<>(maxBytes, CachingDecisionMakingAI::weigh, ttl, unit),
+                new BoundedCache<>(maxBytes, (answer, entry) -> ENTRY_OVERHEAD, ttl, unit));
+    }
+
+    CachingDecisionMakingAI(DecisionMakingAI ai, BoundedCache<String, Answer> answers,
+                            BoundedCache<String, Answer> parses) {
+        if (ai == null) throw new IllegalArgumentException("DecisionMakingAI can't be null");
+        this.ai = ai;
+        this.answers = answers;
+        this.parses = parses;
+    }
+
+    @Override
+    public void initDecisionMakingAI() throws AIException {
+        ai.initDecisionMakingAI();
+    }
+
+    @Override
+    public String getSuggestions(String prompt) throws BadPromptException {
+        if (prompt == null) return ai.getSuggestions(null);
+        return answer(prompt, null).answer;
+    }
+
+    /**
+     * The suggestions of a cached answer are served from its entry, the other answers are parsed by the AI
+     */
+    @Override
+    public List<Suggestion> parseSuggest(String aiAnswer) {
+        Answer cached = (aiAnswer == null) ? null : parses.get(aiAnswer);
+        if (cached != null) return new ArrayList<>(cached.suggestions);
+        return ai.parseSuggest(aiAnswer);
+    }
+
+    /**
+     * Streams the answer of the AI on a miss, and replays the cached one on a hit.
+     * The sessions that wait for the same prompt get it replayed once it is complete
+     */
+    @Override
+    public void streamSuggestions(String prompt, SuggestionListener listener) throws BadPromptException {
+        if (prompt == null) {
+            ai.streamSuggestions(null, listener);
+            return;
+        }
+        Answer answer = answer(prompt, listener);
+        if (answer == null) return; // Asked to the AI by this call, the listener already got it while it arrived
+        listener.onChunk(answer.answer);
+        for (Suggestion suggestion : answer.suggestions) listener.onSuggestion(suggestion);
+        if (answer.error != null) listener.onInvalidSuggestion(answer.error);
+    }
+
+    // The cached answer, or the one of the AI asked by another session.
+    // If this call asks the AI, the answer is streamed to the listener if there is one and then null is returned
+    private Answer answer(String prompt, SuggestionListener listener) throws BadPromptException {
+        String key = PromptNormalizer.normalize(prompt);
+        Answer cached = answers.get(key);
+        if (cached != null) return cached;
+
+        CompletableFuture<Answer> mine = new CompletableFuture<>();
+        CompletableFuture<Answer> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            coalescedCalls.increment();
+            return await(leader);
+        }
+        try {
+            // The previous leader may have cached it between the lookup and becoming the leader
+            Answer answer = answers.get(key);
+            if (answer != null) {
+                mine.complete(answer);
+                return answer;
+            }
+            upstreamCalls.increment();
+            Recorder recorder = new Recorder(listener);
+            ai.streamSuggestions(prompt, recorder);
+            answer = recorder.toAnswer();
+            if (answer.error == null) {
+                answers.put(key, answer);
+                parses.put(answer.answer, answer);
+            }
+            mine.complete(answer);
+            // The waiting sessions already got the answer, the failure of this session's listener is for it alone
+            if (recorder.listenerFailure != null) throw recorder.listenerFailure;
+            return (listener == null) ? answer : null;
+        } catch (BadPromptException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static Answer await(CompletableFuture<Answer> leader) throws BadPromptException {
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BadPromptException("Interrupted while waiting for the AI");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BadPromptException) throw (BadPromptException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new BadPromptException("Unexpected AI error: " + cause);
+        }
+    }
+
+    private static long weigh(String key, Answer answer) {
+        return ENTRY_OVERHEAD + 2L * (key.length() + answer.answer.length())
+                + (long) SUGGESTION_SIZE * answer.suggestions.size();
+    }
+
+
+    // Statistics getters
+
+    public BoundedCache<String, Answer> getAnswerCache() {
+        return answers;
+    }
+
+    /**
+     * @return the calls that reached the AI
+     */
+    public long getUpstreamCalls() {
+        return upstreamCalls.sum();
+    }
+
+    /**
+     * @return the calls that waited for the same prompt asked by another session instead of calling the AI
+     */
+    public long getCoalescedCalls() {
+        return coalescedCalls.sum();
+    }
+
+
+    // Keeps a copy of the answer while it is streamed to the listener of the session that asked it, if any.
+    // A listener that throws is not called again, and the AI is still read to the end for the waiting sessions
+    private static final class Recorder implements SuggestionListener {
+        private final SuggestionListener listener;
+        private final StringBuilder answer = new StringBuilder();
+        private final List<Suggestion> suggestions = new ArrayList<>();
+        private SuggestionException error;
+        private RuntimeException listenerFailure;
+
+        Recorder(SuggestionListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onChunk(CharSequence chunk) {
+            answer.append(chunk);
+            if (listener == null || listenerFailure != null) return;
+            try {
+                listener.onChunk(chunk);
+            } catch (RuntimeException e) {
+                listenerFailure = e;
+            }
+        }
+
+        @Override
+        public void onSuggestion(Suggestion suggestion) {
+            suggestions.add(suggestion);
+            if (listener == null || listenerFailure != null) return;
+            try {
+                listener.onSuggestion(suggestion);
+            } catch (RuntimeException e) {
+                listenerFailure = e;
+            }
+        }
+
+        @Override
+        public void onInvalidSuggestion(SuggestionException e) {
+            error = e;
+            if (listener == null || listenerFailure != null) return;
+            try {
+                listener.onInvalidSuggestion(e);
+            } catch (RuntimeException failure) {
+                listenerFailure = failure;
+            }
+        }
+
+        Answer toAnswer() {
+            return new Answer(answer.toString(), suggestions, error);
+        }
+    }
+
+
+    /**
+     * A cached answer of the AI
+     */
+    public static final class Answer {
+        private final String answer;
+        private final List<Suggestion> suggestions;
+        private final SuggestionException error; // the answer had an unreadable suggestion, it is not cached
+
+        Answer(String answer, List<Suggestion> suggestions, SuggestionException error) {
+            this.answer = answer;
+            this.suggestions = Collections.unmodifiableList(suggestions);
+            this.error = error;
+        }
+
+        public String getAnswer() {
+            return answer;
+        }
+
+        public List<Suggestion> getSuggestions() {
+            return suggestions;
+        }
+    }
+}
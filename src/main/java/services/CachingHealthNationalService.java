@@ -0,0 +1,220 @@
+package services;
+
+import data.HealthCardID;
+import exceptions.*;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import medicalconsultation.PrescriptionCodec;
+import services.interfaces.HealthNationalService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Read-through cache in front of another HNS, for the chronic patients that come back often.
+ * The histories are cached by HealthCardID and the prescriptions by HealthCardID and illness, as snapshots that
+ * are never changed: every caller gets its own copy, so the edits of a revision never reach the cache or
+ * another session. Both entries of a patient are dropped once their history and prescription are sent successfully.
+ * The entries are stamped with the invalidation generation of the patient when they are fetched,
+ * so a fetch that ends after the patient was invalidated is never served.
+ */
+public class CachingHealthNationalService implements HealthNationalService {
+    private static final int GENERATION_STRIPES = 256;
+
+    private final HealthNationalService healthNationalService;
+    private final BoundedCache<HealthCardID, CachedHistory> histories;
+    private final BoundedCache<PrescriptionKey, CachedPrescription> prescriptions;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES); // by patient
+
+    /**
+     * Constructor of the class
+     *
+     * @param healthNationalService the HNS to cache
+     * @param maxEntries            the maximum number of histories, and of prescriptions, cached
+     * @param ttl                   how long a history or prescription is served from the cache
+     * @param unit                  the unit of the ttl
+     */
+    public CachingHealthNationalService(HealthNationalService healthNationalService, int maxEntries,
+                                        long ttl, TimeUnit unit) {
+        this(healthNationalService, new BoundedCache<>(maxEntries, ttl, unit), new BoundedCache<>(maxEntries, ttl, unit));
+    }
+
+    CachingHealthNationalService(HealthNationalService healthNationalService,
+                                 BoundedCache<HealthCardID, CachedHistory> histories,
+                                 BoundedCache<PrescriptionKey, CachedPrescription> prescriptions) {
+        if (healthNationalService == null) throw new IllegalArgumentException("HealthNationalService can't be null");
+        this.healthNationalService = healthNationalService;
+        this.histories = histories;
+        this.prescriptions = prescriptions;
+    }
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        if (cip == null) return healthNationalService.getMedicalHistory(null);
+        long generation = generation(cip);
+        CachedHistory cached = histories.get(cip);
+        if (cached != null && cached.generation == generation) return cached.snapshot.toHistory(cip);
+        MedicalHistory history = healthNationalService.getMedicalHistory(cip);
+        if (history != null) histories.put(cip, new CachedHistory(HistorySnapshot.of(history), generation));
+        return history;
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException, MedicalPrescriptionException {
+        if (cip == null || illness == null) return healthNationalService.getMedicalPrescription(cip, illness);
+        PrescriptionKey key = new PrescriptionKey(cip, illness);
+        long generation = generation(cip);
+        CachedPrescription cached = prescriptions.get(key);
+        if (cached != null && cached.generation == generation) return cached.toPrescription();
+        MedicalPrescription prescription = healthNationalService.getMedicalPrescription(cip, illness);
+        if (prescription != null) {
+            try {
+                prescriptions.put(key, new CachedPrescription(PrescriptionCodec.encode(prescription),
+                        prescription.isTracked() ? prescription.getVersion() : 0, generation));
+            } catch (PrescriptionCodecException e) {
+                // It can't be copied, it isn't cached
+            }
+        }
+        return prescription;
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce, String illness,
+                                                          MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+        MedicalPrescription registered = healthNationalService.sendHistoryAndPrescription(cip, hce, illness, mPresc);
+        invalidate(cip, illness);
+        return registered;
+    }
+
+    // The cached records are stale as well when they changed at the HNS since they were got
+    @Override
+    public MedicalPrescription sendHistoryAndPrescriptionChanges(HealthCardID cip, MedicalHistory hce, String illness,
+                                                                 MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+        MedicalPrescription registered;
+        try {
+            registered = healthNationalService.sendHistoryAndPrescriptionChanges(cip, hce, illness, mPresc);
+        } catch (VersionConflictException e) {
+            invalidate(cip, illness);
+            throw e;
+        }
+        invalidate(cip, illness);
+        return registered;
+    }
+
+    @Override
+    public void sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch) {
+        for (PrescriptionSubmission submission : batch)
+            submission.getResult().thenRun(() -> invalidate(submission.getCip(), submission.getIllness()));
+        healthNationalService.sendHistoriesAndPrescriptions(batch);
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ConnectException, ePrescripCodeException, MedicalPrescriptionException {
+        return healthNationalService.generateTreatmCodeAndRegister(ePresc);
+    }
+
+    /**
+     * Drops the cached history and prescription of a patient
+     *
+     * @param cip     the HealthCardID of the patient
+     * @param illness the illness of the prescription
+     */
+    public void invalidate(HealthCardID cip, String illness) {
+        if (cip == null) return;
+        generations.incrementAndGet(stripeOf(cip)); // The fetches running now won't be served
+        histories.invalidate(cip);
+        if (illness != null) prescriptions.invalidate(new PrescriptionKey(cip, illness));
+    }
+
+
+    private long generation(HealthCardID cip) {
+        return generations.get(stripeOf(cip));
+    }
+
+    private static int stripeOf(HealthCardID cip) {
+        int h = cip.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+
+    // Statistics getters
+
+    public BoundedCache<HealthCardID, ?> getHistoryCache() {
+        return histories;
+    }
+
+    public BoundedCache<PrescriptionKey, ?> getPrescriptionCache() {
+        return prescriptions;
+    }
+
+
+    // A cached history, the generation of the patient it was fetched at
+    static final class CachedHistory {
+        final HistorySnapshot snapshot;
+        final long generation;
+
+        CachedHistory(HistorySnapshot snapshot, long generation) {
+            this.snapshot = snapshot;
+            this.generation = generation;
+        }
+    }
+
+    // A cached prescription, encoded with its version, 0 if it wasn't tracked
+    static final class CachedPrescription {
+        final byte[] encoded;
+        final long version;
+        final long generation;
+
+        CachedPrescription(byte[] encoded, long version, long generation) {
+            this.encoded = encoded;
+            this.version = version;
+            this.generation = generation;
+        }
+
+        MedicalPrescription toPrescription() {
+            MedicalPrescription prescription;
+            try {
+                prescription = PrescriptionCodec.decode(encoded);
+            } catch (PrescriptionCodecException e) {
+                throw new IllegalStateException(e); // It was encoded by the cache
+            }
+            if (version > 0) prescription.markSynchronized(version);
+            return prescription;
+        }
+    }
+
+
+    /**
+     * Key of a cached prescription
+     */
+    public static final class PrescriptionKey {
+        private final HealthCardID cip;
+        private final String illness;
+
+        PrescriptionKey(HealthCardID cip, String illness) {
+            this.cip = cip;
+            this.illness = illness;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PrescriptionKey key = (PrescriptionKey) o;
+            return cip.equals(key.cip) && illness.equals(key.illness);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * cip.hashCode() + illness.hashCode();
+        }
+    }
+}
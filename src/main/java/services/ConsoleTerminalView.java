@@ -0,0 +1,35 @@
+package services;
+
+import services.interfaces.TerminalView;
+
+import java.io.PrintStream;
+import java.util.function.Supplier;
+
+/**
+ * Shows the screens on a console as soon as they are given, on the calling thread
+ */
+public class ConsoleTerminalView implements TerminalView {
+    private final PrintStream out;
+
+    public ConsoleTerminalView() {
+        this(System.out);
+    }
+
+    /**
+     * @param out the console
+     */
+    public ConsoleTerminalView(PrintStream out) {
+        if (out == null) throw new IllegalArgumentException("PrintStream can't be null");
+        this.out = out;
+    }
+
+    @Override
+    public void show(Supplier<String> screen) {
+        out.println(screen.get());
+    }
+
+    @Override
+    public void show(String message) {
+        out.println(message);
+    }
+}
@@ -0,0 +1,110 @@
+package services;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Threads for running one consultation each.
+ * On a JVM with virtual threads (Java 21 and later) every consultation gets a virtual thread, so tens of thousands
+ * of them can wait on the HNS and the AI at once for a few kilobytes each. They are looked up by reflection,
+ * as the project is still built for Java 17, where the consultations get platform threads with a small stack
+ * instead: at most 256 at once, a consultation waiting for one to end before starting, and not daemon, so the JVM
+ * doesn't exit in the middle of sending a prescription.
+ * The code run on them must wait with java.util.concurrent locks and not inside synchronized blocks,
+ * which would pin the virtual thread to its carrier.
+ */
+public final class ConsultationThreads {
+
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+    private static final int MAX_PLATFORM_CONSULTATIONS = 256;
+    private static final String PREFIX = "consultation-";
+    private static final AtomicLong PLATFORM_COUNTER = new AtomicLong();
+
+    private static final ThreadFactory VIRTUAL = virtualThreadFactory();
+    private static final ThreadFactory FACTORY = (VIRTUAL != null) ? VIRTUAL : platformThreadFactory();
+    private static final Executor PER_CONSULTATION = (VIRTUAL != null) ? task -> VIRTUAL.newThread(task).start()
+            : boundedPlatformThreads(MAX_PLATFORM_CONSULTATIONS);
+
+    private ConsultationThreads() {
+    }
+
+    /**
+     * @return true if the consultations run on virtual threads
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL != null;
+    }
+
+    /**
+     * @return the factory of the consultation threads, virtual if the JVM has them, it doesn't bound them
+     */
+    public static ThreadFactory factory() {
+        return FACTORY;
+    }
+
+    /**
+     * @return an executor that starts a new consultation thread for every task, it never has to be shut down.
+     * Without virtual threads it is {@link #boundedPlatformThreads(int)} of 256
+     */
+    public static Executor perConsultation() {
+        return PER_CONSULTATION;
+    }
+
+    /**
+     * An executor that starts a new platform consultation thread for every task, with at most a number of them
+     * running at once: a task waits in execute for a running one to end. It never has to be shut down
+     *
+     * @param maxConsultations the consultations running at once, > 0
+     * @return the executor, it throws RejectedExecutionException if interrupted while waiting
+     */
+    public static Executor boundedPlatformThreads(int maxConsultations) {
+        if (maxConsultations <= 0) throw new IllegalArgumentException("Max consultations must be > 0");
+        Semaphore running = new Semaphore(maxConsultations);
+        ThreadFactory factory = platformThreadFactory();
+        return task -> {
+            try {
+                running.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted waiting for a consultation thread", e);
+            }
+            try {
+                factory.newThread(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        running.release();
+                    }
+                }).start();
+            } catch (RuntimeException | Error e) {
+                running.release();
+                throw e;
+            }
+        };
+    }
+
+    // Thread.ofVirtual().name(PREFIX, 0).factory(), or null if the JVM has no virtual threads
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, PREFIX, 0L);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null; // Not there, or still a preview feature
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        return task -> {
+            Thread thread = new Thread(null, task, PREFIX + PLATFORM_COUNTER.getAndIncrement(), PLATFORM_STACK_SIZE);
+            thread.setDaemon(false); // Not inherited from a daemon caller
+            return thread;
+        };
+    }
+}
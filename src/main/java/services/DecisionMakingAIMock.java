@@ -1,14 +1,13 @@
 package services;
 
-import data.ActionType;
-import data.ProductID;
 import exceptions.BadPromptException;
 import exceptions.AIException;
 
 import data.Suggestion;
-import medicalconsultation.FqUnit;
-import medicalconsultation.dayMoment;
+import data.SuggestionParser;
+import exceptions.SuggestionException;
 import services.interfaces.DecisionMakingAI;
+import services.interfaces.SuggestionListener;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -17,6 +16,9 @@ import java.util.Random;
 
 public class DecisionMakingAIMock implements DecisionMakingAI {
 
+    // Size of the pieces the answers are streamed in
+    private static final int CHUNK_SIZE = 16;
+
     private boolean failWithAIException = false;
     private boolean failWithsuggestions = false;
 
@@ -47,54 +49,41 @@ public class DecisionMakingAIMock implements DecisionMakingAI {
 
     @Override
     public List<Suggestion> parseSuggest(String aiAnswer) {
-        List<Suggestion> list = new ArrayList<>();
-        if (aiAnswer == null || aiAnswer.isEmpty()) return list;
-
-        String clean = aiAnswer.replace("<", "").replace(">", "");
-
-        String[] data = clean.split(",");
-
-        for (int i = 0; i < data.length; i++) {
-            data[i] = data[i].trim();
-        }
-
-        String letter = data[0];
-        ActionType action = switch (letter) {
-            case "I" -> ActionType.ADD;
-            case "R" -> ActionType.DELETE;
-            case "M" -> ActionType.MODIFY;
-            default -> null;
-        };
+        if (aiAnswer == null || aiAnswer.isEmpty() || failWithsuggestions) return new ArrayList<>();
 
         try {
-            ProductID id = new ProductID(data[1]);
-
-            dayMoment mom = null;
-            Double dur = null, dose = null, freq = null;
-            FqUnit unit = null;
-            String instr = null;
-
-            if (action != ActionType.DELETE) {
-                if (!data[2].isEmpty()) mom = dayMoment.valueOf(data[2]);
-                if (!data[3].isEmpty()) dur = Double.valueOf(data[3]);
-                if (!data[4].isEmpty()) dose = Double.valueOf(data[4]);
-                if (!data[5].isEmpty()) freq = Double.valueOf(data[5]);
-                if (!data[6].isEmpty()) unit = FqUnit.valueOf(data[6]);
-                if (data.length > 7) instr = data[7];
-            }
-
-            list.add(new Suggestion(action, id, mom, dur, dose, freq, unit, instr));
-
-        } catch (Exception e) {
+            return SuggestionParser.parseAll(aiAnswer);
+        } catch (SuggestionException e) {
             // Shouldn't happen
             return new ArrayList<>();
         }
+    }
 
-        if (failWithsuggestions) {
-            return new ArrayList<>();
+    @Override
+    public void streamSuggestions(String prompt, SuggestionListener listener) throws BadPromptException {
+        String answer = getSuggestions(prompt);
+        SuggestionParser parser = new SuggestionParser(listener::onSuggestion);
+        boolean parsing = !failWithsuggestions; // No suggestions, as parseSuggest
+        // Simulates an answer that is generated in pieces
+        for (int i = 0; i < answer.length(); i += CHUNK_SIZE) {
+            CharSequence chunk = answer.subSequence(i, Math.min(answer.length(), i + CHUNK_SIZE));
+            listener.onChunk(chunk);
+            if (parsing) {
+                try {
+                    parser.feed(chunk);
+                } catch (SuggestionException e) {
+                    listener.onInvalidSuggestion(e);
+                    parsing = false;
+                }
+            }
+        }
+        if (parsing) {
+            try {
+                parser.finish();
+            } catch (SuggestionException e) {
+                listener.onInvalidSuggestion(e);
+            }
         }
-
-        return list;
     }
 
     // Setters
@@ -0,0 +1,199 @@
+package services;
+
+import data.HealthCardID;
+import exceptions.*;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import services.interfaces.HealthNationalService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Rejects the cards that are not registered before asking another HNS, with a {@link HealthCardIDFilter} of the
+ * registered ones held locally. A card the filter doesn't know gets the HealthCardIDException at once, any other
+ * goes to the HNS, so a false positive only costs the round trip it cost before.
+ * The filter is built again from all the registered cards on every refresh, which can be scheduled,
+ * and the patients registered in between are added to it one by one.
+ */
+public class FilteringHealthNationalService implements HealthNationalService {
+
+    private final HealthNationalService healthNationalService;
+    private final Supplier<? extends Collection<HealthCardID>> registeredCards;
+    private final long expectedCards;
+    private final double falsePositiveRate;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final ReentrantLock addLock = new ReentrantLock(); // guards the swap of the filter and the pending cards
+    private volatile HealthCardIDFilter filter;
+    private List<HealthCardID> pending; // the cards added while a refresh builds the next filter
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    /**
+     * Constructor of the class, the filter is built here for the first time
+     *
+     * @param healthNationalService the HNS to filter
+     * @param registeredCards       all the cards registered at the HNS, got again on every refresh
+     * @param expectedCards         how many cards the filter is sized for at least
+     * @param falsePositiveRate     the rate of unregistered cards let through to the HNS, between 0 and 1
+     */
+    public FilteringHealthNationalService(HealthNationalService healthNationalService,
+                                          Supplier<? extends Collection<HealthCardID>> registeredCards,
+                                          long expectedCards, double falsePositiveRate) {
+        if (healthNationalService == null) throw new IllegalArgumentException("HealthNationalService can't be null");
+        if (registeredCards == null) throw new IllegalArgumentException("Registered cards can't be null");
+        this.healthNationalService = healthNationalService;
+        this.registeredCards = registeredCards;
+        this.expectedCards = expectedCards;
+        this.falsePositiveRate = falsePositiveRate;
+        refresh();
+    }
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        checkRegistered(cip);
+        return healthNationalService.getMedicalHistory(cip);
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException, MedicalPrescriptionException {
+        checkRegistered(cip);
+        return healthNationalService.getMedicalPrescription(cip, illness);
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce, String illness,
+                                                          MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+        return healthNationalService.sendHistoryAndPrescription(cip, hce, illness, mPresc);
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescriptionChanges(HealthCardID cip, MedicalHistory hce, String illness,
+                                                                 MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+        return healthNationalService.sendHistoryAndPrescriptionChanges(cip, hce, illness, mPresc);
+    }
+
+    @Override
+    public void sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch) {
+        healthNationalService.sendHistoriesAndPrescriptions(batch);
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ConnectException, ePrescripCodeException, MedicalPrescriptionException {
+        return healthNationalService.generateTreatmCodeAndRegister(ePresc);
+    }
+
+    // The null cards go to the HNS, which tells why they are wrong
+    private void checkRegistered(HealthCardID cip) throws HealthCardIDException {
+        if (cip != null && !filter.mightContain(cip)) {
+            rejections.increment();
+            throw new HealthCardIDException("CIP not registered in the system");
+        }
+    }
+
+    /**
+     * Adds a card registered at the HNS after the last refresh, so it isn't rejected until the next one
+     *
+     * @param cip the HealthCardID of the new patient
+     */
+    public void patientRegistered(HealthCardID cip) {
+        if (cip == null) throw new IllegalArgumentException("HealthCardID can't be null");
+        addLock.lock();
+        try {
+            filter.add(cip);
+            if (pending != null) pending.add(cip);
+        } finally {
+            addLock.unlock();
+        }
+    }
+
+    /**
+     * Builds the filter again from all the registered cards, sized for them with room for the ones to come,
+     * while the current one keeps answering. Nothing is done if another refresh is running.
+     */
+    public void refresh() {
+        if (!refreshLock.tryLock()) return;
+        try {
+            addLock.lock();
+            try {
+                pending = new ArrayList<>();
+            } finally {
+                addLock.unlock();
+            }
+            HealthCardIDFilter next;
+            try {
+                Collection<HealthCardID> cards = registeredCards.get();
+                next = new HealthCardIDFilter(Math.max(expectedCards, cards.size() + cards.size() / 4L),
+                        falsePositiveRate);
+                for (HealthCardID cip : cards) next.add(cip);
+            } catch (RuntimeException e) {
+                addLock.lock();
+                try {
+                    pending = null; // The current filter stays
+                } finally {
+                    addLock.unlock();
+                }
+                throw e;
+            }
+            addLock.lock();
+            try {
+                for (HealthCardID cip : pending) next.add(cip);
+                filter = next;
+                pending = null;
+            } finally {
+                addLock.unlock();
+            }
+            refreshes.increment();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Refreshes the filter every period, a failed refresh keeps the current filter until the next one
+     *
+     * @param scheduler the executor that runs the refreshes
+     * @param period    the time between refreshes
+     * @param unit      the unit of the period
+     * @return the scheduled refreshes, to cancel them
+     */
+    public ScheduledFuture<?> scheduleRefresh(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        if (scheduler == null) throw new IllegalArgumentException("Scheduler can't be null");
+        return scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                // The HNS couldn't list the cards this time
+            }
+        }, period, period, unit);
+    }
+
+
+    // Statistics getters
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    public HealthCardIDFilter getFilter() {
+        return filter;
+    }
+}
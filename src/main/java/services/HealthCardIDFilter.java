@@ -0,0 +1,105 @@
+package services;
+
+import data.HealthCardID;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of HealthCardIDs, to know without asking the HNS that a card is not registered.
+ * The bits are split in blocks of a cache line, and all the bits of a card are set in the block its hash picks,
+ * so a query reads a single cache line. It never answers false for a card that was added, and answers true for
+ * one that wasn't with about the given false positive rate, while no more than the expected cards are added.
+ * Cards can be added while it's queried: the bits are set with a compare-and-set and read without any lock.
+ */
+public class HealthCardIDFilter {
+
+    private static final int BLOCK_BITS = 512; // a cache line
+    private static final int WORDS_PER_BLOCK = BLOCK_BITS / Long.SIZE;
+    private static final int POSITION_BITS = 9; // a bit of the block
+    private static final int MAX_HASHES = 16;
+    // The cards of a block aren't spread evenly, so it takes some more bits than a plain filter for the same rate
+    private static final double BLOCK_OVERHEAD = 1.1;
+
+    private final AtomicLongArray words;
+    private final int blocks;
+    private final int hashes;
+
+    /**
+     * Constructor of the class
+     *
+     * @param expectedCards     how many cards are going to be added
+     * @param falsePositiveRate the rate of unregistered cards let through, between 0 and 1
+     */
+    public HealthCardIDFilter(long expectedCards, double falsePositiveRate) {
+        if (expectedCards < 0) throw new IllegalArgumentException("Expected cards must be >= 0");
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        double bitsPerCard = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long bits = (long) Math.ceil(Math.max(1, expectedCards) * bitsPerCard * BLOCK_OVERHEAD);
+        long blockCount = (bits + BLOCK_BITS - 1) / BLOCK_BITS;
+        if (blockCount > Integer.MAX_VALUE / WORDS_PER_BLOCK)
+            throw new IllegalArgumentException("Too many cards for the false positive rate");
+        this.blocks = (int) blockCount;
+        this.hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerCard * Math.log(2))));
+        this.words = new AtomicLongArray(blocks * WORDS_PER_BLOCK);
+    }
+
+    /**
+     * @param cip the card to add
+     */
+    public void add(HealthCardID cip) {
+        if (cip == null) throw new IllegalArgumentException("HealthCardID can't be null");
+        long hash = cip.longHash();
+        int base = blockOf(hash);
+        long probe = hash;
+        for (int i = 0; i < hashes; i++) {
+            probe = nextProbe(probe);
+            int position = (int) (probe >>> (Long.SIZE - POSITION_BITS));
+            int index = base + (position >>> 6);
+            long bit = 1L << position;
+            long word;
+            while (((word = words.get(index)) & bit) == 0 && !words.compareAndSet(index, word, word | bit)) {
+                // Another card set a bit of the same word, try again
+            }
+        }
+    }
+
+    /**
+     * @param cip the card to look for
+     * @return false if the card was never added, true if it was or it is a false positive
+     */
+    public boolean mightContain(HealthCardID cip) {
+        if (cip == null) return false;
+        long hash = cip.longHash();
+        int base = blockOf(hash);
+        long probe = hash;
+        for (int i = 0; i < hashes; i++) {
+            probe = nextProbe(probe);
+            int position = (int) (probe >>> (Long.SIZE - POSITION_BITS));
+            if ((words.get(base + (position >>> 6)) & (1L << position)) == 0) return false;
+        }
+        return true;
+    }
+
+    // The bit of the block is in the top bits, a multiply-xorshift step gives independent ones every time
+    private static long nextProbe(long probe) {
+        probe *= 0x9E3779B97F4A7C15L;
+        return probe ^ (probe >>> 29);
+    }
+
+    // The first word of the block, picked by the high bits of the hash
+    private int blockOf(long hash) {
+        return (int) (((hash >>> 32) * blocks) >>> 32) * WORDS_PER_BLOCK;
+    }
+
+    /**
+     * @return the size of the bits, in bytes
+     */
+    public long getByteSize() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    public int getHashCount() {
+        return hashes;
+    }
+}
@@ -0,0 +1,97 @@
+package services;
+
+import data.HealthCardID;
+import exceptions.IncorrectParametersException;
+import medicalconsultation.HistoryStorage;
+import medicalconsultation.MedicalHistory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A medical history at a version, never changed: the services that keep histories hand out a new
+ * MedicalHistory over it to every caller. The annotations are shared by all of them and
+ * the ones a doctor appends are kept apart in its own copy.
+ */
+final class HistorySnapshot {
+    final int membShipNumb;
+    final String[] annotations; // the slots below count are never written again
+    final int count;
+    final int historyLength;
+    final long version; // 0 if the history wasn't got from the HNS
+
+    HistorySnapshot(int membShipNumb, String[] annotations, int count, int historyLength, long version) {
+        this.membShipNumb = membShipNumb;
+        this.annotations = annotations;
+        this.count = count;
+        this.historyLength = historyLength;
+        this.version = version;
+    }
+
+    /**
+     * @param history the history to take
+     * @return a snapshot of the history as it is now
+     */
+    static HistorySnapshot of(MedicalHistory history) {
+        String[] annotations = history.getAnnotations().toArray(new String[0]);
+        return new HistorySnapshot(history.getMembShipNumb(), annotations, annotations.length,
+                history.getHistoryLength(), history.isTracked() ? history.getVersion() : 0);
+    }
+
+    /**
+     * @param cip the HealthCardID of the patient
+     * @return a new history over the snapshot, at its version
+     */
+    MedicalHistory toHistory(HealthCardID cip) throws IncorrectParametersException {
+        MedicalHistory history = new MedicalHistory(cip, membShipNumb, new SnapshotStorage(this));
+        if (version > 0) history.markSynchronized(version);
+        return history;
+    }
+
+    // Shares the annotations of the snapshot, the ones appended by the doctor are kept apart
+    private static final class SnapshotStorage implements HistoryStorage {
+        private final HistorySnapshot snapshot;
+        private final List<String> appended = new ArrayList<>();
+        private int historyLength;
+        private int membShipNumb;
+
+        SnapshotStorage(HistorySnapshot snapshot) {
+            this.snapshot = snapshot;
+            this.historyLength = snapshot.historyLength;
+            this.membShipNumb = snapshot.membShipNumb;
+        }
+
+        @Override
+        public void append(String annot) {
+            if (size() > 0) historyLength++;
+            appended.add(annot);
+            historyLength += annot.length();
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < snapshot.count) return snapshot.annotations[index];
+            return appended.get(index - snapshot.count);
+        }
+
+        @Override
+        public int size() {
+            return snapshot.count + appended.size();
+        }
+
+        @Override
+        public int historyLength() {
+            return historyLength;
+        }
+
+        @Override
+        public int getMembShipNumb() {
+            return membShipNumb;
+        }
+
+        @Override
+        public void setMembShipNumb(int membShipNumb) {
+            this.membShipNumb = membShipNumb;
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package services;
+
+import data.HealthCardID;
+import data.ePrescripCode;
+import exceptions.*;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import medicalconsultation.PrescriptionCodec;
+import medicalconsultation.PrescriptionDelta;
+import services.interfaces.HealthNationalService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An HNS kept in memory, to run consultations against many patients without the real one.
+ * The patients are found by HealthCardID in a concurrent map, and their prescriptions by illness inside the patient.
+ * Every patient is guarded by one of many striped locks, so only patients sharing a stripe can contend,
+ * and the locks are held just to read or swap references: the records are stored encoded by the
+ * {@link PrescriptionCodec} and the annotations in an append-only array, and every copy handed out or received is
+ * built outside the lock. When a {@link MappedHistoryStore} is set the histories are served from it, and the
+ * annotations added to them are appended to it under the lock, so the log follows the versions of the history. A submission replaces the history and the prescription of a patient at once,
+ * the changes sent by sendHistoryAndPrescriptionChanges are applied optimistically and
+ * rejected if the records moved in the meantime. The code of a prescription is generated under the lock, once the
+ * submission is accepted, and written into the bytes encoded before taking it.
+ * A batch of submissions takes the lock of every stripe once, for all the patients of the stripe.
+ * Every registered prescription is published in a {@link PrescriptionRegistry} under its code, for the pharmacies,
+ * replacing the one of the previous code of the same prescription and keeping the units dispensed from it.
+ */
+public class InMemoryHealthNationalService implements HealthNationalService {
+    private static final int MAX_STRIPES = 1 << 16;
+
+    private final ConcurrentHashMap<HealthCardID, Patient> patients;
+    private final ReentrantLock[] locks;
+    private final PrescriptionCodeGenerator codeGenerator;
+    private final PrescriptionRegistry registry;
+    private volatile MappedHistoryStore historyStore; // when set, the histories are served from disk
+
+    /**
+     * Constructor of the class, with 64 lock stripes per processor
+     */
+    public InMemoryHealthNationalService() {
+        this(16, 64 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor of the class, the codes are generated by the generator shared by the process
+     *
+     * @param expectedPatients how many patients are going to be registered, to size the index
+     * @param stripes          the number of locks, rounded up to a power of two
+     */
+    public InMemoryHealthNationalService(int expectedPatients, int stripes) {
+        this(expectedPatients, stripes, PrescriptionCodeGenerator.shared());
+    }
+
+    /**
+     * Constructor of the class
+     *
+     * @param expectedPatients how many patients are going to be registered, to size the index
+     * @param stripes          the number of locks, rounded up to a power of two
+     * @param codeGenerator    the generator of the codes of the prescriptions, the only one of its node
+     */
+    public InMemoryHealthNationalService(int expectedPatients, int stripes, PrescriptionCodeGenerator codeGenerator) {
+        if (codeGenerator == null) throw new IllegalArgumentException("PrescriptionCodeGenerator can't be null");
+        if (expectedPatients < 0) throw new IllegalArgumentException("Expected patients must be >= 0");
+        if (stripes <= 0 || stripes > MAX_STRIPES) throw new IllegalArgumentException("Stripes must be > 0");
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) size <<= 1;
+        this.codeGenerator = codeGenerator;
+        this.patients = new ConcurrentHashMap<>(expectedPatients);
+        this.registry = new PrescriptionRegistry(expectedPatients);
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) locks[i] = new ReentrantLock();
+    }
+
+    /**
+     * Registers a patient with an empty history
+     *
+     * @param cip          the HealthCardID of the patient
+     * @param membShipNumb the membership number of the family doctor
+     * @return false if the patient was already registered, nothing is changed then
+     */
+    public boolean registerPatient(HealthCardID cip, int membShipNumb) {
+        if (cip == null) throw new IllegalArgumentException("HealthCardID can't be null");
+        if (membShipNumb <= 0) throw new IllegalArgumentException("Membership number must be > 0");
+        return patients.putIfAbsent(cip, new Patient(membShipNumb)) == null;
+    }
+
+    /**
+     * Registers the current prescription of a registered patient for its illness, replacing the one there was
+     *
+     * @param mPresc the prescription
+     * @throws HealthCardIDException        if the patient is not registered
+     * @throws MedicalPrescriptionException if the prescription can't be encoded
+     */
+    public void registerPrescription(MedicalPrescription mPresc) throws HealthCardIDException, MedicalPrescriptionException {
+        if (mPresc == null) throw new IllegalArgumentException("MedicalPrescription can't be null");
+        Patient patient = patient(mPresc.getCip());
+        byte[] encoded = encode(mPresc);
+        MedicalPrescription copy = (mPresc.getPrescCode() == null) ? null : decode(encoded);
+        ReentrantLock lock = lockOf(mPresc.getCip());
+        lock.lock();
+        try {
+            Registered current = patient.prescription(mPresc.getIllness());
+            Registered registered = new Registered(mPresc.getIllness(), encoded, copy,
+                    (current == null) ? 1 : current.version + 1);
+            patient.putPrescription(registered);
+            publish(current, registered);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        Patient patient = patient(cip);
+        MappedHistoryStore store = historyStore;
+        HistorySnapshot snapshot;
+        MedicalHistory stored = null;
+        ReentrantLock lock = lockOf(cip);
+        lock.lock();
+        try {
+            snapshot = patient.history();
+            if (store != null) stored = store.getMedicalHistory(cip, snapshot.membShipNumb);
+        } catch (IOException e) {
+            throw new ConnectException("History store error: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        if (stored == null) return snapshot.toHistory(cip);
+        stored.markSynchronized(snapshot.version);
+        return stored;
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws HealthCardIDException, AnyCurrentPrescriptionException, MedicalPrescriptionException {
+        Patient patient = patient(cip);
+        Registered registered;
+        ReentrantLock lock = lockOf(cip);
+        lock.lock();
+        try {
+            registered = patient.prescription(illness);
+        } finally {
+            lock.unlock();
+        }
+        if (registered == null)
+            throw new AnyCurrentPrescriptionException("No active prescription found for this illness");
+        MedicalPrescription mPresc = decode(registered.encoded);
+        mPresc.markSynchronized(registered.version);
+        return mPresc;
+    }
+
+    /**
+     * Replaces the history and the prescription of the illness of the patient at once
+     */
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce, String illness,
+                                                          MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+        Submission submission = prepare(cip, hce, illness, mPresc);
+        ReentrantLock lock = locks[submission.stripe];
+        lock.lock();
+        try {
+            submission.commit(this);
+        } finally {
+            lock.unlock();
+        }
+        return submission.finish();
+    }
+
+    /**
+     * Replaces the records of every submission as sendHistoryAndPrescription does, taking the lock of every stripe
+     * once for all the submissions of its patients, which are stored in the order of the batch
+     */
+    @Override
+    public void sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch) {
+        List<Submission> prepared = new ArrayList<>(batch.size());
+        for (PrescriptionSubmission submission : batch) {
+            try {
+                Submission next = prepare(submission.getCip(), submission.getHce(), submission.getIllness(),
+                        submission.getPrescription());
+                next.result = submission.getResult();
+                prepared.add(next);
+            } catch (Exception e) {
+                submission.getResult().completeExceptionally(e);
+            }
+        }
+        prepared.sort(Comparator.comparingInt(submission -> submission.stripe)); // Stable, keeps the batch order
+
+        for (int i = 0; i < prepared.size(); ) {
+            int stripe = prepared.get(i).stripe;
+            ReentrantLock lock = locks[stripe];
+            lock.lock();
+            try {
+                for (; i < prepared.size() && prepared.get(i).stripe == stripe; i++) {
+                    Submission submission = prepared.get(i);
+                    try {
+                        submission.commit(this);
+                    } catch (AnyCurrentPrescriptionException | ConnectException e) {
+                        submission.error = e;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        // Outside the locks, the callers may go on in the thread that completes their results
+        for (Submission submission : prepared) {
+            if (submission.error != null) {
+                submission.result.completeExceptionally(submission.error);
+                continue;
+            }
+            try {
+                submission.result.complete(submission.finish());
+            } catch (MedicalPrescriptionException e) {
+                submission.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Applies the changes to copies of the records taken at their base versions, and stores them if the records
+     * are still at those versions
+     */
+    @Override
+    public MedicalPrescription sendHistoryAndPrescriptionChanges(HealthCardID cip, MedicalHistory hce, String illness,
+                                                                 MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+        if (!PrescriptionDelta.isAvailable(hce, mPresc)) return sendHistoryAndPrescription(cip, hce, illness, mPresc);
+        checkSubmission(cip, hce, illness, mPresc);
+        Patient patient = patient(cip);
+        // The copies the changes are applied to are encoded again, so they can take the lines of the doctor
+        PrescriptionDelta delta = PrescriptionDelta.of(hce, mPresc);
+
+        HistorySnapshot history;
+        Registered current;
+        ReentrantLock lock = lockOf(cip);
+        lock.lock();
+        try {
+            history = patient.history();
+            current = patient.prescription(illness);
+        } finally {
+            lock.unlock();
+        }
+        if (current == null) throw new AnyCurrentPrescriptionException("Prescription not found");
+        MedicalHistory registeredHistory;
+        try {
+            registeredHistory = history.toHistory(cip);
+        } catch (IncorrectParametersException e) {
+            throw new IllegalStateException(e); // The patient was registered with valid ones
+        }
+        MedicalPrescription registeredPrescription = decode(current.encoded);
+        registeredPrescription.markSynchronized(current.version);
+        delta.applyTo(registeredHistory, registeredPrescription);
+        byte[] encoded = encode(registeredPrescription);
+        MedicalPrescription copy = decode(encoded); // Dense, unlike the one the lines were removed from
+        List<String> appended = delta.getAnnotations();
+
+        ePrescripCode code;
+        lock.lock();
+        try {
+            if (patient.historyVersion != history.version || patient.prescription(illness) != current)
+                throw new VersionConflictException("The records changed at the HNS while the changes were applied");
+            store(cip, appended, registeredHistory.getMembShipNumb());
+            code = codeGenerator.next();
+            copy.setPrescCode(code);
+            patient.membShipNumb = registeredHistory.getMembShipNumb();
+            patient.append(appended);
+            patient.historyVersion = history.version + 1;
+            Registered registered = new Registered(illness, withCode(encoded, code), copy, current.version + 1);
+            patient.putPrescription(registered);
+            publish(current, registered);
+        } finally {
+            lock.unlock();
+        }
+        mPresc.setPrescCode(code);
+        hce.markSynchronized(history.version + 1);
+        mPresc.markSynchronized(current.version + 1);
+        return mPresc;
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ePrescripCodeException, MedicalPrescriptionException {
+        ePresc.setPrescCode(codeGenerator.next());
+        return ePresc;
+    }
+
+    /**
+     * @return the prescriptions registered by this service, by their code
+     */
+    public PrescriptionRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return the HealthCardIDs of the registered patients, a live read-only view
+     */
+    public Set<HealthCardID> getRegisteredPatients() {
+        return Collections.unmodifiableSet(patients.keySet());
+    }
+
+    public int getPatientCount() {
+        return patients.size();
+    }
+
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+    public void setHistoryStore(MappedHistoryStore historyStore) {
+        this.historyStore = historyStore;
+    }
+
+    private Patient patient(HealthCardID cip) throws HealthCardIDException {
+        if (cip == null) throw new HealthCardIDException("HealthCardID can't be null");
+        Patient patient = patients.get(cip);
+        if (patient == null) throw new HealthCardIDException("CIP not registered in the system");
+        return patient;
+    }
+
+    // Under the lock of the patient, before its records are replaced, so a failed append rejects the submission
+    private void store(HealthCardID cip, List<String> appended, int membShipNumb) throws ConnectException {
+        MappedHistoryStore store = historyStore;
+        if (store == null) return;
+        try {
+            store.append(cip, appended, membShipNumb);
+        } catch (IOException e) {
+            throw new ConnectException("History store error: " + e.getMessage());
+        }
+    }
+
+    private ReentrantLock lockOf(HealthCardID cip) {
+        return locks[stripeOf(cip)];
+    }
+
+    private int stripeOf(HealthCardID cip) {
+        int h = cip.hashCode();
+        return (h ^ (h >>> 16)) & (locks.length - 1);
+    }
+
+    // Everything a submission needs is copied and encoded before taking the lock
+    private Submission prepare(HealthCardID cip, MedicalHistory hce, String illness, MedicalPrescription mPresc)
+            throws HealthCardIDException, NotCompletedMedicalPrescription, MedicalPrescriptionException {
+        checkSubmission(cip, hce, illness, mPresc);
+        Patient patient = patient(cip);
+        byte[] encoded = encode(mPresc);
+        return new Submission(patient, stripeOf(cip), hce, illness, mPresc, encoded, decode(encoded));
+    }
+
+    // Under the lock of the patient, so the codes of a prescription are replaced in the order it was sent
+    private void publish(Registered previous, Registered registered) {
+        ePrescripCode previousCode = (previous == null) ? null : previous.code;
+        if (registered.code != null) registry.put(registered.encoded, registered.copy, previousCode);
+        else if (previousCode != null) registry.revoke(previousCode);
+    }
+
+    private static void checkSubmission(HealthCardID cip, MedicalHistory hce, String illness, MedicalPrescription mPresc)
+            throws HealthCardIDException, NotCompletedMedicalPrescription {
+        if (hce == null || mPresc == null || illness == null)
+            throw new NotCompletedMedicalPrescription("Prescription validation failed: Mandatory fields missing");
+        if (!hce.getCip().equals(cip) || !mPresc.getCip().equals(cip))
+            throw new HealthCardIDException("Incorrect CIP");
+        if (!illness.equals(mPresc.getIllness()))
+            throw new NotCompletedMedicalPrescription("Prescription validation failed: illness doesn't match");
+    }
+
+    private static byte[] encode(MedicalPrescription mPresc) throws MedicalPrescriptionException {
+        try {
+            return PrescriptionCodec.encode(mPresc);
+        } catch (PrescriptionCodecException e) {
+            throw new MedicalPrescriptionException("Invalid prescription: " + e.getMessage());
+        }
+    }
+
+    // Only copies bytes, to be called under the lock
+    private static byte[] withCode(byte[] encoded, ePrescripCode code) {
+        try {
+            return PrescriptionCodec.withCode(encoded, code);
+        } catch (PrescriptionCodecException e) {
+            throw new IllegalStateException(e); // It was encoded by this service
+        }
+    }
+
+    private static MedicalPrescription decode(byte[] encoded) {
+        try {
+            return PrescriptionCodec.decode(encoded);
+        } catch (PrescriptionCodecException e) {
+            throw new IllegalStateException(e); // It was encoded by this service
+        }
+    }
+
+    // A history and prescription that replace the ones of the patient, committed under the lock of its stripe
+    private static final class Submission {
+        final Patient patient;
+        final int stripe;
+        final MedicalHistory hce;
+        final String illness;
+        final MedicalPrescription mPresc;
+        final String[] annotations;
+        final List<String> appended; // the annotations for the history store, only known if the history is tracked
+        final int historyLength;
+        final byte[] encoded;
+        final MedicalPrescription copy;
+        CompletableFuture<MedicalPrescription> result; // only in a batch
+        Exception error;
+        ePrescripCode code;
+        long historyVersion;
+        long prescriptionVersion;
+
+        Submission(Patient patient, int stripe, MedicalHistory hce, String illness, MedicalPrescription mPresc,
+                   byte[] encoded, MedicalPrescription copy) {
+            this.patient = patient;
+            this.stripe = stripe;
+            this.hce = hce;
+            this.illness = illness;
+            this.mPresc = mPresc;
+            this.annotations = hce.getAnnotations().toArray(new String[0]);
+            this.appended = hce.isTracked() ? List.copyOf(hce.getAppendedAnnotations()) : List.of();
+            this.historyLength = hce.getHistoryLength();
+            this.encoded = encoded;
+            this.copy = copy;
+        }
+
+        // Under the lock of the stripe
+        void commit(InMemoryHealthNationalService hns) throws AnyCurrentPrescriptionException, ConnectException {
+            Registered current = patient.prescription(illness);
+            if (current == null) throw new AnyCurrentPrescriptionException("Prescription not found");
+            hns.store(hce.getCip(), appended, hce.getMembShipNumb());
+            // Accepted, a code is only spent on the submissions that are stored
+            code = hns.codeGenerator.next();
+            try {
+                copy.setPrescCode(code);
+            } catch (MedicalPrescriptionException e) {
+                throw new IllegalStateException(e); // The code isn't null
+            }
+            historyVersion = patient.historyVersion + 1;
+            prescriptionVersion = current.version + 1;
+            patient.membShipNumb = hce.getMembShipNumb();
+            patient.annotations = annotations;
+            patient.annotationCount = annotations.length;
+            patient.historyLength = historyLength;
+            patient.historyVersion = historyVersion;
+            Registered registered = new Registered(illness, withCode(encoded, code), copy, prescriptionVersion);
+            patient.putPrescription(registered);
+            hns.publish(current, registered);
+        }
+
+        // After the lock, the doctor's records are at the stored versions
+        MedicalPrescription finish() throws MedicalPrescriptionException {
+            mPresc.setPrescCode(code);
+            hce.markSynchronized(historyVersion);
+            mPresc.markSynchronized(prescriptionVersion);
+            return mPresc;
+        }
+    }
+
+    // A prescription as it is stored, never changed: a new one replaces it
+    private static final class Registered {
+        final String illness;
+        final byte[] encoded;
+        final ePrescripCode code;
+        final MedicalPrescription copy; // the one published in the registry, null if it has no code
+        final long version;
+
+        Registered(String illness, byte[] encoded, MedicalPrescription copy, long version) {
+            this.illness = illness;
+            this.encoded = encoded;
+            this.copy = copy;
+            this.code = (copy == null) ? null : copy.getPrescCode();
+            this.version = version;
+        }
+    }
+
+    // The records of a patient, guarded by the lock of its stripe
+    private static final class Patient {
+        int membShipNumb;
+        String[] annotations = new String[0]; // the slots below annotationCount are never written again
+        int annotationCount = 0;
+        int historyLength = 0;
+        long historyVersion = 1;
+        Registered[] prescriptions = new Registered[0]; // a patient has few illnesses, they are searched in order
+
+        Patient(int membShipNumb) {
+            this.membShipNumb = membShipNumb;
+        }
+
+        HistorySnapshot history() {
+            return new HistorySnapshot(membShipNumb, annotations, annotationCount, historyLength, historyVersion);
+        }
+
+        Registered prescription(String illness) {
+            for (Registered registered : prescriptions)
+                if (registered.illness.equals(illness)) return registered;
+            return null;
+        }
+
+        void putPrescription(Registered registered) {
+            for (int i = 0; i < prescriptions.length; i++) {
+                if (prescriptions[i].illness.equals(registered.illness)) {
+                    prescriptions[i] = registered;
+                    return;
+                }
+            }
+            prescriptions = Arrays.copyOf(prescriptions, prescriptions.length + 1);
+            prescriptions[prescriptions.length - 1] = registered;
+        }
+
+        void append(List<String> appended) {
+            if (annotationCount + appended.size() > annotations.length)
+                annotations = Arrays.copyOf(annotations, Math.max(annotationCount + appended.size(), annotationCount * 2));
+            for (String annotation : appended) {
+                if (annotationCount > 0) historyLength++;
+                annotations[annotationCount++] = annotation;
+                historyLength += annotation.length();
+            }
+        }
+    }
+}
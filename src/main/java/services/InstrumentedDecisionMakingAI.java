@@ -0,0 +1,84 @@
+package services;
+
+import data.Suggestion;
+import exceptions.AIException;
+import exceptions.BadPromptException;
+import metrics.ConsultationMetrics;
+import metrics.Operation;
+import services.interfaces.DecisionMakingAI;
+import services.interfaces.SuggestionListener;
+
+import java.util.List;
+
+/**
+ * Times every call to another AI in a {@link ConsultationMetrics}, counting the ones that throw.
+ * A streamed answer is timed until its last suggestion is handed to the listener.
+ */
+public class InstrumentedDecisionMakingAI implements DecisionMakingAI {
+
+    private final DecisionMakingAI ai;
+    private final ConsultationMetrics metrics;
+
+    /**
+     * Constructor of the class
+     *
+     * @param ai      the AI to time
+     * @param metrics where the calls are recorded
+     */
+    public InstrumentedDecisionMakingAI(DecisionMakingAI ai, ConsultationMetrics metrics) {
+        if (ai == null) throw new IllegalArgumentException("DecisionMakingAI can't be null");
+        if (metrics == null) throw new IllegalArgumentException("ConsultationMetrics can't be null");
+        this.ai = ai;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void initDecisionMakingAI() throws AIException {
+        long start = metrics.start();
+        boolean done = false;
+        try {
+            ai.initDecisionMakingAI();
+            done = true;
+        } finally {
+            metrics.recordOperation(Operation.AI_INIT, start, done);
+        }
+    }
+
+    @Override
+    public String getSuggestions(String prompt) throws BadPromptException {
+        long start = metrics.start();
+        boolean done = false;
+        try {
+            String answer = ai.getSuggestions(prompt);
+            done = true;
+            return answer;
+        } finally {
+            metrics.recordOperation(Operation.AI_GET_SUGGESTIONS, start, done);
+        }
+    }
+
+    @Override
+    public List<Suggestion> parseSuggest(String aiAnswer) {
+        long start = metrics.start();
+        boolean done = false;
+        try {
+            List<Suggestion> suggestions = ai.parseSuggest(aiAnswer);
+            done = true;
+            return suggestions;
+        } finally {
+            metrics.recordOperation(Operation.AI_PARSE_SUGGESTIONS, start, done);
+        }
+    }
+
+    @Override
+    public void streamSuggestions(String prompt, SuggestionListener listener) throws BadPromptException {
+        long start = metrics.start();
+        boolean done = false;
+        try {
+            ai.streamSuggestions(prompt, listener);
+            done = true;
+        } finally {
+            metrics.recordOperation(Operation.AI_STREAM_SUGGESTIONS, start, done);
+        }
+    }
+}
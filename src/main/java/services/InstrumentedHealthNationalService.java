@@ -0,0 +1,121 @@
+package services;
+
+import data.HealthCardID;
+import exceptions.*;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import metrics.ConsultationMetrics;
+import metrics.Operation;
+import services.interfaces.HealthNationalService;
+
+import java.util.List;
+
+/**
+ * Times every call to another HNS in a {@link ConsultationMetrics}, counting the ones that throw.
+ * A batch is timed as a whole, the failures of its submissions are not counted.
+ */
+public class InstrumentedHealthNationalService implements HealthNationalService {
+
+    private final HealthNationalService healthNationalService;
+    private final ConsultationMetrics metrics;
+
+    /**
+     * Constructor of the class
+     *
+     * @param healthNationalService the HNS to time
+     * @param metrics               where the calls are recorded
+     */
+    public InstrumentedHealthNationalService(HealthNationalService healthNationalService, ConsultationMetrics metrics) {
+        if (healthNationalService == null) throw new IllegalArgumentException("HealthNationalService can't be null");
+        if (metrics == null) throw new IllegalArgumentException("ConsultationMetrics can't be null");
+        this.healthNationalService = healthNationalService;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public MedicalHistory getMedicalHistory(HealthCardID cip)
+            throws ConnectException, HealthCardIDException, IncorrectParametersException {
+        long start = metrics.start();
+        boolean done = false;
+        try {
+            MedicalHistory history = healthNationalService.getMedicalHistory(cip);
+            done = true;
+            return history;
+        } finally {
+            metrics.recordOperation(Operation.HNS_GET_MEDICAL_HISTORY, start, done);
+        }
+    }
+
+    @Override
+    public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException, MedicalPrescriptionException {
+        long start = metrics.start();
+        boolean done = false;
+        try {
+            MedicalPrescription prescription = healthNationalService.getMedicalPrescription(cip, illness);
+            done = true;
+            return prescription;
+        } finally {
+            metrics.recordOperation(Operation.HNS_GET_MEDICAL_PRESCRIPTION, start, done);
+        }
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce, String illness,
+                                                          MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+        long start = metrics.start();
+        boolean done = false;
+        try {
+            MedicalPrescription registered = healthNationalService.sendHistoryAndPrescription(cip, hce, illness, mPresc);
+            done = true;
+            return registered;
+        } finally {
+            metrics.recordOperation(Operation.HNS_SEND_HISTORY_AND_PRESCRIPTION, start, done);
+        }
+    }
+
+    @Override
+    public MedicalPrescription sendHistoryAndPrescriptionChanges(HealthCardID cip, MedicalHistory hce, String illness,
+                                                                 MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+        long start = metrics.start();
+        boolean done = false;
+        try {
+            MedicalPrescription registered = healthNationalService.sendHistoryAndPrescriptionChanges(cip, hce, illness,
+                    mPresc);
+            done = true;
+            return registered;
+        } finally {
+            metrics.recordOperation(Operation.HNS_SEND_CHANGES, start, done);
+        }
+    }
+
+    @Override
+    public void sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch) {
+        long start = metrics.start();
+        boolean done = false;
+        try {
+            healthNationalService.sendHistoriesAndPrescriptions(batch);
+            done = true;
+        } finally {
+            metrics.recordOperation(Operation.HNS_SEND_BATCH, start, done);
+        }
+    }
+
+    @Override
+    public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+            throws ConnectException, ePrescripCodeException, MedicalPrescriptionException {
+        long start = metrics.start();
+        boolean done = false;
+        try {
+            MedicalPrescription registered = healthNationalService.generateTreatmCodeAndRegister(ePresc);
+            done = true;
+            return registered;
+        } finally {
+            metrics.recordOperation(Operation.HNS_GENERATE_CODE, start, done);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package services;
+
+import medicalconsultation.HistoryStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * The annotations of one medical history in a memory-mapped, append-only file.
+ * The file starts with a header (magic, version, membership number of the doctor) followed by the records
+ * {@code [byte length][char length][crc32][utf-8 bytes]}. The byte length is written last, so a record
+ * only exists once it is complete. When the file is opened the records are checked and indexed,
+ * a torn or corrupted tail left by a crash is discarded.
+ * The annotations are read straight from the mapping, nothing is kept in the heap but their offsets.
+ */
+public class MappedHistoryLog implements HistoryStorage, AutoCloseable {
+
+    static final int MAGIC = 0x48434531; // "HCE1"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 12;
+    private static final int MEMBERSHIP_OFFSET = 8;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean syncOnAppend;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE) // A lone surrogate becomes one '?', same length
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer buffer;
+    private int[] offsets = new int[16]; // where each record starts
+    private int count = 0;
+    private int end; // where the next record goes
+    private int historyLength = 0;
+    private int discardedBytes = 0;
+    private int users = 0; // the reads and writes of a store in progress
+    private boolean closed = false;
+
+    /**
+     * Opens the log, creating it if it doesn't exist
+     *
+     * @param path         the file of the log
+     * @param syncOnAppend whether every append is forced to the disk before returning
+     * @throws IOException if the file can't be opened or isn't a history log
+     */
+    public MappedHistoryLog(Path path, boolean syncOnAppend) throws IOException {
+        this.path = path;
+        this.syncOnAppend = syncOnAppend;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("History log too big: " + path);
+            boolean created = size == 0;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, created ? INITIAL_CAPACITY : size);
+            if (created) {
+                buffer.putInt(0, MAGIC);
+                buffer.putShort(4, VERSION);
+                buffer.putInt(MEMBERSHIP_OFFSET, 0);
+            } else if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a history log: " + path);
+            } else if (buffer.getShort(4) != VERSION) {
+                throw new IOException("Unsupported history log version " + buffer.getShort(4) + ": " + path);
+            }
+            recover();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Indexes the complete records and discards whatever follows the first invalid one
+    private void recover() {
+        int capacity = buffer.capacity();
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(pos);
+            if (length == 0) break;
+            int chars = buffer.getInt(pos + 4);
+            if (length < 0 || chars <= 0 || length > capacity - pos - RECORD_HEADER_SIZE
+                    || checksum(pos + RECORD_HEADER_SIZE, length) != buffer.getInt(pos + 8)) {
+                discardedBytes = capacity - pos;
+                for (int i = pos; i < capacity; i++) buffer.put(i, (byte) 0);
+                buffer.force();
+                break;
+            }
+            index(pos, chars);
+            pos += RECORD_HEADER_SIZE + length;
+        }
+        end = pos;
+    }
+
+    private void index(int offset, int chars) {
+        if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+        offsets[count] = offset;
+        if (count > 0) historyLength++; // Separates annotations
+        historyLength += chars;
+        count++;
+    }
+
+    private int checksum(int offset, int length) {
+        crc.reset();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @param annot the annotation, not empty: a record of length 0 marks the end of the log
+     */
+    @Override
+    public void append(String annot) {
+        if (annot == null || annot.isEmpty()) throw new IllegalArgumentException("Annotation can't be empty");
+        lock.lock();
+        try {
+            ensureOpen();
+            // Encoded straight into the mapping, an UTF-16 char never takes more than 3 bytes
+            long worstCase = (long) end + RECORD_HEADER_SIZE + 3L * annot.length();
+            if (worstCase > Integer.MAX_VALUE) throw new IllegalStateException("History log full: " + path);
+            ensureCapacity((int) worstCase);
+            int start = end + RECORD_HEADER_SIZE;
+            ByteBuffer target = buffer.slice(start, buffer.capacity() - start);
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(annot), target, true);
+            if (!result.isUnderflow() || !encoder.flush(target).isUnderflow())
+                throw new IllegalStateException("Annotation can't be encoded: " + result);
+            int length = target.position();
+
+            buffer.putInt(end + 4, annot.length());
+            buffer.putInt(end + 8, checksum(start, length));
+            buffer.putInt(end, length); // Commits the record
+            if (syncOnAppend) buffer.force();
+            index(end, annot.length());
+            end = start + length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureCapacity(int needed) throws IOException {
+        // One more record header of zeros marks the end of the log
+        long required = (long) needed + RECORD_HEADER_SIZE;
+        if (required <= buffer.capacity()) return;
+        long capacity = buffer.capacity();
+        while (capacity < required) capacity *= 2;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public String get(int index) {
+        lock.lock();
+        try {
+            ensureOpen();
+            return StandardCharsets.UTF_8.decode(record(index)).toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ByteBuffer record(int index) {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Annotation " + index + " of " + count);
+        int offset = offsets[index];
+        return buffer.slice(offset + RECORD_HEADER_SIZE, buffer.getInt(offset));
+    }
+
+    @Override
+    public void writeTo(Appendable out) throws IOException {
+        lock.lock();
+        try {
+            writeTo(out, count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes the first annotations, the ones a copy of the history taken before the last appends has
+    void writeTo(Appendable out, int records) throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            for (int i = 0; i < records; i++) {
+                if (i > 0) out.append('\n');
+                out.append(StandardCharsets.UTF_8.decode(record(i)));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int historyLength() {
+        lock.lock();
+        try {
+            return historyLength;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The number of annotations, the length of the history they make and the doctor, read at once
+    int[] snapshot() {
+        lock.lock();
+        try {
+            ensureOpen();
+            return new int[]{count, historyLength, buffer.getInt(MEMBERSHIP_OFFSET)};
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Keeps the log open while a store reads or writes it, false if it was closed
+    boolean retain() {
+        lock.lock();
+        try {
+            if (closed) return false;
+            users++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release() {
+        lock.lock();
+        try {
+            users--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Closes the log if no store is using it, false if it is in use and was left open
+    boolean closeIfUnused() throws IOException {
+        lock.lock();
+        try {
+            if (users > 0) return false;
+            close();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getMembShipNumb() {
+        lock.lock();
+        try {
+            ensureOpen();
+            return buffer.getInt(MEMBERSHIP_OFFSET);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setMembShipNumb(int membShipNumb) {
+        lock.lock();
+        try {
+            ensureOpen();
+            buffer.putInt(MEMBERSHIP_OFFSET, membShipNumb);
+            if (syncOnAppend) buffer.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the bytes of the torn or corrupted tail discarded when the log was opened
+     */
+    public int getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Forces the appended annotations to the disk
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            ensureOpen();
+            buffer.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("History log closed: " + path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package services;
+
+import data.HealthCardID;
+import exceptions.IncorrectParametersException;
+import medicalconsultation.HistoryStorage;
+import medicalconsultation.MedicalHistory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The medical histories of the patients on disk, one {@link MappedHistoryLog} per HealthCardID in a directory,
+ * named after the packed HealthCardID so two codes differing only in case never share a file.
+ * Every caller gets its own copy of a history: it reads the annotations the log had when it was got, and keeps
+ * the ones the doctor adds apart until they are appended to the log, once the history is sent.
+ * At most a number of logs are kept open, the least recently used one not being read is closed when another
+ * one is opened, and opened again when it is needed.
+ */
+public class MappedHistoryStore implements AutoCloseable {
+
+    private static final String EXTENSION = ".hce";
+    private static final int DEFAULT_OPEN_LOGS = 256;
+
+    private final Path directory;
+    private final boolean syncOnAppend;
+    private final int maxOpenLogs;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<HealthCardID, MappedHistoryLog> logs = new LinkedHashMap<>(16, 0.75f, true); // access order
+    private final LongAdder evictions = new LongAdder();
+    private boolean closed = false;
+
+    /**
+     * Constructor of the class, with at most 256 logs open
+     *
+     * @param directory    where the histories are kept, created if it doesn't exist
+     * @param syncOnAppend whether every annotation is forced to the disk before returning
+     * @throws IOException if the directory can't be created
+     */
+    public MappedHistoryStore(Path directory, boolean syncOnAppend) throws IOException {
+        this(directory, syncOnAppend, DEFAULT_OPEN_LOGS);
+    }
+
+    /**
+     * Constructor of the class
+     *
+     * @param directory    where the histories are kept, created if it doesn't exist
+     * @param syncOnAppend whether every annotation is forced to the disk before returning
+     * @param maxOpenLogs  how many logs are kept open, more only while they are all being read
+     * @throws IOException if the directory can't be created
+     */
+    public MappedHistoryStore(Path directory, boolean syncOnAppend, int maxOpenLogs) throws IOException {
+        if (maxOpenLogs <= 0) throw new IllegalArgumentException("Max open logs must be > 0");
+        this.directory = Files.createDirectories(directory);
+        this.syncOnAppend = syncOnAppend;
+        this.maxOpenLogs = maxOpenLogs;
+    }
+
+    /**
+     * @param cip           the CIP of the patient
+     * @param memberShipNum the membership number of the family doctor, used if the history is new
+     * @return a copy of the history of the patient, new and empty if there was none
+     * @throws IOException                  if the file of the history can't be opened or is not a history log
+     * @throws IncorrectParametersException if the cip is null or memberShipNum <= 0
+     */
+    public MedicalHistory getMedicalHistory(HealthCardID cip, int memberShipNum)
+            throws IOException, IncorrectParametersException {
+        if (cip == null) throw new IncorrectParametersException("HealthCardID cannot be null");
+        int[] snapshot;
+        MappedHistoryLog log = acquire(cip);
+        try {
+            snapshot = log.snapshot();
+        } finally {
+            log.release();
+        }
+        return new MedicalHistory(cip, memberShipNum, new SessionStorage(cip, snapshot[0], snapshot[1], snapshot[2]));
+    }
+
+    /**
+     * Appends the annotations of a history that was sent, after the ones appended by the others meanwhile
+     *
+     * @param cip          the CIP of the patient
+     * @param annotations  the annotations added to the history, the empty ones are skipped
+     * @param membShipNumb the membership number of the family doctor
+     * @throws IOException if the file of the history can't be opened or is not a history log
+     */
+    public void append(HealthCardID cip, List<String> annotations, int membShipNumb) throws IOException {
+        if (cip == null) throw new IllegalArgumentException("HealthCardID can't be null");
+        if (annotations == null) throw new IllegalArgumentException("Annotations can't be null");
+        MappedHistoryLog log = acquire(cip);
+        try {
+            for (String annotation : annotations)
+                if (annotation != null && !annotation.isEmpty()) log.append(annotation);
+            if (membShipNumb > 0) log.setMembShipNumb(membShipNumb);
+        } finally {
+            log.release();
+        }
+    }
+
+    // The open log of the patient, opened if it wasn't, kept open until released
+    private MappedHistoryLog acquire(HealthCardID cip) throws IOException {
+        List<MappedHistoryLog> evicted = new ArrayList<>();
+        MappedHistoryLog log;
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("History store closed: " + directory);
+            log = logs.get(cip);
+            if (log == null) {
+                // Under the lock, so a file is never opened twice
+                log = new MappedHistoryLog(pathOf(cip), syncOnAppend);
+                logs.put(cip, log);
+                Iterator<MappedHistoryLog> eldest = logs.values().iterator();
+                while (logs.size() > maxOpenLogs && eldest.hasNext()) {
+                    MappedHistoryLog candidate = eldest.next();
+                    if (candidate == log) break;
+                    if (candidate.closeIfUnused()) {
+                        eldest.remove();
+                        evicted.add(candidate);
+                    }
+                }
+            }
+            log.retain(); // Only closed under the lock, by this store
+        } finally {
+            lock.unlock();
+        }
+        evictions.add(evicted.size());
+        return log;
+    }
+
+    private Path pathOf(HealthCardID cip) {
+        return directory.resolve(cip.toHexString() + EXTENSION);
+    }
+
+    /**
+     * @return whether the patient has a history in the store, open or not
+     */
+    public boolean contains(HealthCardID cip) {
+        lock.lock();
+        try {
+            if (logs.containsKey(cip)) return true;
+        } finally {
+            lock.unlock();
+        }
+        return Files.exists(pathOf(cip));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getOpenLogs() {
+        lock.lock();
+        try {
+            return logs.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the logs closed to open others
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Closes the open histories, they can't be used afterwards
+     *
+     * @throws IOException if a history can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        lock.lock();
+        try {
+            closed = true;
+            for (MappedHistoryLog log : logs.values()) {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                    else failure.addSuppressed(e);
+                }
+            }
+            logs.clear();
+        } finally {
+            lock.unlock();
+        }
+        if (failure != null) throw failure;
+    }
+
+    // The copy of a history of a caller: the annotations the log had when it was got, read from the log,
+    // and the ones added since, kept apart
+    private final class SessionStorage implements HistoryStorage {
+        private final HealthCardID cip;
+        private final int stored;
+        private final List<String> appended = new ArrayList<>();
+        private int historyLength;
+        private int membShipNumb;
+
+        SessionStorage(HealthCardID cip, int stored, int historyLength, int membShipNumb) {
+            this.cip = cip;
+            this.stored = stored;
+            this.historyLength = historyLength;
+            this.membShipNumb = membShipNumb;
+        }
+
+        @Override
+        public void append(String annot) {
+            if (size() > 0) historyLength++;
+            appended.add(annot);
+            historyLength += annot.length();
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= stored) return appended.get(index - stored);
+            try {
+                MappedHistoryLog log = acquire(cip);
+                try {
+                    return log.get(index);
+                } finally {
+                    log.release();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("History log can't be opened again: " + pathOf(cip), e);
+            }
+        }
+
+        @Override
+        public void writeTo(Appendable out) throws IOException {
+            if (stored > 0) {
+                MappedHistoryLog log = acquire(cip);
+                try {
+                    log.writeTo(out, stored);
+                } finally {
+                    log.release();
+                }
+            }
+            for (int i = 0; i < appended.size(); i++) {
+                if (stored + i > 0) out.append('\n');
+                out.append(appended.get(i));
+            }
+        }
+
+        @Override
+        public int size() {
+            return stored + appended.size();
+        }
+
+        @Override
+        public int historyLength() {
+            return historyLength;
+        }
+
+        @Override
+        public int getMembShipNumb() {
+            return membShipNumb;
+        }
+
+        @Override
+        public void setMembShipNumb(int membShipNumb) {
+            this.membShipNumb = membShipNumb;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package services;
+
+import services.interfaces.TerminalView;
+
+import java.util.function.Supplier;
+
+/**
+ * Discards the screens without building them, for headless and batch runs
+ */
+public final class NoOpTerminalView implements TerminalView {
+    public static final NoOpTerminalView INSTANCE = new NoOpTerminalView();
+
+    private NoOpTerminalView() {
+    }
+
+    @Override
+    public void show(Supplier<String> screen) {
+    }
+
+    @Override
+    public void show(String message) {
+    }
+}
@@ -0,0 +1,170 @@
+package services;
+
+import data.ePrescripCode;
+import exceptions.ePrescripCodeException;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates unique ePrescripCodes without a global lock, 16 base-36 characters in two halves:
+ * <pre>
+ * 8 chars  the millisecond, since 2024-01-01 UTC (41 bits, until 2093)
+ * 8 chars  the node (12 bits), the stripe (6 bits) and the sequence inside the millisecond (23 bits)
+ * </pre>
+ * Every thread takes codes from the stripe picked by its id, a single compare-and-set on its own cache line that
+ * moves the sequence forward or starts it again on a new millisecond. A stripe never hands out a millisecond the
+ * clock hasn't reached: when its 8M codes of a millisecond are used up, or the clock goes back, it waits for the clock.
+ * So the codes are unique among the nodes, as long as every node has its own id and a single generator: the services
+ * of a process share {@link #shared()} unless they are given their own node. Across restarts they are unique only
+ * because a generator starts on the millisecond after it was created, as long as the wall clock never goes back
+ * between the runs of a node: a generator can't know the milliseconds the previous run used.
+ */
+public class PrescriptionCodeGenerator {
+
+    public static final long EPOCH = 1_704_067_200_000L; // 2024-01-01T00:00:00Z
+    public static final int MAX_NODE = (1 << 12) - 1;
+    static final int MAX_STRIPES = 1 << 6;
+
+    private static final int SEQUENCE_BITS = 23;
+    private static final int STRIPE_SHIFT = SEQUENCE_BITS;
+    private static final int NODE_SHIFT = SEQUENCE_BITS + 6;
+    private static final long MAX_TICK = (1L << 41) - 1;
+    private static final int HALF_LENGTH = 8;
+    private static final int RADIX = 36;
+    private static final char[] DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+    private static final int PADDING = 8; // a cache line of longs between the stripes
+
+    private final int node;
+    private final int stripeMask;
+    // Per stripe, the millisecond in the high bits and the next sequence in the low ones: the next code to hand out
+    private final AtomicLongArray leases;
+    private final LongSupplier clock;
+
+    /**
+     * Constructor of the class, with a stripe per processor.
+     * A node must have a single generator: two of them with the same id would hand out the same codes
+     *
+     * @param node the id of the node, unique among the nodes that generate codes
+     */
+    public PrescriptionCodeGenerator(int node) {
+        this(node, Runtime.getRuntime().availableProcessors(), System::currentTimeMillis);
+    }
+
+    /**
+     * @return the generator of node 0 shared by the whole process, created the first time it is used
+     */
+    public static PrescriptionCodeGenerator shared() {
+        return Shared.GENERATOR;
+    }
+
+    /**
+     * Constructor of the class
+     *
+     * @param node    the id of the node, unique among the nodes that generate codes
+     * @param stripes the number of sequences, rounded up to a power of two, at most 64
+     * @param clock   the current time in milliseconds
+     */
+    PrescriptionCodeGenerator(int node, int stripes, LongSupplier clock) {
+        if (node < 0 || node > MAX_NODE) throw new IllegalArgumentException("Node must be between 0 and " + MAX_NODE);
+        if (stripes <= 0) throw new IllegalArgumentException("Stripes must be > 0");
+        if (clock == null) throw new IllegalArgumentException("Clock can't be null");
+        int size = Math.min(MAX_STRIPES, Integer.highestOneBit(stripes));
+        if (size < stripes && size < MAX_STRIPES) size <<= 1;
+        this.node = node;
+        this.stripeMask = size - 1;
+        this.clock = clock;
+        this.leases = new AtomicLongArray(size * PADDING);
+        // The previous run, or another generator of this node, may have used the current millisecond
+        long first = (tick() + 1) << SEQUENCE_BITS;
+        for (int i = 0; i < size; i++) leases.set(i * PADDING, first);
+    }
+
+    /**
+     * @return a new code, never handed out before by this node
+     */
+    public ePrescripCode next() {
+        try {
+            return new ePrescripCode(nextCode());
+        } catch (ePrescripCodeException e) {
+            throw new IllegalStateException(e); // 16 letters and digits
+        }
+    }
+
+    /**
+     * @return the characters of a new code
+     */
+    public String nextCode() {
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        int index = stripe * PADDING;
+        while (true) {
+            long lease = leases.get(index);
+            long now = tick();
+            long value = Math.max(lease, now << SEQUENCE_BITS);
+            if ((value >>> SEQUENCE_BITS) > now) {
+                Thread.onSpinWait(); // The millisecond is used up, or the clock went back
+                continue;
+            }
+            if (leases.compareAndSet(index, lease, value + 1)) return format(value, stripe);
+        }
+    }
+
+    private long tick() {
+        long tick = clock.getAsLong() - EPOCH;
+        if (tick < 0 || tick > MAX_TICK) throw new IllegalStateException("Clock out of the range of the codes: " + tick);
+        return tick;
+    }
+
+    private String format(long value, int stripe) {
+        long low = (long) node << NODE_SHIFT | (long) stripe << STRIPE_SHIFT | (value & ((1L << SEQUENCE_BITS) - 1));
+        char[] chars = new char[2 * HALF_LENGTH];
+        write(chars, 0, value >>> SEQUENCE_BITS);
+        write(chars, HALF_LENGTH, low);
+        return new String(chars);
+    }
+
+    private static void write(char[] chars, int offset, long value) {
+        for (int i = offset + HALF_LENGTH - 1; i >= offset; i--) {
+            chars[i] = DIGITS[(int) (value % RADIX)];
+            value /= RADIX;
+        }
+    }
+
+    private static long read(String code, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + HALF_LENGTH; i++) {
+            int digit = Character.digit(code.charAt(i), RADIX);
+            if (digit < 0) throw new IllegalArgumentException("Not a generated code: " + code);
+            value = value * RADIX + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @param code a code made by a generator
+     * @return when it was generated, in milliseconds since 1970
+     */
+    public static long timestampOf(ePrescripCode code) {
+        return EPOCH + read(code.getPrescripCode(), 0);
+    }
+
+    /**
+     * @param code a code made by a generator
+     * @return the id of the node that generated it
+     */
+    public static int nodeOf(ePrescripCode code) {
+        return (int) (read(code.getPrescripCode(), HALF_LENGTH) >>> NODE_SHIFT);
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    public int getStripeCount() {
+        return stripeMask + 1;
+    }
+
+    private static final class Shared {
+        static final PrescriptionCodeGenerator GENERATOR = new PrescriptionCodeGenerator(0);
+    }
+}
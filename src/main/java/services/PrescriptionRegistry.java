@@ -0,0 +1,161 @@
+package services;
+
+import data.ProductID;
+import data.ePrescripCode;
+import exceptions.MedicalPrescriptionException;
+import exceptions.PrescriptionCodecException;
+import exceptions.ProductNotInPrescriptionException;
+import exceptions.ePrescripCodeException;
+import medicalconsultation.MedicalPrescription;
+import medicalconsultation.MedicalPrescriptionLine;
+import medicalconsultation.PrescriptionCodec;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The prescriptions registered at the HNS, found by their ePrescripCode, for the pharmacies.
+ * Every registered prescription is a copy of its own that is never handed out nor changed once published in the
+ * concurrent map, so the lookups don't take any lock and the doctors keep editing theirs meanwhile. The only thing
+ * that changes is the units left in the lines, decremented with a compare-and-set when a pharmacy dispenses.
+ * The lookups get a copy decoded from the registered bytes, with the units left when they were looked up.
+ * A prescription sent again gets a new code, which replaces the previous one and keeps its dispensed units.
+ */
+public class PrescriptionRegistry {
+
+    private final ConcurrentHashMap<ePrescripCode, Entry> prescriptions;
+
+    /**
+     * Constructor of the class
+     */
+    public PrescriptionRegistry() {
+        this(16);
+    }
+
+    /**
+     * Constructor of the class
+     *
+     * @param expectedPrescriptions how many prescriptions are going to be registered, to size the index
+     */
+    public PrescriptionRegistry(int expectedPrescriptions) {
+        if (expectedPrescriptions < 0) throw new IllegalArgumentException("Expected prescriptions must be >= 0");
+        this.prescriptions = new ConcurrentHashMap<>(expectedPrescriptions);
+    }
+
+    /**
+     * Registers a copy of a prescription under its code, replacing the one registered with the same code
+     * and keeping the units dispensed from it
+     *
+     * @param mPresc the prescription, with its code
+     * @throws ePrescripCodeException       if the prescription has no code
+     * @throws MedicalPrescriptionException if the prescription can't be copied
+     */
+    public void register(MedicalPrescription mPresc) throws ePrescripCodeException, MedicalPrescriptionException {
+        if (mPresc == null) throw new IllegalArgumentException("MedicalPrescription can't be null");
+        if (mPresc.getPrescCode() == null) throw new ePrescripCodeException("Prescription without ePrescripCode");
+        try {
+            byte[] encoded = PrescriptionCodec.encode(mPresc);
+            put(encoded, PrescriptionCodec.decode(encoded), mPresc.getPrescCode());
+        } catch (PrescriptionCodecException e) {
+            throw new MedicalPrescriptionException("Invalid prescription: " + e.getMessage());
+        }
+    }
+
+    // Used by the HNS, with the bytes of a prescription and a copy just decoded from them that nobody else changes.
+    // The prescription of the previous code is revoked, and the units dispensed from it carried over
+    void put(byte[] encoded, MedicalPrescription registered, ePrescripCode previous) {
+        ePrescripCode code = registered.getPrescCode();
+        Entry replaced = (previous == null || previous.equals(code)) ? null : prescriptions.remove(previous);
+        Entry entry = new Entry(encoded, registered);
+        prescriptions.compute(code, (key, old) -> {
+            Entry before = (replaced != null) ? replaced : old;
+            if (before != null) registered.takeDispensed(before.prescription);
+            return entry;
+        });
+    }
+
+    /**
+     * @param code the code of a registered prescription
+     * @return false if there wasn't any prescription with that code
+     */
+    public boolean revoke(ePrescripCode code) {
+        return code != null && prescriptions.remove(code) != null;
+    }
+
+    /**
+     * @param code the code of the prescription
+     * @return a copy of the registered prescription, with the units left in its lines when it was looked up
+     * @throws ePrescripCodeException if the code is null or there isn't any prescription with it
+     */
+    public MedicalPrescription lookup(ePrescripCode code) throws ePrescripCodeException {
+        Entry entry = entry(code);
+        MedicalPrescription copy;
+        try {
+            copy = PrescriptionCodec.decode(entry.encoded);
+        } catch (PrescriptionCodecException e) {
+            throw new IllegalStateException(e); // It was encoded when registered
+        }
+        for (MedicalPrescriptionLine line : copy.getLines())
+            line.carryDispensed(entry.prescription.getLine(line.getProductID()));
+        return copy;
+    }
+
+    /**
+     * The units left in a line, without copying the prescription
+     *
+     * @param code   the code of the prescription
+     * @param prodID the ProductID of the medicament
+     * @return the units left to dispense
+     * @throws ePrescripCodeException            if the code is null or there isn't any prescription with it
+     * @throws ProductNotInPrescriptionException if the medicament is not in the prescription
+     */
+    public int getRemaining(ePrescripCode code, ProductID prodID)
+            throws ePrescripCodeException, ProductNotInPrescriptionException {
+        return line(code, prodID).getRemaining();
+    }
+
+    /**
+     * Dispenses units of a medicament of a prescription, atomically: concurrent pharmacies never take
+     * more units than the line has left
+     *
+     * @param code   the code of the prescription
+     * @param prodID the ProductID of the medicament
+     * @param units  the units to dispense, > 0
+     * @return the units left in the line, or -1 if there weren't enough and nothing was dispensed
+     * @throws ePrescripCodeException            if the code is null or there isn't any prescription with it
+     * @throws ProductNotInPrescriptionException if the medicament is not in the prescription
+     */
+    public int dispense(ePrescripCode code, ProductID prodID, int units)
+            throws ePrescripCodeException, ProductNotInPrescriptionException {
+        return line(code, prodID).dispense(units);
+    }
+
+    private Entry entry(ePrescripCode code) throws ePrescripCodeException {
+        if (code == null) throw new ePrescripCodeException("ePrescripCode can't be null");
+        Entry entry = prescriptions.get(code);
+        if (entry == null) throw new ePrescripCodeException("Prescription not registered");
+        return entry;
+    }
+
+    private MedicalPrescriptionLine line(ePrescripCode code, ProductID prodID)
+            throws ePrescripCodeException, ProductNotInPrescriptionException {
+        if (prodID == null) throw new ProductNotInPrescriptionException("Product can't be null");
+        MedicalPrescriptionLine line = entry(code).prescription.getLine(prodID);
+        if (line == null) throw new ProductNotInPrescriptionException("Product not in taking guide line");
+        return line;
+    }
+
+    public int size() {
+        return prescriptions.size();
+    }
+
+    // A registered prescription: its bytes, to copy it, and the prescription whose lines are dispensed
+    private static final class Entry {
+        final byte[] encoded;
+        final MedicalPrescription prescription;
+
+        Entry(byte[] encoded, MedicalPrescription prescription) {
+            this.encoded = encoded;
+            this.prescription = prescription;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package services;
+
+import data.HealthCardID;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A signed history and prescription waiting to be sent to the HNS as part of a batch.
+ * The result completes with the registered prescription, or with the error of this submission only.
+ */
+public class PrescriptionSubmission {
+    private final HealthCardID cip;
+    private final MedicalHistory hce;
+    private final String illness;
+    private final MedicalPrescription prescription;
+    private final CompletableFuture<MedicalPrescription> result;
+
+    /**
+     * Constructor of the class
+     *
+     * @param cip          the HealthCardID of the patient
+     * @param hce          the medical history
+     * @param illness      the illness
+     * @param prescription the medical prescription
+     */
+    public PrescriptionSubmission(HealthCardID cip, MedicalHistory hce, String illness, MedicalPrescription prescription) {
+        this.cip = cip;
+        this.hce = hce;
+        this.illness = illness;
+        this.prescription = prescription;
+        this.result = new CompletableFuture<>();
+    }
+
+    public HealthCardID getCip() {
+        return cip;
+    }
+
+    public MedicalHistory getHce() {
+        return hce;
+    }
+
+    public String getIllness() {
+        return illness;
+    }
+
+    public MedicalPrescription getPrescription() {
+        return prescription;
+    }
+
+    public CompletableFuture<MedicalPrescription> getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,23 @@
+package services.interfaces;
+
+import data.HealthCardID;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking version of {@link HealthNationalService}.
+ * The futures complete exceptionally with the same exceptions the synchronous operations throw.
+ */
+public interface AsyncHealthNationalService {
+    CompletableFuture<MedicalHistory> getMedicalHistory(HealthCardID cip);
+
+    CompletableFuture<MedicalPrescription> getMedicalPrescription(HealthCardID cip, String illness);
+
+    CompletableFuture<MedicalPrescription> sendHistoryAndPrescription(HealthCardID cip,
+                                                                      MedicalHistory hce, String illness, MedicalPrescription mPresc);
+
+    // Internal operation
+    CompletableFuture<MedicalPrescription> generateTreatmCodeAndRegister(MedicalPrescription ePresc);
+}
@@ -2,6 +2,7 @@ package services.interfaces;
 
 import exceptions.*;
 import data.Suggestion;
+import data.SuggestionParser;
 
 import java.util.List;
 
@@ -11,4 +12,25 @@ public interface DecisionMakingAI {
     String getSuggestions(String prompt) throws BadPromptException;
 
     List<Suggestion> parseSuggest(String aiAnswer);
+
+    /**
+     * Asks for suggestions and hands them to the listener while the answer arrives.
+     * By default the whole answer is awaited and then parsed, the AIs that answer
+     * in pieces should feed every piece to a {@link SuggestionParser} as it arrives.
+     *
+     * @param prompt   the prompt
+     * @param listener the listener of the answer
+     * @throws BadPromptException if the prompt is not clear enough
+     */
+    default void streamSuggestions(String prompt, SuggestionListener listener) throws BadPromptException {
+        String answer = getSuggestions(prompt);
+        listener.onChunk(answer);
+        SuggestionParser parser = new SuggestionParser(listener::onSuggestion);
+        try {
+            parser.feed(answer);
+            parser.finish();
+        } catch (SuggestionException e) {
+            listener.onInvalidSuggestion(e);
+        }
+    }
 }
@@ -3,6 +3,9 @@ package services.interfaces;
 import exceptions.*;
 import medicalconsultation.*;
 import data.HealthCardID;
+import services.PrescriptionSubmission;
+
+import java.util.List;
 
 public interface HealthNationalService {
     MedicalHistory getMedicalHistory(HealthCardID cip)
@@ -16,6 +19,40 @@ public interface HealthNationalService {
             throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
             NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException;
 
+    /**
+     * Sends only what changed in the history and the prescription since they were got from the HNS,
+     * with the versions they were got at, and registers the prescription as sendHistoryAndPrescription does.
+     * By default, or when the records weren't got from the HNS, the whole records are sent.
+     * If the records changed at the HNS in the meantime nothing is applied and a
+     * {@link VersionConflictException} is thrown, the doctor has to get them again.
+     *
+     * @return the registered prescription
+     */
+    default MedicalPrescription sendHistoryAndPrescriptionChanges(HealthCardID cip, MedicalHistory hce, String illness,
+                                                                  MedicalPrescription mPresc)
+            throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+            NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+        return sendHistoryAndPrescription(cip, hce, illness, mPresc);
+    }
+
+    /**
+     * Sends several histories and prescriptions in one call.
+     * Every submission is completed with its own registered prescription or its own error,
+     * by default they are sent one by one.
+     *
+     * @param batch the submissions
+     */
+    default void sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch) {
+        for (PrescriptionSubmission submission : batch) {
+            try {
+                submission.getResult().complete(sendHistoryAndPrescription(submission.getCip(), submission.getHce(),
+                        submission.getIllness(), submission.getPrescription()));
+            } catch (Exception e) {
+                submission.getResult().completeExceptionally(e);
+            }
+        }
+    }
+
     // Internal operation
     MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
             throws ConnectException, ePrescripCodeException, MedicalPrescriptionException;
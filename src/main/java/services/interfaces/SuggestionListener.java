@@ -0,0 +1,29 @@
+package services.interfaces;
+
+import data.Suggestion;
+import exceptions.SuggestionException;
+
+/**
+ * Receives an AI answer while it is being generated.
+ * The chunks arrive in order, and every suggestion is handed over as soon as its closing '>' arrives.
+ */
+public interface SuggestionListener {
+    /**
+     * @param chunk the next piece of the raw answer
+     */
+    default void onChunk(CharSequence chunk) {
+    }
+
+    /**
+     * @param suggestion the suggestion just completed
+     */
+    void onSuggestion(Suggestion suggestion);
+
+    /**
+     * Called when a suggestion can't be read, no more suggestions are handed over after it
+     *
+     * @param e the parsing error
+     */
+    default void onInvalidSuggestion(SuggestionException e) {
+    }
+}
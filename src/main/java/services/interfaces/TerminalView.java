@@ -0,0 +1,22 @@
+package services.interfaces;
+
+import java.util.function.Supplier;
+
+/**
+ * Where the consultation terminal shows its screens.
+ * The screens are given as suppliers so they are only built if the view really shows them,
+ * a view may build them later and on another thread.
+ */
+public interface TerminalView {
+    /**
+     * @param screen builds the text of the screen
+     */
+    void show(Supplier<String> screen);
+
+    /**
+     * @param message a fixed text
+     */
+    default void show(String message) {
+        show(() -> message);
+    }
+}
@@ -49,4 +49,31 @@ public class HealthCardIDTest {
 
         Assertions.assertEquals(code, healthCardID.getPersonalID());
     }
+
+    @Test
+    @DisplayName("Parsed and constructed codes are equal and keep the case of the letters")
+    void packedEquality() throws HealthCardIDException {
+        HealthCardID constructed = new HealthCardID("12345678abcdEGHJ");
+        HealthCardID parsed = HealthCardID.parse(new StringBuilder("12345678abcdEGHJ"));
+
+        Assertions.assertEquals(constructed, parsed);
+        Assertions.assertEquals(constructed.hashCode(), parsed.hashCode());
+        Assertions.assertEquals("12345678abcdEGHJ", parsed.getPersonalID());
+        Assertions.assertNotEquals(constructed, HealthCardID.parse("12345678ABCDEGHJ"));
+        Assertions.assertNotEquals(constructed, HealthCardID.parse("12345678abcdEGHK"));
+    }
+
+    @Test
+    @DisplayName("Test throws HealthCardIDException for letters out of ASCII")
+    void nonAsciiLetters() {
+        Assertions.assertThrows(HealthCardIDException.class, () -> HealthCardID.parse("12345678ABCDEGHÑ"));
+    }
+
+    @Test
+    @DisplayName("Interning a code parsed before gives the same instance")
+    void intern() throws HealthCardIDException {
+        HealthCardID first = HealthCardID.intern("12345678ABCDEGHJ");
+
+        Assertions.assertSame(first, HealthCardID.intern(new StringBuilder("12345678ABCDEGHJ")));
+    }
 }
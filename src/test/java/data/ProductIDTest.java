@@ -45,4 +45,37 @@ public class ProductIDTest {
 
         Assertions.assertEquals(code, productID.getProductID());
     }
+
+    @Test
+    @DisplayName("Parsed, built from a number and constructed products are equal")
+    void packedEquality() throws ProductIDException {
+        ProductID constructed = new ProductID("000456789012");
+        ProductID parsed = ProductID.parse(new StringBuilder("000456789012"));
+        ProductID fromNumber = ProductID.of(456789012L);
+
+        Assertions.assertEquals(constructed, parsed);
+        Assertions.assertEquals(constructed, fromNumber);
+        Assertions.assertEquals(constructed.hashCode(), fromNumber.hashCode());
+        Assertions.assertEquals("000456789012", fromNumber.getProductID());
+        Assertions.assertEquals(456789012L, parsed.toLong());
+        Assertions.assertNotEquals(constructed, ProductID.of(456789013L));
+    }
+
+    @Test
+    @DisplayName("Test throws ProductIDException for numbers out of 12 digits and non ASCII digits")
+    void invalidPacked() {
+        Assertions.assertThrows(ProductIDException.class, () -> ProductID.of(1_000_000_000_000L));
+        Assertions.assertThrows(ProductIDException.class, () -> ProductID.of(-1));
+        Assertions.assertThrows(ProductIDException.class, () -> ProductID.parse("١٢٣٤٥٦٧٨٩٠١٢"));
+        Assertions.assertThrows(ProductIDException.class, () -> ProductID.parse(null));
+    }
+
+    @Test
+    @DisplayName("Interning a code parsed before gives the same instance")
+    void intern() throws ProductIDException {
+        ProductID first = ProductID.intern("123456789012");
+
+        Assertions.assertSame(first, ProductID.intern(new StringBuilder("123456789012")));
+        Assertions.assertEquals(new ProductID("123456789012"), first);
+    }
 }
@@ -0,0 +1,25 @@
+package data;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptNormalizerTest {
+
+    @Test
+    @DisplayName("Test the prompts are trimmed, with single spaces and in lower case")
+    void normalize() {
+        assertEquals("diabetes tipo 2, ajustar metformina",
+                PromptNormalizer.normalize(" Diabetes  tipo 2,\tajustar\nMETFORMINA "));
+        assertEquals("", PromptNormalizer.normalize(" \t "));
+        assertThrows(IllegalArgumentException.class, () -> PromptNormalizer.normalize(null));
+    }
+
+    @Test
+    @DisplayName("Test prompts that only differ in whitespace or case are the same")
+    void same() {
+        assertTrue(PromptNormalizer.same("Ajustar dosis", "  ajustar   DOSIS"));
+        assertFalse(PromptNormalizer.same("Ajustar dosis", "Ajustar dosis 2"));
+    }
+}
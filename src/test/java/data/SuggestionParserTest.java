@@ -0,0 +1,175 @@
+package data;
+
+import exceptions.SuggestionException;
+import medicalconsultation.FqUnit;
+import medicalconsultation.dayMoment;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import services.DecisionMakingAIMock;
+import services.interfaces.SuggestionListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuggestionParserTest {
+
+    @Test
+    @DisplayName("Parses a complete add suggestion")
+    void addSuggestion() throws Exception {
+        List<Suggestion> suggestions = SuggestionParser.parseAll(
+                "<I, 243516578917, BEFORELUNCH, 15, 1, 1, DAY, Tomar con abundante agua>");
+
+        assertEquals(1, suggestions.size());
+        Suggestion suggestion = suggestions.get(0);
+        assertEquals(ActionType.ADD, suggestion.getActionType());
+        assertEquals(new ProductID("243516578917"), suggestion.getProductID());
+        assertEquals(dayMoment.BEFORELUNCH, suggestion.getDayMoment());
+        assertEquals(15.0, suggestion.getDuration());
+        assertEquals(1.0, suggestion.getDose());
+        assertEquals(1.0, suggestion.getFrequency());
+        assertEquals(FqUnit.DAY, suggestion.getFqUnit());
+        assertEquals("Tomar con abundante agua", suggestion.getInstructions());
+    }
+
+    @Test
+    @DisplayName("Parses the suggestions with empty fields")
+    void emptyFields() throws Exception {
+        Suggestion remove = SuggestionParser.parseAll("<R, 640557143200>").get(0);
+        assertEquals(ActionType.DELETE, remove.getActionType());
+        assertNull(remove.getDose());
+        assertNull(remove.getInstructions());
+
+        Suggestion modify = SuggestionParser.parseAll("<M, 243516578917, , , 3, , , > ").get(0);
+        assertEquals(ActionType.MODIFY, modify.getActionType());
+        assertNull(modify.getDayMoment());
+        assertNull(modify.getDuration());
+        assertEquals(3.0, modify.getDose());
+        assertNull(modify.getFqUnit());
+        assertEquals("", modify.getInstructions());
+    }
+
+    @Test
+    @DisplayName("Parses every suggestion of a long answer, in order")
+    void severalSuggestions() throws Exception {
+        List<Suggestion> suggestions = SuggestionParser.parseAll(
+                "Suggestions: <I, 243516578917, AFTERDINNER, 7, 0.5, 8, HOUR, Con comida, sin alcohol>\n"
+                        + "<R, 640557143200>\n<M, 243516578917, , , 2.25, , , >");
+
+        assertEquals(3, suggestions.size());
+        assertEquals(0.5, suggestions.get(0).getDose());
+        assertEquals("Con comida, sin alcohol", suggestions.get(0).getInstructions());
+        assertEquals(ActionType.DELETE, suggestions.get(1).getActionType());
+        assertEquals(2.25, suggestions.get(2).getDose());
+    }
+
+    @Test
+    @DisplayName("An answer without brackets is a single suggestion")
+    void withoutBrackets() throws Exception {
+        List<Suggestion> suggestions = SuggestionParser.parseAll("R, 640557143200");
+        assertEquals(1, suggestions.size());
+        assertTrue(SuggestionParser.parseAll("  ").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Numbers the fast path doesn't read are parsed by the JDK")
+    void otherNumbers() throws Exception {
+        Suggestion suggestion = SuggestionParser.parseAll("<M, 243516578917, , 1e1, -2, +3., , >").get(0);
+        assertEquals(10.0, suggestion.getDuration());
+        assertEquals(-2.0, suggestion.getDose());
+        assertEquals(3.0, suggestion.getFrequency());
+    }
+
+    @Test
+    @DisplayName("Throws SuggestionException for invalid suggestions")
+    void invalidSuggestions() {
+        assertThrows(SuggestionException.class, () -> SuggestionParser.parseAll("<X, 243516578917>"));
+        assertThrows(SuggestionException.class, () -> SuggestionParser.parseAll("<I>"));
+        assertThrows(SuggestionException.class, () -> SuggestionParser.parseAll("<R, 12AB>"));
+        assertThrows(SuggestionException.class, () -> SuggestionParser.parseAll("<I, 243516578917, NOON, , , , , >"));
+        assertThrows(SuggestionException.class, () -> SuggestionParser.parseAll("<I, 243516578917, , ten, , , , >"));
+        assertThrows(SuggestionException.class, () -> SuggestionParser.parseAll("<R, 640557143200"));
+    }
+
+    @Test
+    @DisplayName("The mock keeps returning an empty list for invalid answers")
+    void mockParseSuggest() {
+        DecisionMakingAIMock ai = new DecisionMakingAIMock();
+
+        assertEquals(1, ai.parseSuggest("<R, 640557143200>").size());
+        assertTrue(ai.parseSuggest("<X, 640557143200>").isEmpty());
+        assertTrue(ai.parseSuggest(null).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Feeding the answer in chunks of any size gives the same suggestions")
+    void chunkedAnswer() throws Exception {
+        String answer = "<I, 243516578917, AFTERDINNER, 7, 0.5, 8, HOUR, Con comida>  <R, 640557143200><M, 243516578917, , , 3, , , >";
+        List<Suggestion> whole = SuggestionParser.parseAll(answer);
+
+        for (int size = 1; size <= answer.length(); size++) {
+            List<Suggestion> chunked = new ArrayList<>();
+            SuggestionParser parser = new SuggestionParser(chunked::add);
+            for (int i = 0; i < answer.length(); i += size)
+                parser.feed(answer.subSequence(i, Math.min(answer.length(), i + size)));
+            parser.finish();
+
+            assertEquals(whole.size(), chunked.size());
+            for (int i = 0; i < whole.size(); i++)
+                assertEquals(whole.get(i).toString(), chunked.get(i).toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Every suggestion is handed over as soon as it is closed")
+    void suggestionsAsSoonAsClosed() throws Exception {
+        List<Suggestion> received = new ArrayList<>();
+        SuggestionParser parser = new SuggestionParser(received::add);
+
+        parser.feed("<R, 6405571");
+        assertTrue(received.isEmpty());
+        parser.feed("43200> <R, 2435");
+        assertEquals(1, received.size());
+        parser.feed("16578917>");
+        assertEquals(2, received.size());
+        parser.finish();
+    }
+
+    @Test
+    @DisplayName("Throws SuggestionException if the answer ends inside a suggestion")
+    void unfinishedAnswer() throws Exception {
+        SuggestionParser parser = new SuggestionParser(suggestion -> {
+        });
+        parser.feed("<R, 640557143200> <I, 2435");
+        assertThrows(SuggestionException.class, parser::finish);
+    }
+
+    @Test
+    @DisplayName("The mock streams the suggestions before the whole answer has arrived")
+    void mockStreamSuggestions() throws Exception {
+        DecisionMakingAIMock ai = new DecisionMakingAIMock() {
+            @Override
+            public String getSuggestions(String prompt) {
+                return "<R, 640557143200><I, 243516578917, BEFORELUNCH, 15, 1, 1, DAY, Tomar con abundante agua>";
+            }
+        };
+        List<Integer> chunksBeforeSuggestion = new ArrayList<>();
+        StringBuilder answer = new StringBuilder();
+        ai.streamSuggestions("prompt", new SuggestionListener() {
+            @Override
+            public void onChunk(CharSequence chunk) {
+                answer.append(chunk);
+            }
+
+            @Override
+            public void onSuggestion(Suggestion suggestion) {
+                chunksBeforeSuggestion.add(answer.length());
+            }
+        });
+
+        assertEquals(2, chunksBeforeSuggestion.size());
+        assertTrue(chunksBeforeSuggestion.get(0) < answer.length());
+        assertEquals(ai.getSuggestions("prompt"), answer.toString());
+    }
+}
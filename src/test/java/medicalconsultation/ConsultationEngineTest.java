@@ -0,0 +1,174 @@
+package medicalconsultation;
+
+import data.*;
+import exceptions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import services.DecisionMakingAIMock;
+import services.HealthNationalServiceMock;
+import services.interfaces.HealthNationalService;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsultationEngineTest {
+    private ConsultationEngine engine;
+    private HealthCardID healthCardID;
+    private DigitalSignature digitalSignature;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        healthCardID = new HealthCardID("1234567890123456");
+        digitalSignature = new DigitalSignature(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 'A', 'B', 'C', 'D', 'E', 'G', 'H', 'J'});
+        engine = new ConsultationEngine(new HealthNationalServiceMock(), new DecisionMakingAIMock());
+    }
+
+    @Test
+    @DisplayName("Sessions can be opened, found and closed by ID")
+    void openAndCloseSessions() throws Exception {
+        ConsultationSession generated = engine.openSession(digitalSignature);
+        ConsultationSession named = engine.openSession("doctor-1", digitalSignature);
+
+        assertEquals(2, engine.getOpenSessions());
+        assertSame(generated, engine.getSession(generated.getSessionId()));
+        assertSame(named, engine.getSession("doctor-1"));
+
+        engine.closeSession("doctor-1");
+        assertEquals(1, engine.getOpenSessions());
+        assertThrows(ConsultationSessionException.class, () -> engine.getSession("doctor-1"));
+    }
+
+    @Test
+    @DisplayName("Checks the ConsultationSessionException throws adequately")
+    void sessionExceptions() throws Exception {
+        engine.openSession("doctor-1", digitalSignature);
+
+        assertThrows(ConsultationSessionException.class, () -> engine.openSession("doctor-1", digitalSignature));
+        assertThrows(ConsultationSessionException.class, () -> engine.openSession(null, digitalSignature));
+        assertThrows(ConsultationSessionException.class, () -> engine.getSession("unknown"));
+        assertThrows(ConsultationSessionException.class, () -> engine.closeSession("unknown"));
+    }
+
+    @Test
+    @DisplayName("The workflow state of a session does not leak into other sessions")
+    void sessionsAreIsolated() throws Exception {
+        ConsultationSession first = engine.openSession(digitalSignature);
+        ConsultationSession second = engine.openSession(digitalSignature);
+
+        first.initRevision(healthCardID, "illness");
+        first.enterMedicalAssessmentInHistory("assessment");
+
+        assertDoesNotThrow(first::initMedicalPrescriptionEdition);
+        assertThrows(ProceduralException.class, second::initMedicalPrescriptionEdition);
+        assertNull(second.getMedicalPrescription());
+    }
+
+    @Test
+    @DisplayName("Many sessions can run the whole workflow at the same time")
+    void concurrentWorkflows() throws Exception {
+        engine = new ConsultationEngine(new FreshRecordsService(), new DecisionMakingAIMock());
+        int sessions = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<MedicalPrescription>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < sessions; i++) {
+                ConsultationSession session = engine.openSession(digitalSignature);
+                results.add(executor.submit(() -> runWorkflow(session)));
+            }
+            for (Future<MedicalPrescription> result : results)
+                assertNotNull(result.get(30, TimeUnit.SECONDS).getPrescCode());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(sessions, engine.getOpenSessions());
+    }
+
+    @Test
+    @DisplayName("Submitted consultations run on their own session, which is closed when they end")
+    void submittedConsultations() throws Exception {
+        engine = new ConsultationEngine(new FreshRecordsService(), new DecisionMakingAIMock());
+        List<CompletableFuture<MedicalPrescription>> results = new ArrayList<>();
+        for (int i = 0; i < 64; i++)
+            results.add(engine.submit(digitalSignature, this::runWorkflow));
+        for (CompletableFuture<MedicalPrescription> result : results)
+            assertNotNull(result.get(30, TimeUnit.SECONDS).getPrescCode());
+
+        CompletableFuture<Object> failed = engine.submit(digitalSignature, session -> {
+            session.initMedicalPrescriptionEdition();
+            return null;
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(30, TimeUnit.SECONDS));
+        assertInstanceOf(ProceduralException.class, e.getCause());
+        assertEquals(0, engine.getOpenSessions());
+    }
+
+    @Test
+    @DisplayName("Submitted consultations run on the given executor, a rejection fails the consultation")
+    void consultationExecutor() throws Exception {
+        List<Runnable> queued = new ArrayList<>();
+        engine.setConsultationExecutor(queued::add);
+        CompletableFuture<String> result = engine.submit(digitalSignature, ConsultationSession::getSessionId);
+        assertFalse(result.isDone());
+        queued.get(0).run();
+        assertNotNull(result.get());
+
+        engine.setConsultationExecutor(task -> {
+            throw new RejectedExecutionException("Full");
+        });
+        assertTrue(engine.submit(digitalSignature, ConsultationSession::getSessionId).isCompletedExceptionally());
+        assertThrows(IllegalArgumentException.class, () -> engine.setConsultationExecutor(null));
+    }
+
+    private MedicalPrescription runWorkflow(ConsultationSession session) throws Exception {
+        ProductID productID = new ProductID("123456789012");
+        String[] instructions = {"DURINGBREAKFAST", "3", "10", "2", "DAY", "instruction"};
+
+        session.initRevision(healthCardID, "illness");
+        session.enterMedicalAssessmentInHistory("assessment");
+        session.initMedicalPrescriptionEdition();
+        session.callDecisionMakingAI();
+        session.askAIForSuggest("prompt");
+        session.extractGuidelinesFromSugg();
+        session.enterMedicineWithGuidelines(productID, instructions);
+        session.modifyDoseInLine(productID, 2);
+        session.removeLine(productID);
+        session.enterTreatmentEndingDate(new Date(System.currentTimeMillis() + (1000 * 60 * 60 * 24)));
+        session.finishMedicalPrescriptionEdition();
+        session.stampeeSignature();
+        session.sendHistoryAndPrescription();
+        session.printMedicalPrescrip();
+        return session.getMedicalPrescription();
+    }
+
+    // HNS stand-in that gives every revision its own history and prescription
+    private static class FreshRecordsService implements HealthNationalService {
+        @Override
+        public MedicalHistory getMedicalHistory(HealthCardID cip) throws IncorrectParametersException {
+            return new MedicalHistory(cip, 777);
+        }
+
+        @Override
+        public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness) throws MedicalPrescriptionException {
+            return new MedicalPrescription(cip, 777, illness);
+        }
+
+        @Override
+        public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce, String illness,
+                                                              MedicalPrescription mPresc)
+                throws ePrescripCodeException, MedicalPrescriptionException {
+            return generateTreatmCodeAndRegister(mPresc);
+        }
+
+        @Override
+        public MedicalPrescription generateTreatmCodeAndRegister(MedicalPrescription ePresc)
+                throws ePrescripCodeException, MedicalPrescriptionException {
+            ePresc.setPrescCode(new ePrescripCode("123456789ABCDEFG"));
+            return ePresc;
+        }
+    }
+}
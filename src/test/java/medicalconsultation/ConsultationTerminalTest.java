@@ -3,12 +3,17 @@ package medicalconsultation;
 import data.*;
 import exceptions.*;
 import services.*;
+import services.interfaces.AsyncHealthNationalService;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -50,6 +55,21 @@ class ConsultationTerminalTest {
 
     // ---- NOT EXCEPTIONS TESTS ----
 
+    @Test
+    @DisplayName("test the screens go to the injected view")
+    void terminalView() throws Exception {
+        List<String> screens = new ArrayList<>();
+        consultationTerminal.setTerminalView(screen -> screens.add(screen.get()));
+        consultationTerminal.initRevision(healthCardID, illness);
+
+        assertEquals(2, screens.size());
+        assertTrue(screens.get(0).startsWith("HCE: "));
+        assertTrue(screens.get(1).startsWith("PRESCRIPTION: "));
+
+        consultationTerminal.setTerminalView(NoOpTerminalView.INSTANCE);
+        assertDoesNotThrow(() -> consultationTerminal.enterMedicalAssessmentInHistory("assessment"));
+    }
+
     @Test
     @DisplayName("test init revision success: step 1")
     void initRevision() throws Exception {
@@ -108,6 +128,27 @@ class ConsultationTerminalTest {
         assertDoesNotThrow(() -> consultationTerminal.enterMedicineWithGuidelines(productID, instructions));
     }
 
+    @Test
+    @DisplayName("test accept suggestions: step 7, instead of entering the medicines one by one")
+    void acceptSuggestions() throws Exception {
+        reachState(6);
+        ProductID other = new ProductID("243516578917");
+        consultationTerminal.acceptSuggestions(List.of(
+                new Suggestion(ActionType.ADD, productID, dayMoment.DURINGBREAKFAST, 3.0, 10.0, 2.0, FqUnit.DAY, "instruction"),
+                new Suggestion(ActionType.ADD, other, dayMoment.BEFORELUNCH, 15.0, 1.0, 1.0, FqUnit.DAY, null)));
+
+        assertEquals(2, consultationTerminal.getMedicalPrescription().getLines().size());
+        // The workflow goes on as after entering a medicine
+        assertDoesNotThrow(() -> consultationTerminal.modifyDoseInLine(productID, 2));
+    }
+
+    @Test
+    @DisplayName("test accept suggestions is rejected before extracting the guidelines")
+    void acceptSuggestionsProceduralException() throws Exception {
+        reachState(5);
+        assertThrows(ProceduralException.class, () -> consultationTerminal.acceptSuggestions(List.of()));
+    }
+
     @Test
     @DisplayName("test modify dose in line: step 8")
     void modifyDoseInLine() throws Exception {
@@ -157,6 +198,32 @@ class ConsultationTerminalTest {
         assertDoesNotThrow(() -> consultationTerminal.sendHistoryAndPrescription());
     }
 
+    @Test
+    @DisplayName("test only the changes are sent, and leave the HNS records as the terminal's ones")
+    void sendHistoryAndPrescriptionChanges() throws Exception {
+        AtomicInteger wholeSubmissions = new AtomicInteger();
+        InMemoryHealthNationalService hns = new InMemoryHealthNationalService() {
+            @Override
+            public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce, String illness,
+                                                                  MedicalPrescription mPresc)
+                    throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+                    NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+                wholeSubmissions.incrementAndGet();
+                return super.sendHistoryAndPrescription(cip, hce, illness, mPresc);
+            }
+        };
+        hns.registerPatient(healthCardID, 777);
+        hns.registerPrescription(new MedicalPrescription(healthCardID, 777, illness));
+        consultationTerminal.setHealthNationalService(hns);
+        reachState(13);
+
+        assertEquals(0, wholeSubmissions.get());
+        assertEquals(List.of("assessment"), hns.getMedicalHistory(healthCardID).getAnnotations());
+        assertArrayEquals(PrescriptionCodec.encode(consultationTerminal.getMedicalPrescription()),
+                PrescriptionCodec.encode(hns.getMedicalPrescription(healthCardID, illness)));
+        assertFalse(consultationTerminal.getMedicalPrescription().hasChanges());
+    }
+
     @Test
     @DisplayName("test print medical prescription: step 14")
     void printMedicalPrescrip() throws Exception {
@@ -317,8 +384,9 @@ class ConsultationTerminalTest {
     @Test
     @DisplayName("Check other exceptions extract guide lines from suggestions")
     void extractGuidelinesFromSuggExceptions() throws Exception {
-        reachState(5);
+        reachState(4);
         decisionMakingAI.setFailWithsuggestions(true);
+        consultationTerminal.askAIForSuggest("prompt");
         // Bad prompt exception
         assertThrows(BadPromptException.class, () ->
                 consultationTerminal.extractGuidelinesFromSugg()
@@ -845,6 +913,283 @@ class ConsultationTerminalTest {
         );
     }
 
+    // ---- ASYNC HNS TESTS ----
+
+    @Test
+    @DisplayName("test init revision fetches the history and the prescription at the same time")
+    void initRevisionInParallel() throws Exception {
+        // Each call waits for the other one, so it only succeeds if both are running together
+        CyclicBarrier bothInFlight = new CyclicBarrier(2);
+        HealthNationalServiceMock barrierService = new HealthNationalServiceMock() {
+            @Override
+            public MedicalHistory getMedicalHistory(HealthCardID cip)
+                    throws ConnectException, HealthCardIDException, IncorrectParametersException {
+                awaitOther(bothInFlight);
+                return super.getMedicalHistory(cip);
+            }
+
+            @Override
+            public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+                    throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException, MedicalPrescriptionException {
+                awaitOther(bothInFlight);
+                return super.getMedicalPrescription(cip, illness);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            consultationTerminal.setAsyncHealthNationalService(new AsyncHealthNationalServiceAdapter(barrierService, executor));
+            consultationTerminal.initRevision(healthCardID, illness);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertNotNull(consultationTerminal.getMedicalPrescription());
+        assertNotNull(consultationTerminal.getMedicalHistory());
+    }
+
+    @Test
+    @DisplayName("Check the exceptions on init revision with an async HNS")
+    void initRevisionAsyncExceptions() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            consultationTerminal.setAsyncHealthNationalService(new AsyncHealthNationalServiceAdapter(healthNationalService, executor));
+
+            healthNationalService.setFailWithAnyCurrentPrescriptionException(true);
+            assertThrows(AnyCurrentPrescriptionException.class, () ->
+                    consultationTerminal.initRevision(healthCardID, "illness")
+            );
+            healthNationalService.setFailWithAnyCurrentPrescriptionException(false);
+
+            healthNationalService.setFailWithHealthCardIDException(true);
+            assertThrows(HealthCardIDException.class, () ->
+                    consultationTerminal.initRevision(healthCardID, "illness")
+            );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("test a failed init revision cancels the other call and keeps the previous records")
+    void initRevisionAsyncFailure() throws Exception {
+        consultationTerminal.initRevision(healthCardID, illness);
+        MedicalHistory history = consultationTerminal.getMedicalHistory();
+        MedicalPrescription prescription = consultationTerminal.getMedicalPrescription();
+
+        CompletableFuture<MedicalPrescription> pendingPrescription = new CompletableFuture<>();
+        consultationTerminal.setAsyncHealthNationalService(new AsyncHealthNationalService() {
+            @Override
+            public CompletableFuture<MedicalHistory> getMedicalHistory(HealthCardID cip) {
+                return CompletableFuture.failedFuture(new HealthCardIDException("Unknown patient"));
+            }
+
+            @Override
+            public CompletableFuture<MedicalPrescription> getMedicalPrescription(HealthCardID cip, String illness) {
+                return pendingPrescription;
+            }
+
+            @Override
+            public CompletableFuture<MedicalPrescription> sendHistoryAndPrescription(HealthCardID cip,
+                    MedicalHistory hce, String illness, MedicalPrescription mPresc) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletableFuture<MedicalPrescription> generateTreatmCodeAndRegister(MedicalPrescription ePresc) {
+                throw new UnsupportedOperationException();
+            }
+        });
+
+        assertThrows(HealthCardIDException.class, () ->
+                consultationTerminal.initRevision(new HealthCardID("6543210987654321"), "another illness")
+        );
+        assertTrue(pendingPrescription.isCancelled());
+        assertSame(history, consultationTerminal.getMedicalHistory());
+        assertSame(prescription, consultationTerminal.getMedicalPrescription());
+    }
+
+    @Test
+    @DisplayName("test the speculative answer is used when the doctor asks the speculative prompt")
+    void speculativeHit() throws Exception {
+        CountingAI ai = new CountingAI();
+        consultationTerminal.setAi(ai);
+        consultationTerminal.setSpeculativeExecutor(Runnable::run);
+        reachState(3);
+
+        String prompt = consultationTerminal.getSpeculativePrompt();
+        assertTrue(prompt.startsWith("illness: illness; lines:"));
+        assertEquals(1, ai.inits);
+        assertEquals(1, ai.asks);
+
+        consultationTerminal.callDecisionMakingAI();
+        consultationTerminal.askAIForSuggest("  " + prompt.toUpperCase() + " ");
+        assertEquals(1, ai.inits);
+        assertEquals(1, ai.asks);
+        assertEquals(0, ai.streams);
+        assertNull(consultationTerminal.getSpeculativePrompt());
+        assertDoesNotThrow(() -> consultationTerminal.extractGuidelinesFromSugg());
+        assertEquals(1, ai.parses); // The speculative answer, once
+    }
+
+    @Test
+    @DisplayName("test the speculative answer is discarded when the doctor asks another prompt")
+    void speculativeMiss() throws Exception {
+        CountingAI ai = new CountingAI();
+        consultationTerminal.setAi(ai);
+        consultationTerminal.setSpeculativeExecutor(Runnable::run);
+        reachState(4);
+        consultationTerminal.askAIForSuggest("another prompt");
+
+        assertEquals(1, ai.inits);
+        assertEquals(2, ai.asks); // The stream of the mock asks again
+        assertEquals(1, ai.streams);
+        assertDoesNotThrow(() -> consultationTerminal.extractGuidelinesFromSugg());
+        assertEquals(0, ai.parses); // The streamed suggestions are extracted
+        assertFalse(consultationTerminal.getSuggestions().isEmpty());
+    }
+
+    @Test
+    @DisplayName("test an answer with an unreadable suggestion is refused, even if the readable ones were shown")
+    void invalidStreamedSuggestion() throws Exception {
+        consultationTerminal.setAi(new DecisionMakingAIMock() {
+            @Override
+            public String getSuggestions(String prompt) {
+                return "<R, 640557143200><X, 243516578917>";
+            }
+        });
+        reachState(5);
+
+        assertThrows(BadPromptException.class, () -> consultationTerminal.extractGuidelinesFromSugg());
+    }
+
+    @Test
+    @DisplayName("test a failed warm-up is repeated by callDecisionMakingAI to report its error")
+    void speculativeWarmUpFails() throws Exception {
+        decisionMakingAI.setFailWithAIException(true);
+        consultationTerminal.setSpeculativeExecutor(Runnable::run);
+        reachState(3);
+
+        assertThrows(AIException.class, () -> consultationTerminal.callDecisionMakingAI());
+    }
+
+    @Test
+    @DisplayName("test a discarded speculative call is interrupted before the doctor's call uses the AI")
+    void speculativeCallInterrupted() throws Exception {
+        SlowAI ai = new SlowAI(10_000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            consultationTerminal.setAi(ai);
+            consultationTerminal.setSpeculativeExecutor(executor);
+            reachState(4);
+            assertTrue(ai.asked.await(5, TimeUnit.SECONDS));
+
+            consultationTerminal.askAIForSuggest("another prompt");
+
+            assertTrue(ai.interrupted);
+            assertEquals(1, ai.maxActive);
+            assertDoesNotThrow(() -> consultationTerminal.extractGuidelinesFromSugg());
+            assertFalse(executor.submit(() -> Thread.currentThread().isInterrupted()).get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("test the speculative prompt waits for the answer asked in advance if it isn't ready yet")
+    void speculativeAnswerInFlight() throws Exception {
+        SlowAI ai = new SlowAI(100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            consultationTerminal.setAi(ai);
+            consultationTerminal.setSpeculativeExecutor(executor);
+            reachState(4);
+            String prompt = consultationTerminal.getSpeculativePrompt();
+            assertTrue(ai.asked.await(5, TimeUnit.SECONDS));
+
+            consultationTerminal.askAIForSuggest(prompt);
+
+            assertEquals(1, ai.asks.get());
+            assertFalse(ai.interrupted);
+            assertDoesNotThrow(() -> consultationTerminal.extractGuidelinesFromSugg());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // AI mock whose first answer takes a while, it records whether it was interrupted and how many calls overlapped
+    private static class SlowAI extends DecisionMakingAIMock {
+        final long delayMillis;
+        final CountDownLatch asked = new CountDownLatch(1);
+        final AtomicInteger asks = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        volatile int maxActive;
+        volatile boolean interrupted;
+
+        SlowAI(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public String getSuggestions(String prompt) throws BadPromptException {
+            maxActive = Math.max(maxActive, active.incrementAndGet());
+            try {
+                if (asks.getAndIncrement() == 0) {
+                    asked.countDown();
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        throw new BadPromptException("Interrupted");
+                    }
+                }
+                return super.getSuggestions(prompt);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    // AI mock that counts the calls that go to the AI
+    private static class CountingAI extends DecisionMakingAIMock {
+        int inits;
+        int asks;
+        int streams;
+        int parses;
+
+        @Override
+        public void initDecisionMakingAI() throws AIException {
+            inits++;
+            super.initDecisionMakingAI();
+        }
+
+        @Override
+        public String getSuggestions(String prompt) throws BadPromptException {
+            asks++;
+            return super.getSuggestions(prompt);
+        }
+
+        @Override
+        public void streamSuggestions(String prompt, services.interfaces.SuggestionListener listener)
+                throws BadPromptException {
+            streams++;
+            super.streamSuggestions(prompt, listener);
+        }
+
+        @Override
+        public List<Suggestion> parseSuggest(String aiAnswer) {
+            parses++;
+            return super.parseSuggest(aiAnswer);
+        }
+    }
+
+    private static void awaitOther(CyclicBarrier barrier) throws ConnectException {
+        try {
+            barrier.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+            throw new ConnectException("The other HNS call was not running: " + e);
+        }
+    }
+
     // Helper method to fast-forward the state
     private void reachState(int step) throws Exception {
         if (step >= 1) consultationTerminal.initRevision(healthCardID, illness);
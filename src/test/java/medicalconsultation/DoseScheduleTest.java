@@ -0,0 +1,146 @@
+package medicalconsultation;
+
+import data.HealthCardID;
+import data.ProductID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DoseScheduleTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 7, 0);
+    private static final LocalDateTime FAR = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    private static MedicalPrescriptionLine line(String product, dayMoment moment, float duration, float freq,
+                                                FqUnit unit) throws Exception {
+        return new MedicalPrescriptionLine(new ProductID(product),
+                new TakingGuideline(moment, duration, 1, freq, unit, "instructions"));
+    }
+
+    private static List<LocalDateTime> times(Iterator<DoseEvent> doses) {
+        List<LocalDateTime> times = new ArrayList<>();
+        doses.forEachRemaining(event -> times.add(event.getTime()));
+        return times;
+    }
+
+    @Test
+    @DisplayName("A daily take is at the moment of the day, every day of the duration")
+    void daily() throws Exception {
+        MedicalPrescriptionLine line = line("123456789012", dayMoment.DURINGBREAKFAST, 3, 1, FqUnit.DAY);
+
+        assertEquals(List.of(START.withHour(8), START.withHour(8).plusDays(1), START.withHour(8).plusDays(2)),
+                times(DoseSchedule.expand(line, START, START, FAR)));
+        assertEquals(List.of(START.withHour(8).plusDays(1), START.withHour(8).plusDays(2),
+                START.withHour(8).plusDays(3)), times(DoseSchedule.expand(line, START.withHour(9), START, FAR)));
+        assertEquals(List.of(START.withHour(8).plusDays(3)),
+                times(DoseSchedule.expand(line, START.withHour(9), START.plusDays(2).withHour(12), FAR)));
+        Iterator<DoseEvent> none = DoseSchedule.expand(line, START, FAR, FAR);
+        assertFalse(none.hasNext());
+        assertThrows(NoSuchElementException.class, none::next);
+    }
+
+    @Test
+    @DisplayName("The takes are spread over the unit, or taken at the meals")
+    void frequencies() throws Exception {
+        LocalDateTime day = START.withHour(0);
+        assertEquals(List.of(day.withHour(7).withMinute(30), day.withHour(15).withMinute(30),
+                        day.withHour(23).withMinute(30)),
+                times(DoseSchedule.expand(line("123456789012", dayMoment.BEFOREBREAKFAST, 1, 3, FqUnit.DAY),
+                        START, START, FAR)));
+        assertEquals(List.of(day.withHour(8).withMinute(30), day.withHour(21).withMinute(30)),
+                times(DoseSchedule.expand(line("123456789012", dayMoment.AFTERMEALS, 1, 2, FqUnit.DAY),
+                        START, START, FAR)));
+        assertEquals(List.of(day.withHour(13).withMinute(30), day.withHour(13).withMinute(30).plusDays(7)),
+                times(DoseSchedule.expand(line("123456789012", dayMoment.BEFORELUNCH, 14, 1, FqUnit.WEEK),
+                        START, START, FAR)));
+        assertEquals(24, times(DoseSchedule.expand(line("123456789012", dayMoment.DURINGBREAKFAST, 1, 1, FqUnit.HOUR),
+                START, START, FAR)).size());
+        assertEquals(List.of(day.withHour(8), day.withHour(8).plusDays(2)),
+                times(DoseSchedule.expand(line("123456789012", dayMoment.DURINGBREAKFAST, 4, 0.5f, FqUnit.DAY),
+                        START, START, FAR)));
+    }
+
+    @Test
+    @DisplayName("The takes of a frequency that doesn't divide the unit are at the same minutes of every unit")
+    void noDrift() throws Exception {
+        MedicalPrescriptionLine line = line("123456789012", dayMoment.DURINGBREAKFAST, 3650, 7, FqUnit.DAY);
+        LocalDateTime day = START.withHour(0);
+        List<LocalDateTime> firstDay = new ArrayList<>();
+        for (int minute : new int[]{480, 685, 891, 1097, 1302, 1508, 1714}) firstDay.add(day.plusMinutes(minute));
+        assertEquals(firstDay, times(DoseSchedule.expand(line, START, START, START.plusDays(1).withHour(8))));
+
+        LocalDateTime from = START.plusDays(3000).withHour(8);
+        List<LocalDateTime> times = times(DoseSchedule.expand(line, START, from, from.plusDays(1)));
+        assertEquals(7, times.size());
+        for (int i = 0; i < times.size(); i++) assertEquals(firstDay.get(i).plusDays(3000), times.get(i));
+    }
+
+    @Test
+    @DisplayName("A range in the middle of a long treatment starts at its first take")
+    void range() throws Exception {
+        MedicalPrescriptionLine line = line("123456789012", dayMoment.DURINGDINNER, 3650, 2, FqUnit.DAY);
+        LocalDateTime from = START.plusDays(1000).withHour(12);
+
+        List<LocalDateTime> times = times(DoseSchedule.expand(line, START, from, from.plusDays(2)));
+
+        assertEquals(List.of(from.withHour(21), from.plusDays(1).withHour(9), from.plusDays(1).withHour(21),
+                from.plusDays(2).withHour(9)), times);
+    }
+
+    @Test
+    @DisplayName("The takes of the lines are merged by time, until the end date of the prescription")
+    void prescription() throws Exception {
+        MedicalPrescription mPresc = new MedicalPrescription(new HealthCardID("1234567890123456"), 777, "illness");
+        mPresc.addLine(new ProductID("123456789012"), new String[]{"DURINGDINNER", "10", "1", "1", "DAY", "i"});
+        mPresc.addLine(new ProductID("000000000001"), new String[]{"BEFOREBREAKFAST", "10", "1", "2", "DAY", "i"});
+        mPresc.setPrescDate(Date.from(START.toInstant(ZoneOffset.UTC)));
+        mPresc.setEndDate(Date.from(START.plusDays(5).toInstant(ZoneOffset.UTC)));
+
+        List<DoseEvent> events = new ArrayList<>();
+        DoseSchedule.expand(mPresc, ZoneOffset.UTC, START, FAR).forEachRemaining(events::add);
+
+        assertEquals(5 + 10, events.size());
+        for (int i = 1; i < events.size(); i++)
+            assertFalse(events.get(i).getTime().isBefore(events.get(i - 1).getTime()));
+        assertEquals(new ProductID("000000000001"), events.get(0).getProductID());
+        assertEquals(START.withHour(7).withMinute(30), events.get(0).getTime());
+        assertEquals(dayMoment.DURINGDINNER, events.get(events.size() - 1).getDMoment());
+    }
+
+    @Test
+    @DisplayName("The calendars of a population are expanded in parallel, every prescription once")
+    void population() throws Exception {
+        List<MedicalPrescription> population = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            MedicalPrescription mPresc = new MedicalPrescription(
+                    new HealthCardID(String.format("BBBB%012d", i)), 777, "illness");
+            mPresc.addLine(new ProductID("123456789012"), new String[]{"DURINGLUNCH", "30", "1", "1", "DAY", "i"});
+            mPresc.setPrescDate(Date.from(START.toInstant(ZoneOffset.UTC)));
+            population.add(mPresc);
+        }
+        Map<HealthCardID, Integer> takes = new ConcurrentHashMap<>();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            DoseSchedule.expandAll(population, ZoneOffset.UTC, START, FAR, (mPresc, doses) -> {
+                int count = 0;
+                for (; doses.hasNext(); doses.next()) count++;
+                assertNull(takes.put(mPresc.getCip(), count));
+            }, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(500, takes.size());
+        assertTrue(takes.values().stream().allMatch(count -> count == 30));
+        assertThrows(IllegalArgumentException.class, () ->
+                DoseSchedule.expandAll(population, ZoneId.of("UTC"), null, FAR, (p, d) -> {
+                }, ForkJoinPool.commonPool()));
+    }
+}
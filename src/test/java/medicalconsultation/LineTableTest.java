@@ -0,0 +1,106 @@
+package medicalconsultation;
+
+import data.ProductID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineTableTest {
+    private LineTable table;
+    private TakingGuideline guideline;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        table = new LineTable();
+        guideline = new TakingGuideline(dayMoment.AFTERLUNCH, 10, 1, 8, FqUnit.HOUR, "instructions");
+    }
+
+    @Test
+    @DisplayName("The lines are kept in the order they were added, also after removing some")
+    void insertionOrder() throws Exception {
+        for (long key = 20; key > 0; key--) table.add(key, line(key));
+        table.remove(7);
+        table.remove(20);
+        table.add(7, line(7));
+
+        List<Long> keys = new ArrayList<>();
+        for (MedicalPrescriptionLine line : table.view()) keys.add(line.getProductID().toLong());
+        List<Long> expected = new ArrayList<>();
+        for (long key = 19; key > 0; key--) if (key != 7) expected.add(key);
+        expected.add(7L);
+
+        assertEquals(expected, keys);
+        assertEquals(19, table.view().size());
+        assertEquals(7L, table.view().get(18).getProductID().toLong());
+    }
+
+    @Test
+    @DisplayName("The lines are read by position after removals, and still found by key")
+    void positionalReads() throws Exception {
+        for (long key = 1; key <= 10; key++) table.add(key, line(key));
+        table.remove(1);
+        table.remove(5);
+        table.remove(10);
+
+        List<Long> keys = new ArrayList<>();
+        for (int i = 0; i < table.view().size(); i++) keys.add(table.view().get(i).getProductID().toLong());
+
+        assertEquals(List.of(2L, 3L, 4L, 6L, 7L, 8L, 9L), keys);
+        assertThrows(IndexOutOfBoundsException.class, () -> table.view().get(7));
+        for (long key = 2; key <= 7; key++) table.remove(key);
+        assertEquals(8L, table.view().get(0).getProductID().toLong());
+        assertEquals(9L, table.view().get(1).getProductID().toLong());
+        for (long key = 8; key <= 9; key++) assertEquals(key, table.get(key).getProductID().toLong());
+        assertNull(table.get(5));
+    }
+
+    @Test
+    @DisplayName("The view is read-only and follows the changes of the table")
+    void liveView() throws Exception {
+        List<MedicalPrescriptionLine> view = table.view();
+        assertTrue(view.isEmpty());
+
+        table.add(1, line(1));
+        assertEquals(1, view.size());
+        assertSame(view, table.view());
+        assertThrows(UnsupportedOperationException.class, () -> view.add(line(2)));
+        assertThrows(UnsupportedOperationException.class, () -> view.remove(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> view.get(1));
+    }
+
+    @Test
+    @DisplayName("Random adds and removals give the same lines as a LinkedHashMap")
+    void sameAsLinkedHashMap() throws Exception {
+        Map<Long, MedicalPrescriptionLine> expected = new LinkedHashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            long key = random.nextInt(300) * 1_000_003L;
+            if (expected.containsKey(key)) {
+                assertSame(expected.remove(key), table.remove(key));
+            } else {
+                MedicalPrescriptionLine line = line(key);
+                expected.put(key, line);
+                table.add(key, line);
+            }
+            assertEquals(expected.size(), table.size());
+            if (i % 1000 == 0) assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(table.view()));
+        }
+        for (Map.Entry<Long, MedicalPrescriptionLine> entry : expected.entrySet())
+            assertSame(entry.getValue(), table.get(entry.getKey()));
+        assertEquals(new ArrayList<>(expected.values()), table.view());
+        assertNull(table.get(-5));
+        assertNull(table.remove(-5));
+    }
+
+    private MedicalPrescriptionLine line(long key) throws Exception {
+        return new MedicalPrescriptionLine(ProductID.of(key), guideline);
+    }
+}
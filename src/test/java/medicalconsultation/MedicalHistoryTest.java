@@ -6,6 +6,9 @@ import exceptions.IncorrectParametersException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringWriter;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class MedicalHistoryTest {
@@ -68,4 +71,48 @@ class MedicalHistoryTest {
         medicalHistory.setNewDoctor(777);
         assertEquals(777, medicalHistory.getMembShipNumb());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test verifies the annotations can be read one by one")
+    void testAnnotations() throws HealthCardIDException, IncorrectParametersException {
+        MedicalHistory medicalHistory = new MedicalHistory(new HealthCardID("987654321ZYXWVUT"), 33);
+        medicalHistory.addMedicalHistoryAnnotations("Patient with fever");
+        medicalHistory.addMedicalHistoryAnnotations(null);
+        medicalHistory.addMedicalHistoryAnnotations("");
+        medicalHistory.addMedicalHistoryAnnotations("Paracetamol prescribed.");
+
+        List<String> annotations = medicalHistory.getAnnotations();
+        assertEquals(List.of("Patient with fever", "Paracetamol prescribed."), annotations);
+        assertEquals(2, medicalHistory.getAnnotationCount());
+        assertThrows(UnsupportedOperationException.class, () -> annotations.add("annotation"));
+    }
+
+    @Test
+    @DisplayName("Test verifies the history can be written without building it")
+    void testWriteHistory() throws Exception {
+        MedicalHistory medicalHistory = new MedicalHistory(new HealthCardID("987654321ZYXWVUT"), 33);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            medicalHistory.addMedicalHistoryAnnotations("annotation " + i);
+            if (i > 0) expected.append('\n');
+            expected.append("annotation ").append(i);
+        }
+
+        StringWriter out = new StringWriter();
+        medicalHistory.writeHistoryTo(out);
+        assertEquals(expected.toString(), out.toString());
+        assertEquals(expected.toString(), medicalHistory.getHistory());
+        assertEquals(expected.length(), medicalHistory.getHistoryLength());
+    }
+
+    @Test
+    @DisplayName("Test verifies the history is updated after reading it")
+    void testHistoryAfterReading() throws HealthCardIDException, IncorrectParametersException {
+        MedicalHistory medicalHistory = new MedicalHistory(new HealthCardID("987654321ZYXWVUT"), 33);
+        medicalHistory.addMedicalHistoryAnnotations("first");
+        assertEquals("first", medicalHistory.getHistory());
+
+        medicalHistory.addMedicalHistoryAnnotations("second");
+        assertEquals("first\nsecond", medicalHistory.getHistory());
+    }
+}
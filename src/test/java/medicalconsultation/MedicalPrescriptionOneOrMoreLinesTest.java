@@ -1,7 +1,9 @@
 package medicalconsultation;
 
+import data.ActionType;
 import data.HealthCardID;
 import data.ProductID;
+import data.Suggestion;
 import exceptions.*;
 import medicalconsultation.interfaces.MedicalPrescriptionTestInterface;
 import org.junit.jupiter.api.BeforeEach;
@@ -98,4 +100,52 @@ class MedicalPrescriptionOneOrMoreLinesTest implements MedicalPrescriptionTestIn
         );
     }
 
+    @Test
+    @DisplayName("Apply several suggestions at once, each one seeing the changes of the previous ones")
+    void applySuggestions() throws Exception {
+        ProductID prod3 = new ProductID("223456789012");
+        medicalPrescription.applySuggestions(List.of(
+                new Suggestion(ActionType.ADD, prod3, dayMoment.AFTERLUNCH, 7.0, 1.0, 8.0, FqUnit.HOUR, null),
+                new Suggestion(ActionType.MODIFY, prod3, null, null, 2.5, null, null, "With food"),
+                new Suggestion(ActionType.MODIFY, prod1, dayMoment.BEFORELUNCH, null, null, null, null, null),
+                new Suggestion(ActionType.DELETE, prod2, null, null, null, null, null, null)));
+
+        List<MedicalPrescriptionLine> lines = medicalPrescription.getLines();
+        assertEquals(2, lines.size());
+        assertEquals(prod1, lines.get(0).getProductID());
+        assertEquals(prod3, lines.get(1).getProductID());
+
+        TakingGuideline modified = lines.get(0).getTakingGuideline();
+        assertEquals(dayMoment.BEFORELUNCH, modified.getDMoment());
+        assertEquals(5, modified.getPosology().getDose());
+        assertEquals("instructions1", modified.getInstructions());
+
+        TakingGuideline added = lines.get(1).getTakingGuideline();
+        assertEquals(2.5f, added.getPosology().getDose());
+        assertEquals(8, added.getPosology().getFreq());
+        assertEquals("With food", added.getInstructions());
+    }
+
+    @Test
+    @DisplayName("If a suggestion fails none of them is applied")
+    void applySuggestionsIsAtomic() throws Exception {
+        ProductID prod3 = new ProductID("223456789012");
+        Suggestion delete = new Suggestion(ActionType.DELETE, prod1, null, null, null, null, null, null);
+        Suggestion add = new Suggestion(ActionType.ADD, prod3, dayMoment.AFTERLUNCH, 7.0, 1.0, 8.0, FqUnit.HOUR, "");
+
+        assertThrows(ProductNotInPrescriptionException.class, () -> medicalPrescription.applySuggestions(List.of(
+                add, delete, new Suggestion(ActionType.MODIFY, prod1, null, null, 3.0, null, null, null))));
+        assertThrows(ProductAlreadyInPrescriptionException.class, () ->
+                medicalPrescription.applySuggestions(List.of(add, add)));
+        assertThrows(IncorrectTakingGuidelinesException.class, () -> medicalPrescription.applySuggestions(List.of(
+                delete, new Suggestion(ActionType.ADD, prod3, null, 7.0, 1.0, 8.0, FqUnit.HOUR, ""))));
+        assertThrows(PosologyException.class, () -> medicalPrescription.applySuggestions(List.of(
+                delete, new Suggestion(ActionType.MODIFY, prod2, null, null, -1.0, null, null, null))));
+
+        List<MedicalPrescriptionLine> lines = medicalPrescription.getLines();
+        assertEquals(2, lines.size());
+        assertEquals(prod1, lines.get(0).getProductID());
+        assertEquals(5, lines.get(0).getTakingGuideline().getPosology().getDose());
+        assertEquals(10, lines.get(1).getTakingGuideline().getPosology().getDose());
+    }
 }
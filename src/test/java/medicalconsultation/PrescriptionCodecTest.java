@@ -0,0 +1,141 @@
+package medicalconsultation;
+
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import data.ePrescripCode;
+import exceptions.PrescriptionCodecException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrescriptionCodecTest {
+    private MedicalPrescription medicalPrescription;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        medicalPrescription = new MedicalPrescription(new HealthCardID("12345678ABCDEGHJ"), 777, "Gripe común");
+        medicalPrescription.addLine(new ProductID("123456789012"),
+                new String[]{"BEFOREBREAKFAST", "10", "5", "2", "HOUR", "Con agua, en ayunas"});
+        medicalPrescription.addLine(new ProductID("000000000001"),
+                new String[]{"AFTERMEALS", "6.5", "0.25", "8", "MONTH", ""});
+        medicalPrescription.getLines().get(0).setQuantity(3);
+    }
+
+    @Test
+    @DisplayName("A new prescription keeps its data after encoding and decoding it")
+    void roundTrip() throws Exception {
+        byte[] bytes = PrescriptionCodec.encode(medicalPrescription);
+
+        assertEquals(PrescriptionCodec.encodedSize(medicalPrescription), bytes.length);
+        assertSamePrescription(medicalPrescription, PrescriptionCodec.decode(bytes));
+    }
+
+    @Test
+    @DisplayName("The optional code, end date and signature are encoded when present")
+    void roundTripSigned() throws Exception {
+        byte[] signature = new byte[16];
+        Arrays.fill(signature, (byte) -7);
+        medicalPrescription.setPrescCode(new ePrescripCode("123456789ABCDEFG"));
+        medicalPrescription.setEndDate(new Date(1_900_000_000_000L));
+        medicalPrescription.setEsig(new DigitalSignature(signature));
+
+        MedicalPrescription decoded = PrescriptionCodec.decode(PrescriptionCodec.encode(medicalPrescription));
+
+        assertSamePrescription(medicalPrescription, decoded);
+        assertEquals(medicalPrescription.getPrescCode(), decoded.getPrescCode());
+        assertEquals(medicalPrescription.getEndDate(), decoded.getEndDate());
+        assertEquals(medicalPrescription.geteSign(), decoded.geteSign());
+    }
+
+    @Test
+    @DisplayName("The code is set in an encoded prescription, or replaced if it had one")
+    void withCode() throws Exception {
+        ePrescripCode first = new ePrescripCode("123456789ABCDEFG");
+        ePrescripCode second = new ePrescripCode("GFEDCBA987654321");
+        byte[] bytes = PrescriptionCodec.encode(medicalPrescription);
+
+        byte[] coded = PrescriptionCodec.withCode(bytes, first);
+        medicalPrescription.setPrescCode(first);
+        assertArrayEquals(PrescriptionCodec.encode(medicalPrescription), coded);
+        byte[] recoded = PrescriptionCodec.withCode(coded, second);
+        medicalPrescription.setPrescCode(second);
+        assertArrayEquals(PrescriptionCodec.encode(medicalPrescription), recoded);
+        assertEquals(first, PrescriptionCodec.decode(coded).getPrescCode());
+        assertThrows(PrescriptionCodecException.class, () ->
+                PrescriptionCodec.withCode(Arrays.copyOf(bytes, 20), first));
+    }
+
+    @Test
+    @DisplayName("Many prescriptions can follow each other in the same buffer")
+    void sharedBuffer() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(2 * PrescriptionCodec.encodedSize(medicalPrescription));
+        PrescriptionCodec.encode(medicalPrescription, buffer);
+        PrescriptionCodec.encode(medicalPrescription, buffer);
+        assertFalse(buffer.hasRemaining());
+
+        buffer.flip();
+        assertSamePrescription(medicalPrescription, PrescriptionCodec.decode(buffer));
+        assertSamePrescription(medicalPrescription, PrescriptionCodec.decode(buffer));
+    }
+
+    @Test
+    @DisplayName("Truncated, too small or unknown encodings are rejected")
+    void invalidEncodings() throws Exception {
+        byte[] bytes = PrescriptionCodec.encode(medicalPrescription);
+
+        assertThrows(PrescriptionCodecException.class, () ->
+                PrescriptionCodec.decode(Arrays.copyOf(bytes, bytes.length - 3)));
+        assertThrows(PrescriptionCodecException.class, () ->
+                PrescriptionCodec.encode(medicalPrescription, ByteBuffer.allocate(bytes.length - 1)));
+        bytes[0] = 99;
+        assertThrows(PrescriptionCodecException.class, () -> PrescriptionCodec.decode(bytes));
+    }
+
+    @Test
+    @DisplayName("An identifier with letters out of ASCII can't be encoded")
+    void nonAsciiIdentifier() throws Exception {
+        medicalPrescription.setPrescCode(new ePrescripCode("123456789ABCDEFÑ"));
+
+        assertThrows(PrescriptionCodecException.class, () -> PrescriptionCodec.encode(medicalPrescription));
+    }
+
+    private static void assertSamePrescription(MedicalPrescription expected, MedicalPrescription actual) {
+        assertEquals(expected.getCip(), actual.getCip());
+        assertEquals(expected.getMembShipNumb(), actual.getMembShipNumb());
+        assertEquals(expected.getIllness(), actual.getIllness());
+        assertEquals(expected.getPrescDate(), actual.getPrescDate());
+
+        List<MedicalPrescriptionLine> expectedLines = sorted(expected.getLines());
+        List<MedicalPrescriptionLine> actualLines = sorted(actual.getLines());
+        assertEquals(expectedLines.size(), actualLines.size());
+        for (int i = 0; i < expectedLines.size(); i++) {
+            MedicalPrescriptionLine e = expectedLines.get(i);
+            MedicalPrescriptionLine a = actualLines.get(i);
+            assertEquals(e.getProductID(), a.getProductID());
+            assertEquals(e.getQuantity(), a.getQuantity());
+            assertEquals(e.getTakingGuideline().getDMoment(), a.getTakingGuideline().getDMoment());
+            assertEquals(e.getTakingGuideline().getDuration(), a.getTakingGuideline().getDuration());
+            assertEquals(e.getTakingGuideline().getInstructions(), a.getTakingGuideline().getInstructions());
+            assertEquals(e.getTakingGuideline().getPosology().getDose(), a.getTakingGuideline().getPosology().getDose());
+            assertEquals(e.getTakingGuideline().getPosology().getFreq(), a.getTakingGuideline().getPosology().getFreq());
+            assertEquals(e.getTakingGuideline().getPosology().getFreqUnit(),
+                    a.getTakingGuideline().getPosology().getFreqUnit());
+        }
+    }
+
+    private static List<MedicalPrescriptionLine> sorted(List<MedicalPrescriptionLine> view) {
+        List<MedicalPrescriptionLine> lines = new ArrayList<>(view);
+        lines.sort(Comparator.comparing(line -> line.getProductID().getProductID()));
+        return lines;
+    }
+}
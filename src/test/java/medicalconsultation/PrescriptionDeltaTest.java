@@ -0,0 +1,137 @@
+package medicalconsultation;
+
+import data.DigitalSignature;
+import data.HealthCardID;
+import data.ProductID;
+import exceptions.VersionConflictException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrescriptionDeltaTest {
+    private static final String[] INSTRUCTIONS = {"BEFORELUNCH", "15", "1", "1", "DAY", "Tomar con abundante agua"};
+
+    private HealthCardID cip;
+    private MedicalHistory history;
+    private MedicalPrescription prescription;
+    private MedicalHistory registeredHistory;
+    private MedicalPrescription registeredPrescription;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cip = new HealthCardID("12345678ABCDEGHJ");
+        history = new MedicalHistory(cip, 777);
+        history.addMedicalHistoryAnnotations("first visit");
+        prescription = new MedicalPrescription(cip, 777, "illness");
+        for (int i = 0; i < 20; i++) prescription.addLine(product(i), INSTRUCTIONS);
+
+        // The HNS keeps its own copies, the doctor gets the records at version 3
+        registeredHistory = new MedicalHistory(cip, 777);
+        registeredHistory.addMedicalHistoryAnnotations("first visit");
+        registeredPrescription = PrescriptionCodec.decode(PrescriptionCodec.encode(prescription));
+        for (MedicalHistory h : List.of(history, registeredHistory)) h.markSynchronized(3);
+        for (MedicalPrescription p : List.of(prescription, registeredPrescription)) p.markSynchronized(3);
+    }
+
+    private static ProductID product(int i) throws Exception {
+        return ProductID.of(243516578917L + 7919L * i);
+    }
+
+    @Test
+    @DisplayName("Only the records got from the HNS track their changes")
+    void untracked() throws Exception {
+        MedicalPrescription fresh = new MedicalPrescription(cip, 777, "illness");
+        fresh.addLine(product(0), INSTRUCTIONS);
+
+        assertFalse(fresh.isTracked());
+        assertFalse(fresh.hasChanges());
+        assertEquals(0, fresh.getVersion());
+        assertFalse(PrescriptionDelta.isAvailable(history, fresh));
+        assertThrows(IllegalStateException.class, () -> PrescriptionDelta.of(history, fresh));
+        assertThrows(IllegalArgumentException.class, () -> fresh.markSynchronized(0));
+
+        MedicalHistory freshHistory = new MedicalHistory(cip, 777);
+        freshHistory.addMedicalHistoryAnnotations("first visit");
+        assertFalse(freshHistory.isTracked());
+        assertEquals(List.of("first visit"), freshHistory.getAppendedAnnotations());
+    }
+
+    @Test
+    @DisplayName("The delta has the lines added, modified and removed since the records were got")
+    void changes() throws Exception {
+        history.addMedicalHistoryAnnotations("assessment");
+        prescription.addLine(product(100), INSTRUCTIONS); // added
+        prescription.modifyDoseInLine(product(3), 2); // modified
+        prescription.removeLine(product(5)); // removed
+        prescription.addLine(product(101), INSTRUCTIONS); // added and removed, not a change
+        prescription.removeLine(product(101));
+        prescription.removeLine(product(7)); // removed and added again, modified
+        prescription.addLine(product(7), INSTRUCTIONS);
+        prescription.modifyDoseInLine(product(100), 3); // still added
+
+        assertTrue(prescription.hasChanges());
+        PrescriptionDelta delta = PrescriptionDelta.of(history, prescription);
+
+        assertEquals(3, delta.getPrescriptionVersion());
+        assertEquals(3, delta.getHistoryVersion());
+        assertEquals(List.of("assessment"), delta.getAnnotations());
+        assertEquals(List.of(product(5)), delta.getRemovedLines());
+        assertEquals(List.of(product(100), product(3), product(7)),
+                delta.getLines().stream().map(MedicalPrescriptionLine::getProductID).toList());
+        assertFalse(delta.isEmpty());
+
+        prescription.markSynchronized(4);
+        history.markSynchronized(4);
+        assertFalse(prescription.hasChanges());
+        assertTrue(PrescriptionDelta.of(history, prescription).isEmpty());
+    }
+
+    @Test
+    @DisplayName("The delta, through the codec, leaves the registered records as the doctor's ones")
+    void applyEncoded() throws Exception {
+        history.addMedicalHistoryAnnotations("assessment");
+        prescription.modifyDoseInLine(product(3), 2);
+        prescription.removeLine(product(5));
+        prescription.addLine(product(100), INSTRUCTIONS);
+        prescription.setEndDate(new Date(1_900_000_000_000L));
+        prescription.setEsig(new DigitalSignature(new byte[16]));
+
+        PrescriptionDelta delta = PrescriptionDelta.of(history, prescription);
+        byte[] bytes = PrescriptionCodec.encode(delta);
+        assertEquals(PrescriptionCodec.encodedSize(delta), bytes.length);
+        assertTrue(bytes.length * 4 < PrescriptionCodec.encodedSize(prescription));
+
+        PrescriptionCodec.decodeDelta(bytes).applyTo(registeredHistory, registeredPrescription);
+
+        assertEquals(history.getAnnotations(), registeredHistory.getAnnotations());
+        assertArrayEquals(PrescriptionCodec.encode(prescription), PrescriptionCodec.encode(registeredPrescription));
+        // The registered lines are not the doctor's ones
+        prescription.modifyDoseInLine(product(100), 9);
+        assertNotEquals(9f, registeredPrescription.getLines().get(19).getTakingGuideline().getPosology().getDose());
+    }
+
+    @Test
+    @DisplayName("Nothing is applied over records changed at the HNS since they were got")
+    void versionConflict() throws Exception {
+        history.addMedicalHistoryAnnotations("assessment");
+        prescription.removeLine(product(5));
+        PrescriptionDelta delta = PrescriptionDelta.of(history, prescription);
+
+        registeredPrescription.markSynchronized(4);
+        assertThrows(VersionConflictException.class, () -> delta.applyTo(registeredHistory, registeredPrescription));
+        registeredPrescription.markSynchronized(3);
+        registeredHistory.markSynchronized(4);
+        assertThrows(VersionConflictException.class, () -> delta.applyTo(registeredHistory, registeredPrescription));
+        registeredHistory.markSynchronized(3);
+        registeredPrescription.removeLine(product(5));
+        assertThrows(VersionConflictException.class, () -> delta.applyTo(registeredHistory, registeredPrescription));
+
+        assertEquals(List.of("first visit"), registeredHistory.getAnnotations());
+        assertEquals(19, registeredPrescription.getLineCount());
+    }
+}
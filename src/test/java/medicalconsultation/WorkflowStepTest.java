@@ -0,0 +1,53 @@
+package medicalconsultation;
+
+import exceptions.ProceduralException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkflowStepTest {
+
+    @Test
+    @DisplayName("Every step leads to the state the next step is run from")
+    void stepsFollowTheWorkflow() throws ProceduralException {
+        States current = States.REVISION_NO_STARTED;
+        for (WorkflowStep step : WorkflowStep.values()) {
+            assertTrue(step.allows(current), step + " from " + current);
+            current = step.check(current);
+            assertEquals(step.getNext(), current);
+        }
+        assertEquals(States.MEDICAL_PRESCRIPTION_PRINTED, current);
+    }
+
+    @Test
+    @DisplayName("The steps are rejected from the wrong states")
+    void illegalTransitions() {
+        assertFalse(WorkflowStep.ENTER_ASSESSMENT.allows(States.REVISION_NO_STARTED));
+        assertFalse(WorkflowStep.CALL_AI.allows(States.ASSESSMENT_ENTERED));
+        assertFalse(WorkflowStep.PRINT_PRESCRIPTION.allows(States.SIGNATURE_STAMPED));
+        assertThrows(ProceduralException.class, () -> WorkflowStep.MODIFY_DOSE.check(States.REVISION_STARTED));
+    }
+
+    @Test
+    @DisplayName("A step can be allowed from more than one state")
+    void severalPredecessors() {
+        assertTrue(WorkflowStep.ENTER_MEDICINE.allows(States.GUIDELINES_EXTRACTED));
+        assertTrue(WorkflowStep.ENTER_MEDICINE.allows(States.MEDICINE_ENTERED));
+        for (States state : States.values())
+            assertTrue(WorkflowStep.INIT_REVISION.allows(state));
+    }
+
+    @Test
+    @DisplayName("The rejection is shared and has no stack trace")
+    void cachedRejection() {
+        ProceduralException first = assertThrows(ProceduralException.class,
+                () -> WorkflowStep.PRINT_PRESCRIPTION.check(States.REVISION_NO_STARTED));
+        ProceduralException second = assertThrows(ProceduralException.class,
+                () -> WorkflowStep.PRINT_PRESCRIPTION.check(States.AI_CALLED));
+
+        assertSame(first, second);
+        assertEquals(0, first.getStackTrace().length);
+        assertEquals("History wasn't send", first.getMessage());
+    }
+}
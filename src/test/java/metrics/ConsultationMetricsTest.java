@@ -0,0 +1,104 @@
+package metrics;
+
+import data.HealthCardID;
+import exceptions.ConnectException;
+import exceptions.ProceduralException;
+import medicalconsultation.ConsultationTerminal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import services.*;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsultationMetricsTest {
+    private ConsultationMetrics metrics;
+    private ConsultationTerminal terminal;
+    private HealthNationalServiceMock healthNationalService;
+    private HealthCardID healthCardID;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        metrics = ConsultationTerminal.newMetrics();
+        healthNationalService = new HealthNationalServiceMock();
+        healthCardID = new HealthCardID("1234567890123456");
+        terminal = new ConsultationTerminal();
+        terminal.setTerminalView(NoOpTerminalView.INSTANCE);
+        terminal.setHealthNationalService(new InstrumentedHealthNationalService(healthNationalService, metrics));
+        terminal.setAi(new InstrumentedDecisionMakingAI(new DecisionMakingAIMock(), metrics));
+        terminal.setMetrics(metrics);
+    }
+
+    @Test
+    @DisplayName("test the steps, the transitions and the service calls are recorded")
+    void workflowRecorded() throws Exception {
+        terminal.initRevision(healthCardID, "illness");
+        terminal.enterMedicalAssessmentInHistory("assessment");
+        terminal.initMedicalPrescriptionEdition();
+        terminal.callDecisionMakingAI();
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getStep("INIT_REVISION").getCount());
+        assertEquals(0, snapshot.getStep("INIT_REVISION").getErrors());
+        assertEquals(1, snapshot.getStep("CALL_AI").getCount());
+        assertEquals(0, snapshot.getStep("PRINT_PRESCRIPTION").getCount());
+        assertEquals(1, snapshot.getTransitions("REVISION_NO_STARTED", "REVISION_STARTED"));
+        assertEquals(1, snapshot.getTransitions("PRESCRIPTION_EDITING", "AI_CALLED"));
+        assertEquals(4, snapshot.getTransitions().size());
+        assertEquals(1, snapshot.getOperation(Operation.HNS_GET_MEDICAL_HISTORY).getCount());
+        assertEquals(1, snapshot.getOperation(Operation.HNS_GET_MEDICAL_PRESCRIPTION).getCount());
+        assertEquals(1, snapshot.getOperation(Operation.AI_INIT).getCount());
+        assertTrue(snapshot.getStep("INIT_REVISION").getMaxNanos() > 0);
+        assertEquals(0, snapshot.getTransitions("REVISION_NO_STARTED", "UNKNOWN"));
+        assertNull(snapshot.getStep("UNKNOWN"));
+    }
+
+    @Test
+    @DisplayName("test the rejected steps and the failed calls are counted as errors, without transition")
+    void errorsRecorded() throws Exception {
+        assertThrows(ProceduralException.class, () -> terminal.printMedicalPrescrip());
+        healthNationalService.setFailWithConnectException(true);
+        assertThrows(ConnectException.class, () -> terminal.initRevision(healthCardID, "illness"));
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getStep("PRINT_PRESCRIPTION").getErrors());
+        assertEquals(1, snapshot.getStep("INIT_REVISION").getErrors());
+        assertEquals(1, snapshot.getOperation(Operation.HNS_GET_MEDICAL_HISTORY).getErrors());
+        assertTrue(snapshot.getTransitions().isEmpty());
+    }
+
+    @Test
+    @DisplayName("test a terminal without metrics records nothing")
+    void disabled() throws Exception {
+        terminal.setMetrics(null);
+        terminal.initRevision(healthCardID, "illness");
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(0, snapshot.getStep("INIT_REVISION").getCount());
+        assertEquals(1, snapshot.getOperation(Operation.HNS_GET_MEDICAL_HISTORY).getCount());
+    }
+
+    @Test
+    @DisplayName("test the metrics are read and reset through JMX")
+    void jmx() throws Exception {
+        terminal.initRevision(healthCardID, "illness");
+        ObjectName name = metrics.register("test");
+        try {
+            TabularData steps = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Steps");
+            CompositeData initRevision = (CompositeData) steps.get(new Object[]{"INIT_REVISION"}).get("value");
+            assertEquals(1L, initRevision.get("count"));
+
+            ManagementFactory.getPlatformMBeanServer().invoke(name, "reset", null, null);
+            assertEquals(0, metrics.snapshot().getStep("INIT_REVISION").getCount());
+            assertTrue(metrics.getTransitions().isEmpty());
+        } finally {
+            ConsultationMetrics.unregister(name);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
@@ -0,0 +1,88 @@
+package metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("test every value falls in a bucket whose highest value is at most 1/32 above it")
+    void bucketPrecision() {
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 65, 1000, 4095, 4096, 123_456_789L, 1L << 40};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(highest >= value, "value " + value);
+            assertTrue(highest - value <= value / 32, "value " + value);
+            assertTrue(bucket < LatencyHistogram.BUCKETS);
+        }
+    }
+
+    @Test
+    @DisplayName("test the buckets are in the order of the values")
+    void bucketsOrdered() {
+        int previous = -1;
+        for (long value = 0; value < 1 << 16; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket == previous || bucket == previous + 1, "value " + value);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    @DisplayName("test the summary reports the count, the mean, the percentiles and the max")
+    void summary() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) histogram.record(value * 1000);
+
+        LatencySummary summary = histogram.summary(3);
+        assertEquals(1000, summary.getCount());
+        assertEquals(3, summary.getErrors());
+        assertEquals(500_500, summary.getMeanNanos(), 500_500 / 32.0);
+        assertEquals(500_000, summary.getP50Nanos(), 500_000 / 32.0);
+        assertEquals(900_000, summary.getP90Nanos(), 900_000 / 32.0);
+        assertEquals(990_000, summary.getP99Nanos(), 990_000 / 32.0);
+        assertEquals(1_000_000, summary.getMaxNanos());
+    }
+
+    @Test
+    @DisplayName("test an empty histogram reports zeros and the negative values count as 0")
+    void emptyAndNegative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencySummary empty = histogram.summary(0);
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getP99Nanos());
+        assertEquals(0, empty.getMaxNanos());
+
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.summary(0).getMaxNanos());
+    }
+
+    @Test
+    @DisplayName("test no value is lost when many threads record at once, and reset forgets them")
+    void concurrentRecordAndReset() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) histogram.record(i);
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(80_000, histogram.getCount());
+        assertEquals(80_000, histogram.summary(0).getCount());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.summary(0).getCount());
+    }
+}
@@ -0,0 +1,109 @@
+package services;
+
+import data.HealthCardID;
+import exceptions.AnyCurrentPrescriptionException;
+import exceptions.ConnectException;
+import exceptions.HealthCardIDException;
+import exceptions.IncorrectParametersException;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncHealthNationalServiceAdapterTest {
+    private HealthNationalServiceMock healthNationalService;
+    private ExecutorService executor;
+    private AsyncHealthNationalServiceAdapter adapter;
+    private HealthCardID healthCardID;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        healthNationalService = new HealthNationalServiceMock();
+        executor = Executors.newFixedThreadPool(2);
+        adapter = new AsyncHealthNationalServiceAdapter(healthNationalService, executor);
+        healthCardID = new HealthCardID("1234567890123456");
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("The futures complete with the results of the synchronous service")
+    void completesWithResults() throws Exception {
+        MedicalHistory history = adapter.getMedicalHistory(healthCardID).get();
+        MedicalPrescription prescription = adapter.getMedicalPrescription(healthCardID, "illness").get();
+
+        assertSame(healthNationalService.getMedicalHistory(healthCardID), history);
+        assertSame(healthNationalService.getMedicalPrescription(healthCardID, "illness"), prescription);
+        assertNotNull(adapter.generateTreatmCodeAndRegister(prescription).get().getPrescCode());
+    }
+
+    @Test
+    @DisplayName("The futures complete exceptionally with the exceptions of the synchronous service")
+    void completesWithExceptions() {
+        healthNationalService.setFailWithAnyCurrentPrescriptionException(true);
+        ExecutionException prescriptionError = assertThrows(ExecutionException.class,
+                () -> adapter.getMedicalPrescription(healthCardID, "illness").get());
+        assertInstanceOf(AnyCurrentPrescriptionException.class, prescriptionError.getCause());
+
+        healthNationalService.setFailWithConnectException(true);
+        ExecutionException historyError = assertThrows(ExecutionException.class,
+                () -> adapter.getMedicalHistory(healthCardID).get());
+        assertInstanceOf(ConnectException.class, historyError.getCause());
+    }
+
+    @Test
+    @DisplayName("A call the executor rejects completes exceptionally with a ConnectException")
+    void rejectedExecution() {
+        executor.shutdown();
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> adapter.getMedicalHistory(healthCardID).get());
+        assertInstanceOf(ConnectException.class, error.getCause());
+    }
+
+    @Test
+    @DisplayName("A call cancelled before it starts doesn't reach the HNS")
+    void cancelledBeforeStart() throws Exception {
+        List<Runnable> queued = new ArrayList<>();
+        AtomicInteger calls = new AtomicInteger();
+        HealthNationalServiceMock countingService = new HealthNationalServiceMock() {
+            @Override
+            public MedicalHistory getMedicalHistory(HealthCardID cip)
+                    throws ConnectException, HealthCardIDException, IncorrectParametersException {
+                calls.incrementAndGet();
+                return super.getMedicalHistory(cip);
+            }
+        };
+        AsyncHealthNationalServiceAdapter queuedAdapter = new AsyncHealthNationalServiceAdapter(countingService, queued::add);
+
+        CompletableFuture<MedicalHistory> cancelled = queuedAdapter.getMedicalHistory(healthCardID);
+        CompletableFuture<MedicalHistory> kept = queuedAdapter.getMedicalHistory(healthCardID);
+        cancelled.cancel(true);
+        queued.forEach(Runnable::run);
+
+        assertEquals(1, calls.get());
+        assertTrue(cancelled.isCancelled());
+        assertNotNull(kept.get());
+    }
+
+    @Test
+    @DisplayName("Null arguments on construction are rejected")
+    void nullArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new AsyncHealthNationalServiceAdapter(null, executor));
+        assertThrows(IllegalArgumentException.class, () -> new AsyncHealthNationalServiceAdapter(healthNationalService, null));
+    }
+}
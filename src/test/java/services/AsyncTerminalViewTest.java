@@ -0,0 +1,185 @@
+package services;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import services.interfaces.TerminalView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncTerminalViewTest {
+
+    @Test
+    @DisplayName("The screens of one terminal are shown in order on the renderer thread")
+    void rendersInOrder() throws Exception {
+        RecordingView recording = new RecordingView();
+        try (AsyncTerminalView view = new AsyncTerminalView(recording, 1024)) {
+            for (int i = 0; i < 500; i++) {
+                int screen = i;
+                view.show(() -> "screen " + screen);
+            }
+            view.flush();
+
+            assertEquals(500, recording.screens.size());
+            for (int i = 0; i < 500; i++) assertEquals("screen " + i, recording.screens.get(i));
+            assertEquals(List.of("terminal-renderer"), recording.threads.stream().distinct().toList());
+            assertEquals(0, view.getDroppedScreens());
+        }
+    }
+
+    @Test
+    @DisplayName("Many terminals can show screens at once, none is lost while there's room")
+    void concurrentTerminals() throws Exception {
+        RecordingView recording = new RecordingView();
+        try (AsyncTerminalView view = new AsyncTerminalView(recording, 1 << 14)) {
+            List<Thread> terminals = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread terminal = new Thread(() -> {
+                    for (int i = 0; i < 2000; i++) view.show("screen");
+                });
+                terminals.add(terminal);
+                terminal.start();
+            }
+            for (Thread terminal : terminals) terminal.join();
+            view.flush();
+
+            assertEquals(8000, recording.screens.size());
+        }
+    }
+
+    @Test
+    @DisplayName("When the buffer is full the screens are dropped and counted, the terminal doesn't wait")
+    void dropsWhenFull() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingView recording = new RecordingView() {
+            @Override
+            public void show(Supplier<String> screen) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.show(screen);
+            }
+        };
+        AsyncTerminalView view = new AsyncTerminalView(recording, 4);
+        view.show("first");
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) view.show("queued " + i);
+
+        assertEquals(6, view.getDroppedScreens());
+        release.countDown();
+        view.close();
+        assertEquals(5, recording.screens.size());
+        view.show("after close");
+        assertEquals(7, view.getDroppedScreens());
+    }
+
+    @Test
+    @DisplayName("A failing screen is counted and doesn't stop the renderer")
+    void failingScreen() throws Exception {
+        RecordingView recording = new RecordingView();
+        try (AsyncTerminalView view = new AsyncTerminalView(recording, 16)) {
+            view.show(() -> {
+                throw new IllegalStateException("broken screen");
+            });
+            view.show("next");
+            view.flush();
+
+            assertEquals(1, view.getFailedScreens());
+            assertEquals(List.of("next"), recording.screens);
+        }
+    }
+
+    @Test
+    @DisplayName("An idle renderer parks until a screen is shown, and every screen wakes it")
+    void idleRenderer() throws Exception {
+        RecordingView recording = new RecordingView();
+        try (AsyncTerminalView view = new AsyncTerminalView(recording, 16)) {
+            for (int i = 0; i < 200; i++) {
+                Thread renderer = awaitParked();
+                assertEquals(Thread.State.WAITING, renderer.getState());
+                view.show("screen " + i);
+                view.flush();
+            }
+
+            assertEquals(200, recording.screens.size());
+        }
+    }
+
+    @Test
+    @DisplayName("A close interrupted keeps the interrupt status, the renderer shows the pending screens")
+    void interruptedClose() throws Exception {
+        RecordingView recording = new RecordingView();
+        AsyncTerminalView view = new AsyncTerminalView(recording, 16);
+        view.show("pending");
+
+        Thread.currentThread().interrupt();
+        view.close();
+
+        assertTrue(Thread.interrupted());
+        view.flush();
+        assertEquals(List.of("pending"), recording.screens);
+    }
+
+    @Test
+    @DisplayName("Every screen shown while the view closes is either rendered or counted as dropped")
+    void closeWhileShowing() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            RecordingView recording = new RecordingView();
+            AsyncTerminalView view = new AsyncTerminalView(recording, 1 << 12);
+            CountDownLatch started = new CountDownLatch(4);
+            List<Thread> terminals = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread terminal = new Thread(() -> {
+                    started.countDown();
+                    for (int i = 0; i < 500; i++) view.show("screen");
+                });
+                terminals.add(terminal);
+                terminal.start();
+            }
+            started.await();
+            view.close();
+            for (Thread terminal : terminals) terminal.join();
+
+            assertEquals(2000, recording.screens.size() + view.getDroppedScreens());
+        }
+    }
+
+    // The renderer of the view being tested, the ones of other tests have finished
+    private static Thread awaitParked() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            for (Thread thread : Thread.getAllStackTraces().keySet())
+                if (thread.getName().equals("terminal-renderer") && thread.getState() == Thread.State.WAITING)
+                    return thread;
+            Thread.onSpinWait();
+        }
+        return fail("The renderer didn't park");
+    }
+
+    @Test
+    @DisplayName("The no-op view never builds the screens")
+    void noOpIsLazy() {
+        NoOpTerminalView.INSTANCE.show(() -> fail("The screen was built"));
+    }
+
+    private static class RecordingView implements TerminalView {
+        final List<String> screens = new CopyOnWriteArrayList<>();
+        final List<String> threads = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void show(Supplier<String> screen) {
+            screens.add(screen.get());
+            threads.add(Thread.currentThread().getName());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package services;
+
+import data.HealthCardID;
+import exceptions.*;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchingPrescriptionSubmitterTest {
+    private RecordingService healthNationalService;
+    private HealthCardID healthCardID;
+    private MedicalHistory history;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        healthNationalService = new RecordingService();
+        healthCardID = new HealthCardID("1234567890123456");
+        history = new MedicalHistory(healthCardID, 777);
+    }
+
+    @Test
+    @DisplayName("The submissions are grouped in batches of the maximum size")
+    void batchesBySize() throws Exception {
+        List<CompletableFuture<MedicalPrescription>> results = new ArrayList<>();
+        try (BatchingPrescriptionSubmitter submitter =
+                     new BatchingPrescriptionSubmitter(healthNationalService, 5, 1, TimeUnit.MINUTES, 100)) {
+            for (int i = 0; i < 10; i++)
+                results.add(submitter.submit(healthCardID, history, "illness", newPrescription()));
+            for (CompletableFuture<MedicalPrescription> result : results)
+                assertNotNull(result.get(5, TimeUnit.SECONDS).getPrescCode());
+        }
+
+        assertEquals(List.of(5, 5), healthNationalService.batchSizes);
+    }
+
+    @Test
+    @DisplayName("An incomplete batch is sent after the maximum delay")
+    void batchesByTime() throws Exception {
+        try (BatchingPrescriptionSubmitter submitter =
+                     new BatchingPrescriptionSubmitter(healthNationalService, 100, 20, TimeUnit.MILLISECONDS, 100)) {
+            CompletableFuture<MedicalPrescription> first = submitter.submit(healthCardID, history, "illness", newPrescription());
+            CompletableFuture<MedicalPrescription> second = submitter.submit(healthCardID, history, "illness", newPrescription());
+
+            assertNotNull(first.get(5, TimeUnit.SECONDS).getPrescCode());
+            assertNotNull(second.get(5, TimeUnit.SECONDS).getPrescCode());
+        }
+
+        assertEquals(2, healthNationalService.batchSizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    @DisplayName("Each submission gets its own error")
+    void perSubmissionFailures() throws Exception {
+        CompletableFuture<MedicalPrescription> ok;
+        CompletableFuture<MedicalPrescription> failed;
+        try (BatchingPrescriptionSubmitter submitter =
+                     new BatchingPrescriptionSubmitter(healthNationalService, 2, 1, TimeUnit.MINUTES, 100)) {
+            ok = submitter.submit(healthCardID, history, "illness", newPrescription());
+            failed = submitter.submit(healthCardID, history, "unknown", newPrescription());
+
+            assertNotNull(ok.get(5, TimeUnit.SECONDS).getPrescCode());
+            ExecutionException error = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(AnyCurrentPrescriptionException.class, error.getCause());
+        }
+    }
+
+    @Test
+    @DisplayName("A full queue rejects the submissions after the timeout")
+    void backpressure() throws Exception {
+        CountDownLatch hnsBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        healthNationalService.beforeBatch = () -> {
+            hnsBlocked.countDown();
+            release.await();
+        };
+        try (BatchingPrescriptionSubmitter submitter =
+                     new BatchingPrescriptionSubmitter(healthNationalService, 1, 0, TimeUnit.MILLISECONDS, 1)) {
+            CompletableFuture<MedicalPrescription> inFlight = submitter.submit(healthCardID, history, "illness", newPrescription());
+            assertTrue(hnsBlocked.await(5, TimeUnit.SECONDS));
+            CompletableFuture<MedicalPrescription> queued = submitter.submit(healthCardID, history, "illness", newPrescription());
+
+            assertThrows(SubmissionRejectedException.class, () ->
+                    submitter.trySubmit(healthCardID, history, "illness", newPrescription(), 10, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            assertNotNull(inFlight.get(5, TimeUnit.SECONDS));
+            assertNotNull(queued.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    @DisplayName("Closing sends the pending submissions and rejects the new ones")
+    void close() throws Exception {
+        BatchingPrescriptionSubmitter submitter =
+                new BatchingPrescriptionSubmitter(healthNationalService, 100, 1, TimeUnit.MINUTES, 100);
+        CompletableFuture<MedicalPrescription> pending = submitter.submit(healthCardID, history, "illness", newPrescription());
+        submitter.close();
+
+        assertTrue(pending.isDone());
+        assertNotNull(pending.get().getPrescCode());
+        assertThrows(SubmissionRejectedException.class, () ->
+                submitter.submit(healthCardID, history, "illness", newPrescription()));
+    }
+
+    @Test
+    @DisplayName("An idle submitter waits for the submissions without polling, and closing it wakes it")
+    void idle() throws Exception {
+        BatchingPrescriptionSubmitter submitter =
+                new BatchingPrescriptionSubmitter(healthNationalService, 100, 1, TimeUnit.MINUTES, 100);
+        // The worker of another test may still be finishing, but it never waits
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        Thread worker = null;
+        while (worker == null && System.nanoTime() < deadline) {
+            worker = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> thread.getName().equals("prescription-batcher")
+                            && thread.getState() == Thread.State.WAITING)
+                    .findFirst().orElse(null);
+        }
+
+        assertNotNull(worker);
+        submitter.close();
+        assertFalse(worker.isAlive());
+        assertTrue(healthNationalService.batchSizes.isEmpty());
+    }
+
+    @Test
+    @DisplayName("A close interrupted keeps the interrupt status and fails the submissions not sent")
+    void interruptedClose() throws Exception {
+        CountDownLatch hnsBlocked = new CountDownLatch(1);
+        healthNationalService.beforeBatch = () -> {
+            hnsBlocked.countDown();
+            new CountDownLatch(1).await();
+        };
+        BatchingPrescriptionSubmitter submitter =
+                new BatchingPrescriptionSubmitter(healthNationalService, 1, 0, TimeUnit.MILLISECONDS, 100);
+        submitter.submit(healthCardID, history, "illness", newPrescription());
+        assertTrue(hnsBlocked.await(5, TimeUnit.SECONDS));
+        CompletableFuture<MedicalPrescription> queued = submitter.submit(healthCardID, history, "illness", newPrescription());
+
+        Thread.currentThread().interrupt();
+        submitter.close();
+
+        assertTrue(Thread.interrupted());
+        ExecutionException error = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(InterruptedException.class, error.getCause());
+        assertThrows(SubmissionRejectedException.class, () ->
+                submitter.submit(healthCardID, history, "illness", newPrescription()));
+    }
+
+    @Test
+    @DisplayName("By default a batch is sent one by one, every submission gets its own error")
+    void defaultBatch() throws Exception {
+        HealthNationalServiceMock mock = new HealthNationalServiceMock();
+        List<PrescriptionSubmission> batch = List.of(
+                new PrescriptionSubmission(healthCardID, history, "illness", newPrescription()),
+                new PrescriptionSubmission(healthCardID, history, "illness", newPrescription()));
+        mock.setFailWithConnectException(true);
+
+        mock.sendHistoriesAndPrescriptions(batch);
+
+        for (PrescriptionSubmission submission : batch) {
+            ExecutionException error = assertThrows(ExecutionException.class, () -> submission.getResult().get());
+            assertInstanceOf(ConnectException.class, error.getCause());
+        }
+    }
+
+    private MedicalPrescription newPrescription() throws MedicalPrescriptionException {
+        return new MedicalPrescription(healthCardID, 777, "illness");
+    }
+
+    @FunctionalInterface
+    private interface BatchHook {
+        void run() throws InterruptedException;
+    }
+
+    // Records the size of the bulk calls and knows only the prescriptions of "illness"
+    private static class RecordingService extends HealthNationalServiceMock {
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        volatile BatchHook beforeBatch = () -> {
+        };
+
+        RecordingService() throws IncorrectParametersException, HealthCardIDException, MedicalPrescriptionException {
+        }
+
+        @Override
+        public void sendHistoriesAndPrescriptions(List<PrescriptionSubmission> batch) {
+            try {
+                beforeBatch.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batchSizes.add(batch.size());
+            super.sendHistoriesAndPrescriptions(batch);
+        }
+
+        @Override
+        public MedicalPrescription sendHistoryAndPrescription(HealthCardID cip, MedicalHistory hce, String illness,
+                                                              MedicalPrescription mPresc)
+                throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException,
+                NotCompletedMedicalPrescription, MedicalPrescriptionException, ePrescripCodeException {
+            if (!"illness".equals(illness)) throw new AnyCurrentPrescriptionException("Prescription not found");
+            return super.sendHistoryAndPrescription(cip, hce, illness, mPresc);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package services;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedCacheTest {
+
+    @Test
+    @DisplayName("Stored values are returned and counted as hits")
+    void hitsAndMisses() {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, 1, TimeUnit.MINUTES);
+
+        assertNull(cache.get("a"));
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    @DisplayName("The least recently used entry is evicted when the cache is full")
+    void lruEviction() {
+        // A single segment, so the whole cache follows one LRU order
+        BoundedCache<Integer, String> cache = new BoundedCache<>(1, 1, TimeUnit.MINUTES);
+        cache.put(1, "one");
+        cache.put(2, "two");
+
+        assertNull(cache.get(1));
+        assertEquals("two", cache.get(2));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("The size of the cache stays bounded")
+    void boundedSize() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(64, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 10_000; i++)
+            cache.put(i, i);
+
+        assertTrue(cache.size() <= 64);
+        assertEquals(10_000 - cache.size(), cache.getEvictions());
+    }
+
+    @Test
+    @DisplayName("Entries expire after the TTL")
+    void expiration() {
+        AtomicLong now = new AtomicLong();
+        BoundedCache<String, String> cache = new BoundedCache<>(10, 10, TimeUnit.NANOSECONDS, now::get);
+        cache.put("a", "A");
+
+        now.set(9);
+        assertEquals("A", cache.get("a"));
+        now.set(10);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getExpirations());
+    }
+
+    @Test
+    @DisplayName("Invalidated entries are not returned")
+    void invalidation() {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, 1, TimeUnit.MINUTES);
+        cache.put("a", "A");
+        cache.put("b", "B");
+
+        cache.invalidate("a");
+        assertNull(cache.get("a"));
+        assertEquals("B", cache.get("b"));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("The cache can be used from several threads")
+    void concurrentAccess() throws InterruptedException {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(128, 1, TimeUnit.MINUTES);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t * 1000;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    cache.put(offset + i, i);
+                    cache.get(offset + i / 2);
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertTrue(cache.size() <= 128);
+        assertEquals(4000, cache.getHits() + cache.getMisses());
+    }
+
+    @Test
+    @DisplayName("Invalid arguments are rejected")
+    void invalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new BoundedCache<>(0, 1, TimeUnit.MINUTES));
+        assertThrows(IllegalArgumentException.class, () -> new BoundedCache<>(1, 0, TimeUnit.MINUTES));
+        BoundedCache<String, String> cache = new BoundedCache<>(1, 1, TimeUnit.MINUTES);
+        assertThrows(IllegalArgumentException.class, () -> cache.put("a", null));
+    }
+
+    @Test
+    @DisplayName("With a weigher the entries are evicted by weight, an entry heavier than a segment is not kept")
+    void weightEviction() {
+        // 16 segments of weight 4, the Integer keys 0, 16 and 32 fall in the same one
+        BoundedCache<Integer, String> cache = new BoundedCache<>(64, (key, value) -> value.length(), 1, TimeUnit.MINUTES);
+        cache.put(0, "xx");
+        cache.put(16, "xx");
+        assertEquals(4, cache.getWeight());
+
+        cache.put(32, "x");
+        assertNull(cache.get(0));
+        assertEquals(3, cache.getWeight());
+
+        cache.put(1, "xxxxx");
+        assertNull(cache.get(1));
+        assertEquals(1, cache.getEvictions());
+
+        cache.put(16, "x");
+        assertEquals(2, cache.getWeight());
+        cache.invalidate(32);
+        assertEquals(1, cache.getWeight());
+    }
+
+    @Test
+    @DisplayName("An entry heavier than a segment doesn't evict the others, and removes the stale value of its key")
+    void oversizedEntry() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(64, (key, value) -> value.length(), 1, TimeUnit.MINUTES);
+        cache.put(0, "xx");
+        cache.put(16, "x");
+
+        cache.put(16, "xxxxx");
+
+        assertEquals("xx", cache.get(0));
+        assertNull(cache.get(16));
+        assertEquals(2, cache.getWeight());
+        assertEquals(0, cache.getEvictions());
+    }
+}
@@ -0,0 +1,218 @@
+package services;
+
+import data.Suggestion;
+import data.SuggestionParser;
+import exceptions.BadPromptException;
+import exceptions.SuggestionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import services.interfaces.DecisionMakingAI;
+import services.interfaces.SuggestionListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingDecisionMakingAITest {
+    private static final String ANSWER = "<I, 243516578917, BEFORELUNCH, 15, 1, 1, DAY, Tomar con abundante agua>"
+            + "<R, 640557143200>";
+
+    private CountingAI upstream;
+    private CachingDecisionMakingAI cachingAI;
+
+    @BeforeEach
+    void setUp() {
+        upstream = new CountingAI();
+        cachingAI = new CachingDecisionMakingAI(upstream, 1 << 20, 1, TimeUnit.MINUTES);
+    }
+
+    @Test
+    @DisplayName("Prompts that only differ in whitespace or case share the cached answer")
+    void normalisedPrompts() throws Exception {
+        String answer = cachingAI.getSuggestions("Diabetes tipo 2, ajustar metformina");
+
+        assertSame(answer, cachingAI.getSuggestions("  diabetes   TIPO 2,\tajustar\nmetformina "));
+        assertEquals(1, upstream.calls.get());
+        assertEquals(1, cachingAI.getAnswerCache().getHits());
+    }
+
+    @Test
+    @DisplayName("A cached answer is replayed to the listeners with its parsed suggestions")
+    void streamReplay() throws Exception {
+        List<Suggestion> streamed = new ArrayList<>();
+        StringBuilder chunks = new StringBuilder();
+        SuggestionListener listener = new SuggestionListener() {
+            @Override
+            public void onChunk(CharSequence chunk) {
+                chunks.append(chunk);
+            }
+
+            @Override
+            public void onSuggestion(Suggestion suggestion) {
+                streamed.add(suggestion);
+            }
+        };
+        cachingAI.streamSuggestions("prompt", listener);
+        cachingAI.streamSuggestions("PROMPT", listener);
+
+        assertEquals(1, upstream.calls.get());
+        assertEquals(4, streamed.size());
+        assertSame(streamed.get(0), streamed.get(2));
+        assertEquals(ANSWER + ANSWER, chunks.toString());
+        assertEquals(ANSWER, cachingAI.getSuggestions("prompt"));
+        assertEquals(1, upstream.calls.get());
+    }
+
+    @Test
+    @DisplayName("Concurrent identical prompts make a single call to the AI")
+    void singleFlight() throws Exception {
+        upstream.gate = new CountDownLatch(1);
+        int sessions = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(sessions);
+        try {
+            List<Future<String>> answers = new ArrayList<>();
+            for (int i = 0; i < sessions; i++)
+                answers.add(executor.submit(() -> cachingAI.getSuggestions("same prompt")));
+            while (upstream.calls.get() == 0 || cachingAI.getCoalescedCalls() < sessions - 1) Thread.sleep(1);
+            upstream.gate.countDown();
+
+            for (Future<String> answer : answers) assertEquals(ANSWER, answer.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, upstream.calls.get());
+        assertEquals(1, cachingAI.getUpstreamCalls());
+        assertEquals(sessions - 1, cachingAI.getCoalescedCalls());
+    }
+
+    @Test
+    @DisplayName("The errors reach every waiting session and are not cached")
+    void errorsNotCached() {
+        upstream.fail = true;
+        assertThrows(BadPromptException.class, () -> cachingAI.getSuggestions("prompt"));
+        assertThrows(BadPromptException.class, () -> cachingAI.getSuggestions(null));
+
+        upstream.fail = false;
+        assertDoesNotThrow(() -> cachingAI.getSuggestions("prompt"));
+        assertEquals(3, upstream.calls.get()); // The null prompt goes to the AI too
+    }
+
+    @Test
+    @DisplayName("The cache keeps the answers within its size in bytes")
+    void sizeBounded() throws Exception {
+        cachingAI = new CachingDecisionMakingAI(upstream, 16384, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 100; i++) cachingAI.getSuggestions("prompt " + i);
+
+        assertTrue(cachingAI.getAnswerCache().getWeight() <= 16384);
+        assertTrue(cachingAI.getAnswerCache().size() > 0);
+        assertTrue(cachingAI.getAnswerCache().getEvictions() > 0);
+    }
+
+    @Test
+    @DisplayName("A failing listener of the session that asked the AI doesn't fail the sessions waiting for it")
+    void leaderListenerFailure() throws Exception {
+        upstream.gate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> leader = executor.submit(() -> {
+                cachingAI.streamSuggestions("prompt", suggestion -> {
+                    throw new IllegalStateException("Rendering failed");
+                });
+                return null;
+            });
+            while (upstream.calls.get() == 0) Thread.sleep(1);
+            Future<String> waiting = executor.submit(() -> cachingAI.getSuggestions("prompt"));
+            while (cachingAI.getCoalescedCalls() == 0) Thread.sleep(1);
+            upstream.gate.countDown();
+
+            assertEquals(ANSWER, waiting.get(10, TimeUnit.SECONDS));
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> leader.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, failure.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(ANSWER, cachingAI.getSuggestions("prompt"));
+        assertEquals(1, upstream.calls.get());
+    }
+
+    @Test
+    @DisplayName("An answer with an unreadable suggestion is never cached, whichever call asked it")
+    void malformedNotCached() throws Exception {
+        upstream.answer = "<R, 640557143200><X, 243516578917>";
+        List<Exception> errors = new ArrayList<>();
+        SuggestionListener listener = new SuggestionListener() {
+            @Override
+            public void onSuggestion(Suggestion suggestion) {
+            }
+
+            @Override
+            public void onInvalidSuggestion(SuggestionException e) {
+                errors.add(e);
+            }
+        };
+
+        cachingAI.getSuggestions("prompt");
+        cachingAI.streamSuggestions("prompt", listener);
+        cachingAI.getSuggestions("prompt");
+
+        assertEquals(3, upstream.calls.get());
+        assertEquals(1, errors.size());
+        assertEquals(0, cachingAI.getAnswerCache().size());
+    }
+
+    @Test
+    @DisplayName("The suggestions of a cached answer are served from its entry")
+    void cachedParses() throws Exception {
+        String answer = cachingAI.getSuggestions("prompt");
+        List<Suggestion> suggestions = cachingAI.parseSuggest(answer);
+
+        assertEquals(2, suggestions.size());
+        assertEquals(0, upstream.parses.get());
+        suggestions.clear();
+        assertEquals(2, cachingAI.parseSuggest(answer).size());
+
+        assertEquals(1, cachingAI.parseSuggest("<R, 640557143200>").size());
+        assertEquals(1, upstream.parses.get());
+    }
+
+    // AI stand-in that counts the calls and can hold them until the gate opens
+    private static class CountingAI implements DecisionMakingAI {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger parses = new AtomicInteger();
+        volatile String answer = ANSWER;
+        volatile CountDownLatch gate;
+        volatile boolean fail;
+
+        @Override
+        public void initDecisionMakingAI() {
+        }
+
+        @Override
+        public String getSuggestions(String prompt) throws BadPromptException {
+            calls.incrementAndGet();
+            if (fail || prompt == null) throw new BadPromptException("The prompt is not clear or right");
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new BadPromptException("Interrupted");
+                }
+            }
+            return answer;
+        }
+
+        @Override
+        public List<Suggestion> parseSuggest(String aiAnswer) {
+            parses.incrementAndGet();
+            try {
+                return SuggestionParser.parseAll(aiAnswer);
+            } catch (Exception e) {
+                return new ArrayList<>();
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package services;
+
+import data.HealthCardID;
+import data.ProductID;
+import exceptions.*;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import medicalconsultation.PrescriptionCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingHealthNationalServiceTest {
+    private CountingService upstream;
+    private CachingHealthNationalService cachingService;
+    private HealthCardID healthCardID;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        upstream = new CountingService();
+        cachingService = new CachingHealthNationalService(upstream, 100, 1, TimeUnit.MINUTES);
+        healthCardID = new HealthCardID("1234567890123456");
+    }
+
+    @Test
+    @DisplayName("Repeated revisions are served from the cache")
+    void readThrough() throws Exception {
+        MedicalHistory history = cachingService.getMedicalHistory(healthCardID);
+        MedicalPrescription prescription = cachingService.getMedicalPrescription(healthCardID, "illness");
+
+        MedicalHistory cachedHistory = cachingService.getMedicalHistory(healthCardID);
+        MedicalPrescription cachedPrescription = cachingService.getMedicalPrescription(healthCardID, "illness");
+        assertNotSame(history, cachedHistory);
+        assertNotSame(prescription, cachedPrescription);
+        assertEquals(history.getAnnotations(), cachedHistory.getAnnotations());
+        assertArrayEquals(PrescriptionCodec.encode(prescription), PrescriptionCodec.encode(cachedPrescription));
+        assertEquals(1, upstream.historyCalls);
+        assertEquals(1, upstream.prescriptionCalls);
+        assertEquals(1, cachingService.getHistoryCache().getHits());
+        assertEquals(1, cachingService.getPrescriptionCache().getHits());
+    }
+
+    @Test
+    @DisplayName("The edits of a revision that isn't sent don't reach the next one")
+    void unsentEdits() throws Exception {
+        cachingService.getMedicalHistory(healthCardID);
+        cachingService.getMedicalPrescription(healthCardID, "illness");
+
+        MedicalHistory abandoned = cachingService.getMedicalHistory(healthCardID);
+        abandoned.addMedicalHistoryAnnotations("not sent");
+        MedicalPrescription abandonedPrescription = cachingService.getMedicalPrescription(healthCardID, "illness");
+        int lines = abandonedPrescription.getLineCount();
+        abandonedPrescription.addLine(new ProductID("000000000001"),
+                new String[]{"BEFORELUNCH", "15", "1", "1", "DAY", "instructions"});
+
+        assertFalse(cachingService.getMedicalHistory(healthCardID).getAnnotations().contains("not sent"));
+        assertEquals(lines, cachingService.getMedicalPrescription(healthCardID, "illness").getLineCount());
+        assertEquals(1, upstream.historyCalls);
+    }
+
+    @Test
+    @DisplayName("A fetch that ends after the patient was invalidated is not served")
+    void lateFetch() throws Exception {
+        upstream.duringFetch = () -> cachingService.invalidate(healthCardID, "illness");
+        cachingService.getMedicalHistory(healthCardID);
+        cachingService.getMedicalPrescription(healthCardID, "illness");
+        upstream.duringFetch = () -> {
+        };
+
+        cachingService.getMedicalHistory(healthCardID);
+        cachingService.getMedicalPrescription(healthCardID, "illness");
+        assertEquals(2, upstream.historyCalls);
+        assertEquals(2, upstream.prescriptionCalls);
+    }
+
+    @Test
+    @DisplayName("The prescriptions are cached by illness")
+    void prescriptionsByIllness() throws Exception {
+        cachingService.getMedicalPrescription(healthCardID, "illness");
+        cachingService.getMedicalPrescription(healthCardID, "other illness");
+
+        assertEquals(2, upstream.prescriptionCalls);
+    }
+
+    @Test
+    @DisplayName("A successful send drops the cached history and prescription")
+    void invalidationOnSend() throws Exception {
+        MedicalHistory history = cachingService.getMedicalHistory(healthCardID);
+        MedicalPrescription prescription = cachingService.getMedicalPrescription(healthCardID, "illness");
+        prescription.setEndDate(new Date());
+
+        cachingService.sendHistoryAndPrescription(healthCardID, history, "illness", prescription);
+        cachingService.getMedicalHistory(healthCardID);
+        cachingService.getMedicalPrescription(healthCardID, "illness");
+
+        assertEquals(2, upstream.historyCalls);
+        assertEquals(2, upstream.prescriptionCalls);
+    }
+
+    @Test
+    @DisplayName("A failed send keeps the cache and the errors are not cached")
+    void failures() throws Exception {
+        MedicalHistory history = cachingService.getMedicalHistory(healthCardID);
+        MedicalPrescription prescription = cachingService.getMedicalPrescription(healthCardID, "illness");
+
+        upstream.setFailWithConnectException(true);
+        assertThrows(ConnectException.class, () ->
+                cachingService.sendHistoryAndPrescription(healthCardID, history, "illness", prescription));
+        cachingService.getMedicalHistory(healthCardID);
+        assertEquals(1, upstream.historyCalls);
+
+        HealthCardID other = new HealthCardID("ABCDEFGHIJKLMNOP");
+        assertThrows(ConnectException.class, () -> cachingService.getMedicalHistory(other));
+        upstream.setFailWithConnectException(false);
+        assertNotNull(cachingService.getMedicalHistory(other));
+    }
+
+    // Counts the calls that reach the HNS
+    private static class CountingService extends HealthNationalServiceMock {
+        int historyCalls;
+        int prescriptionCalls;
+        Runnable duringFetch = () -> {
+        };
+
+        CountingService() throws IncorrectParametersException, HealthCardIDException, MedicalPrescriptionException {
+        }
+
+        @Override
+        public MedicalHistory getMedicalHistory(HealthCardID cip)
+                throws ConnectException, HealthCardIDException, IncorrectParametersException {
+            historyCalls++;
+            duringFetch.run();
+            return super.getMedicalHistory(cip);
+        }
+
+        @Override
+        public MedicalPrescription getMedicalPrescription(HealthCardID cip, String illness)
+                throws ConnectException, HealthCardIDException, AnyCurrentPrescriptionException, MedicalPrescriptionException {
+            prescriptionCalls++;
+            duringFetch.run();
+            return super.getMedicalPrescription(cip, illness);
+        }
+    }
+}
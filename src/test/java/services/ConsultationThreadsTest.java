@@ -0,0 +1,128 @@
+package services;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsultationThreadsTest {
+
+    @Test
+    @DisplayName("test every task gets a new consultation thread, not daemon when it is a platform one")
+    void threadPerConsultation() throws Exception {
+        CompletableFuture<Thread> first = new CompletableFuture<>();
+        CompletableFuture<Thread> second = new CompletableFuture<>();
+        ConsultationThreads.perConsultation().execute(() -> first.complete(Thread.currentThread()));
+        ConsultationThreads.perConsultation().execute(() -> second.complete(Thread.currentThread()));
+
+        Thread thread = first.get(10, TimeUnit.SECONDS);
+        assertNotSame(thread, second.get(10, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), thread);
+        assertTrue(thread.getName().startsWith("consultation-"));
+        assertEquals(ConsultationThreads.isVirtual(), thread.isDaemon()); // Virtual threads are always daemon
+    }
+
+    @Test
+    @DisplayName("test the consultations run on virtual threads when the JVM has them")
+    void virtualWhenAvailable() throws Exception {
+        assertEquals(Runtime.version().feature() >= 21, ConsultationThreads.isVirtual());
+        Thread thread = ConsultationThreads.factory().newThread(() -> {
+        });
+        if (ConsultationThreads.isVirtual())
+            assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+        assertTrue(thread.getName().startsWith("consultation-"));
+    }
+
+    @Test
+    @DisplayName("test the platform threads are bounded, the next consultation waits for one to end")
+    void boundedPlatformThreads() throws Exception {
+        Executor executor = ConsultationThreads.boundedPlatformThreads(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            executor.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<Thread> third = new CompletableFuture<>();
+        Thread submitter = new Thread(() -> executor.execute(() -> third.complete(Thread.currentThread())));
+        submitter.start();
+        while (submitter.getState() != Thread.State.WAITING) Thread.onSpinWait();
+        assertFalse(third.isDone());
+
+        release.countDown();
+        assertFalse(third.get(10, TimeUnit.SECONDS).isDaemon());
+        submitter.join(10_000);
+
+        assertThrows(IllegalArgumentException.class, () -> ConsultationThreads.boundedPlatformThreads(0));
+    }
+
+    @Test
+    @DisplayName("test a consultation interrupted while waiting for a platform thread is rejected")
+    void interruptedWaiting() throws Exception {
+        Executor executor = ConsultationThreads.boundedPlatformThreads(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread submitter = new Thread(() -> {
+            try {
+                executor.execute(() -> {
+                });
+            } catch (RejectedExecutionException e) {
+                failure.set(e);
+            }
+        });
+        try {
+            submitter.start();
+            while (submitter.getState() != Thread.State.WAITING) Thread.onSpinWait();
+            submitter.interrupt();
+            submitter.join(10_000);
+            assertInstanceOf(RejectedExecutionException.class, failure.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    @DisplayName("test many consultations can be blocked at the same time")
+    void manyBlockedConsultations() throws Exception {
+        int consultations = ConsultationThreads.isVirtual() ? 500 : 256;
+        CountDownLatch started = new CountDownLatch(consultations);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < consultations; i++) {
+            ConsultationThreads.perConsultation().execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        try {
+            assertTrue(started.await(30, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+}
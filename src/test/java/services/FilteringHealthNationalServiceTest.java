@@ -0,0 +1,86 @@
+package services;
+
+import data.HealthCardID;
+import exceptions.AnyCurrentPrescriptionException;
+import exceptions.HealthCardIDException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilteringHealthNationalServiceTest {
+    private InMemoryHealthNationalService upstream;
+    private FilteringHealthNationalService filtering;
+    private HealthCardID registered;
+    private HealthCardID unknown;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        upstream = new InMemoryHealthNationalService(16, 4);
+        registered = new HealthCardID("1234567890123456");
+        unknown = new HealthCardID("6543210987654321");
+        upstream.registerPatient(registered, 777);
+        filtering = new FilteringHealthNationalService(upstream, upstream::getRegisteredPatients, 1000, 0.0001);
+    }
+
+    @Test
+    @DisplayName("The unknown cards are rejected without asking the HNS, the registered ones go through")
+    void rejection() throws Exception {
+        assertEquals(777, filtering.getMedicalHistory(registered).getMembShipNumb());
+        assertThrows(AnyCurrentPrescriptionException.class, () -> filtering.getMedicalPrescription(registered, "x"));
+
+        HealthCardIDException e = assertThrows(HealthCardIDException.class, () -> filtering.getMedicalHistory(unknown));
+        assertEquals("CIP not registered in the system", e.getMessage());
+        assertThrows(HealthCardIDException.class, () -> filtering.getMedicalPrescription(unknown, "illness"));
+        assertThrows(HealthCardIDException.class, () -> filtering.getMedicalHistory(null));
+        assertEquals(2, filtering.getRejections());
+        assertEquals(1, filtering.getRefreshes());
+    }
+
+    @Test
+    @DisplayName("New patients are let through once added, or after a refresh")
+    void newPatients() throws Exception {
+        upstream.registerPatient(unknown, 555);
+        assertThrows(HealthCardIDException.class, () -> filtering.getMedicalHistory(unknown));
+        filtering.patientRegistered(unknown);
+        assertEquals(555, filtering.getMedicalHistory(unknown).getMembShipNumb());
+
+        HealthCardID other = new HealthCardID("BBBB000000000001");
+        upstream.registerPatient(other, 555);
+        filtering.refresh();
+        assertEquals(555, filtering.getMedicalHistory(other).getMembShipNumb());
+        assertEquals(555, filtering.getMedicalHistory(unknown).getMembShipNumb());
+        assertEquals(2, filtering.getRefreshes());
+    }
+
+    @Test
+    @DisplayName("A failed refresh keeps the current filter, and the refreshes can be scheduled")
+    void scheduledRefresh() throws Exception {
+        boolean[] firstCall = {true};
+        FilteringHealthNationalService flaky = new FilteringHealthNationalService(upstream, () -> {
+            if (firstCall[0]) {
+                firstCall[0] = false;
+                return Set.of(registered);
+            }
+            throw new IllegalStateException("HNS down");
+        }, 10, 0.01);
+        assertThrows(IllegalStateException.class, flaky::refresh);
+        assertNotNull(flaky.getMedicalHistory(registered));
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            filtering.scheduleRefresh(scheduler, 1, TimeUnit.MILLISECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (filtering.getRefreshes() < 3 && System.nanoTime() < deadline) Thread.sleep(1);
+            assertTrue(filtering.getRefreshes() >= 3);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package services;
+
+import data.HealthCardID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HealthCardIDFilterTest {
+
+    private static HealthCardID card(String prefix, long number) throws Exception {
+        return HealthCardID.parse(String.format("%s%013d", prefix, number));
+    }
+
+    @Test
+    @DisplayName("Every added card is found, and the unknown ones are let through at about the given rate")
+    void falsePositiveRate() throws Exception {
+        int cards = 100_000;
+        HealthCardIDFilter filter = new HealthCardIDFilter(cards, 0.01);
+        for (int i = 0; i < cards; i++) filter.add(card("BBB", 1000003L * i));
+
+        for (int i = 0; i < cards; i++) assertTrue(filter.mightContain(card("BBB", 1000003L * i)));
+        int falsePositives = 0;
+        for (int i = 0; i < cards; i++) if (filter.mightContain(card("CCC", 7L * i + 3))) falsePositives++;
+        assertTrue(falsePositives < cards * 0.015, "False positives: " + falsePositives);
+        assertEquals(7, filter.getHashCount());
+        assertTrue(filter.getByteSize() < cards * 2);
+    }
+
+    @Test
+    @DisplayName("An empty filter knows no card, and the parameters are validated")
+    void empty() throws Exception {
+        HealthCardIDFilter filter = new HealthCardIDFilter(0, 0.001);
+        assertFalse(filter.mightContain(card("BBB", 1)));
+        assertFalse(filter.mightContain(null));
+        assertThrows(IllegalArgumentException.class, () -> filter.add(null));
+        assertThrows(IllegalArgumentException.class, () -> new HealthCardIDFilter(-1, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new HealthCardIDFilter(10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new HealthCardIDFilter(10, 1));
+        assertThrows(IllegalArgumentException.class, () -> new HealthCardIDFilter(Long.MAX_VALUE / 64, 0.01));
+    }
+}
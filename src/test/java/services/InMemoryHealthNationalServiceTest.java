@@ -0,0 +1,244 @@
+package services;
+
+import data.HealthCardID;
+import data.ProductID;
+import data.ePrescripCode;
+import exceptions.*;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import medicalconsultation.PrescriptionCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryHealthNationalServiceTest {
+    private static final String[] INSTRUCTIONS = {"BEFORELUNCH", "15", "1", "1", "DAY", "Tomar con abundante agua"};
+
+    private InMemoryHealthNationalService hns;
+    private HealthCardID cip;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        hns = new InMemoryHealthNationalService(16, 4);
+        cip = new HealthCardID("1234567890123456");
+        assertTrue(hns.registerPatient(cip, 777));
+        MedicalPrescription prescription = new MedicalPrescription(cip, 777, "illness");
+        prescription.addLine(new ProductID("123456789012"), INSTRUCTIONS);
+        hns.registerPrescription(prescription);
+    }
+
+    @Test
+    @DisplayName("The records are found by HealthCardID and illness, as copies at their versions")
+    void getRecords() throws Exception {
+        assertFalse(hns.registerPatient(cip, 555));
+        assertEquals(1, hns.getPatientCount());
+        assertEquals(4, hns.getStripeCount());
+
+        MedicalHistory history = hns.getMedicalHistory(cip);
+        MedicalPrescription prescription = hns.getMedicalPrescription(cip, "illness");
+        assertEquals(777, history.getMembShipNumb());
+        assertEquals(0, history.getAnnotationCount());
+        assertEquals(1, history.getVersion());
+        assertEquals(1, prescription.getVersion());
+        assertEquals(1, prescription.getLineCount());
+
+        prescription.removeLine(new ProductID("123456789012"));
+        history.addMedicalHistoryAnnotations("not sent");
+        assertEquals(1, hns.getMedicalPrescription(cip, "illness").getLineCount());
+        assertEquals(0, hns.getMedicalHistory(cip).getAnnotationCount());
+    }
+
+    @Test
+    @DisplayName("Unknown patients and illnesses are rejected")
+    void unknownRecords() throws Exception {
+        HealthCardID unknown = new HealthCardID("6543210987654321");
+        assertThrows(HealthCardIDException.class, () -> hns.getMedicalHistory(unknown));
+        assertThrows(HealthCardIDException.class, () -> hns.getMedicalPrescription(unknown, "illness"));
+        assertThrows(HealthCardIDException.class, () -> hns.getMedicalHistory(null));
+        assertThrows(AnyCurrentPrescriptionException.class, () -> hns.getMedicalPrescription(cip, "other"));
+        assertThrows(HealthCardIDException.class, () ->
+                hns.registerPrescription(new MedicalPrescription(unknown, 777, "illness")));
+
+        MedicalHistory history = hns.getMedicalHistory(cip);
+        MedicalPrescription other = new MedicalPrescription(cip, 777, "other");
+        assertThrows(AnyCurrentPrescriptionException.class, () ->
+                hns.sendHistoryAndPrescription(cip, history, "other", other));
+        assertNull(other.getPrescCode());
+        assertThrows(NotCompletedMedicalPrescription.class, () ->
+                hns.sendHistoryAndPrescription(cip, history, "illness", other));
+        assertThrows(HealthCardIDException.class, () ->
+                hns.sendHistoryAndPrescription(unknown, history, "other", other));
+        assertThrows(NotCompletedMedicalPrescription.class, () ->
+                hns.sendHistoryAndPrescription(cip, null, "illness", other));
+    }
+
+    @Test
+    @DisplayName("A submission replaces both records, and the changes are applied over them")
+    void submissions() throws Exception {
+        MedicalHistory history = hns.getMedicalHistory(cip);
+        MedicalPrescription prescription = hns.getMedicalPrescription(cip, "illness");
+        history.addMedicalHistoryAnnotations("first");
+        prescription.addLine(new ProductID("000000000001"), INSTRUCTIONS);
+
+        MedicalPrescription registered = hns.sendHistoryAndPrescription(cip, history, "illness", prescription);
+        ePrescripCode firstCode = registered.getPrescCode();
+        assertNotNull(firstCode);
+        assertEquals(2, registered.getVersion());
+        assertEquals(2, history.getVersion());
+
+        history.addMedicalHistoryAnnotations("second");
+        prescription.modifyDoseInLine(new ProductID("000000000001"), 3);
+        prescription.removeLine(new ProductID("123456789012"));
+        MedicalPrescription changed = hns.sendHistoryAndPrescriptionChanges(cip, history, "illness", prescription);
+        assertNotEquals(firstCode, changed.getPrescCode());
+        assertEquals(3, changed.getVersion());
+        assertFalse(changed.hasChanges());
+
+        MedicalHistory stored = hns.getMedicalHistory(cip);
+        assertEquals(List.of("first", "second"), stored.getAnnotations());
+        assertEquals("first\nsecond", stored.getHistory());
+        assertArrayEquals(PrescriptionCodec.encode(prescription),
+                PrescriptionCodec.encode(hns.getMedicalPrescription(cip, "illness")));
+    }
+
+    @Test
+    @DisplayName("Every registered prescription is found by its last code, keeping the units dispensed")
+    void registry() throws Exception {
+        MedicalHistory history = hns.getMedicalHistory(cip);
+        MedicalPrescription prescription = hns.getMedicalPrescription(cip, "illness");
+        ePrescripCode firstCode = hns.sendHistoryAndPrescription(cip, history, "illness", prescription).getPrescCode();
+        assertEquals(0, hns.getRegistry().dispense(firstCode, new ProductID("123456789012"), 1));
+
+        prescription.addLine(new ProductID("000000000001"), INSTRUCTIONS);
+        ePrescripCode resentCode = hns.sendHistoryAndPrescriptionChanges(cip, history, "illness", prescription)
+                .getPrescCode();
+        assertNotEquals(firstCode, resentCode);
+        assertEquals(0, hns.getRegistry().getRemaining(resentCode, new ProductID("123456789012")));
+        assertEquals(-1, hns.getRegistry().dispense(resentCode, new ProductID("123456789012"), 1));
+
+        prescription.removeLine(new ProductID("123456789012"));
+        ePrescripCode secondCode = hns.sendHistoryAndPrescriptionChanges(cip, history, "illness", prescription)
+                .getPrescCode();
+
+        assertEquals(1, hns.getRegistry().size());
+        assertThrows(ePrescripCodeException.class, () -> hns.getRegistry().lookup(firstCode));
+        assertThrows(ePrescripCodeException.class, () -> hns.getRegistry().lookup(resentCode));
+        MedicalPrescription registered = hns.getRegistry().lookup(secondCode);
+        assertEquals(1, registered.getLineCount());
+        assertNotNull(registered.getLine(new ProductID("000000000001")));
+        assertEquals(0, hns.getRegistry().dispense(secondCode, new ProductID("000000000001"), 1));
+    }
+
+    @Test
+    @DisplayName("A batch stores every submission in its order, and fails only the rejected ones")
+    void batch() throws Exception {
+        List<PrescriptionSubmission> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            HealthCardID patient = new HealthCardID(String.format("BBBB%012d", i));
+            hns.registerPatient(patient, 777);
+            hns.registerPrescription(new MedicalPrescription(patient, 777, "illness"));
+            MedicalHistory history = hns.getMedicalHistory(patient);
+            history.addMedicalHistoryAnnotations("batch " + i);
+            batch.add(new PrescriptionSubmission(patient, history, "illness",
+                    hns.getMedicalPrescription(patient, "illness")));
+        }
+        MedicalHistory first = hns.getMedicalHistory(cip);
+        first.addMedicalHistoryAnnotations("first");
+        MedicalHistory second = hns.getMedicalHistory(cip);
+        second.addMedicalHistoryAnnotations("second");
+        MedicalPrescription other = new MedicalPrescription(cip, 777, "other");
+        batch.add(new PrescriptionSubmission(cip, first, "illness", hns.getMedicalPrescription(cip, "illness")));
+        batch.add(new PrescriptionSubmission(cip, hns.getMedicalHistory(cip), "other", other));
+        batch.add(new PrescriptionSubmission(cip, second, "illness", hns.getMedicalPrescription(cip, "illness")));
+
+        hns.sendHistoriesAndPrescriptions(batch);
+
+        for (int i = 0; i < 20; i++) {
+            MedicalPrescription registered = batch.get(i).getResult().get();
+            assertEquals(2, registered.getVersion());
+            assertEquals(List.of("batch " + i), hns.getMedicalHistory(registered.getCip()).getAnnotations());
+            assertNotNull(hns.getRegistry().lookup(registered.getPrescCode()));
+        }
+        ExecutionException error = assertThrows(ExecutionException.class, () -> batch.get(21).getResult().get());
+        assertInstanceOf(AnyCurrentPrescriptionException.class, error.getCause());
+        assertNull(other.getPrescCode());
+        assertEquals(2, batch.get(20).getResult().get().getVersion());
+        assertEquals(3, batch.get(22).getResult().get().getVersion());
+        assertEquals(List.of("second"), hns.getMedicalHistory(cip).getAnnotations());
+        assertEquals(21, hns.getRegistry().size());
+    }
+
+    @Test
+    @DisplayName("The changes made over records that moved since they were got are rejected")
+    void versionConflict() throws Exception {
+        MedicalHistory firstHistory = hns.getMedicalHistory(cip);
+        MedicalPrescription firstPrescription = hns.getMedicalPrescription(cip, "illness");
+        MedicalHistory secondHistory = hns.getMedicalHistory(cip);
+        MedicalPrescription secondPrescription = hns.getMedicalPrescription(cip, "illness");
+
+        firstHistory.addMedicalHistoryAnnotations("first doctor");
+        hns.sendHistoryAndPrescriptionChanges(cip, firstHistory, "illness", firstPrescription);
+        secondHistory.addMedicalHistoryAnnotations("second doctor");
+        assertThrows(VersionConflictException.class, () ->
+                hns.sendHistoryAndPrescriptionChanges(cip, secondHistory, "illness", secondPrescription));
+        assertNull(secondPrescription.getPrescCode());
+
+        assertEquals(List.of("first doctor"), hns.getMedicalHistory(cip).getAnnotations());
+    }
+
+    @Test
+    @DisplayName("Concurrent doctors never lose an annotation, retrying when their records moved")
+    void concurrentSubmissions() throws Exception {
+        List<HealthCardID> cips = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            HealthCardID patient = new HealthCardID(String.format("BBBB%012d", i));
+            hns.registerPatient(patient, 777);
+            hns.registerPrescription(new MedicalPrescription(patient, 777, "illness"));
+            cips.add(patient);
+        }
+        int threads = 4;
+        int revisions = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> conflicts = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                conflicts.add(executor.submit(() -> {
+                    int retries = 0;
+                    for (int r = 0; r < revisions; r++) {
+                        HealthCardID patient = cips.get((thread + r) % cips.size());
+                        while (true) {
+                            MedicalHistory history = hns.getMedicalHistory(patient);
+                            MedicalPrescription prescription = hns.getMedicalPrescription(patient, "illness");
+                            history.addMedicalHistoryAnnotations(thread + "-" + r);
+                            try {
+                                hns.sendHistoryAndPrescriptionChanges(patient, history, "illness", prescription);
+                                break;
+                            } catch (VersionConflictException e) {
+                                retries++;
+                            }
+                        }
+                    }
+                    return retries;
+                }));
+            }
+            for (Future<Integer> future : conflicts) future.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int annotations = 0;
+        for (HealthCardID patient : cips) {
+            MedicalHistory history = hns.getMedicalHistory(patient);
+            annotations += history.getAnnotationCount();
+            assertEquals(history.getAnnotationCount() + 1, history.getVersion());
+        }
+        assertEquals(threads * revisions, annotations);
+    }
+}
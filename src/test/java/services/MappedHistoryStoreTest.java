@@ -0,0 +1,209 @@
+package services;
+
+import data.HealthCardID;
+import medicalconsultation.MedicalHistory;
+import medicalconsultation.MedicalPrescription;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedHistoryStoreTest {
+    @TempDir
+    Path directory;
+
+    private HealthCardID healthCardID;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        healthCardID = new HealthCardID("1234567890123456");
+    }
+
+    @Test
+    @DisplayName("The annotations and the doctor appended survive closing the store")
+    void survivesRestart() throws Exception {
+        try (MappedHistoryStore store = new MappedHistoryStore(directory, false)) {
+            MedicalHistory history = store.getMedicalHistory(healthCardID, 777);
+            history.addMedicalHistoryAnnotations("First visit");
+            history.addMedicalHistoryAnnotations("Dolor de cabeza, ibuprofeno");
+            history.setNewDoctor(888);
+            store.append(healthCardID, history.getAnnotations(), history.getMembShipNumb());
+            assertTrue(Files.exists(directory.resolve(healthCardID.toHexString() + ".hce")));
+        }
+
+        try (MappedHistoryStore store = new MappedHistoryStore(directory, false)) {
+            MedicalHistory history = store.getMedicalHistory(healthCardID, 777);
+            assertEquals(888, history.getMembShipNumb());
+            assertEquals(List.of("First visit", "Dolor de cabeza, ibuprofeno"), history.getAnnotations());
+            assertEquals("First visit\nDolor de cabeza, ibuprofeno", history.getHistory());
+            assertEquals(history.getHistory().length(), history.getHistoryLength());
+        }
+    }
+
+    @Test
+    @DisplayName("Every caller gets its own copy, the annotations not appended to the store are only in it")
+    void sessionCopies() throws Exception {
+        try (MappedHistoryStore store = new MappedHistoryStore(directory, false)) {
+            store.append(healthCardID, List.of("stored"), 777);
+            MedicalHistory first = store.getMedicalHistory(healthCardID, 777);
+            MedicalHistory second = store.getMedicalHistory(healthCardID, 777);
+            assertNotSame(first, second);
+
+            first.addMedicalHistoryAnnotations("first, not sent");
+            second.addMedicalHistoryAnnotations("second, sent");
+            store.append(healthCardID, second.getAnnotations().subList(1, 2), 777);
+
+            assertEquals(List.of("stored", "first, not sent"), first.getAnnotations());
+            assertEquals("stored\nfirst, not sent", first.getHistory());
+            assertEquals(List.of("stored", "second, sent"), store.getMedicalHistory(healthCardID, 777).getAnnotations());
+        }
+    }
+
+    @Test
+    @DisplayName("Codes differing only in case are kept in different files")
+    void caseInsensitiveNames() throws Exception {
+        HealthCardID lower = new HealthCardID("abcdefgh12345678");
+        HealthCardID upper = new HealthCardID("ABCDEFGH12345678");
+        try (MappedHistoryStore store = new MappedHistoryStore(directory, false)) {
+            store.append(lower, List.of("lower"), 777);
+            store.append(upper, List.of("upper"), 777);
+
+            assertNotEquals(lower.toHexString().toLowerCase(), upper.toHexString().toLowerCase());
+            assertEquals(List.of("lower"), store.getMedicalHistory(lower, 777).getAnnotations());
+            assertEquals(List.of("upper"), store.getMedicalHistory(upper, 777).getAnnotations());
+        }
+    }
+
+    @Test
+    @DisplayName("Only the most recently used logs are kept open, the others are opened again when read")
+    void boundedOpenLogs() throws Exception {
+        try (MappedHistoryStore store = new MappedHistoryStore(directory, false, 4)) {
+            List<MedicalHistory> histories = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                HealthCardID cip = new HealthCardID(String.format("BBBB%012d", i));
+                store.append(cip, List.of("annotation " + i), 777);
+                histories.add(store.getMedicalHistory(cip, 777));
+            }
+
+            assertEquals(4, store.getOpenLogs());
+            assertEquals(6, store.getEvictions());
+            for (int i = 0; i < 10; i++) assertEquals("annotation " + i, histories.get(i).getHistory());
+            assertEquals(4, store.getOpenLogs());
+            assertTrue(store.contains(new HealthCardID(String.format("BBBB%012d", 0))));
+        }
+    }
+
+    @Test
+    @DisplayName("An empty annotation is rejected, it would read as the end of the log")
+    void rejectsEmptyAnnotations() throws Exception {
+        try (MappedHistoryLog log = new MappedHistoryLog(directory.resolve("log.hce"), false)) {
+            assertThrows(IllegalArgumentException.class, () -> log.append(""));
+            assertThrows(IllegalArgumentException.class, () -> log.append(null));
+            log.append("after");
+            assertEquals(1, log.size());
+        }
+    }
+
+    @Test
+    @DisplayName("The log grows its mapping and reads any annotation by number")
+    void randomAccess() throws Exception {
+        Path path = directory.resolve("log.hce");
+        try (MappedHistoryLog log = new MappedHistoryLog(path, false)) {
+            for (int i = 0; i < 5000; i++) log.append("Annotation número " + i + " ".repeat(i % 50));
+        }
+        try (MappedHistoryLog log = new MappedHistoryLog(path, false)) {
+            assertEquals(5000, log.size());
+            assertEquals("Annotation número 0", log.get(0));
+            assertEquals("Annotation número 4321" + " ".repeat(4321 % 50), log.get(4321));
+            assertThrows(IndexOutOfBoundsException.class, () -> log.get(5000));
+            assertEquals(0, log.getDiscardedBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("A torn record left by a crash is discarded when the log is opened")
+    void recoversFromTornWrite() throws Exception {
+        Path path = directory.resolve("log.hce");
+        int secondRecord;
+        try (MappedHistoryLog log = new MappedHistoryLog(path, true)) {
+            log.append("complete");
+            secondRecord = MappedHistoryLog.HEADER_SIZE + MappedHistoryLog.RECORD_HEADER_SIZE + "complete".length();
+            log.append("torn annotation");
+        }
+        // Corrupts the payload of the second record, as if the crash happened while writing it
+        corrupt(path, secondRecord + MappedHistoryLog.RECORD_HEADER_SIZE + 2);
+
+        try (MappedHistoryLog log = new MappedHistoryLog(path, false)) {
+            assertEquals(1, log.size());
+            assertEquals("complete", log.get(0));
+            assertTrue(log.getDiscardedBytes() > 0);
+            log.append("after recovery");
+        }
+        try (MappedHistoryLog log = new MappedHistoryLog(path, false)) {
+            assertEquals(2, log.size());
+            assertEquals("after recovery", log.get(1));
+            assertEquals(0, log.getDiscardedBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("A file that is not a history log is rejected")
+    void rejectsOtherFiles() throws Exception {
+        Path path = directory.resolve("other.hce");
+        Files.writeString(path, "this is not a history log at all");
+
+        assertThrows(IOException.class, () -> new MappedHistoryLog(path, false));
+    }
+
+    @Test
+    @DisplayName("The in-memory HNS serves the histories from the store, and stores them when they are sent")
+    void servedByInMemoryHNS() throws Exception {
+        InMemoryHealthNationalService healthNationalService = new InMemoryHealthNationalService();
+        healthNationalService.registerPatient(healthCardID, 777);
+        healthNationalService.registerPrescription(new MedicalPrescription(healthCardID, 777, "illness"));
+        try (MappedHistoryStore store = new MappedHistoryStore(directory, false)) {
+            healthNationalService.setHistoryStore(store);
+            MedicalHistory unsent = healthNationalService.getMedicalHistory(healthCardID);
+            unsent.addMedicalHistoryAnnotations("Not sent");
+            MedicalHistory sent = healthNationalService.getMedicalHistory(healthCardID);
+            sent.addMedicalHistoryAnnotations("Stored");
+            assertEquals("", healthNationalService.getMedicalHistory(healthCardID).getHistory());
+
+            healthNationalService.sendHistoryAndPrescription(healthCardID, sent, "illness",
+                    new MedicalPrescription(healthCardID, 777, "illness"));
+
+            assertTrue(store.contains(healthCardID));
+            assertEquals("Stored", healthNationalService.getMedicalHistory(healthCardID).getHistory());
+
+            // Only the annotation added since it was got is appended when the changes are sent
+            MedicalHistory changed = healthNationalService.getMedicalHistory(healthCardID);
+            changed.addMedicalHistoryAnnotations("Changed");
+            healthNationalService.sendHistoryAndPrescriptionChanges(healthCardID, changed, "illness",
+                    healthNationalService.getMedicalPrescription(healthCardID, "illness"));
+
+            assertEquals(List.of("Stored", "Changed"), healthNationalService.getMedicalHistory(healthCardID).getAnnotations());
+            assertEquals(List.of("Stored", "Changed"), store.getMedicalHistory(healthCardID, 777).getAnnotations());
+        }
+    }
+
+    private static void corrupt(Path path, int position) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            b.flip();
+            b.put(0, (byte) (b.get(0) ^ 0x5A));
+            channel.write(b, position);
+        }
+    }
+}
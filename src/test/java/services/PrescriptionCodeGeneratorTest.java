@@ -0,0 +1,140 @@
+package services;
+
+import data.HealthCardID;
+import data.ePrescripCode;
+import medicalconsultation.MedicalPrescription;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrescriptionCodeGeneratorTest {
+    private static final long NOW = PrescriptionCodeGenerator.EPOCH + 86_400_000L;
+
+    @Test
+    @DisplayName("The codes are 16 letters and digits with the time and the node they were generated at")
+    void format() {
+        AtomicLong clock = new AtomicLong(NOW);
+        PrescriptionCodeGenerator generator = new PrescriptionCodeGenerator(4095, 3, clock::incrementAndGet);
+
+        ePrescripCode code = generator.next();
+
+        assertEquals(16, code.getPrescripCode().length());
+        assertTrue(code.getPrescripCode().chars().allMatch(c -> Character.isDigit(c) || Character.isUpperCase(c)));
+        assertEquals(4095, PrescriptionCodeGenerator.nodeOf(code));
+        assertTrue(PrescriptionCodeGenerator.timestampOf(code) > NOW);
+        assertEquals(4, generator.getStripeCount());
+        assertThrows(IllegalArgumentException.class, () -> new PrescriptionCodeGenerator(4096));
+        assertThrows(IllegalArgumentException.class, () -> new PrescriptionCodeGenerator(-1));
+    }
+
+    @Test
+    @DisplayName("The codes of a millisecond follow the sequence, and are ordered by time")
+    void sequence() {
+        AtomicLong clock = new AtomicLong(NOW);
+        PrescriptionCodeGenerator generator = new PrescriptionCodeGenerator(7, 1, clock::get);
+        clock.set(NOW + 1);
+
+        String first = generator.nextCode();
+        String second = generator.nextCode();
+        clock.set(NOW + 2);
+        String third = generator.nextCode();
+
+        assertTrue(first.compareTo(second) < 0);
+        assertTrue(second.compareTo(third) < 0);
+        assertEquals(first.substring(0, 8), second.substring(0, 8));
+        assertNotEquals(second.substring(0, 8), third.substring(0, 8));
+    }
+
+    @Test
+    @DisplayName("A generator started again in the same millisecond doesn't repeat the codes of the previous one")
+    void restart() throws Exception {
+        AtomicLong clock = new AtomicLong(NOW);
+        PrescriptionCodeGenerator previous = new PrescriptionCodeGenerator(7, 1, clock::get);
+        clock.set(NOW + 1);
+        Set<String> codes = new HashSet<>();
+        for (int i = 0; i < 1000; i++) codes.add(previous.nextCode());
+
+        PrescriptionCodeGenerator restarted = new PrescriptionCodeGenerator(7, 1, clock::get);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> waiting = executor.submit(restarted::nextCode);
+            assertThrows(TimeoutException.class, () -> waiting.get(50, TimeUnit.MILLISECONDS));
+            clock.set(NOW + 2);
+            codes.add(waiting.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        for (int i = 0; i < 999; i++) codes.add(restarted.nextCode());
+
+        assertEquals(2000, codes.size());
+    }
+
+    @Test
+    @DisplayName("A clock going back doesn't repeat codes, the generator waits for it")
+    void clockBack() {
+        AtomicInteger calls = new AtomicInteger();
+        // Created at NOW + 10, the first code at NOW + 11, then the clock goes back to NOW until the call 50
+        PrescriptionCodeGenerator generator = new PrescriptionCodeGenerator(7, 1, () -> {
+            int call = calls.incrementAndGet();
+            return (call == 1) ? NOW + 10 : (call == 2 || call >= 50) ? NOW + 11 : NOW;
+        });
+
+        ePrescripCode first = generator.next();
+        ePrescripCode second = generator.next();
+
+        assertTrue(calls.get() >= 50);
+        assertNotEquals(first, second);
+        assertEquals(NOW + 11, PrescriptionCodeGenerator.timestampOf(first));
+        assertEquals(NOW + 11, PrescriptionCodeGenerator.timestampOf(second));
+    }
+
+    @Test
+    @DisplayName("Many threads never get the same code")
+    void concurrentUniqueness() throws Exception {
+        PrescriptionCodeGenerator generator = new PrescriptionCodeGenerator(1);
+        int threads = 4;
+        int perThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    List<String> codes = new ArrayList<>(perThread);
+                    for (int i = 0; i < perThread; i++) codes.add(generator.nextCode());
+                    return codes;
+                }));
+            }
+            Set<String> all = ConcurrentHashMap.newKeySet();
+            for (Future<List<String>> result : results) all.addAll(result.get(30, TimeUnit.SECONDS));
+            assertEquals(threads * perThread, all.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("The services of a process share the generator of node 0, so they never hand out the same code")
+    void shared() throws Exception {
+        InMemoryHealthNationalService first = new InMemoryHealthNationalService();
+        InMemoryHealthNationalService second = new InMemoryHealthNationalService();
+        Set<ePrescripCode> codes = new HashSet<>();
+
+        assertSame(PrescriptionCodeGenerator.shared(), PrescriptionCodeGenerator.shared());
+        assertEquals(0, PrescriptionCodeGenerator.shared().getNode());
+        for (int i = 0; i < 1000; i++) {
+            MedicalPrescription mPresc = new MedicalPrescription(new HealthCardID("1234567890123456"), 777, "illness");
+            assertTrue(codes.add(first.generateTreatmCodeAndRegister(mPresc).getPrescCode()));
+            assertTrue(codes.add(second.generateTreatmCodeAndRegister(mPresc).getPrescCode()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new InMemoryHealthNationalService(16, 1, null));
+    }
+}
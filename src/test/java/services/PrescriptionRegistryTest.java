@@ -0,0 +1,138 @@
+package services;
+
+import data.HealthCardID;
+import data.ProductID;
+import data.ePrescripCode;
+import exceptions.*;
+import medicalconsultation.MedicalPrescription;
+import medicalconsultation.MedicalPrescriptionLine;
+import medicalconsultation.PrescriptionCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrescriptionRegistryTest {
+    private static final String[] INSTRUCTIONS = {"BEFORELUNCH", "15", "1", "1", "DAY", "Tomar con abundante agua"};
+
+    private PrescriptionRegistry registry;
+    private MedicalPrescription prescription;
+    private ePrescripCode code;
+    private ProductID product;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        registry = new PrescriptionRegistry();
+        product = new ProductID("123456789012");
+        code = new ePrescripCode("ABCDEFGHIJ123456");
+        prescription = new MedicalPrescription(new HealthCardID("1234567890123456"), 777, "illness");
+        prescription.addLine(product, INSTRUCTIONS);
+        prescription.getLine(product).setQuantity(3);
+        prescription.setPrescCode(code);
+        registry.register(prescription);
+    }
+
+    @Test
+    @DisplayName("A copy of the prescription is found by its code until it's revoked")
+    void lookup() throws Exception {
+        MedicalPrescription registered = registry.lookup(code);
+        assertNotSame(prescription, registered);
+        assertEquals(1, registered.getLineCount());
+        assertEquals(1, registry.size());
+
+        prescription.removeLine(product);
+        assertEquals(1, registry.lookup(code).getLineCount());
+
+        assertTrue(registry.revoke(code));
+        assertFalse(registry.revoke(code));
+        assertThrows(ePrescripCodeException.class, () -> registry.lookup(code));
+        assertThrows(ePrescripCodeException.class, () -> registry.lookup(null));
+        assertThrows(ePrescripCodeException.class, () ->
+                registry.register(new MedicalPrescription(new HealthCardID("1234567890123456"), 777, "illness")));
+    }
+
+    @Test
+    @DisplayName("Dispensing takes units from the line until there aren't enough")
+    void dispense() throws Exception {
+        assertEquals(1, registry.dispense(code, product, 2));
+        assertEquals(-1, registry.dispense(code, product, 2));
+        assertEquals(0, registry.dispense(code, product, 1));
+        assertEquals(-1, registry.dispense(code, product, 1));
+        assertEquals(0, registry.getRemaining(code, product));
+        MedicalPrescriptionLine dispensed = registry.lookup(code).getLine(product);
+        assertEquals(0, dispensed.getRemaining());
+        assertEquals(3, dispensed.getQuantity());
+        assertEquals(3, prescription.getLine(product).getRemaining());
+
+        assertThrows(ProductNotInPrescriptionException.class, () ->
+                registry.dispense(code, new ProductID("000000000001"), 1));
+        assertThrows(ProductNotInPrescriptionException.class, () -> registry.dispense(code, null, 1));
+        assertThrows(ePrescripCodeException.class, () ->
+                registry.dispense(new ePrescripCode("0000000000000000"), product, 1));
+        assertThrows(IllegalArgumentException.class, () -> registry.dispense(code, product, 0));
+    }
+
+    @Test
+    @DisplayName("Concurrent pharmacies never dispense more units than the line has")
+    void concurrentDispensing() throws Exception {
+        prescription.getLine(product).setQuantity(10_000);
+        registry.register(prescription);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> dispensed = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                dispensed.add(executor.submit(() -> {
+                    int units = 0;
+                    while (registry.dispense(code, product, 1) >= 0) units++;
+                    return units;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> future : dispensed) total += future.get(30, TimeUnit.SECONDS);
+            assertEquals(10_000, total);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, registry.getRemaining(code, product));
+    }
+
+    @Test
+    @DisplayName("The lookups get copies, changing them doesn't change the registered prescription")
+    void lookupCopies() throws Exception {
+        registry.dispense(code, product, 1);
+        MedicalPrescription copy = registry.lookup(code);
+        assertNotSame(copy, registry.lookup(code));
+        assertEquals(2, copy.getLine(product).getRemaining());
+
+        copy.getLine(product).setQuantity(100);
+        copy.getLine(product).dispense(50);
+        copy.removeLine(product);
+
+        assertEquals(1, registry.lookup(code).getLineCount());
+        assertEquals(2, registry.getRemaining(code, product));
+        assertEquals(3, registry.lookup(code).getLine(product).getQuantity());
+    }
+
+    @Test
+    @DisplayName("A prescription registered again keeps the units dispensed, and a dispensed one is still copied")
+    void registeredAgain() throws Exception {
+        assertEquals(0, registry.dispense(code, product, 3));
+        registry.register(prescription);
+        assertEquals(0, registry.getRemaining(code, product));
+        assertEquals(-1, registry.dispense(code, product, 1));
+
+        MedicalPrescription copy = registry.lookup(code);
+        assertEquals(0, copy.getLine(product).getRemaining());
+        assertArrayEquals(PrescriptionCodec.encode(prescription), PrescriptionCodec.encode(copy));
+
+        prescription.getLine(product).setQuantity(5);
+        registry.register(prescription);
+        assertEquals(2, registry.getRemaining(code, product));
+    }
+}